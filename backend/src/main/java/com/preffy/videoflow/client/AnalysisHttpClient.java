@@ -0,0 +1,178 @@
+package com.preffy.videoflow.client;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Shared non-blocking client for the remote analysis services, on one JDK
+ * HttpClient so connections are pooled and kept alive across calls. HTTPS
+ * hosts are asked for HTTP/2; plain-HTTP hosts get HTTP/1.1, since h2c
+ * upgrade requests confuse some servers.
+ * <p>
+ * Requests per host are capped; requests over the cap wait (without a
+ * thread) for a free slot, within the same timeout as the request. Latency is
+ * published as analysis.client.requests, tagged by host and status.
+ */
+public class AnalysisHttpClient {
+
+    /**
+     * Header identifying a submission across retries, so the service can
+     * answer a repeat from its earlier result instead of redoing the work
+     */
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final int maxConcurrentPerHost;
+    private final int maxQueuedPerHost;
+    private final Map<String, HostLimiter> limiters = new ConcurrentHashMap<>();
+
+    public AnalysisHttpClient(HttpClient httpClient, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                              int maxConcurrentPerHost, int maxQueuedPerHost) {
+        this.httpClient = httpClient;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.maxConcurrentPerHost = maxConcurrentPerHost;
+        this.maxQueuedPerHost = maxQueuedPerHost;
+    }
+
+    /**
+     * POST a body as JSON
+     * @param timeout Limit on waiting for a slot and, separately, on waiting
+     *                for the response once sent
+     * @return the response, whatever its status; fails with an IOException if
+     *         no response was received
+     */
+    public CompletableFuture<HttpResponse<String>> postJsonAsync(String url, Object body, Duration timeout) {
+        return postJsonAsync(url, body, Map.of(), timeout);
+    }
+
+    /**
+     * POST a body as JSON with extra request headers, e.g. an Idempotency-Key
+     * @see #postJsonAsync(String, Object, Duration)
+     */
+    public CompletableFuture<HttpResponse<String>> postJsonAsync(String url, Object body, Map<String, String> headers,
+                                                                 Duration timeout) {
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        URI uri = URI.create(url);
+        HttpRequest.Builder request = request(uri, timeout)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(json));
+        headers.forEach(request::header);
+        return sendAsync(uri, request.build(), timeout);
+    }
+
+    /**
+     * POST a body as JSON and wait for the response
+     * @see #postJsonAsync(String, Object, Duration)
+     */
+    public HttpResponse<String> postJson(String url, Object body, Duration timeout) throws IOException {
+        return await(postJsonAsync(url, body, timeout), url);
+    }
+
+    /**
+     * GET a URL and wait for the response, whatever its status
+     */
+    public HttpResponse<String> get(String url, Duration timeout) throws IOException {
+        URI uri = URI.create(url);
+        return await(sendAsync(uri, request(uri, timeout).GET().build(), timeout), url);
+    }
+
+    /**
+     * The failure of a request future as an IOException, e.g. to rethrow after join()
+     */
+    public static IOException asIOException(Throwable error, String url) {
+        Throwable cause = unwrap(error);
+        if (cause instanceof IOException ioException) {
+            return ioException;
+        }
+        if (cause instanceof TimeoutException) {
+            return new HttpTimeoutException("Timed out waiting for a connection slot to " + url);
+        }
+        return new IOException("Request to " + url + " failed: " + cause.getMessage(), cause);
+    }
+
+    private static HttpRequest.Builder request(URI uri, Duration timeout) {
+        boolean https = "https".equalsIgnoreCase(uri.getScheme());
+        return HttpRequest.newBuilder(uri)
+                .version(https ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .timeout(timeout)
+                .header("Accept", "application/json");
+    }
+
+    private CompletableFuture<HttpResponse<String>> sendAsync(URI uri, HttpRequest request, Duration timeout) {
+        String host = uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+        HostLimiter limiter = limiters.computeIfAbsent(host, this::newLimiter);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        return limiter.acquire()
+                .orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .thenCompose(permit -> httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                        .whenComplete((response, error) -> limiter.release()))
+                .whenComplete((response, error) -> sample.stop(Timer.builder("analysis.client.requests")
+                        .description("Latency of calls to the analysis services")
+                        .tag("host", host)
+                        .tag("status", response != null ? String.valueOf(response.statusCode())
+                                : unwrap(error).getClass().getSimpleName())
+                        .publishPercentileHistogram()
+                        .register(meterRegistry)));
+    }
+
+    static HttpResponse<String> await(CompletableFuture<HttpResponse<String>> response, String url)
+            throws IOException {
+        try {
+            return response.get();
+        } catch (InterruptedException e) {
+            response.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for " + url);
+        } catch (ExecutionException e) {
+            throw asIOException(e, url);
+        }
+    }
+
+    static Throwable unwrap(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException)
+                && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    private HostLimiter newLimiter(String host) {
+        HostLimiter limiter = new HostLimiter(host, maxConcurrentPerHost, maxQueuedPerHost);
+        Gauge.builder("analysis.client.active", limiter, HostLimiter::getActive)
+                .description("Requests in flight to an analysis host")
+                .tag("host", host)
+                .register(meterRegistry);
+        Gauge.builder("analysis.client.queued", limiter, HostLimiter::getQueued)
+                .description("Requests waiting for a slot to an analysis host")
+                .tag("host", host)
+                .register(meterRegistry);
+        return limiter;
+    }
+}
@@ -0,0 +1,17 @@
+package com.preffy.videoflow.client;
+
+import java.time.Duration;
+
+/**
+ * A call was refused because the downstream's bulkhead already had as many
+ * calls in flight as it allows. Unlike an open circuit this says nothing about
+ * the service's health, only that this instance is busy with it.
+ */
+public class BulkheadFullException extends CallNotPermittedException {
+
+    private static final long serialVersionUID = 1L;
+
+    public BulkheadFullException(String message, Duration retryAfter) {
+        super(message, retryAfter);
+    }
+}
@@ -0,0 +1,25 @@
+package com.preffy.videoflow.client;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * A call to a downstream service was refused without being made, because its
+ * circuit is open or its bulkhead is full. Work that hits this should be put
+ * off for {@link #getRetryAfter()} rather than counted as a failed attempt.
+ */
+public class CallNotPermittedException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Duration retryAfter;
+
+    public CallNotPermittedException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,164 @@
+package com.preffy.videoflow.client;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Count-based circuit breaker. While CLOSED it records the outcome of the last
+ * {@code windowSize} calls; once at least {@code minimumCalls} are recorded and
+ * the share of failed or of slow calls reaches its threshold, it opens and
+ * refuses calls for {@code openDuration}. It then lets {@code halfOpenCalls}
+ * probe calls through (HALF_OPEN) and closes again if they stay under the
+ * thresholds, or reopens otherwise.
+ */
+public final class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * @param windowSize Calls kept in the sliding window
+     * @param minimumCalls Calls needed before the rates are evaluated
+     * @param failureRateThreshold Failed share of calls, in percent, that opens the circuit
+     * @param slowCallRateThreshold Slow share of calls, in percent, that opens the circuit
+     * @param slowCallDuration Calls taking at least this long count as slow
+     * @param openDuration Time to refuse calls before probing
+     * @param halfOpenCalls Probe calls let through while half-open
+     */
+    public record Settings(int windowSize, int minimumCalls, double failureRateThreshold,
+                           double slowCallRateThreshold, Duration slowCallDuration, Duration openDuration,
+                           int halfOpenCalls) {
+    }
+
+    private final Settings settings;
+    private final LongSupplier nanoClock;
+
+    // Ring buffer of outcomes in the current window
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private int recorded;
+    private int next;
+    private int failures;
+    private int slowCalls;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int probesIssued;
+
+    public CircuitBreaker(Settings settings) {
+        this(settings, System::nanoTime);
+    }
+
+    CircuitBreaker(Settings settings, LongSupplier nanoClock) {
+        this.settings = settings;
+        this.nanoClock = nanoClock;
+        this.failed = new boolean[settings.windowSize()];
+        this.slow = new boolean[settings.windowSize()];
+    }
+
+    /**
+     * Ask to make a call
+     * @return false if the circuit is open, or half-open with all probes taken
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN) {
+            if (nanoClock.getAsLong() - openedAt < settings.openDuration().toNanos()) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            probesIssued = 0;
+            reset();
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesIssued >= settings.halfOpenCalls()) {
+                return false;
+            }
+            probesIssued++;
+        }
+        return true;
+    }
+
+    /**
+     * Record the outcome of a permitted call
+     */
+    public synchronized void onResult(boolean success, Duration duration) {
+        if (state == State.OPEN) {
+            // A straggler from before the circuit opened
+            return;
+        }
+        boolean wasSlow = duration.compareTo(settings.slowCallDuration()) >= 0;
+        if (recorded == failed.length) {
+            failures -= failed[next] ? 1 : 0;
+            slowCalls -= slow[next] ? 1 : 0;
+        } else {
+            recorded++;
+        }
+        failed[next] = !success;
+        slow[next] = wasSlow;
+        failures += success ? 0 : 1;
+        slowCalls += wasSlow ? 1 : 0;
+        next = (next + 1) % failed.length;
+
+        int needed = state == State.HALF_OPEN ? settings.halfOpenCalls() : settings.minimumCalls();
+        if (recorded < needed) {
+            return;
+        }
+        if (getFailureRate() >= settings.failureRateThreshold() || getSlowCallRate() >= settings.slowCallRateThreshold()) {
+            state = State.OPEN;
+            openedAt = nanoClock.getAsLong();
+        } else if (state == State.HALF_OPEN) {
+            state = State.CLOSED;
+            reset();
+        }
+    }
+
+    /**
+     * Give back a permission that was not used for a call
+     */
+    public synchronized void releasePermission() {
+        if (state == State.HALF_OPEN && probesIssued > 0) {
+            probesIssued--;
+        }
+    }
+
+    public synchronized State getState() {
+        // Report an open circuit that is due for probing as half-open
+        if (state == State.OPEN && nanoClock.getAsLong() - openedAt >= settings.openDuration().toNanos()) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    /**
+     * Failed share of the calls in the window, in percent
+     */
+    public synchronized double getFailureRate() {
+        return recorded == 0 ? 0 : 100.0 * failures / recorded;
+    }
+
+    /**
+     * Slow share of the calls in the window, in percent
+     */
+    public synchronized double getSlowCallRate() {
+        return recorded == 0 ? 0 : 100.0 * slowCalls / recorded;
+    }
+
+    /**
+     * Time until an open circuit lets a probe through; zero otherwise
+     */
+    public synchronized Duration getRetryAfter() {
+        if (state != State.OPEN) {
+            return Duration.ZERO;
+        }
+        long remaining = settings.openDuration().toNanos() - (nanoClock.getAsLong() - openedAt);
+        return Duration.ofNanos(Math.max(0, remaining));
+    }
+
+    private void reset() {
+        recorded = 0;
+        next = 0;
+        failures = 0;
+        slowCalls = 0;
+    }
+}
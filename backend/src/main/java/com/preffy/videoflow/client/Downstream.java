@@ -0,0 +1,200 @@
+package com.preffy.videoflow.client;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A remote analysis service guarded by a circuit breaker and a bulkhead. Calls
+ * are refused with {@link CallNotPermittedException} while the circuit is open
+ * or when {@code maxConcurrentCalls} calls are already in flight, so an outage
+ * or a slowdown of the service costs neither threads nor timeouts here.
+ * Responses with a 5xx status, transport errors and timeouts count as failures.
+ * <p>
+ * Calls that fail transiently (429, 500, 502-504, transport errors and
+ * timeouts) are retried after a backoff per the {@link RetryPolicy}, as long as
+ * the {@link RetryBudget} allows; every attempt passes the circuit breaker and
+ * bulkhead again. Callers should send an idempotency key so that the service
+ * can recognize a retried submission.
+ */
+public class Downstream {
+
+    private static final Duration BULKHEAD_RETRY_AFTER = Duration.ofSeconds(5);
+    private static final Duration MIN_OPEN_RETRY_AFTER = Duration.ofSeconds(1);
+
+    private final String name;
+    private final CircuitBreaker circuitBreaker;
+    private final int maxConcurrentCalls;
+    private final RetryPolicy retryPolicy;
+    private final RetryBudget retryBudget;
+    private final AtomicInteger activeCalls = new AtomicInteger();
+    private final AtomicLong rejectedOpen = new AtomicLong();
+    private final AtomicLong rejectedFull = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong retriesOverBudget = new AtomicLong();
+
+    public Downstream(String name, CircuitBreaker circuitBreaker, int maxConcurrentCalls) {
+        this(name, circuitBreaker, maxConcurrentCalls, RetryPolicy.none(), RetryBudget.unlimited());
+    }
+
+    public Downstream(String name, CircuitBreaker circuitBreaker, int maxConcurrentCalls, RetryPolicy retryPolicy,
+                      RetryBudget retryBudget) {
+        this.name = name;
+        this.circuitBreaker = circuitBreaker;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.retryPolicy = retryPolicy;
+        this.retryBudget = retryBudget;
+    }
+
+    /**
+     * Make a call, retrying transient failures, unless the circuit or the
+     * bulkhead refuses it
+     * @param call Starts the request; invoked again for each retry
+     * @return the last attempt's response or failure
+     */
+    public CompletableFuture<HttpResponse<String>> callAsync(Supplier<CompletableFuture<HttpResponse<String>>> call) {
+        retryBudget.onCall();
+        CompletableFuture<HttpResponse<String>> result = new CompletableFuture<>();
+        attempt(call, 1, result);
+        return result;
+    }
+
+    private void attempt(Supplier<CompletableFuture<HttpResponse<String>>> call, int attempt,
+                         CompletableFuture<HttpResponse<String>> result) {
+        if (result.isDone()) {
+            // Cancelled by the caller while waiting to retry
+            return;
+        }
+        attemptOnce(call).whenComplete((response, error) -> {
+            Throwable cause = error != null ? AnalysisHttpClient.unwrap(error) : null;
+            if (attempt < retryPolicy.maxAttempts() && isTransient(response, cause)) {
+                if (retryBudget.tryWithdraw()) {
+                    retries.incrementAndGet();
+                    Duration delay = retryPolicy.delay(attempt, response != null ? retryAfter(response) : null);
+                    CompletableFuture.delayedExecutor(delay.toMillis(), TimeUnit.MILLISECONDS)
+                            .execute(() -> attempt(call, attempt + 1, result));
+                    return;
+                }
+                retriesOverBudget.incrementAndGet();
+            }
+            if (cause != null) {
+                result.completeExceptionally(cause);
+            } else {
+                result.complete(response);
+            }
+        });
+    }
+
+    private CompletableFuture<HttpResponse<String>> attemptOnce(Supplier<CompletableFuture<HttpResponse<String>>> call) {
+        if (activeCalls.incrementAndGet() > maxConcurrentCalls) {
+            activeCalls.decrementAndGet();
+            rejectedFull.incrementAndGet();
+            return CompletableFuture.failedFuture(new BulkheadFullException(
+                    "Bulkhead of " + name + " is full (" + maxConcurrentCalls + " calls in flight)", BULKHEAD_RETRY_AFTER));
+        }
+        if (!circuitBreaker.tryAcquirePermission()) {
+            activeCalls.decrementAndGet();
+            rejectedOpen.incrementAndGet();
+            Duration retryAfter = circuitBreaker.getRetryAfter();
+            return CompletableFuture.failedFuture(new CallNotPermittedException("Circuit of " + name + " is open",
+                    retryAfter.compareTo(MIN_OPEN_RETRY_AFTER) < 0 ? MIN_OPEN_RETRY_AFTER : retryAfter));
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<HttpResponse<String>> response;
+        try {
+            response = call.get();
+        } catch (RuntimeException e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        return response.whenComplete((result, error) -> {
+            activeCalls.decrementAndGet();
+            if (error != null && AnalysisHttpClient.unwrap(error) instanceof HostSaturatedException) {
+                // Refused locally before reaching the service; says nothing about its health
+                circuitBreaker.releasePermission();
+                return;
+            }
+            boolean success = error == null && result.statusCode() < 500;
+            circuitBreaker.onResult(success, Duration.ofNanos(System.nanoTime() - start));
+        });
+    }
+
+    /**
+     * Make a call and wait for the response
+     * @see #callAsync(Supplier)
+     */
+    public HttpResponse<String> call(String url, Supplier<CompletableFuture<HttpResponse<String>>> call)
+            throws IOException {
+        return AnalysisHttpClient.await(callAsync(call), url);
+    }
+
+    private static boolean isTransient(HttpResponse<String> response, Throwable error) {
+        if (error != null) {
+            // A refusal by the circuit breaker or bulkhead is left to the caller
+            return error instanceof IOException && !(error instanceof CallNotPermittedException);
+        }
+        return switch (response.statusCode()) {
+            case 429, 500, 502, 503, 504 -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * The delay asked for by a Retry-After header in seconds, if any
+     */
+    private static Duration retryAfter(HttpResponse<String> response) {
+        return response.headers().firstValue("Retry-After")
+                .filter(value -> value.matches("\\d{1,9}"))
+                .map(value -> Duration.ofSeconds(Long.parseLong(value)))
+                .orElse(null);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public int getActiveCalls() {
+        return activeCalls.get();
+    }
+
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    /**
+     * Calls refused because the circuit was open
+     */
+    public long getRejectedOpen() {
+        return rejectedOpen.get();
+    }
+
+    /**
+     * Calls refused because the bulkhead was full
+     */
+    public long getRejectedFull() {
+        return rejectedFull.get();
+    }
+
+    /**
+     * Retries made
+     */
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * Retries skipped because the retry budget was spent
+     */
+    public long getRetriesOverBudget() {
+        return retriesOverBudget.get();
+    }
+}
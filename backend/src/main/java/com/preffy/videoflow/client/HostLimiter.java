@@ -0,0 +1,71 @@
+package com.preffy.videoflow.client;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Caps the requests in flight to one host. Callers that find all permits taken
+ * wait in a bounded queue without holding a thread; a released permit is
+ * handed straight to the next waiter.
+ */
+final class HostLimiter {
+
+    private final String host;
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final Queue<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+    private int active;
+
+    HostLimiter(String host, int maxConcurrent, int maxQueued) {
+        this.host = host;
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+    }
+
+    /**
+     * Take a permit
+     * @return a future that completes once the caller holds a permit, or fails
+     *         with {@link HostSaturatedException} if the wait queue is full
+     */
+    synchronized CompletableFuture<Void> acquire() {
+        if (active < maxConcurrent) {
+            active++;
+            return CompletableFuture.completedFuture(null);
+        }
+        if (waiters.size() >= maxQueued) {
+            return CompletableFuture.failedFuture(new HostSaturatedException(host, maxConcurrent, maxQueued));
+        }
+        CompletableFuture<Void> waiter = new CompletableFuture<>();
+        waiters.add(waiter);
+        return waiter;
+    }
+
+    /**
+     * Return a permit, handing it to the next waiter that is still waiting
+     */
+    void release() {
+        while (true) {
+            CompletableFuture<Void> next;
+            synchronized (this) {
+                next = waiters.poll();
+                if (next == null) {
+                    active--;
+                    return;
+                }
+            }
+            // Completed outside the lock; a waiter that timed out or was cancelled passes the permit on
+            if (next.complete(null)) {
+                return;
+            }
+        }
+    }
+
+    synchronized int getActive() {
+        return active;
+    }
+
+    synchronized int getQueued() {
+        return waiters.size();
+    }
+}
@@ -0,0 +1,16 @@
+package com.preffy.videoflow.client;
+
+import java.io.IOException;
+
+/**
+ * A request was refused without being sent because the host already has as
+ * many requests in flight and waiting as it is allowed
+ */
+public class HostSaturatedException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public HostSaturatedException(String host, int maxConcurrent, int maxQueued) {
+        super("Too many requests to " + host + " (" + maxConcurrent + " in flight, " + maxQueued + " waiting)");
+    }
+}
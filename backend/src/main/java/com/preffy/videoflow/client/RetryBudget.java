@@ -0,0 +1,62 @@
+package com.preffy.videoflow.client;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Limits retries to a share of the calls made, so that when a service is
+ * failing most calls retries cannot multiply the load on it. Each call
+ * deposits {@code ratio} of a token, each retry withdraws a whole one; a
+ * trickle of {@code minPerSecond} tokens keeps retries possible at low traffic.
+ * The balance is capped at {@code maxTokens}.
+ */
+public final class RetryBudget {
+
+    private final double ratio;
+    private final double minPerSecond;
+    private final double maxTokens;
+    private final LongSupplier nanoClock;
+    private double tokens;
+    private long refilledAt;
+
+    public RetryBudget(double ratio, double minPerSecond, double maxTokens) {
+        this(ratio, minPerSecond, maxTokens, System::nanoTime);
+    }
+
+    RetryBudget(double ratio, double minPerSecond, double maxTokens, LongSupplier nanoClock) {
+        this.ratio = ratio;
+        this.minPerSecond = minPerSecond;
+        this.maxTokens = maxTokens;
+        this.nanoClock = nanoClock;
+        this.tokens = maxTokens;
+        this.refilledAt = nanoClock.getAsLong();
+    }
+
+    /**
+     * No limit on retries
+     */
+    public static RetryBudget unlimited() {
+        return new RetryBudget(0, 0, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Record a call (not a retry)
+     */
+    public synchronized void onCall() {
+        tokens = Math.min(maxTokens, tokens + ratio);
+    }
+
+    /**
+     * Take a token for a retry
+     * @return false if the budget is spent
+     */
+    public synchronized boolean tryWithdraw() {
+        long now = nanoClock.getAsLong();
+        tokens = Math.min(maxTokens, tokens + minPerSecond * (now - refilledAt) / 1e9);
+        refilledAt = now;
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+}
@@ -0,0 +1,33 @@
+package com.preffy.videoflow.client;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How often and how soon to retry a failed call: capped exponential backoff
+ * with jitter, so retries of calls that failed together spread out
+ * @param maxAttempts Attempts in total, including the first; 1 disables retries
+ * @param baseDelay Delay ceiling before the first retry, doubled for each further one
+ * @param maxDelay Cap on the delay ceiling, and on a delay asked for by the service
+ */
+public record RetryPolicy(int maxAttempts, Duration baseDelay, Duration maxDelay) {
+
+    public static RetryPolicy none() {
+        return new RetryPolicy(1, Duration.ZERO, Duration.ZERO);
+    }
+
+    /**
+     * Delay before retrying after {@code attempt} failed attempts: the delay
+     * the service asked for, if any, up to maxDelay; otherwise a random delay
+     * between half and all of baseDelay * 2^(attempt - 1), capped at maxDelay
+     * @param requested Delay from the service's Retry-After header, or null
+     */
+    public Duration delay(int attempt, Duration requested) {
+        if (requested != null) {
+            return requested.compareTo(maxDelay) > 0 ? maxDelay : requested;
+        }
+        long ceiling = baseDelay.toMillis() << Math.min(Math.max(attempt - 1, 0), 20);
+        long millis = Math.min(maxDelay.toMillis(), ceiling);
+        return Duration.ofMillis((long) (millis * (0.5 + ThreadLocalRandom.current().nextDouble() * 0.5)));
+    }
+}
@@ -0,0 +1,82 @@
+package com.preffy.videoflow.client;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent calls for the same key: the first caller runs the work
+ * and callers arriving while it is in flight wait for and share its outcome,
+ * result or exception, instead of running it again. Once the work finishes the
+ * key is free, so a later call runs it anew.
+ */
+public final class SingleFlight<K, V> {
+
+    /**
+     * Work that may fail with an IOException
+     */
+    @FunctionalInterface
+    public interface Work<V> {
+        V run() throws IOException;
+    }
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong joined = new AtomicLong();
+
+    /**
+     * Run the work for a key, or join the run already in flight for it
+     */
+    public V execute(K key, Work<V> work) throws IOException {
+        CompletableFuture<V> own = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, own);
+        if (running != null) {
+            joined.incrementAndGet();
+            return await(running, key);
+        }
+        try {
+            V result = work.run();
+            own.complete(result);
+            return result;
+        } catch (IOException | RuntimeException | Error e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    private V await(CompletableFuture<V> running, K key) throws IOException {
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the run in flight for " + key);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    /**
+     * Whether work for a key is in flight
+     */
+    public boolean isInFlight(K key) {
+        return inFlight.containsKey(key);
+    }
+
+    /**
+     * Calls that joined a run in flight instead of running the work
+     */
+    public long getJoined() {
+        return joined.get();
+    }
+}
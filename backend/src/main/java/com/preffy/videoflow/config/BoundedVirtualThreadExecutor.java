@@ -0,0 +1,109 @@
+package com.preffy.videoflow.config;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs each task on a new virtual thread, with at most {@code maxConcurrency}
+ * running at once and at most {@code queueCapacity} waiting for a permit, so
+ * virtual-thread mode keeps the same limits on the remote services as a
+ * bounded platform pool. Waiting tasks park their virtual thread, which costs
+ * no carrier thread.
+ */
+class BoundedVirtualThreadExecutor extends AbstractExecutorService {
+
+    interface RejectionHandler {
+        void rejected(Runnable task, BoundedVirtualThreadExecutor executor);
+    }
+
+    private final ExecutorService delegate;
+    private final int maxConcurrency;
+    private final int queueCapacity;
+    private final Semaphore permits;
+    private final AtomicInteger submitted = new AtomicInteger();
+    private final RejectionHandler rejectionHandler;
+
+    BoundedVirtualThreadExecutor(String name, int maxConcurrency, int queueCapacity, RejectionHandler rejectionHandler) {
+        this.delegate = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 1).factory());
+        this.maxConcurrency = maxConcurrency;
+        this.queueCapacity = queueCapacity;
+        this.permits = new Semaphore(maxConcurrency);
+        this.rejectionHandler = rejectionHandler;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (isShutdown()) {
+            throw new RejectedExecutionException("Executor is shut down");
+        }
+        if (submitted.incrementAndGet() > maxConcurrency + queueCapacity) {
+            submitted.decrementAndGet();
+            rejectionHandler.rejected(task, this);
+            return;
+        }
+        try {
+            delegate.execute(() -> {
+                try {
+                    permits.acquire();
+                    try {
+                        task.run();
+                    } finally {
+                        permits.release();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    submitted.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            submitted.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Tasks currently running
+     */
+    int getActiveCount() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    /**
+     * Tasks waiting for a permit
+     */
+    int getQueueSize() {
+        return Math.max(0, submitted.get() - getActiveCount());
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+}
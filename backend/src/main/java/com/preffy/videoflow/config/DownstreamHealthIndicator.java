@@ -0,0 +1,38 @@
+package com.preffy.videoflow.config;
+
+import com.preffy.videoflow.client.CircuitBreaker;
+import com.preffy.videoflow.client.Downstream;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+
+/**
+ * Reports the circuit of a downstream service. An open circuit shows as
+ * DEGRADED, which the health endpoint lists but does not fold into the overall
+ * status, so an outage of an analysis service never takes this instance out
+ * of rotation.
+ */
+public class DownstreamHealthIndicator implements HealthIndicator {
+
+    static final Status DEGRADED = new Status("DEGRADED", "Calls are refused until the service recovers");
+
+    private final Downstream downstream;
+
+    public DownstreamHealthIndicator(Downstream downstream) {
+        this.downstream = downstream;
+    }
+
+    @Override
+    public Health health() {
+        CircuitBreaker circuitBreaker = downstream.getCircuitBreaker();
+        CircuitBreaker.State state = circuitBreaker.getState();
+        return Health.status(state == CircuitBreaker.State.CLOSED ? Status.UP : DEGRADED)
+                .withDetail("circuit", state.name())
+                .withDetail("failureRate", circuitBreaker.getFailureRate())
+                .withDetail("slowCallRate", circuitBreaker.getSlowCallRate())
+                .withDetail("retryAfterSeconds", circuitBreaker.getRetryAfter().toSeconds())
+                .withDetail("activeCalls", downstream.getActiveCalls())
+                .withDetail("maxConcurrentCalls", downstream.getMaxConcurrentCalls())
+                .build();
+    }
+}
@@ -0,0 +1,139 @@
+package com.preffy.videoflow.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One bounded executor per workload, so slow calls to one remote service
+ * cannot starve the others or the common ForkJoinPool. Each executor is set
+ * up from {@code app.executors.<name>.*}:
+ * <ul>
+ *   <li>{@code threads}: tasks running at once</li>
+ *   <li>{@code queue-capacity}: tasks waiting beyond that</li>
+ *   <li>{@code rejection-policy}: {@code abort} (throw RejectedExecutionException)
+ *       or {@code caller-runs} (run on the submitting thread, slowing it down)</li>
+ *   <li>{@code virtual-threads}: run tasks on virtual threads, with the same
+ *       limits; defaults to {@code app.executors.virtual-threads}</li>
+ * </ul>
+ * Active, queued and rejected task counts are exported as executor.* meters
+ * tagged with the executor name.
+ */
+@Configuration
+public class ExecutorConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExecutorConfig.class);
+
+    /**
+     * Post-upload processing: HLS packaging and project creation with upload
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService uploadProcessingExecutor(Environment environment, MeterRegistry meterRegistry) {
+        return executor("upload-processing", 2, 100, "abort", environment, meterRegistry);
+    }
+
+    /**
+     * Calls to the script analysis service
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService scriptAnalysisExecutor(Environment environment, MeterRegistry meterRegistry) {
+        return executor("script-analysis", 4, 16, "caller-runs", environment, meterRegistry);
+    }
+
+    /**
+     * Queued analysis jobs; the worker only claims as many as there are threads
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService analysisJobExecutor(Environment environment, MeterRegistry meterRegistry) {
+        int threads = environment.getProperty("app.jobs.worker-threads", Integer.class, 4);
+        return executor("analysis-jobs", threads, threads, "abort", environment, meterRegistry);
+    }
+
+    private static ExecutorService executor(String name, int defaultThreads, int defaultQueueCapacity,
+                                            String defaultRejectionPolicy, Environment environment,
+                                            MeterRegistry meterRegistry) {
+        String prefix = "app.executors." + name + ".";
+        int threads = Math.max(1, environment.getProperty(prefix + "threads", Integer.class, defaultThreads));
+        int queueCapacity = Math.max(0, environment.getProperty(prefix + "queue-capacity", Integer.class,
+                defaultQueueCapacity));
+        String rejectionPolicy = environment.getProperty(prefix + "rejection-policy", defaultRejectionPolicy);
+        boolean virtualThreads = environment.getProperty(prefix + "virtual-threads", Boolean.class,
+                environment.getProperty("app.executors.virtual-threads", Boolean.class, false));
+
+        boolean callerRuns = switch (rejectionPolicy) {
+            case "abort" -> false;
+            case "caller-runs" -> true;
+            default -> throw new IllegalArgumentException("Unknown rejection policy for executor " + name + ": "
+                    + rejectionPolicy);
+        };
+        Counter rejected = Counter.builder("executor.rejected")
+                .description("Tasks rejected because the executor and its queue were full")
+                .baseUnit(BaseUnits.TASKS)
+                .tag("name", name)
+                .register(meterRegistry);
+
+        logger.info("Executor {}: {} {} threads, queue {}, {} on overflow", name, threads,
+                virtualThreads ? "virtual" : "platform", queueCapacity, rejectionPolicy);
+
+        if (virtualThreads) {
+            BoundedVirtualThreadExecutor executor = new BoundedVirtualThreadExecutor(name, threads, queueCapacity,
+                    (task, pool) -> {
+                        rejected.increment();
+                        if (!callerRuns) {
+                            throw new RejectedExecutionException("Executor " + name + " is saturated");
+                        }
+                        if (!pool.isShutdown()) {
+                            task.run();
+                        }
+                    });
+            Gauge.builder("executor.active", executor, BoundedVirtualThreadExecutor::getActiveCount)
+                    .description("The approximate number of threads that are actively executing tasks")
+                    .baseUnit(BaseUnits.THREADS)
+                    .tag("name", name)
+                    .register(meterRegistry);
+            Gauge.builder("executor.queued", executor, BoundedVirtualThreadExecutor::getQueueSize)
+                    .description("The approximate number of tasks that are queued for execution")
+                    .baseUnit(BaseUnits.TASKS)
+                    .tag("name", name)
+                    .register(meterRegistry);
+            return executor;
+        }
+
+        RejectedExecutionHandler policy = callerRuns
+                ? new ThreadPoolExecutor.CallerRunsPolicy()
+                : (task, pool) -> {
+                    throw new RejectedExecutionException("Executor " + name + " is saturated");
+                };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                queueCapacity > 0 ? new LinkedBlockingQueue<>(queueCapacity) : new SynchronousQueue<>(),
+                threadFactory(name),
+                (task, pool) -> {
+                    rejected.increment();
+                    policy.rejectedExecution(task, pool);
+                });
+        executor.allowCoreThreadTimeOut(true);
+        new ExecutorServiceMetrics(executor, name, Tags.empty()).bindTo(meterRegistry);
+        return executor;
+    }
+
+    private static ThreadFactory threadFactory(String name) {
+        return Thread.ofPlatform().name(name + "-", 1).daemon(true).factory();
+    }
+}
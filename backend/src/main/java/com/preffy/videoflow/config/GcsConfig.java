@@ -12,6 +12,22 @@ public class GcsConfig {
     private String projectId = "preffy-video-platform";
     private String credentialsPath;
     
+    // Streaming uploads: resumable chunk size (multiple of 256 KiB) and copy buffer size
+    private int uploadChunkSize = 2 * 1024 * 1024;
+    private int uploadBufferSize = 256 * 1024;
+    
+    // HTTP transport
+    private int transportPoolSize = 32;
+    private int connectTimeoutMs = 10000;
+    private int readTimeoutMs = 30000;
+    
+    // Retry settings for idempotent GCS operations
+    private int maxAttempts = 4;
+    private long initialRetryDelayMs = 250;
+    private long maxRetryDelayMs = 8000;
+    private double retryDelayMultiplier = 2.0;
+    private long totalTimeoutMs = 120000;
+    
     public String getBucket() {
         return bucket;
     }
@@ -43,4 +59,84 @@ public class GcsConfig {
     public void setCredentialsPath(String credentialsPath) {
         this.credentialsPath = credentialsPath;
     }
+    
+    public int getTransportPoolSize() {
+        return transportPoolSize;
+    }
+    
+    public void setTransportPoolSize(int transportPoolSize) {
+        this.transportPoolSize = transportPoolSize;
+    }
+    
+    public int getConnectTimeoutMs() {
+        return connectTimeoutMs;
+    }
+    
+    public void setConnectTimeoutMs(int connectTimeoutMs) {
+        this.connectTimeoutMs = connectTimeoutMs;
+    }
+    
+    public int getReadTimeoutMs() {
+        return readTimeoutMs;
+    }
+    
+    public void setReadTimeoutMs(int readTimeoutMs) {
+        this.readTimeoutMs = readTimeoutMs;
+    }
+    
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+    
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+    
+    public long getInitialRetryDelayMs() {
+        return initialRetryDelayMs;
+    }
+    
+    public void setInitialRetryDelayMs(long initialRetryDelayMs) {
+        this.initialRetryDelayMs = initialRetryDelayMs;
+    }
+    
+    public long getMaxRetryDelayMs() {
+        return maxRetryDelayMs;
+    }
+    
+    public void setMaxRetryDelayMs(long maxRetryDelayMs) {
+        this.maxRetryDelayMs = maxRetryDelayMs;
+    }
+    
+    public double getRetryDelayMultiplier() {
+        return retryDelayMultiplier;
+    }
+    
+    public void setRetryDelayMultiplier(double retryDelayMultiplier) {
+        this.retryDelayMultiplier = retryDelayMultiplier;
+    }
+    
+    public long getTotalTimeoutMs() {
+        return totalTimeoutMs;
+    }
+    
+    public void setTotalTimeoutMs(long totalTimeoutMs) {
+        this.totalTimeoutMs = totalTimeoutMs;
+    }
+    
+    public int getUploadChunkSize() {
+        return uploadChunkSize;
+    }
+    
+    public void setUploadChunkSize(int uploadChunkSize) {
+        this.uploadChunkSize = uploadChunkSize;
+    }
+    
+    public int getUploadBufferSize() {
+        return uploadBufferSize;
+    }
+    
+    public void setUploadBufferSize(int uploadBufferSize) {
+        this.uploadBufferSize = uploadBufferSize;
+    }
 }
@@ -0,0 +1,68 @@
+package com.preffy.videoflow.config;
+
+import com.google.api.client.http.apache.v2.ApacheHttpTransport;
+import com.google.api.gax.retrying.RetrySettings;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.cloud.http.HttpTransportOptions;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.threeten.bp.Duration;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Builds the single, long-lived GCS client used by the application. Creating a
+ * Storage instance resolves credentials and sets up an HTTP transport, so it is
+ * done once here instead of per operation.
+ */
+@Configuration
+public class GcsStorageConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(GcsStorageConfig.class);
+
+    @Bean
+    @ConditionalOnProperty(name = "app.storage.type", havingValue = "gcs")
+    public Storage gcsStorage(GcsConfig gcsConfig) throws IOException {
+        // Pooled transport so concurrent uploads and streams reuse connections
+        ApacheHttpTransport transport = new ApacheHttpTransport(ApacheHttpTransport.newDefaultHttpClientBuilder()
+                .setMaxConnTotal(gcsConfig.getTransportPoolSize())
+                .setMaxConnPerRoute(gcsConfig.getTransportPoolSize())
+                .build());
+
+        HttpTransportOptions transportOptions = HttpTransportOptions.newBuilder()
+                .setHttpTransportFactory(() -> transport)
+                .setConnectTimeout(gcsConfig.getConnectTimeoutMs())
+                .setReadTimeout(gcsConfig.getReadTimeoutMs())
+                .build();
+
+        RetrySettings retrySettings = RetrySettings.newBuilder()
+                .setMaxAttempts(gcsConfig.getMaxAttempts())
+                .setInitialRetryDelay(Duration.ofMillis(gcsConfig.getInitialRetryDelayMs()))
+                .setMaxRetryDelay(Duration.ofMillis(gcsConfig.getMaxRetryDelayMs()))
+                .setRetryDelayMultiplier(gcsConfig.getRetryDelayMultiplier())
+                .setTotalTimeout(Duration.ofMillis(gcsConfig.getTotalTimeoutMs()))
+                .build();
+
+        StorageOptions.Builder builder = StorageOptions.newBuilder()
+                .setProjectId(gcsConfig.getProjectId())
+                .setTransportOptions(transportOptions)
+                .setRetrySettings(retrySettings);
+
+        if (gcsConfig.getCredentialsPath() != null && !gcsConfig.getCredentialsPath().isBlank()) {
+            try (InputStream credentials = new FileInputStream(gcsConfig.getCredentialsPath())) {
+                builder.setCredentials(GoogleCredentials.fromStream(credentials));
+            }
+        }
+
+        logger.info("Created GCS client for bucket {} (pool size {}, max attempts {})",
+                gcsConfig.getBucket(), gcsConfig.getTransportPoolSize(), gcsConfig.getMaxAttempts());
+        return builder.build().getService();
+    }
+}
@@ -0,0 +1,119 @@
+package com.preffy.videoflow.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.preffy.videoflow.client.AnalysisHttpClient;
+import com.preffy.videoflow.client.CircuitBreaker;
+import com.preffy.videoflow.client.Downstream;
+import com.preffy.videoflow.client.RetryBudget;
+import com.preffy.videoflow.client.RetryPolicy;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+/**
+ * The HTTP client shared by the calls to the remote analysis services, and the
+ * circuit breaker, bulkhead and retry policy of each service
+ */
+@Configuration
+public class HttpClientConfig {
+
+    @Bean
+    public AnalysisHttpClient analysisHttpClient(ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                                                 @Value("${app.http.connect-timeout-ms:5000}") long connectTimeoutMs,
+                                                 @Value("${app.http.max-concurrent-per-host:16}") int maxConcurrentPerHost,
+                                                 @Value("${app.http.max-queued-per-host:64}") int maxQueuedPerHost) {
+        HttpClient httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        return new AnalysisHttpClient(httpClient, objectMapper, meterRegistry, maxConcurrentPerHost, maxQueuedPerHost);
+    }
+
+    @Bean
+    public Downstream bodyLanguageDownstream(Environment environment, MeterRegistry meterRegistry) {
+        return downstream("body-language", Duration.ofSeconds(400), environment, meterRegistry);
+    }
+
+    @Bean
+    public Downstream scriptAnalysisDownstream(Environment environment, MeterRegistry meterRegistry) {
+        return downstream("script-analysis", Duration.ofSeconds(200), environment, meterRegistry);
+    }
+
+    @Bean
+    public HealthIndicator bodyLanguageHealthIndicator(@Qualifier("bodyLanguageDownstream") Downstream downstream) {
+        return new DownstreamHealthIndicator(downstream);
+    }
+
+    @Bean
+    public HealthIndicator scriptAnalysisHealthIndicator(@Qualifier("scriptAnalysisDownstream") Downstream downstream) {
+        return new DownstreamHealthIndicator(downstream);
+    }
+
+    /**
+     * A downstream set up from {@code app.resilience.<name>.*}
+     */
+    private static Downstream downstream(String name, Duration defaultSlowCallDuration, Environment environment,
+                                         MeterRegistry meterRegistry) {
+        String prefix = "app.resilience." + name + ".";
+        CircuitBreaker.Settings settings = new CircuitBreaker.Settings(
+                environment.getProperty(prefix + "window-size", Integer.class, 20),
+                environment.getProperty(prefix + "minimum-calls", Integer.class, 5),
+                environment.getProperty(prefix + "failure-rate-threshold", Double.class, 50.0),
+                environment.getProperty(prefix + "slow-call-rate-threshold", Double.class, 80.0),
+                Duration.ofSeconds(environment.getProperty(prefix + "slow-call-duration-seconds", Long.class,
+                        defaultSlowCallDuration.toSeconds())),
+                Duration.ofSeconds(environment.getProperty(prefix + "open-seconds", Long.class, 60L)),
+                environment.getProperty(prefix + "half-open-calls", Integer.class, 2));
+        RetryPolicy retryPolicy = new RetryPolicy(
+                environment.getProperty(prefix + "max-attempts", Integer.class, 3),
+                Duration.ofMillis(environment.getProperty(prefix + "retry-base-delay-ms", Long.class, 1000L)),
+                Duration.ofMillis(environment.getProperty(prefix + "retry-max-delay-ms", Long.class, 30000L)));
+        RetryBudget retryBudget = new RetryBudget(
+                environment.getProperty(prefix + "retry-budget-ratio", Double.class, 0.2),
+                environment.getProperty(prefix + "retry-budget-min-per-second", Double.class, 0.1),
+                environment.getProperty(prefix + "retry-budget-max-tokens", Double.class, 10.0));
+        Downstream downstream = new Downstream(name, new CircuitBreaker(settings),
+                environment.getProperty(prefix + "max-concurrent-calls", Integer.class, 8), retryPolicy, retryBudget);
+
+        Gauge.builder("analysis.circuit.state", downstream, d -> d.getCircuitBreaker().getState().ordinal())
+                .description("Circuit state of an analysis service: 0 closed, 1 open, 2 half-open")
+                .tag("name", name)
+                .register(meterRegistry);
+        Gauge.builder("analysis.circuit.failure.rate", downstream, d -> d.getCircuitBreaker().getFailureRate())
+                .description("Failed share of recent calls to an analysis service, in percent")
+                .tag("name", name)
+                .register(meterRegistry);
+        Gauge.builder("analysis.bulkhead.active", downstream, Downstream::getActiveCalls)
+                .description("Calls in flight to an analysis service")
+                .tag("name", name)
+                .register(meterRegistry);
+        FunctionCounter.builder("analysis.calls.rejected", downstream, Downstream::getRejectedOpen)
+                .description("Calls to an analysis service refused without being made")
+                .tag("name", name)
+                .tag("reason", "circuit-open")
+                .register(meterRegistry);
+        FunctionCounter.builder("analysis.calls.rejected", downstream, Downstream::getRejectedFull)
+                .description("Calls to an analysis service refused without being made")
+                .tag("name", name)
+                .tag("reason", "bulkhead-full")
+                .register(meterRegistry);
+        FunctionCounter.builder("analysis.calls.retried", downstream, Downstream::getRetries)
+                .description("Retries of failed calls to an analysis service")
+                .tag("name", name)
+                .register(meterRegistry);
+        FunctionCounter.builder("analysis.calls.retry.skipped", downstream, Downstream::getRetriesOverBudget)
+                .description("Retries of calls to an analysis service skipped because the retry budget was spent")
+                .tag("name", name)
+                .register(meterRegistry);
+        return downstream;
+    }
+}
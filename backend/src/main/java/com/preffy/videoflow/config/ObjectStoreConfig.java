@@ -0,0 +1,58 @@
+package com.preffy.videoflow.config;
+
+import com.google.cloud.storage.Storage;
+import com.preffy.videoflow.storage.CachingObjectStore;
+import com.preffy.videoflow.storage.GcsObjectStore;
+import com.preffy.videoflow.storage.GcsStorageMetrics;
+import com.preffy.videoflow.storage.InMemoryObjectStore;
+import com.preffy.videoflow.storage.LocalObjectStore;
+import com.preffy.videoflow.storage.ObjectStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+/**
+ * Selects the ObjectStore implementation from app.storage.type:
+ * local (default), gcs, or memory (tests and local emulation).
+ */
+@Configuration
+public class ObjectStoreConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "app.storage.type", havingValue = "local", matchIfMissing = true)
+    public ObjectStore localObjectStore(
+            @Value("${app.storage.local.path:${user.home}/preffy-uploads}") String localStoragePath) throws IOException {
+        return new LocalObjectStore(Paths.get(localStoragePath));
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.storage.type", havingValue = "gcs")
+    public ObjectStore gcsObjectStore(Storage gcsStorage, GcsConfig gcsConfig, GcsStorageMetrics gcsStorageMetrics,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${app.storage.cache.enabled:false}") boolean cacheEnabled,
+                                      @Value("${app.storage.cache.path:${java.io.tmpdir}/preffy-object-cache}") String cachePath,
+                                      @Value("${app.storage.cache.max-bytes:1073741824}") long cacheMaxBytes,
+                                      @Value("${app.storage.cache.chunk-size:4194304}") int cacheChunkSize,
+                                      @Value("${app.storage.cache.metadata-ttl-seconds:60}") long metadataTtlSeconds) throws IOException {
+        ObjectStore gcsObjectStore = new GcsObjectStore(gcsStorage, gcsConfig.getBucket(), gcsStorageMetrics,
+                gcsConfig.getUploadChunkSize(), gcsConfig.getUploadBufferSize());
+        if (!cacheEnabled) {
+            return gcsObjectStore;
+        }
+        // Read-through disk cache so hot objects are not re-fetched from the bucket
+        return new CachingObjectStore(gcsObjectStore, Paths.get(cachePath), cacheMaxBytes, cacheChunkSize,
+                Duration.ofSeconds(metadataTtlSeconds), meterRegistry);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.storage.type", havingValue = "memory")
+    public ObjectStore inMemoryObjectStore() {
+        return new InMemoryObjectStore();
+    }
+}
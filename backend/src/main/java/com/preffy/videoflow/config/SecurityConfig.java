@@ -69,6 +69,7 @@ public class SecurityConfig {
                 .requestMatchers("/api/projects/**").permitAll()  // Allow project endpoints
                 .requestMatchers("/api/users/**").permitAll()  // Allow user endpoints for testing
                 .requestMatchers("/api/analysis/**").permitAll()  // Allow analysis endpoints
+                .requestMatchers("/ws/**").permitAll()  // STOMP sessions authenticate on CONNECT
                 .requestMatchers("/h2-console/**").permitAll()
                 .requestMatchers("/swagger-ui/**", "/swagger-ui.html").permitAll()
                 .requestMatchers("/v3/api-docs/**", "/v3/api-docs.yaml").permitAll()
@@ -0,0 +1,29 @@
+package com.preffy.videoflow.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.preffy.videoflow.service.UploadAdmissionService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Registers the upload admission filter just after the Spring Security chain
+ */
+@Configuration
+public class UploadAdmissionConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "app.upload.admission.enabled", havingValue = "true", matchIfMissing = true)
+    public FilterRegistrationBean<UploadAdmissionFilter> uploadAdmissionFilter(
+            UploadAdmissionService uploadAdmissionService,
+            ObjectMapper objectMapper,
+            @Value("${app.upload.admission.retry-after-seconds:5}") long retryAfterSeconds) {
+        FilterRegistrationBean<UploadAdmissionFilter> registration = new FilterRegistrationBean<>(
+                new UploadAdmissionFilter(uploadAdmissionService, objectMapper, retryAfterSeconds));
+        registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER + 1);
+        return registration;
+    }
+}
@@ -0,0 +1,149 @@
+package com.preffy.videoflow.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.preffy.videoflow.service.UploadAdmissionService;
+import com.preffy.videoflow.service.UploadAdmissionService.Permit;
+import com.preffy.videoflow.service.UploadAdmissionService.UploadRejectedException;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.OrRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Runs upload endpoints through {@link UploadAdmissionService} before the body is
+ * read, so a rejected upload costs neither a multipart temp file nor a handler
+ * thread for the duration of the transfer. Registered after Spring Security so
+ * the authenticated user is known. Anonymous clients are keyed by the remote
+ * address, which only honours X-Forwarded-For set by a trusted proxy
+ * (server.forward-headers-strategy=native).
+ */
+public class UploadAdmissionFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadAdmissionFilter.class);
+
+    // Finalizing a resumable upload has no body, but hashes and stores the whole file
+    private static final RequestMatcher COMPLETE_ENDPOINT =
+            new AntPathRequestMatcher("/api/videos/uploads/*/complete", "POST");
+
+    private static final RequestMatcher UPLOAD_ENDPOINTS = new OrRequestMatcher(
+            new AntPathRequestMatcher("/api/videos/upload", "POST"),
+            new AntPathRequestMatcher("/api/projects/with-video", "POST"),
+            new AntPathRequestMatcher("/api/videos/uploads/*", "PUT"),
+            COMPLETE_ENDPOINT);
+
+    private final UploadAdmissionService uploadAdmissionService;
+    private final ObjectMapper objectMapper;
+    private final long retryAfterSeconds;
+
+    public UploadAdmissionFilter(UploadAdmissionService uploadAdmissionService, ObjectMapper objectMapper,
+                                 long retryAfterSeconds) {
+        this.uploadAdmissionService = uploadAdmissionService;
+        this.objectMapper = objectMapper;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !UPLOAD_ENDPOINTS.matches(request);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        Permit permit;
+        try {
+            long declaredBytes = COMPLETE_ENDPOINT.matches(request) ? 0 : request.getContentLengthLong();
+            permit = uploadAdmissionService.admit(clientKey(request), declaredBytes);
+        } catch (UploadRejectedException e) {
+            logger.warn("Rejected upload {} {}: {}", request.getMethod(), request.getRequestURI(), e.getMessage());
+            reject(response, e);
+            return;
+        }
+
+        boolean async = false;
+        try {
+            filterChain.doFilter(request, response);
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new PermitReleasingListener(permit));
+                async = true;
+            }
+        } finally {
+            if (!async) {
+                permit.close();
+            }
+        }
+    }
+
+    private String clientKey(HttpServletRequest request) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken)) {
+            return "user:" + authentication.getName();
+        }
+        // Rewritten from X-Forwarded-For by Tomcat's RemoteIpValve for trusted proxies only;
+        // the header itself can be set by any client
+        return "ip:" + request.getRemoteAddr();
+    }
+
+    private void reject(HttpServletResponse response, UploadRejectedException e) throws IOException {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("errorCode", e.getStatus().name());
+        body.put("message", e.getMessage());
+        body.put("timestamp", LocalDateTime.now().toString());
+        body.put("correlationId", MDC.get("correlationId"));
+
+        response.setStatus(e.getStatus().value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        // The body is not read, so don't leave the connection waiting for it
+        response.setHeader(HttpHeaders.CONNECTION, "close");
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), body);
+    }
+
+    private static class PermitReleasingListener implements AsyncListener {
+
+        private final Permit permit;
+
+        PermitReleasingListener(Permit permit) {
+            this.permit = permit;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            permit.close();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            permit.close();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            permit.close();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.preffy.videoflow.config;
+
+import com.preffy.videoflow.security.JwtChannelInterceptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.task.ThreadPoolTaskSchedulerBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.simp.config.ChannelRegistration;
+import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
+import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
+import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+
+/**
+ * STOMP over WebSocket on {@code /ws}, for pushing project progress to the
+ * users watching it (see {@code AnalysisProgressPublisher}). Clients
+ * authenticate on CONNECT and can only subscribe to their own
+ * {@code /user/queue/...} destinations.
+ * <p>
+ * Open connections are parked in the servlet container's NIO selector, so
+ * idle clients cost no threads; frames in and out are handled by small pools,
+ * heartbeats drop connections that went away silently, and a client too slow
+ * to take its messages is disconnected once the send time or buffer limit is
+ * hit instead of holding an outbound thread.
+ * <p>
+ * The broker is the in-memory simple broker, so a user only receives events
+ * published on the instance holding their connection.
+ */
+@Configuration
+@EnableWebSocketMessageBroker
+public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+
+    // Client frames are CONNECT/SUBSCRIBE/heartbeats only
+    private static final int MESSAGE_SIZE_LIMIT = 16 * 1024;
+
+    @Value("${app.websocket.inbound-threads:2}")
+    private int inboundThreads;
+
+    @Value("${app.websocket.outbound-threads:4}")
+    private int outboundThreads;
+
+    @Value("${app.websocket.heartbeat-ms:25000}")
+    private long heartbeatMs;
+
+    @Value("${app.websocket.send-time-limit-ms:15000}")
+    private int sendTimeLimitMs;
+
+    @Value("${app.websocket.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+
+    @Autowired
+    private JwtChannelInterceptor jwtChannelInterceptor;
+
+    @Autowired
+    @Lazy
+    @Qualifier("messageBrokerTaskScheduler")
+    private TaskScheduler messageBrokerTaskScheduler;
+
+    /**
+     * Scheduler for @Scheduled methods. The broker registers its own
+     * TaskScheduler, which would otherwise stop Spring Boot from creating this
+     * one and end up running the scheduled jobs.
+     */
+    @Bean
+    public ThreadPoolTaskScheduler taskScheduler(ThreadPoolTaskSchedulerBuilder builder) {
+        return builder.build();
+    }
+
+    @Override
+    public void registerStompEndpoints(StompEndpointRegistry registry) {
+        registry.addEndpoint("/ws").setAllowedOriginPatterns("*");
+    }
+
+    @Override
+    public void configureMessageBroker(MessageBrokerRegistry registry) {
+        registry.enableSimpleBroker("/queue")
+                .setHeartbeatValue(new long[] {heartbeatMs, heartbeatMs})
+                .setTaskScheduler(messageBrokerTaskScheduler);
+        registry.setUserDestinationPrefix("/user");
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(jwtChannelInterceptor);
+        registration.taskExecutor().corePoolSize(inboundThreads).maxPoolSize(inboundThreads);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor().corePoolSize(outboundThreads).maxPoolSize(outboundThreads);
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setMessageSizeLimit(MESSAGE_SIZE_LIMIT)
+                .setSendTimeLimit(sendTimeLimitMs)
+                .setSendBufferSizeLimit(sendBufferSizeLimit);
+    }
+}
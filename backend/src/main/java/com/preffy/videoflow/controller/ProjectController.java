@@ -1,9 +1,12 @@
 package com.preffy.videoflow.controller;
 
+import com.preffy.videoflow.dto.ProjectOperationResponse;
 import com.preffy.videoflow.dto.ProjectRequest;
 import com.preffy.videoflow.dto.ProjectResponse;
 import com.preffy.videoflow.model.Project;
 import com.preffy.videoflow.security.UserPrincipal;
+import com.preffy.videoflow.service.ProjectOperation;
+import com.preffy.videoflow.service.ProjectOperationService;
 import com.preffy.videoflow.service.ProjectService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -19,13 +22,17 @@ import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.net.URI;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 @RestController
@@ -37,9 +44,14 @@ public class ProjectController {
     
     private static final Logger logger = LoggerFactory.getLogger(ProjectController.class);
     
+    private static final int UPLOAD_RETRY_AFTER_SECONDS = 30;
+    
     @Autowired
     private ProjectService projectService;
     
+    @Autowired
+    private ProjectOperationService projectOperationService;
+    
     @GetMapping
     @Operation(
         summary = "Get All Projects",
@@ -285,21 +297,24 @@ public class ProjectController {
     @PostMapping("/with-video")
     @Operation(
         summary = "Create Project with Video Upload",
-        description = "Create a new video project and upload video file. Automatically triggers body language and script analysis."
+        description = "Create a new video project and upload video file. Returns as soon as the upload is received; "
+            + "the video is then stored and body language and script analysis queued in the background. "
+            + "Poll the operation in the Location header for progress."
     )
     @ApiResponses(value = {
         @ApiResponse(
-            responseCode = "200",
-            description = "Successfully created project and uploaded video. Analysis started in background.",
+            responseCode = "202",
+            description = "Upload received and project created. The video is being stored.",
             content = @Content(
                 mediaType = "application/json",
-                schema = @Schema(implementation = ProjectResponse.class)
+                schema = @Schema(implementation = ProjectOperationResponse.class)
             )
         ),
         @ApiResponse(responseCode = "400", description = "Invalid request data or video file"),
-        @ApiResponse(responseCode = "401", description = "Unauthorized - Invalid or missing JWT token")
+        @ApiResponse(responseCode = "401", description = "Unauthorized - Invalid or missing JWT token"),
+        @ApiResponse(responseCode = "503", description = "Too many uploads being processed; retry later")
     })
-    public ResponseEntity<ProjectResponse> createProjectWithVideo(
+    public ResponseEntity<ProjectOperationResponse> createProjectWithVideo(
         @RequestParam("title") String title,
         @RequestParam("description") String description,
         @RequestParam(value = "domain", required = false) String domain,
@@ -324,14 +339,69 @@ public class ProjectController {
             projectRequest.setAudience(audience);
             projectRequest.setFormality(formality);
             
-            // Create project with video upload (async analysis)
-            Project project = projectService.createProjectWithVideo(projectRequest, videoFile, userPrincipal.getId()).get();
+            // Stage the upload and create the project; the video is stored in the background
+            ProjectOperation operation = projectOperationService.accept(projectRequest, videoFile, userPrincipal.getId());
             
-            return ResponseEntity.ok(new ProjectResponse(project));
+            return ResponseEntity.accepted()
+                .location(URI.create("/api/projects/operations/" + operation.getId()))
+                .body(new ProjectOperationResponse(operation));
             
+        } catch (RejectedExecutionException e) {
+            logger.warn("Upload processing is saturated, refusing project with video: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(UPLOAD_RETRY_AFTER_SECONDS))
+                .build();
         } catch (Exception e) {
             logger.error("Error creating project with video: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
+    
+    @GetMapping("/operations/{operationId}")
+    @Operation(
+        summary = "Get Project Creation Progress",
+        description = "Stage, percent and estimated time left of a project being created with a video upload. "
+            + "Operations are kept in memory for a while after they finish. They are local to the instance "
+            + "that accepted the upload and do not survive a restart; a project whose upload was lost that way "
+            + "is removed later, as a failed upload would be."
+    )
+    @ApiResponses(value = {
+        @ApiResponse(
+            responseCode = "200",
+            description = "Current progress",
+            content = @Content(
+                mediaType = "application/json",
+                schema = @Schema(implementation = ProjectOperationResponse.class),
+                examples = @ExampleObject(
+                    name = "Storing",
+                    value = """
+                    {
+                        "operationId": "0f8c2a9e-5b7d-4f43-9a61-2d0e6c1b7f35",
+                        "projectId": "2",
+                        "stage": "storing",
+                        "percent": 42,
+                        "etaSeconds": 7,
+                        "error": null,
+                        "createdAt": "2025-06-13T16:00:00.000000",
+                        "finishedAt": null
+                    }
+                    """
+                )
+            )
+        ),
+        @ApiResponse(responseCode = "401", description = "Unauthorized - Invalid or missing JWT token"),
+        @ApiResponse(responseCode = "404",
+            description = "Operation not found, expired, accepted by another instance or not the user's")
+    })
+    public ResponseEntity<ProjectOperationResponse> getOperation(
+        @Parameter(description = "Operation ID") @PathVariable String operationId,
+        @Parameter(hidden = true) Authentication authentication
+    ) {
+        UserPrincipal userPrincipal = (UserPrincipal) authentication.getPrincipal();
+        return projectOperationService.getOperation(operationId, userPrincipal.getId())
+            .map(operation -> ResponseEntity.ok()
+                .cacheControl(CacheControl.noStore())
+                .body(new ProjectOperationResponse(operation)))
+            .orElseGet(() -> ResponseEntity.notFound().build());
+    }
 }
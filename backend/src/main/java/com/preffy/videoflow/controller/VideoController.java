@@ -1,11 +1,25 @@
 package com.preffy.videoflow.controller;
 
+import com.preffy.videoflow.dto.SeekPointDto;
 import com.preffy.videoflow.dto.VideoDto;
+import com.preffy.videoflow.media.AdtsExtractor;
+import com.preffy.videoflow.media.Mp4FormatException;
+import com.preffy.videoflow.media.Mp4Windows;
+import com.preffy.videoflow.media.SeekIndex;
 import com.preffy.videoflow.model.Video;
+import com.preffy.videoflow.service.AnalysisWindowService;
+import com.preffy.videoflow.service.AudioExtractionService;
+import com.preffy.videoflow.service.HlsPackagingService;
+import com.preffy.videoflow.service.SeekIndexService;
 import com.preffy.videoflow.service.VideoService;
+import com.preffy.videoflow.service.VideoStreamingService;
+import com.preffy.videoflow.storage.ObjectStoreResource;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -14,11 +28,10 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.channels.Channels;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @RestController
@@ -26,9 +39,26 @@ import java.util.stream.Collectors;
 @CrossOrigin(origins = "*", maxAge = 3600)
 public class VideoController {
 
+    private static final Logger logger = LoggerFactory.getLogger(VideoController.class);
+
     @Autowired
     private VideoService videoService;
 
+    @Autowired
+    private VideoStreamingService videoStreamingService;
+
+    @Autowired
+    private HlsPackagingService hlsPackagingService;
+
+    @Autowired
+    private AudioExtractionService audioExtractionService;
+
+    @Autowired
+    private SeekIndexService seekIndexService;
+
+    @Autowired
+    private AnalysisWindowService analysisWindowService;
+
     @PostMapping("/upload")
     public ResponseEntity<?> uploadVideo(
             @RequestParam("projectId") Long projectId,
@@ -47,7 +77,7 @@ public class VideoController {
             }
 
             Video video = videoService.uploadVideo(String.valueOf(projectId), file);
-            VideoDto videoDto = new VideoDto(video);
+            VideoDto videoDto = videoService.toDto(video);
 
             return ResponseEntity.ok(videoDto);
 
@@ -61,7 +91,7 @@ public class VideoController {
     public ResponseEntity<List<VideoDto>> getVideosByProject(@PathVariable Long projectId) {
         List<Video> videos = videoService.getVideosByProjectId(String.valueOf(projectId));
         List<VideoDto> videoDtos = videos.stream()
-                .map(VideoDto::new)
+                .map(videoService::toDto)
                 .collect(Collectors.toList());
         return ResponseEntity.ok(videoDtos);
     }
@@ -70,42 +100,197 @@ public class VideoController {
     public ResponseEntity<VideoDto> getVideo(@PathVariable Long id) {
         Optional<Video> video = videoService.getVideoById(id);
         if (video.isPresent()) {
-            return ResponseEntity.ok(new VideoDto(video.get()));
+            return ResponseEntity.ok(videoService.toDto(video.get()));
         }
         return ResponseEntity.notFound().build();
     }
 
+    /**
+     * Keyframe seek index of a video in its compact binary form (see
+     * {@link SeekIndex}), for players that map positions to byte offsets locally
+     */
+    @GetMapping("/{id}/seek-index")
+    public ResponseEntity<byte[]> getSeekIndex(@PathVariable Long id) {
+        try {
+            Optional<Video> video = videoService.getVideoById(id);
+            if (video.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            Optional<SeekIndex> index = seekIndexService.getIndex(video.get());
+            if (index.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            // The index belongs to the content, so the hash is a strong validator
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                    .cacheControl(CacheControl.maxAge(1, TimeUnit.DAYS))
+                    .eTag(video.get().getContentHash())
+                    .body(index.get().toBytes());
+        } catch (IOException e) {
+            logger.error("Failed to load seek index of video {}: {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * Keyframe at or before a playback position and the byte offset to request from
+     */
+    @GetMapping("/{id}/seek")
+    public ResponseEntity<SeekPointDto> seek(@PathVariable Long id, @RequestParam("t") double time) {
+        if (!(time >= 0)) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            Optional<Video> video = videoService.getVideoById(id);
+            if (video.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            Optional<SeekIndex> index = seekIndexService.getIndex(video.get());
+            if (index.isEmpty() || index.get().size() == 0) {
+                return ResponseEntity.notFound().build();
+            }
+            int entry = index.get().entryAtOrBefore(time);
+            return ResponseEntity.ok(new SeekPointDto(time, index.get().getTimeSeconds(entry),
+                    index.get().getOffset(entry)));
+        } catch (IOException e) {
+            logger.error("Failed to seek in video {}: {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     @GetMapping("/stream/{filename}")
-    public ResponseEntity<Resource> streamVideo(@PathVariable String filename) {
+    public void streamVideo(@PathVariable String filename,
+                            HttpServletRequest request,
+                            HttpServletResponse response) throws IOException {
         try {
             Optional<Video> videoOpt = videoService.getVideoByFilename(filename);
             if (!videoOpt.isPresent()) {
-                return ResponseEntity.notFound().build();
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
             }
 
             Video video = videoOpt.get();
-            
-            // Get file from storage service
-            String fullUrl = "http://localhost:8080" + video.getStorageUrl();
-            
-            // For local storage, we need to construct the file path
-            String localPath = System.getProperty("user.home") + "/preffy-uploads/videos/" + filename;
-            Path videoPath = Paths.get(localPath);
-            
-            if (!Files.exists(videoPath)) {
-                return ResponseEntity.notFound().build();
+
+            // Let the player fetch straight from the bucket when signed URLs are enabled
+            Optional<String> signedUrl = videoService.getSignedPlaybackUrl(video);
+            if (signedUrl.isPresent()) {
+                response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-store");
+                response.sendRedirect(signedUrl.get());
+                return;
             }
 
-            Resource resource = new FileSystemResource(videoPath);
-            
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(video.getContentType()))
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + video.getOriginalFilename() + "\"")
-                    .header(HttpHeaders.ACCEPT_RANGES, "bytes")
-                    .body(resource);
+            // Resolve the stored object through the configured object store
+            Optional<ObjectStoreResource> resourceOpt = videoService.loadVideoResource(video);
+            if (!resourceOpt.isPresent()) {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+
+            videoStreamingService.stream(resourceOpt.get(), video.getContentType(),
+                    "inline; filename=\"" + video.getOriginalFilename() + "\"", request, response);
 
+        } catch (IOException e) {
+            // Usually the player dropping the connection after a seek
+            logger.debug("Streaming {} aborted: {}", filename, e.getMessage());
         } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+            logger.error("Failed to stream {}: {}", filename, e.getMessage(), e);
+            if (!response.isCommitted()) {
+                response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+        }
+    }
+
+    /**
+     * Serve an object of an HLS rendition (playlist, init segment or media
+     * segment). Renditions are content-addressed and never change, so caches
+     * and CDNs may keep them indefinitely.
+     */
+    @GetMapping("/hls/{contentHash}/{name}")
+    public void streamHls(@PathVariable String contentHash,
+                          @PathVariable String name,
+                          HttpServletRequest request,
+                          HttpServletResponse response) throws IOException {
+        try {
+            Optional<ObjectStoreResource> resourceOpt = hlsPackagingService.loadRenditionObject(contentHash, name);
+            if (!resourceOpt.isPresent()) {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+
+            response.setHeader(HttpHeaders.CACHE_CONTROL, "public, max-age=31536000, immutable");
+            videoStreamingService.stream(resourceOpt.get(), HlsPackagingService.contentTypeOf(name),
+                    "inline", request, response);
+
+        } catch (IOException e) {
+            logger.debug("Streaming HLS object {}/{} aborted: {}", contentHash, name, e.getMessage());
+        } catch (Exception e) {
+            logger.error("Failed to stream HLS object {}/{}: {}", contentHash, name, e.getMessage(), e);
+            if (!response.isCommitted()) {
+                response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+        }
+    }
+
+    /**
+     * Serve the extracted audio track of a blob. Like HLS renditions it is
+     * content-addressed, so it may be cached indefinitely.
+     */
+    @GetMapping("/audio/{filename}")
+    public void streamAudio(@PathVariable String filename,
+                            HttpServletRequest request,
+                            HttpServletResponse response) throws IOException {
+        try {
+            Optional<ObjectStoreResource> resourceOpt = audioExtractionService.loadAudio(filename);
+            if (!resourceOpt.isPresent()) {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+
+            response.setHeader(HttpHeaders.CACHE_CONTROL, "public, max-age=31536000, immutable");
+            videoStreamingService.stream(resourceOpt.get(), AdtsExtractor.CONTENT_TYPE, "inline", request, response);
+
+        } catch (IOException e) {
+            logger.debug("Streaming audio {} aborted: {}", filename, e.getMessage());
+        } catch (Exception e) {
+            logger.error("Failed to stream audio {}: {}", filename, e.getMessage(), e);
+            if (!response.isCommitted()) {
+                response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+        }
+    }
+
+    /**
+     * Serve a keyframe-aligned window of a stored video as a standalone
+     * fragmented MP4, for windowed analysis. Cut on the fly, so the length is
+     * not known up front and the response is chunked.
+     */
+    @GetMapping("/windows/{contentHash}/{firstFrame}-{endFrame}.mp4")
+    public void streamWindow(@PathVariable String contentHash,
+                             @PathVariable int firstFrame,
+                             @PathVariable int endFrame,
+                             HttpServletResponse response) throws IOException {
+        try {
+            response.setContentType(Mp4Windows.CONTENT_TYPE);
+            response.setHeader(HttpHeaders.CACHE_CONTROL, "public, max-age=31536000, immutable");
+            if (!analysisWindowService.writeWindow(contentHash, firstFrame, endFrame,
+                    Channels.newChannel(response.getOutputStream()))) {
+                response.reset();
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            }
+
+        } catch (Mp4FormatException e) {
+            if (!response.isCommitted()) {
+                response.reset();
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            }
+        } catch (IOException e) {
+            logger.debug("Streaming window {}/{}-{} aborted: {}", contentHash, firstFrame, endFrame, e.getMessage());
+        } catch (Exception e) {
+            logger.error("Failed to stream window {}/{}-{}: {}", contentHash, firstFrame, endFrame, e.getMessage(), e);
+            if (!response.isCommitted()) {
+                response.reset();
+                response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
         }
     }
 
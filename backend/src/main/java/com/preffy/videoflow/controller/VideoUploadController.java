@@ -0,0 +1,159 @@
+package com.preffy.videoflow.controller;
+
+import com.preffy.videoflow.dto.UploadSessionRequest;
+import com.preffy.videoflow.dto.UploadSessionResponse;
+import com.preffy.videoflow.model.Video;
+import com.preffy.videoflow.service.UploadSession;
+import com.preffy.videoflow.service.UploadSessionService;
+import com.preffy.videoflow.service.UploadSessionService.UploadSessionNotFoundException;
+import com.preffy.videoflow.service.VideoService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Resumable, chunked video uploads. Clients create a session, PUT byte ranges
+ * (in any order, optionally in parallel) with a Content-Range header, query the
+ * committed offset to resume after a failure, and finally complete the session.
+ */
+@RestController
+@RequestMapping("/api/videos/uploads")
+@CrossOrigin(origins = "*", maxAge = 3600, exposedHeaders = "Upload-Offset")
+@Tag(name = "Resumable Uploads", description = "Chunked, resumable video upload endpoints")
+public class VideoUploadController {
+
+    private static final Logger logger = LoggerFactory.getLogger(VideoUploadController.class);
+
+    private static final String UPLOAD_OFFSET_HEADER = "Upload-Offset";
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+|\\*)");
+
+    @Autowired
+    private UploadSessionService uploadSessionService;
+
+    @Autowired
+    private VideoService videoService;
+
+    @PostMapping
+    @Operation(summary = "Create Upload Session", description = "Open a resumable upload session for a video file.")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "201", description = "Upload session created"),
+        @ApiResponse(responseCode = "400", description = "Invalid file type or size")
+    })
+    public ResponseEntity<?> createSession(@Valid @RequestBody UploadSessionRequest request) {
+        if (!request.getContentType().startsWith("video/")) {
+            return ResponseEntity.badRequest().body("Please upload a valid video file");
+        }
+
+        try {
+            UploadSession session = uploadSessionService.createSession(String.valueOf(request.getProjectId()),
+                    request.getFilename(), request.getContentType(), request.getSize());
+            return ResponseEntity.status(HttpStatus.CREATED)
+                    .header(UPLOAD_OFFSET_HEADER, "0")
+                    .body(new UploadSessionResponse(session, uploadSessionService.getChunkSize()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IOException e) {
+            logger.error("Failed to create upload session: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Failed to create upload session: " + e.getMessage());
+        }
+    }
+
+    @PutMapping("/{uploadId}")
+    @Operation(summary = "Upload Chunk", description = "Upload a byte range of the file. The request body is the raw chunk and the Content-Range header gives its offsets, e.g. 'bytes 0-8388607/73400320'.")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Chunk stored; body contains the committed offset"),
+        @ApiResponse(responseCode = "400", description = "Missing or invalid Content-Range"),
+        @ApiResponse(responseCode = "404", description = "Upload session not found"),
+        @ApiResponse(responseCode = "409", description = "Upload is being finalized")
+    })
+    public ResponseEntity<?> uploadChunk(
+            @Parameter(description = "Upload session ID") @PathVariable String uploadId,
+            @RequestHeader(HttpHeaders.CONTENT_RANGE) String contentRange,
+            HttpServletRequest request) {
+        Matcher matcher = CONTENT_RANGE.matcher(contentRange.trim());
+        if (!matcher.matches()) {
+            return ResponseEntity.badRequest().body("Invalid Content-Range header: " + contentRange);
+        }
+
+        try {
+            long start = Long.parseLong(matcher.group(1));
+            long end = Long.parseLong(matcher.group(2));
+            UploadSession session = uploadSessionService.writeChunk(uploadId, start, end, request.getInputStream());
+            return sessionResponse(session);
+        } catch (UploadSessionNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IOException e) {
+            logger.warn("Chunk upload for session {} failed: {}", uploadId, e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Failed to store chunk: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/{uploadId}")
+    @Operation(summary = "Get Upload Status", description = "Return the committed offset so an interrupted upload can resume.")
+    public ResponseEntity<?> getSession(@Parameter(description = "Upload session ID") @PathVariable String uploadId) {
+        return uploadSessionService.getSession(uploadId)
+                .<ResponseEntity<?>>map(this::sessionResponse)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @PostMapping("/{uploadId}/complete")
+    @Operation(summary = "Complete Upload", description = "Finalize a fully received upload and create the video. If finalizing fails the session and its chunks are kept and the call can be retried.")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Video created"),
+        @ApiResponse(responseCode = "404", description = "Upload session not found"),
+        @ApiResponse(responseCode = "409", description = "Upload is incomplete or already being finalized")
+    })
+    public ResponseEntity<?> completeSession(@Parameter(description = "Upload session ID") @PathVariable String uploadId) {
+        try {
+            Video video = uploadSessionService.completeSession(uploadId);
+            return ResponseEntity.ok(videoService.toDto(video));
+        } catch (UploadSessionNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        } catch (IOException e) {
+            logger.error("Failed to complete upload session {}: {}", uploadId, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Failed to upload file: " + e.getMessage());
+        }
+    }
+
+    @DeleteMapping("/{uploadId}")
+    @Operation(summary = "Abort Upload", description = "Cancel an upload session and discard received chunks.")
+    public ResponseEntity<?> abortSession(@Parameter(description = "Upload session ID") @PathVariable String uploadId) {
+        try {
+            uploadSessionService.abortSession(uploadId);
+            return ResponseEntity.noContent().build();
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Failed to abort upload: " + e.getMessage());
+        }
+    }
+
+    private ResponseEntity<?> sessionResponse(UploadSession session) {
+        return ResponseEntity.ok()
+                .header(UPLOAD_OFFSET_HEADER, String.valueOf(session.getCommittedOffset()))
+                .body(new UploadSessionResponse(session, uploadSessionService.getChunkSize()));
+    }
+}
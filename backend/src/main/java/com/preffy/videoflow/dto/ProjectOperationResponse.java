@@ -0,0 +1,60 @@
+package com.preffy.videoflow.dto;
+
+import com.preffy.videoflow.service.ProjectOperation;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+@Schema(description = "Progress of a project being created from an uploaded video")
+public class ProjectOperationResponse {
+
+    private String operationId;
+    private String projectId;
+    private String stage;
+    private int percent;
+    private Long etaSeconds;
+    private String error;
+    private LocalDateTime createdAt;
+    private LocalDateTime finishedAt;
+
+    // Constructors
+    public ProjectOperationResponse() {}
+
+    public ProjectOperationResponse(ProjectOperation operation) {
+        this.operationId = operation.getId();
+        this.projectId = operation.getProjectId().toString();
+        this.stage = operation.getStage().name().toLowerCase();
+        this.percent = operation.getPercent();
+        Duration eta = operation.getEta();
+        this.etaSeconds = eta != null ? (eta.toMillis() + 999) / 1000 : null;
+        this.error = operation.getError();
+        this.createdAt = operation.getCreatedAt();
+        this.finishedAt = operation.getFinishedAt();
+    }
+
+    // Getters and Setters
+    public String getOperationId() { return operationId; }
+    public void setOperationId(String operationId) { this.operationId = operationId; }
+
+    public String getProjectId() { return projectId; }
+    public void setProjectId(String projectId) { this.projectId = projectId; }
+
+    public String getStage() { return stage; }
+    public void setStage(String stage) { this.stage = stage; }
+
+    public int getPercent() { return percent; }
+    public void setPercent(int percent) { this.percent = percent; }
+
+    public Long getEtaSeconds() { return etaSeconds; }
+    public void setEtaSeconds(Long etaSeconds) { this.etaSeconds = etaSeconds; }
+
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    public LocalDateTime getFinishedAt() { return finishedAt; }
+    public void setFinishedAt(LocalDateTime finishedAt) { this.finishedAt = finishedAt; }
+}
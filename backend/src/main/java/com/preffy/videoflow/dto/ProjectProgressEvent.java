@@ -0,0 +1,48 @@
+package com.preffy.videoflow.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "Progress of a project, pushed to its owner on /user/queue/projects")
+public class ProjectProgressEvent {
+
+    private String projectId;
+
+    @Schema(description = "upload, audio_extraction, script_analysis, body_language_analysis or project")
+    private String stage;
+
+    @Schema(description = "For a stage: started, completed or failed, or the upload stage; for the project: its status")
+    private String status;
+
+    @Schema(description = "Estimated completion of the upload, 0-100; not set for other stages")
+    private Integer percent;
+
+    @Schema(description = "When the event happened, in epoch milliseconds")
+    private long timestamp;
+
+    // Constructors
+    public ProjectProgressEvent() {}
+
+    public ProjectProgressEvent(Long projectId, String stage, String status, Integer percent) {
+        this.projectId = projectId.toString();
+        this.stage = stage;
+        this.status = status;
+        this.percent = percent;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    // Getters and Setters
+    public String getProjectId() { return projectId; }
+    public void setProjectId(String projectId) { this.projectId = projectId; }
+
+    public String getStage() { return stage; }
+    public void setStage(String stage) { this.stage = stage; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public Integer getPercent() { return percent; }
+    public void setPercent(Integer percent) { this.percent = percent; }
+
+    public long getTimestamp() { return timestamp; }
+    public void setTimestamp(long timestamp) { this.timestamp = timestamp; }
+}
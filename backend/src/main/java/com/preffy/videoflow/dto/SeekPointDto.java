@@ -0,0 +1,35 @@
+package com.preffy.videoflow.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "Keyframe to start playback from for a requested position")
+public class SeekPointDto {
+
+    @Schema(description = "Requested playback position in seconds")
+    private double requestedTime;
+
+    @Schema(description = "Presentation time of the keyframe at or before the requested position, in seconds")
+    private double keyframeTime;
+
+    @Schema(description = "Byte offset of the keyframe's sample data in the stored file, usable as a Range start")
+    private long byteOffset;
+
+    // Constructors
+    public SeekPointDto() {}
+
+    public SeekPointDto(double requestedTime, double keyframeTime, long byteOffset) {
+        this.requestedTime = requestedTime;
+        this.keyframeTime = keyframeTime;
+        this.byteOffset = byteOffset;
+    }
+
+    // Getters and Setters
+    public double getRequestedTime() { return requestedTime; }
+    public void setRequestedTime(double requestedTime) { this.requestedTime = requestedTime; }
+
+    public double getKeyframeTime() { return keyframeTime; }
+    public void setKeyframeTime(double keyframeTime) { this.keyframeTime = keyframeTime; }
+
+    public long getByteOffset() { return byteOffset; }
+    public void setByteOffset(long byteOffset) { this.byteOffset = byteOffset; }
+}
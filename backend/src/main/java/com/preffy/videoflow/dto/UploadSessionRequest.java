@@ -0,0 +1,43 @@
+package com.preffy.videoflow.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+
+@Schema(description = "Resumable upload session creation request")
+public class UploadSessionRequest {
+
+    @Schema(description = "Project the video belongs to", example = "1", required = true)
+    @NotNull(message = "Project ID is required")
+    private Long projectId;
+
+    @Schema(description = "Original filename", example = "presentation.mp4", required = true)
+    @NotBlank(message = "Filename is required")
+    private String filename;
+
+    @Schema(description = "Video MIME type", example = "video/mp4", required = true)
+    @NotBlank(message = "Content type is required")
+    private String contentType;
+
+    @Schema(description = "Total file size in bytes", example = "73400320", required = true)
+    @NotNull(message = "Size is required")
+    @Positive(message = "Size must be positive")
+    private Long size;
+
+    // Constructors
+    public UploadSessionRequest() {}
+
+    // Getters and Setters
+    public Long getProjectId() { return projectId; }
+    public void setProjectId(Long projectId) { this.projectId = projectId; }
+
+    public String getFilename() { return filename; }
+    public void setFilename(String filename) { this.filename = filename; }
+
+    public String getContentType() { return contentType; }
+    public void setContentType(String contentType) { this.contentType = contentType; }
+
+    public Long getSize() { return size; }
+    public void setSize(Long size) { this.size = size; }
+}
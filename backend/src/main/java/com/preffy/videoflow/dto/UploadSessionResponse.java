@@ -0,0 +1,56 @@
+package com.preffy.videoflow.dto;
+
+import com.preffy.videoflow.service.UploadSession;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "State of a resumable upload session")
+public class UploadSessionResponse {
+
+    private String uploadId;
+    private String projectId;
+    private String filename;
+    private long size;
+    private long committedOffset;
+    private long receivedBytes;
+    private long chunkSize;
+    private boolean complete;
+
+    // Constructors
+    public UploadSessionResponse() {}
+
+    public UploadSessionResponse(UploadSession session, long chunkSize) {
+        this.uploadId = session.getId();
+        this.projectId = session.getProjectId();
+        this.filename = session.getOriginalFilename();
+        this.size = session.getTotalSize();
+        this.committedOffset = session.getCommittedOffset();
+        this.receivedBytes = session.getReceivedBytes();
+        this.chunkSize = chunkSize;
+        this.complete = session.isComplete();
+    }
+
+    // Getters and Setters
+    public String getUploadId() { return uploadId; }
+    public void setUploadId(String uploadId) { this.uploadId = uploadId; }
+
+    public String getProjectId() { return projectId; }
+    public void setProjectId(String projectId) { this.projectId = projectId; }
+
+    public String getFilename() { return filename; }
+    public void setFilename(String filename) { this.filename = filename; }
+
+    public long getSize() { return size; }
+    public void setSize(long size) { this.size = size; }
+
+    public long getCommittedOffset() { return committedOffset; }
+    public void setCommittedOffset(long committedOffset) { this.committedOffset = committedOffset; }
+
+    public long getReceivedBytes() { return receivedBytes; }
+    public void setReceivedBytes(long receivedBytes) { this.receivedBytes = receivedBytes; }
+
+    public long getChunkSize() { return chunkSize; }
+    public void setChunkSize(long chunkSize) { this.chunkSize = chunkSize; }
+
+    public boolean isComplete() { return complete; }
+    public void setComplete(boolean complete) { this.complete = complete; }
+}
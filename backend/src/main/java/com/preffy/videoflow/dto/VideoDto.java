@@ -14,6 +14,10 @@ public class VideoDto {
     private Integer duration;
     private Integer width;
     private Integer height;
+    private String codec;
+    private Double frameRate;
+    private Long bitrate;
+    private String hlsUrl;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 
@@ -31,6 +35,10 @@ public class VideoDto {
         this.duration = video.getDuration();
         this.width = video.getWidth();
         this.height = video.getHeight();
+        this.codec = video.getCodec();
+        this.frameRate = video.getFrameRate();
+        this.bitrate = video.getBitrate();
+        this.hlsUrl = video.getHlsUrl();
         this.createdAt = video.getCreatedAt();
         this.updatedAt = video.getUpdatedAt();
     }
@@ -116,6 +124,38 @@ public class VideoDto {
         this.height = height;
     }
 
+    public String getCodec() {
+        return codec;
+    }
+
+    public void setCodec(String codec) {
+        this.codec = codec;
+    }
+
+    public Double getFrameRate() {
+        return frameRate;
+    }
+
+    public void setFrameRate(Double frameRate) {
+        this.frameRate = frameRate;
+    }
+
+    public Long getBitrate() {
+        return bitrate;
+    }
+
+    public void setBitrate(Long bitrate) {
+        this.bitrate = bitrate;
+    }
+
+    public String getHlsUrl() {
+        return hlsUrl;
+    }
+
+    public void setHlsUrl(String hlsUrl) {
+        this.hlsUrl = hlsUrl;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
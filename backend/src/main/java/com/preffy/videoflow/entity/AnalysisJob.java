@@ -0,0 +1,223 @@
+package com.preffy.videoflow.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A unit of analysis work in the durable job queue. Workers on any instance
+ * claim pending jobs with a time-limited lease that they renew while running;
+ * a job whose lease runs out (its instance died) becomes claimable again.
+ * Failed jobs are retried with backoff until maxAttempts, then parked as DEAD.
+ * <p>
+ * Jobs for the same work share a dedupe key. Queueing a job whose key matches
+ * a pending or running job of the same type returns that job instead, and
+ * while a job runs it holds its key in the unique running_key column, so no
+ * two jobs with the same key run at once on any instances.
+ */
+@Entity
+@Table(name = "analysis_jobs", indexes = {
+    @Index(name = "idx_analysis_jobs_claim", columnList = "status, run_after"),
+    @Index(name = "idx_analysis_jobs_dedupe", columnList = "dedupe_key, status")
+})
+public class AnalysisJob {
+
+    public enum JobType {
+        /** Body language analysis of an uploaded video; payload is the video's storage URL */
+        BODY_LANGUAGE,
+        /** Full project workflow: audio extraction, body language and script analysis; payload is the video id */
+        PROJECT_ANALYSIS
+    }
+
+    public enum JobStatus {
+        /** SUPERSEDED: dropped before running because a queued workflow job covers its work */
+        PENDING, RUNNING, SUCCEEDED, DEAD, SUPERSEDED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", nullable = false, length = 32)
+    private JobType type;
+
+    @Column(name = "project_id", nullable = false)
+    private String projectId;
+
+    @Column(name = "payload", length = 1024)
+    private String payload;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 16)
+    private JobStatus status;
+
+    @Column(name = "dedupe_key")
+    private String dedupeKey;
+
+    // The dedupe key while RUNNING, null otherwise
+    @Column(name = "running_key", unique = true)
+    private String runningKey;
+
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts;
+
+    @Column(name = "max_attempts", nullable = false)
+    private Integer maxAttempts;
+
+    // Earliest time the job may be claimed; pushed out by retry backoff
+    @Column(name = "run_after", nullable = false)
+    private LocalDateTime runAfter;
+
+    @Column(name = "lease_owner")
+    private String leaseOwner;
+
+    @Column(name = "lease_expires_at")
+    private LocalDateTime leaseExpiresAt;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    // Constructors
+    public AnalysisJob() {
+        this.createdAt = LocalDateTime.now();
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public AnalysisJob(JobType type, String projectId, String payload, int maxAttempts) {
+        this();
+        this.type = type;
+        this.projectId = projectId;
+        this.payload = payload;
+        this.status = JobStatus.PENDING;
+        this.attempts = 0;
+        this.maxAttempts = maxAttempts;
+        this.runAfter = this.createdAt;
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public JobType getType() {
+        return type;
+    }
+
+    public void setType(JobType type) {
+        this.type = type;
+    }
+
+    public String getProjectId() {
+        return projectId;
+    }
+
+    public void setProjectId(String projectId) {
+        this.projectId = projectId;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public JobStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(JobStatus status) {
+        this.status = status;
+    }
+
+    public String getDedupeKey() {
+        return dedupeKey;
+    }
+
+    public void setDedupeKey(String dedupeKey) {
+        this.dedupeKey = dedupeKey;
+    }
+
+    public String getRunningKey() {
+        return runningKey;
+    }
+
+    public void setRunningKey(String runningKey) {
+        this.runningKey = runningKey;
+    }
+
+    public Integer getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(Integer attempts) {
+        this.attempts = attempts;
+    }
+
+    public Integer getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(Integer maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public LocalDateTime getRunAfter() {
+        return runAfter;
+    }
+
+    public void setRunAfter(LocalDateTime runAfter) {
+        this.runAfter = runAfter;
+    }
+
+    public String getLeaseOwner() {
+        return leaseOwner;
+    }
+
+    public void setLeaseOwner(String leaseOwner) {
+        this.leaseOwner = leaseOwner;
+    }
+
+    public LocalDateTime getLeaseExpiresAt() {
+        return leaseExpiresAt;
+    }
+
+    public void setLeaseExpiresAt(LocalDateTime leaseExpiresAt) {
+        this.leaseExpiresAt = leaseExpiresAt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
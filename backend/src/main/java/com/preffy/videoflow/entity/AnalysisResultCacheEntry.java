@@ -0,0 +1,159 @@
+package com.preffy.videoflow.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A completed analysis result, shared by every project whose media has the
+ * same content. The cache key is a digest of the analysis type, the media's
+ * content hash, the model version and the request parameters, which are kept
+ * alongside for inspection.
+ */
+@Entity
+@Table(name = "analysis_result_cache", indexes = {
+    @Index(name = "idx_analysis_result_cache_expires", columnList = "expires_at"),
+    @Index(name = "idx_analysis_result_cache_accessed", columnList = "last_accessed_at")
+})
+public class AnalysisResultCacheEntry {
+
+    public enum AnalysisType {
+        BODY_LANGUAGE, SCRIPT
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "cache_key", nullable = false, unique = true, length = 64)
+    private String cacheKey;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "analysis_type", nullable = false, length = 32)
+    private AnalysisType analysisType;
+
+    @Column(name = "media_hash", nullable = false)
+    private String mediaHash;
+
+    @Column(name = "model_version", nullable = false, length = 64)
+    private String modelVersion;
+
+    @Column(name = "parameters", length = 1024)
+    private String parameters;
+
+    @Column(name = "result", nullable = false, columnDefinition = "TEXT")
+    private String result;
+
+    @Column(name = "hits", nullable = false)
+    private Long hits;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "last_accessed_at", nullable = false)
+    private LocalDateTime lastAccessedAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    // Constructors
+    public AnalysisResultCacheEntry() {}
+
+    public AnalysisResultCacheEntry(String cacheKey, AnalysisType analysisType, String mediaHash,
+                                    String modelVersion, String parameters) {
+        this.cacheKey = cacheKey;
+        this.analysisType = analysisType;
+        this.mediaHash = mediaHash;
+        this.modelVersion = modelVersion;
+        this.parameters = parameters;
+        this.hits = 0L;
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getCacheKey() {
+        return cacheKey;
+    }
+
+    public void setCacheKey(String cacheKey) {
+        this.cacheKey = cacheKey;
+    }
+
+    public AnalysisType getAnalysisType() {
+        return analysisType;
+    }
+
+    public void setAnalysisType(AnalysisType analysisType) {
+        this.analysisType = analysisType;
+    }
+
+    public String getMediaHash() {
+        return mediaHash;
+    }
+
+    public void setMediaHash(String mediaHash) {
+        this.mediaHash = mediaHash;
+    }
+
+    public String getModelVersion() {
+        return modelVersion;
+    }
+
+    public void setModelVersion(String modelVersion) {
+        this.modelVersion = modelVersion;
+    }
+
+    public String getParameters() {
+        return parameters;
+    }
+
+    public void setParameters(String parameters) {
+        this.parameters = parameters;
+    }
+
+    public String getResult() {
+        return result;
+    }
+
+    public void setResult(String result) {
+        this.result = result;
+    }
+
+    public Long getHits() {
+        return hits;
+    }
+
+    public void setHits(Long hits) {
+        this.hits = hits;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getLastAccessedAt() {
+        return lastAccessedAt;
+    }
+
+    public void setLastAccessedAt(LocalDateTime lastAccessedAt) {
+        this.lastAccessedAt = lastAccessedAt;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
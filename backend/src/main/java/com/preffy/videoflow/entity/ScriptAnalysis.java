@@ -11,7 +11,7 @@ public class ScriptAnalysis {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
     
-    @Column(name = "project_id", nullable = false)
+    @Column(name = "project_id", nullable = false, unique = true)
     private Long projectId;
     
     @Column(name = "audio_url")
@@ -23,6 +23,9 @@ public class ScriptAnalysis {
     @Column(name = "feedback", columnDefinition = "TEXT")
     private String feedback;
     
+    @Column(name = "status")
+    private String status;
+    
     @Column(name = "created_at")
     private LocalDateTime createdAt;
     
@@ -91,6 +94,14 @@ public class ScriptAnalysis {
         this.feedback = feedback;
     }
     
+    public String getStatus() {
+        return status;
+    }
+    
+    public void setStatus(String status) {
+        this.status = status;
+    }
+    
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -0,0 +1,323 @@
+package com.preffy.videoflow.media;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Demuxes the AAC track of an MP4 into a raw ADTS stream without re-encoding:
+ * every access unit is copied as is behind a 7-byte ADTS header built from the
+ * track's AudioSpecificConfig. ADTS is self-framing, so the output can be
+ * written in one pass and is accepted by speech-to-text services and players
+ * as a plain .aac file.
+ */
+public final class AdtsExtractor {
+
+    public static final String CONTENT_TYPE = "audio/aac";
+
+    private static final int ADTS_HEADER_SIZE = 7;
+    private static final int MAX_FRAME_SIZE = (1 << 13) - 1;
+
+    /**
+     * MPEG-4 Audio object type indication in the esds decoder config
+     */
+    private static final int OBJECT_TYPE_MPEG4_AUDIO = 0x40;
+    private static final int OBJECT_TYPE_MPEG2_AAC_MAIN = 0x66;
+    private static final int OBJECT_TYPE_MPEG2_AAC_SSR = 0x68;
+
+    private static final int AOT_SBR = 5;
+    private static final int AOT_PS = 29;
+    private static final int AOT_ESCAPE = 31;
+
+    private static final int[] SAMPLE_RATES = {
+            96000, 88200, 64000, 48000, 44100, 32000, 24000, 22050, 16000, 12000, 11025, 8000, 7350
+    };
+
+    /**
+     * Samples read per batch; a few hundred KB of audio
+     */
+    private static final int BATCH_SAMPLES = 1024;
+
+    private AdtsExtractor() {
+    }
+
+    /**
+     * What was extracted
+     * @param sampleRate Core AAC sampling rate in Hz (half the output rate for HE-AAC)
+     * @param channels Channel configuration
+     * @param frames Number of AAC frames written
+     * @param bytes Total bytes written
+     */
+    public record AdtsStream(int sampleRate, int channels, int frames, long bytes) {
+    }
+
+    /**
+     * Write the first AAC track of the file as ADTS
+     * @throws Mp4FormatException if the file has no AAC track ADTS can carry
+     */
+    public static AdtsStream extract(SeekableSource source, WritableByteChannel target) throws IOException {
+        Mp4Movie movie = Mp4Parser.parse(source);
+        if (movie.isFragmented()) {
+            throw new Mp4FormatException("Fragmented files are not supported");
+        }
+
+        Mp4SampleTable table = null;
+        for (Mp4SampleTable candidate : Mp4Parser.readSampleTables(source, movie)) {
+            if (candidate.getTrack().isAudio() && "mp4a".equals(candidate.getTrack().getCodec())
+                    && candidate.getSampleCount() > 0) {
+                table = candidate;
+                break;
+            }
+        }
+        if (table == null) {
+            throw new Mp4FormatException("No AAC audio track");
+        }
+
+        AudioConfig config = audioConfig(table.getTrak());
+        long written = 0;
+        int sampleCount = table.getSampleCount();
+        for (int first = 0; first < sampleCount; first += BATCH_SAMPLES) {
+            int count = Math.min(BATCH_SAMPLES, sampleCount - first);
+            long[] offsets = new long[count];
+            int[] sizes = new int[count];
+            int[] positions = new int[count];
+            int position = 0;
+            for (int i = 0; i < count; i++) {
+                int size = table.getSize(first + i);
+                if (size + ADTS_HEADER_SIZE > MAX_FRAME_SIZE) {
+                    throw new Mp4FormatException("AAC frame " + (first + i) + " is too large for ADTS: " + size + " bytes");
+                }
+                offsets[i] = table.getOffset(first + i);
+                sizes[i] = size;
+                positions[i] = position;
+                position += ADTS_HEADER_SIZE + size;
+            }
+
+            // Frames are laid out in sample order although the reader visits them in file order
+            ByteBuffer batch = ByteBuffer.allocate(position);
+            SampleReader.read(source, offsets, sizes, (i, data) -> {
+                batch.position(positions[i]);
+                writeHeader(batch, config, sizes[i]);
+                batch.put(data);
+            });
+            batch.clear();
+            while (batch.hasRemaining()) {
+                target.write(batch);
+            }
+            written += position;
+        }
+        return new AdtsStream(SAMPLE_RATES[config.frequencyIndex()], config.channels(), sampleCount, written);
+    }
+
+    private static void writeHeader(ByteBuffer out, AudioConfig config, int payloadSize) {
+        int frameLength = ADTS_HEADER_SIZE + payloadSize;
+        int profile = config.objectType() - 1;
+        out.put((byte) 0xFF);
+        // MPEG-4, layer 0, no CRC
+        out.put((byte) 0xF1);
+        out.put((byte) ((profile << 6) | (config.frequencyIndex() << 2) | (config.channels() >> 2)));
+        out.put((byte) (((config.channels() & 0x3) << 6) | (frameLength >> 11)));
+        out.put((byte) ((frameLength >> 3) & 0xFF));
+        // Buffer fullness 0x7FF (variable bit rate), one raw data block
+        out.put((byte) (((frameLength & 0x7) << 5) | 0x1F));
+        out.put((byte) 0xFC);
+    }
+
+    /**
+     * The parts of the AudioSpecificConfig that go into an ADTS header
+     */
+    record AudioConfig(int objectType, int frequencyIndex, int channels) {
+    }
+
+    /**
+     * Find the AudioSpecificConfig of an mp4a track: trak/mdia/minf/stbl/stsd,
+     * then the esds box of the sample entry (directly or, in QuickTime files,
+     * inside a wave box)
+     */
+    static AudioConfig audioConfig(ByteBuffer trak) throws Mp4FormatException {
+        byte[][] specificConfig = new byte[1][];
+        Mp4Parser.forEachChild(trak, (type, mdia) -> {
+            if ("mdia".equals(type)) {
+                Mp4Parser.forEachChild(mdia, (mdiaType, minf) -> {
+                    if ("minf".equals(mdiaType)) {
+                        Mp4Parser.forEachChild(minf, (minfType, stbl) -> {
+                            if ("stbl".equals(minfType)) {
+                                Mp4Parser.forEachChild(stbl, (stblType, stsd) -> {
+                                    if ("stsd".equals(stblType) && specificConfig[0] == null) {
+                                        specificConfig[0] = decoderSpecificInfo(stsd);
+                                    }
+                                });
+                            }
+                        });
+                    }
+                });
+            }
+        });
+        if (specificConfig[0] == null) {
+            throw new Mp4FormatException("AAC track has no decoder configuration");
+        }
+        return parseAudioSpecificConfig(specificConfig[0]);
+    }
+
+    private static byte[] decoderSpecificInfo(ByteBuffer stsd) throws Mp4FormatException {
+        Mp4Parser.fullBoxVersion(stsd);
+        stsd.getInt();
+        byte[][] found = new byte[1][];
+        Mp4Parser.forEachChild(stsd.slice(), (type, entry) -> {
+            if (!"mp4a".equals(type) || found[0] != null) {
+                return;
+            }
+            // SampleEntry(8), then the sound description whose size depends on its version
+            int version = entry.getShort(8) & 0xFFFF;
+            int childrenStart = switch (version) {
+                case 0 -> 28;
+                case 1 -> 44;
+                case 2 -> 64;
+                default -> throw new Mp4FormatException("Unsupported sound sample description version " + version);
+            };
+            found[0] = findEsds(entry.position(childrenStart).slice());
+        });
+        return found[0];
+    }
+
+    private static byte[] findEsds(ByteBuffer container) throws Mp4FormatException {
+        byte[][] found = new byte[1][];
+        Mp4Parser.forEachChild(container, (type, body) -> {
+            if (found[0] != null) {
+                return;
+            }
+            if ("esds".equals(type)) {
+                Mp4Parser.fullBoxVersion(body);
+                found[0] = readDescriptors(body);
+            } else if ("wave".equals(type)) {
+                found[0] = findEsds(body);
+            }
+        });
+        return found[0];
+    }
+
+    /**
+     * Walk ES_Descriptor (3) / DecoderConfigDescriptor (4) to the
+     * DecoderSpecificInfo (5), which holds the AudioSpecificConfig
+     */
+    private static byte[] readDescriptors(ByteBuffer body) throws Mp4FormatException {
+        while (body.remaining() >= 2) {
+            int tag = body.get() & 0xFF;
+            int size = descriptorSize(body);
+            if (size > body.remaining()) {
+                throw new Mp4FormatException("Descriptor " + tag + " overruns esds");
+            }
+            ByteBuffer descriptor = body.slice().limit(size);
+            body.position(body.position() + size);
+            switch (tag) {
+                case 0x03 -> {
+                    descriptor.getShort();
+                    int flags = descriptor.get() & 0xFF;
+                    if ((flags & 0x80) != 0) {
+                        descriptor.getShort();
+                    }
+                    if ((flags & 0x40) != 0) {
+                        descriptor.position(descriptor.position() + (descriptor.get() & 0xFF));
+                    }
+                    if ((flags & 0x20) != 0) {
+                        descriptor.getShort();
+                    }
+                    return readDescriptors(descriptor);
+                }
+                case 0x04 -> {
+                    int objectType = descriptor.get() & 0xFF;
+                    if (objectType != OBJECT_TYPE_MPEG4_AUDIO
+                            && (objectType < OBJECT_TYPE_MPEG2_AAC_MAIN || objectType > OBJECT_TYPE_MPEG2_AAC_SSR)) {
+                        throw new Mp4FormatException(String.format("Audio object type 0x%02x is not AAC", objectType));
+                    }
+                    // streamType(1) bufferSizeDB(3) maxBitrate(4) avgBitrate(4)
+                    descriptor.position(descriptor.position() + 12);
+                    return readDescriptors(descriptor);
+                }
+                case 0x05 -> {
+                    byte[] config = new byte[size];
+                    descriptor.get(config);
+                    return config;
+                }
+                default -> {
+                }
+            }
+        }
+        return null;
+    }
+
+    private static int descriptorSize(ByteBuffer body) {
+        int size = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = body.get() & 0xFF;
+            size = (size << 7) | (b & 0x7F);
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        return size;
+    }
+
+    static AudioConfig parseAudioSpecificConfig(byte[] config) throws Mp4FormatException {
+        BitReader bits = new BitReader(config);
+        int objectType = bits.objectType();
+        int frequencyIndex = bits.frequencyIndex();
+        int channels = bits.read(4);
+        if (objectType == AOT_SBR || objectType == AOT_PS) {
+            // Explicit HE-AAC signalling: the extension rate follows, then the core object type.
+            // ADTS describes the core stream; decoders find the SBR data in it implicitly.
+            bits.frequencyIndex();
+            objectType = bits.objectType();
+        }
+        if (objectType < 1 || objectType > 4) {
+            throw new Mp4FormatException("AAC object type " + objectType + " cannot be carried in ADTS");
+        }
+        if (channels == 0) {
+            throw new Mp4FormatException("AAC channel layouts defined by a program config element are not supported");
+        }
+        return new AudioConfig(objectType, frequencyIndex, channels);
+    }
+
+    private static class BitReader {
+
+        private final byte[] bytes;
+        private int position;
+
+        BitReader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int read(int count) throws Mp4FormatException {
+            if (position + count > bytes.length * 8) {
+                throw new Mp4FormatException("Truncated AudioSpecificConfig");
+            }
+            int value = 0;
+            for (int i = 0; i < count; i++, position++) {
+                value = (value << 1) | ((bytes[position >> 3] >> (7 - (position & 7))) & 1);
+            }
+            return value;
+        }
+
+        int objectType() throws Mp4FormatException {
+            int objectType = read(5);
+            return objectType == AOT_ESCAPE ? 32 + read(6) : objectType;
+        }
+
+        int frequencyIndex() throws Mp4FormatException {
+            int index = read(4);
+            if (index != 0xF) {
+                if (index >= SAMPLE_RATES.length) {
+                    throw new Mp4FormatException("Reserved AAC sampling frequency index " + index);
+                }
+                return index;
+            }
+            int rate = read(24);
+            for (int i = 0; i < SAMPLE_RATES.length; i++) {
+                if (SAMPLE_RATES[i] == rate) {
+                    return i;
+                }
+            }
+            throw new Mp4FormatException("AAC sampling rate " + rate + " Hz has no ADTS index");
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.preffy.videoflow.media;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Rewrites an MP4 whose moov box follows the media data into faststart layout
+ * (moov before mdat), so a player or decoder can start from the first few
+ * hundred KB instead of fetching the tail of the file first.
+ * <p>
+ * The file is laid out as {@code [leading boxes][mdat ...][moov][trailing]}
+ * and written as {@code [leading boxes][moov'][mdat ...][trailing]}. Only moov
+ * is held in memory; everything else is a streaming copy. Every chunk offset in
+ * the stco/co64 tables moves by the size of the relocated moov, and stco tables
+ * are promoted to co64 when a shifted offset no longer fits in 32 bits.
+ */
+public final class FastStartRewriter {
+
+    private static final long MAX_32BIT_OFFSET = 0xFFFFFFFFL;
+
+    private FastStartRewriter() {
+    }
+
+    /**
+     * True if the movie has its index after the media data and can be rewritten.
+     * Fragmented files are left alone: their initial moov is already small and
+     * at the front, and moof boxes carry their own offsets.
+     */
+    public static boolean needsRewrite(Mp4Movie movie) {
+        return !movie.isFastStart() && !movie.isFragmented() && movie.getMdatOffset() >= 0;
+    }
+
+    /**
+     * Write the faststart layout of the source to the target
+     * @return the number of bytes written
+     * @throws Mp4FormatException if the source is not a tail-moov MP4 or its
+     *                            chunk offsets point outside the media data
+     */
+    public static long rewrite(SeekableSource source, WritableByteChannel target) throws IOException {
+        long fileSize = source.size();
+        List<Mp4Box> boxes = Mp4Parser.topLevelBoxes(source);
+
+        Mp4Box moov = null;
+        Mp4Box firstMdat = null;
+        for (Mp4Box box : boxes) {
+            if ("moov".equals(box.type())) {
+                if (moov != null) {
+                    throw new Mp4FormatException("More than one moov box");
+                }
+                moov = box;
+            } else if ("mdat".equals(box.type()) && firstMdat == null) {
+                firstMdat = box;
+            } else if ("moof".equals(box.type())) {
+                throw new Mp4FormatException("Fragmented files are not rewritten");
+            }
+        }
+        if (moov == null || firstMdat == null || moov.offset() < firstMdat.offset()) {
+            throw new Mp4FormatException("Not a tail-moov file");
+        }
+        if (moov.size() > Mp4Parser.MAX_MOOV_SIZE) {
+            throw new Mp4FormatException("moov box of " + moov.size() + " bytes exceeds " + Mp4Parser.MAX_MOOV_SIZE);
+        }
+
+        ByteBuffer moovBody = source.read(moov.offset() + moov.headerSize(), (int) (moov.size() - moov.headerSize()));
+        if (moovBody.remaining() != moov.size() - moov.headerSize()) {
+            throw new Mp4FormatException("Truncated moov box at " + moov.offset());
+        }
+
+        // The rebuilt size depends only on whether stco is promoted, not on the
+        // offset values, so measure first and then patch with the final shift
+        byte[] rebuilt;
+        try {
+            long size = rebuildMoov(moovBody, false, offset -> offset).length;
+            rebuilt = rebuildMoov(moovBody, false, relocation(firstMdat, moov, size));
+        } catch (OffsetOverflowException e) {
+            // Only reachable for files close to 4 GiB
+            long size = rebuildMoov(moovBody, true, offset -> offset).length;
+            rebuilt = rebuildMoov(moovBody, true, relocation(firstMdat, moov, size));
+        }
+
+        long written = 0;
+        written += copy(source, 0, firstMdat.offset(), target);
+        written += write(ByteBuffer.wrap(rebuilt), target);
+        written += copy(source, firstMdat.offset(), moov.offset() - firstMdat.offset(), target);
+        written += copy(source, moov.end(), fileSize - moov.end(), target);
+
+        long expected = fileSize - moov.size() + rebuilt.length;
+        if (written != expected) {
+            throw new IOException("Wrote " + written + " bytes, expected " + expected);
+        }
+        return written;
+    }
+
+    /**
+     * Map an offset in the original file to the rewritten one. Data before the
+     * first mdat stays put, data between it and moov moves down by the new moov
+     * size, and data after moov moves by the change in moov size.
+     */
+    private static LongUnaryOperator relocation(Mp4Box firstMdat, Mp4Box moov, long newMoovSize) {
+        return offset -> {
+            if (offset < firstMdat.offset()) {
+                return offset;
+            }
+            if (offset < moov.offset()) {
+                return offset + newMoovSize;
+            }
+            if (offset >= moov.end()) {
+                return offset - moov.size() + newMoovSize;
+            }
+            throw new IllegalArgumentException("Chunk offset " + offset + " points into moov");
+        };
+    }
+
+    private static byte[] rebuildMoov(ByteBuffer body, boolean promote, LongUnaryOperator relocate)
+            throws Mp4FormatException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.remaining() + 1024);
+        rebuildChildren(body, out, promote, relocate);
+        return withHeader("moov", out.toByteArray());
+    }
+
+    /**
+     * Copy the children of a container, descending into the boxes on the path to
+     * the chunk offset tables and recomputing their sizes on the way out
+     */
+    private static void rebuildChildren(ByteBuffer container, ByteArrayOutputStream out, boolean promote,
+                                        LongUnaryOperator relocate) throws Mp4FormatException {
+        Mp4Parser.forEachChild(container, (type, body) -> {
+            switch (type) {
+                case "trak", "mdia", "minf", "stbl" -> {
+                    ByteArrayOutputStream children = new ByteArrayOutputStream(body.remaining());
+                    rebuildChildren(body, children, promote, relocate);
+                    out.writeBytes(withHeader(type, children.toByteArray()));
+                }
+                case "stco" -> out.writeBytes(chunkOffsets(body, 4, promote ? 8 : 4, relocate));
+                case "co64" -> out.writeBytes(chunkOffsets(body, 8, 8, relocate));
+                default -> out.writeBytes(withHeader(type, remainingBytes(body)));
+            }
+        });
+    }
+
+    private static byte[] chunkOffsets(ByteBuffer body, int inputWidth, int outputWidth, LongUnaryOperator relocate)
+            throws Mp4FormatException {
+        int versionAndFlags = body.getInt();
+        long entryCount = body.getInt() & 0xFFFFFFFFL;
+        if (entryCount * inputWidth > body.remaining()) {
+            throw new Mp4FormatException("Chunk offset table with " + entryCount + " entries overruns its box");
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(8 + 8 + (int) entryCount * outputWidth);
+        out.putInt(out.capacity()).put((outputWidth == 8 ? "co64" : "stco").getBytes(StandardCharsets.ISO_8859_1));
+        out.putInt(outputWidth == inputWidth ? versionAndFlags : 0).putInt((int) entryCount);
+        for (long i = 0; i < entryCount; i++) {
+            long offset = inputWidth == 8 ? body.getLong() : body.getInt() & 0xFFFFFFFFL;
+            long relocated = relocate.applyAsLong(offset);
+            if (outputWidth == 8) {
+                out.putLong(relocated);
+            } else if (relocated > MAX_32BIT_OFFSET) {
+                throw new OffsetOverflowException();
+            } else {
+                out.putInt((int) relocated);
+            }
+        }
+        return out.array();
+    }
+
+    private static byte[] withHeader(String type, byte[] body) {
+        return ByteBuffer.allocate(8 + body.length)
+                .putInt(8 + body.length)
+                .put(type.getBytes(StandardCharsets.ISO_8859_1))
+                .put(body)
+                .array();
+    }
+
+    private static byte[] remainingBytes(ByteBuffer body) {
+        byte[] bytes = new byte[body.remaining()];
+        body.get(bytes);
+        return bytes;
+    }
+
+    private static long copy(SeekableSource source, long position, long length, WritableByteChannel target)
+            throws IOException {
+        if (length > 0) {
+            source.transferTo(position, length, target);
+        }
+        return length;
+    }
+
+    private static long write(ByteBuffer buffer, WritableByteChannel target) throws IOException {
+        long length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+        return length;
+    }
+
+    /**
+     * A shifted offset does not fit in an stco entry; retried with co64 tables
+     */
+    private static class OffsetOverflowException extends Mp4FormatException {
+
+        private static final long serialVersionUID = 1L;
+
+        OffsetOverflowException() {
+            super("Chunk offset exceeds 32 bits");
+        }
+    }
+}
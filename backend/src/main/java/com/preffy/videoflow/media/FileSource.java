@@ -0,0 +1,56 @@
+package com.preffy.videoflow.media;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * {@link SeekableSource} over a local file using positional channel reads
+ */
+public class FileSource implements SeekableSource {
+
+    private final FileChannel channel;
+
+    public FileSource(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+    }
+
+    @Override
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read == -1) {
+                break;
+            }
+        }
+        return buffer.flip();
+    }
+
+    @Override
+    public void transferTo(long position, long length, WritableByteChannel target) throws IOException {
+        // Zero-copy where the OS supports it (file to file, file to socket)
+        long end = position + length;
+        while (position < end) {
+            long transferred = channel.transferTo(position, end - position, target);
+            if (transferred == 0) {
+                throw new EOFException("Source ended at " + position + " of " + end);
+            }
+            position += transferred;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,353 @@
+package com.preffy.videoflow.media;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Repackages a progressive MP4 into fragmented MP4 segments and an HLS
+ * playlist without re-encoding. Segments start at sync samples of the video
+ * track (or of the first track for audio-only files), so each one can be
+ * decoded on its own; audio samples go to the segment whose time range holds
+ * their decode time.
+ * <p>
+ * Output, in the order it is handed to the sink:
+ * <ul>
+ *   <li>{@value #INIT_SEGMENT}: ftyp + moov with empty sample tables and mvex</li>
+ *   <li>{@code seg_00001.m4s ...}: moof + mdat per segment</li>
+ *   <li>{@value #PLAYLIST}: the VOD media playlist, written last so its
+ *       presence means the rendition is complete</li>
+ * </ul>
+ */
+public final class HlsPackager {
+
+    public static final String PLAYLIST = "index.m3u8";
+    public static final String INIT_SEGMENT = "init.mp4";
+
+    public static final String PLAYLIST_CONTENT_TYPE = "application/vnd.apple.mpegurl";
+    public static final String SEGMENT_CONTENT_TYPE = "video/mp4";
+
+    private static final int SAMPLE_FLAGS_SYNC = 0x02000000;
+    private static final int SAMPLE_FLAGS_NON_SYNC = 0x01010000;
+
+    private static final int TRUN_DATA_OFFSET = 0x000001;
+    private static final int TRUN_SAMPLE_DURATION = 0x000100;
+    private static final int TRUN_SAMPLE_SIZE = 0x000200;
+    private static final int TRUN_SAMPLE_FLAGS = 0x000400;
+    private static final int TRUN_COMPOSITION_OFFSET = 0x000800;
+    private static final int TFHD_DEFAULT_BASE_IS_MOOF = 0x020000;
+
+    private HlsPackager() {
+    }
+
+    /**
+     * Receives the packaged objects
+     */
+    @FunctionalInterface
+    public interface Sink {
+        void accept(String name, byte[] content, String contentType) throws IOException;
+    }
+
+    /**
+     * Package a non-fragmented MP4
+     * @param targetSegmentSeconds Minimum segment duration; segments end at the
+     *                             first sync sample after it
+     * @return the number of media segments written
+     * @throws Mp4FormatException if the file has no packageable tracks
+     */
+    public static int packageHls(SeekableSource source, double targetSegmentSeconds, Sink sink) throws IOException {
+        Mp4Movie movie = Mp4Parser.parse(source);
+        List<Mp4SampleTable> tracks = packageableTracks(source, movie);
+        Mp4SampleTable reference = tracks.get(0);
+
+        int[] boundaries = segmentBoundaries(reference, targetSegmentSeconds);
+        long referenceTimescale = reference.getTrack().getTimescale();
+
+        sink.accept(INIT_SEGMENT, initSegment(source, movie, tracks), SEGMENT_CONTENT_TYPE);
+
+        StringBuilder entries = new StringBuilder();
+        double maxDuration = 0;
+        int[] next = new int[tracks.size()];
+        for (int segment = 0; segment < boundaries.length; segment++) {
+            boolean last = segment + 1 == boundaries.length;
+            long startTime = reference.getDecodeTime(boundaries[segment]);
+            long endTime = last ? reference.getEndTime() : reference.getDecodeTime(boundaries[segment + 1]);
+
+            int[][] ranges = fragmentRanges(tracks, next, last ? -1 : endTime);
+            String name = String.format(Locale.ROOT, "seg_%05d.m4s", segment + 1);
+            sink.accept(name, mediaSegment(source, tracks, ranges, segment + 1), SEGMENT_CONTENT_TYPE);
+
+            double seconds = (double) (endTime - startTime) / referenceTimescale;
+            maxDuration = Math.max(maxDuration, seconds);
+            entries.append(String.format(Locale.ROOT, "#EXTINF:%.6f,\n%s\n", seconds, name));
+        }
+
+        String playlist = "#EXTM3U\n"
+                + "#EXT-X-VERSION:7\n"
+                + "#EXT-X-TARGETDURATION:" + (long) Math.ceil(maxDuration) + "\n"
+                + "#EXT-X-MEDIA-SEQUENCE:0\n"
+                + "#EXT-X-PLAYLIST-TYPE:VOD\n"
+                + "#EXT-X-INDEPENDENT-SEGMENTS\n"
+                + "#EXT-X-MAP:URI=\"" + INIT_SEGMENT + "\"\n"
+                + entries
+                + "#EXT-X-ENDLIST\n";
+        sink.accept(PLAYLIST, playlist.getBytes(StandardCharsets.UTF_8), PLAYLIST_CONTENT_TYPE);
+        return boundaries.length;
+    }
+
+    /**
+     * Audio and video tracks with samples, video first so players find it at the
+     * start of every fragment. The first track is the reference whose sync
+     * samples fragments start at.
+     * @throws Mp4FormatException if the file is fragmented or has no such tracks
+     */
+    static List<Mp4SampleTable> packageableTracks(SeekableSource source, Mp4Movie movie) throws IOException {
+        if (movie.isFragmented()) {
+            throw new Mp4FormatException("File is already fragmented");
+        }
+        List<Mp4SampleTable> tracks = new ArrayList<>();
+        for (Mp4SampleTable table : Mp4Parser.readSampleTables(source, movie)) {
+            Mp4Track track = table.getTrack();
+            if ((track.isVideo() || track.isAudio()) && table.getSampleCount() > 0 && track.getTimescale() > 0) {
+                tracks.add(table);
+            }
+        }
+        if (tracks.isEmpty()) {
+            throw new Mp4FormatException("No audio or video samples to package");
+        }
+        tracks.sort(Comparator.comparing((Mp4SampleTable table) -> !table.getTrack().isVideo()));
+        return tracks;
+    }
+
+    /**
+     * Per track, the [first, end) samples of the next fragment, advancing
+     * {@code next}
+     * @param endTime End of the fragment in reference track units, or -1 to take
+     *                every remaining sample
+     */
+    static int[][] fragmentRanges(List<Mp4SampleTable> tracks, int[] next, long endTime) {
+        long referenceTimescale = tracks.get(0).getTrack().getTimescale();
+        int[][] ranges = new int[tracks.size()][];
+        for (int t = 0; t < tracks.size(); t++) {
+            Mp4SampleTable table = tracks.get(t);
+            int end = endTime < 0 ? table.getSampleCount()
+                    : table.firstSampleAtOrAfter(rescale(endTime, referenceTimescale, table.getTrack().getTimescale()));
+            ranges[t] = new int[]{next[t], Math.max(next[t], end)};
+            next[t] = ranges[t][1];
+        }
+        return ranges;
+    }
+
+    /**
+     * First sample of each segment: sample 0, then the first sync sample at
+     * least the target duration after the previous boundary
+     */
+    static int[] segmentBoundaries(Mp4SampleTable reference, double targetSegmentSeconds) {
+        long target = Math.max(1, Math.round(targetSegmentSeconds * reference.getTrack().getTimescale()));
+        List<Integer> boundaries = new ArrayList<>();
+        boundaries.add(0);
+        long segmentStart = reference.getDecodeTime(0);
+        for (int sample = 1; sample < reference.getSampleCount(); sample++) {
+            if (reference.isSync(sample) && reference.getDecodeTime(sample) - segmentStart >= target) {
+                boundaries.add(sample);
+                segmentStart = reference.getDecodeTime(sample);
+            }
+        }
+        return boundaries.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    static long rescale(long time, long fromTimescale, long toTimescale) {
+        // Hours of media at a 90 kHz timescale times a 48 kHz timescale is far from overflowing
+        return fromTimescale == toTimescale ? time : time * toTimescale / fromTimescale;
+    }
+
+    static byte[] initSegment(SeekableSource source, Mp4Movie movie, List<Mp4SampleTable> tracks)
+            throws IOException {
+        ByteArrayOutputStream moov = new ByteArrayOutputStream();
+        ByteBuffer mvhd = findMvhd(source, movie);
+        moov.writeBytes(box("mvhd", mvhd));
+        for (Mp4SampleTable table : tracks) {
+            moov.writeBytes(box("trak", emptySampleTables(table.getTrak())));
+        }
+
+        ByteArrayOutputStream mvex = new ByteArrayOutputStream();
+        for (Mp4SampleTable table : tracks) {
+            // trex: track_ID, default sample description 1, default duration/size/flags 0
+            mvex.writeBytes(box("trex", ByteBuffer.allocate(24)
+                    .putInt(0)
+                    .putInt(table.getTrack().getTrackId())
+                    .putInt(1)
+                    .putInt(0)
+                    .putInt(0)
+                    .putInt(0)
+                    .flip()));
+        }
+        moov.writeBytes(box("mvex", ByteBuffer.wrap(mvex.toByteArray())));
+
+        ByteBuffer ftyp = ByteBuffer.allocate(24)
+                .put(ascii("iso6"))
+                .putInt(0)
+                .put(ascii("iso6"))
+                .put(ascii("iso5"))
+                .put(ascii("dash"))
+                .put(ascii("mp41"))
+                .flip();
+        ByteArrayOutputStream init = new ByteArrayOutputStream();
+        init.writeBytes(box("ftyp", ftyp));
+        init.writeBytes(box("moov", ByteBuffer.wrap(moov.toByteArray())));
+        return init.toByteArray();
+    }
+
+    private static ByteBuffer findMvhd(SeekableSource source, Mp4Movie movie) throws IOException {
+        ByteBuffer[] mvhd = new ByteBuffer[1];
+        Mp4Parser.forEachChild(Mp4Parser.readMoov(source, movie), (type, body) -> {
+            if ("mvhd".equals(type)) {
+                mvhd[0] = body;
+            }
+        });
+        if (mvhd[0] == null) {
+            throw new Mp4FormatException("No mvhd box");
+        }
+        return mvhd[0];
+    }
+
+    /**
+     * Copy a container, replacing the sample tables under stbl with empty ones
+     * (keeping stsd) as fragmented files describe samples in moof instead
+     */
+    private static ByteBuffer emptySampleTables(ByteBuffer container) throws Mp4FormatException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(container.remaining());
+        Mp4Parser.forEachChild(container, (type, body) -> {
+            switch (type) {
+                case "mdia", "minf" -> out.writeBytes(box(type, emptySampleTables(body)));
+                case "stbl" -> {
+                    ByteArrayOutputStream stbl = new ByteArrayOutputStream();
+                    Mp4Parser.forEachChild(body, (stblType, stblBody) -> {
+                        if ("stsd".equals(stblType)) {
+                            stbl.writeBytes(box("stsd", stblBody));
+                        }
+                    });
+                    stbl.writeBytes(box("stts", ByteBuffer.allocate(8)));
+                    stbl.writeBytes(box("stsc", ByteBuffer.allocate(8)));
+                    stbl.writeBytes(box("stsz", ByteBuffer.allocate(12)));
+                    stbl.writeBytes(box("stco", ByteBuffer.allocate(8)));
+                    out.writeBytes(box("stbl", ByteBuffer.wrap(stbl.toByteArray())));
+                }
+                default -> out.writeBytes(box(type, body));
+            }
+        });
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    /**
+     * moof + mdat for one segment. Interleaved audio and video chunks of a
+     * segment usually form one contiguous span of the source, which
+     * {@link SampleReader} fetches with a single read.
+     * @param ranges Per track, the [first, end) sample indexes in this segment
+     */
+    static byte[] mediaSegment(SeekableSource source, List<Mp4SampleTable> tracks, int[][] ranges,
+                                       int sequenceNumber) throws IOException {
+        long mdatPayload = 0;
+        int sampleCount = 0;
+        for (int t = 0; t < tracks.size(); t++) {
+            for (int s = ranges[t][0]; s < ranges[t][1]; s++) {
+                mdatPayload += tracks.get(t).getSize(s);
+            }
+            sampleCount += ranges[t][1] - ranges[t][0];
+        }
+        if (mdatPayload > Integer.MAX_VALUE - 1024 * 1024) {
+            throw new Mp4FormatException("Segment " + sequenceNumber + " is too large: " + mdatPayload + " bytes");
+        }
+
+        // Lay out the moof once to learn its size, then again with the data offsets
+        byte[] moof = moof(tracks, ranges, sequenceNumber, 0);
+        moof = moof(tracks, ranges, sequenceNumber, moof.length + 8);
+
+        ByteBuffer segment = ByteBuffer.allocate(moof.length + 8 + (int) mdatPayload);
+        segment.put(moof);
+        segment.putInt(8 + (int) mdatPayload).put(ascii("mdat"));
+
+        long[] offsets = new long[sampleCount];
+        int[] sizes = new int[sampleCount];
+        int[] positions = new int[sampleCount];
+        int index = 0;
+        int position = segment.position();
+        for (int t = 0; t < tracks.size(); t++) {
+            Mp4SampleTable table = tracks.get(t);
+            for (int s = ranges[t][0]; s < ranges[t][1]; s++) {
+                offsets[index] = table.getOffset(s);
+                sizes[index] = table.getSize(s);
+                positions[index] = position;
+                position += table.getSize(s);
+                index++;
+            }
+        }
+        SampleReader.read(source, offsets, sizes, (i, data) -> segment.put(positions[i], data, 0, data.remaining()));
+        return segment.array();
+    }
+
+    private static byte[] moof(List<Mp4SampleTable> tracks, int[][] ranges, int sequenceNumber, int firstDataOffset) {
+        ByteArrayOutputStream moof = new ByteArrayOutputStream();
+        moof.writeBytes(box("mfhd", ByteBuffer.allocate(8).putInt(0).putInt(sequenceNumber).flip()));
+
+        int dataOffset = firstDataOffset;
+        for (int t = 0; t < tracks.size(); t++) {
+            Mp4SampleTable table = tracks.get(t);
+            int first = ranges[t][0];
+            int count = ranges[t][1] - first;
+            if (count == 0) {
+                continue;
+            }
+
+            ByteArrayOutputStream traf = new ByteArrayOutputStream();
+            traf.writeBytes(box("tfhd", ByteBuffer.allocate(8)
+                    .putInt(TFHD_DEFAULT_BASE_IS_MOOF)
+                    .putInt(table.getTrack().getTrackId())
+                    .flip()));
+            traf.writeBytes(box("tfdt", ByteBuffer.allocate(12)
+                    .putInt(1 << 24)
+                    .putLong(table.getDecodeTime(first))
+                    .flip()));
+
+            boolean composition = table.hasCompositionOffsets();
+            int flags = TRUN_DATA_OFFSET | TRUN_SAMPLE_DURATION | TRUN_SAMPLE_SIZE | TRUN_SAMPLE_FLAGS
+                    | (composition ? TRUN_COMPOSITION_OFFSET : 0);
+            int perSample = composition ? 16 : 12;
+            // Version 1 makes composition offsets signed, as ctts version 1 allows
+            ByteBuffer trun = ByteBuffer.allocate(12 + count * perSample)
+                    .putInt((composition ? 1 << 24 : 0) | flags)
+                    .putInt(count)
+                    .putInt(dataOffset);
+            for (int s = first; s < first + count; s++) {
+                trun.putInt(table.getDuration(s));
+                trun.putInt(table.getSize(s));
+                trun.putInt(table.isSync(s) ? SAMPLE_FLAGS_SYNC : SAMPLE_FLAGS_NON_SYNC);
+                if (composition) {
+                    trun.putInt(table.getCompositionOffset(s));
+                }
+                dataOffset += table.getSize(s);
+            }
+            traf.writeBytes(box("trun", trun.flip()));
+            moof.writeBytes(box("traf", ByteBuffer.wrap(traf.toByteArray())));
+        }
+        return box("moof", ByteBuffer.wrap(moof.toByteArray()));
+    }
+
+    private static byte[] box(String type, ByteBuffer body) {
+        ByteBuffer source = body.duplicate();
+        return ByteBuffer.allocate(8 + source.remaining())
+                .putInt(8 + source.remaining())
+                .put(ascii(type))
+                .put(source)
+                .array();
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,13 @@
+package com.preffy.videoflow.media;
+
+/**
+ * Location of a box in a file: its four-character type, the offset of its
+ * header, its total size including the header, and the header size (8, or 16
+ * for boxes with a 64-bit size)
+ */
+public record Mp4Box(String type, long offset, long size, int headerSize) {
+
+    public long end() {
+        return offset + size;
+    }
+}
@@ -0,0 +1,16 @@
+package com.preffy.videoflow.media;
+
+import java.io.IOException;
+
+/**
+ * The input is not a well-formed ISO base media (MP4/MOV) file, or uses a
+ * structure the parser does not support
+ */
+public class Mp4FormatException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public Mp4FormatException(String message) {
+        super(message);
+    }
+}
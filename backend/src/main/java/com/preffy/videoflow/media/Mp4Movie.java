@@ -0,0 +1,124 @@
+package com.preffy.videoflow.media;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Structure and metadata of an MP4/MOV file: where the top-level moov and mdat
+ * boxes sit, and the tracks described by moov
+ */
+public class Mp4Movie {
+
+    private long fileSize;
+    private long timescale;
+    private long duration;
+    private long moovOffset = -1;
+    private long moovSize;
+    private long mdatOffset = -1;
+    private long mdatSize;
+    private boolean fragmented;
+    private final List<Mp4Track> tracks = new ArrayList<>();
+
+    /**
+     * Presentation duration in seconds. Falls back to the longest track when the
+     * movie header carries no duration (fragmented files).
+     */
+    public double getDurationSeconds() {
+        if (timescale > 0 && duration > 0) {
+            return (double) duration / timescale;
+        }
+        return tracks.stream().mapToDouble(Mp4Track::getDurationSeconds).max().orElse(0);
+    }
+
+    /**
+     * Average bitrate over the whole file, in bits per second
+     */
+    public long getBitrate() {
+        double seconds = getDurationSeconds();
+        return seconds > 0 ? Math.round(fileSize * 8 / seconds) : 0;
+    }
+
+    public Optional<Mp4Track> getVideoTrack() {
+        return tracks.stream().filter(Mp4Track::isVideo).findFirst();
+    }
+
+    public Optional<Mp4Track> getAudioTrack() {
+        return tracks.stream().filter(Mp4Track::isAudio).findFirst();
+    }
+
+    /**
+     * True if moov precedes mdat, so players can start before the whole file has arrived
+     */
+    public boolean isFastStart() {
+        return moovOffset >= 0 && (mdatOffset < 0 || moovOffset < mdatOffset);
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    void setFileSize(long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public long getTimescale() {
+        return timescale;
+    }
+
+    void setTimescale(long timescale) {
+        this.timescale = timescale;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    public long getMoovOffset() {
+        return moovOffset;
+    }
+
+    void setMoovOffset(long moovOffset) {
+        this.moovOffset = moovOffset;
+    }
+
+    public long getMoovSize() {
+        return moovSize;
+    }
+
+    void setMoovSize(long moovSize) {
+        this.moovSize = moovSize;
+    }
+
+    public long getMdatOffset() {
+        return mdatOffset;
+    }
+
+    void setMdatOffset(long mdatOffset) {
+        this.mdatOffset = mdatOffset;
+    }
+
+    public long getMdatSize() {
+        return mdatSize;
+    }
+
+    void setMdatSize(long mdatSize) {
+        this.mdatSize = mdatSize;
+    }
+
+    public boolean isFragmented() {
+        return fragmented;
+    }
+
+    void setFragmented(boolean fragmented) {
+        this.fragmented = fragmented;
+    }
+
+    public List<Mp4Track> getTracks() {
+        return tracks;
+    }
+}
@@ -0,0 +1,536 @@
+package com.preffy.videoflow.media;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming parser for ISO base media files (MP4, MOV, M4A). Walks the
+ * top-level box headers, seeking past mdat without reading it, and loads only
+ * the moov box into memory. The number of bytes read depends on the number of
+ * top-level boxes and the size of moov, not on the size of the media payload.
+ */
+public final class Mp4Parser {
+
+    /**
+     * Upper bound for an in-memory moov box. Real files with hours of media stay
+     * well under this; anything larger is treated as malformed.
+     */
+    static final int MAX_MOOV_SIZE = 64 * 1024 * 1024;
+
+    private static final int MAX_BOX_HEADER_SIZE = 16;
+
+    private Mp4Parser() {
+    }
+
+    /**
+     * Parse the box structure and track metadata of a file
+     * @throws Mp4FormatException if the source is not an ISO base media file
+     */
+    public static Mp4Movie parse(SeekableSource source) throws IOException {
+        Mp4Movie movie = new Mp4Movie();
+        long fileSize = source.size();
+        movie.setFileSize(fileSize);
+
+        long position = 0;
+        boolean sawMoov = false;
+        while (position + 8 <= fileSize) {
+            Mp4Box box = readBoxHeader(source, position, fileSize);
+            String type = box.type();
+            long boxSize = box.size();
+            int headerSize = box.headerSize();
+            if (position == 0 && !isKnownFirstBox(type)) {
+                throw new Mp4FormatException("Not an ISO base media file (first box '" + type + "')");
+            }
+
+            switch (type) {
+                case "moov" -> {
+                    if (boxSize > MAX_MOOV_SIZE) {
+                        throw new Mp4FormatException("moov box of " + boxSize + " bytes exceeds " + MAX_MOOV_SIZE);
+                    }
+                    ByteBuffer moov = source.read(position + headerSize, (int) (boxSize - headerSize));
+                    if (moov.remaining() != boxSize - headerSize) {
+                        throw new Mp4FormatException("Truncated moov box at " + position);
+                    }
+                    movie.setMoovOffset(position);
+                    movie.setMoovSize(boxSize);
+                    parseMoov(moov, movie);
+                    sawMoov = true;
+                }
+                case "mdat" -> {
+                    if (movie.getMdatOffset() < 0) {
+                        movie.setMdatOffset(position);
+                        movie.setMdatSize(boxSize);
+                    }
+                }
+                case "moof" -> movie.setFragmented(true);
+                default -> {
+                    // ftyp, free, skip, wide, uuid, ...: nothing to extract
+                }
+            }
+
+            // Nothing after moov matters once the payload location is known; this
+            // also avoids walking every fragment header of a fragmented file
+            if (sawMoov && (movie.getMdatOffset() >= 0 || movie.isFragmented())) {
+                break;
+            }
+            position += boxSize;
+        }
+
+        if (!sawMoov) {
+            throw new Mp4FormatException("No moov box found");
+        }
+        return movie;
+    }
+
+    /**
+     * Expand the sample tables of every track of a parsed movie. Needs the
+     * whole moov in memory (as {@link #parse} does) plus a few arrays per
+     * sample, which for hours of media is still only a few MB.
+     * @throws Mp4FormatException if a sample table is inconsistent
+     */
+    public static List<Mp4SampleTable> readSampleTables(SeekableSource source, Mp4Movie movie) throws IOException {
+        List<Mp4SampleTable> tables = new ArrayList<>();
+        forEachChild(readMoov(source, movie), (type, body) -> {
+            if ("trak".equals(type)) {
+                tables.add(parseSampleTable(body));
+            }
+        });
+        return tables;
+    }
+
+    /**
+     * Read the body of the moov box of a parsed movie
+     */
+    public static ByteBuffer readMoov(SeekableSource source, Mp4Movie movie) throws IOException {
+        Mp4Box moovBox = readBoxHeader(source, movie.getMoovOffset(), source.size());
+        ByteBuffer moov = source.read(moovBox.offset() + moovBox.headerSize(), (int) (moovBox.size() - moovBox.headerSize()));
+        if (moov.remaining() != moovBox.size() - moovBox.headerSize()) {
+            throw new Mp4FormatException("Truncated moov box at " + moovBox.offset());
+        }
+        return moov;
+    }
+
+    /**
+     * List the top-level boxes of a file by reading only their headers
+     */
+    public static List<Mp4Box> topLevelBoxes(SeekableSource source) throws IOException {
+        long fileSize = source.size();
+        List<Mp4Box> boxes = new ArrayList<>();
+        long position = 0;
+        while (position + 8 <= fileSize) {
+            Mp4Box box = readBoxHeader(source, position, fileSize);
+            if (position == 0 && !isKnownFirstBox(box.type())) {
+                throw new Mp4FormatException("Not an ISO base media file (first box '" + box.type() + "')");
+            }
+            boxes.add(box);
+            position += box.size();
+        }
+        return boxes;
+    }
+
+    private static Mp4Box readBoxHeader(SeekableSource source, long position, long fileSize) throws IOException {
+        ByteBuffer header = source.read(position, (int) Math.min(MAX_BOX_HEADER_SIZE, fileSize - position));
+        long boxSize = header.getInt() & 0xFFFFFFFFL;
+        String type = fourcc(header);
+        int headerSize = 8;
+        if (boxSize == 1) {
+            if (header.remaining() < 8) {
+                throw new Mp4FormatException("Truncated 64-bit size of box " + type + " at " + position);
+            }
+            boxSize = header.getLong();
+            headerSize = 16;
+        } else if (boxSize == 0) {
+            boxSize = fileSize - position;
+        }
+        if (boxSize < headerSize || boxSize > fileSize - position) {
+            throw new Mp4FormatException("Box " + type + " at " + position + " has invalid size " + boxSize);
+        }
+        return new Mp4Box(type, position, boxSize, headerSize);
+    }
+
+    private static boolean isKnownFirstBox(String type) {
+        return switch (type) {
+            case "ftyp", "moov", "mdat", "free", "skip", "wide", "pnot", "uuid", "styp" -> true;
+            default -> false;
+        };
+    }
+
+    private static void parseMoov(ByteBuffer moov, Mp4Movie movie) throws Mp4FormatException {
+        forEachChild(moov, (type, body) -> {
+            switch (type) {
+                case "mvhd" -> {
+                    int version = fullBoxVersion(body);
+                    if (version == 1) {
+                        body.position(body.position() + 16);
+                        movie.setTimescale(body.getInt() & 0xFFFFFFFFL);
+                        movie.setDuration(body.getLong());
+                    } else {
+                        body.position(body.position() + 8);
+                        movie.setTimescale(body.getInt() & 0xFFFFFFFFL);
+                        movie.setDuration(body.getInt() & 0xFFFFFFFFL);
+                    }
+                }
+                case "trak" -> movie.getTracks().add(parseTrak(body));
+                case "mvex" -> movie.setFragmented(true);
+                default -> {
+                }
+            }
+        });
+    }
+
+    private static Mp4Track parseTrak(ByteBuffer trak) throws Mp4FormatException {
+        Mp4Track track = new Mp4Track();
+        forEachChild(trak, (type, body) -> {
+            switch (type) {
+                case "tkhd" -> parseTkhd(body, track);
+                case "mdia" -> parseMdia(body, track);
+                default -> {
+                }
+            }
+        });
+        return track;
+    }
+
+    private static void parseTkhd(ByteBuffer body, Mp4Track track) {
+        int version = fullBoxVersion(body);
+        if (version == 1) {
+            body.position(body.position() + 16);
+            track.setTrackId(body.getInt());
+            body.position(body.position() + 4 + 8);
+        } else {
+            body.position(body.position() + 8);
+            track.setTrackId(body.getInt());
+            body.position(body.position() + 4 + 4);
+        }
+        // reserved(8) layer(2) alternate_group(2) volume(2) reserved(2) matrix(36)
+        body.position(body.position() + 52);
+        // Presentation size as 16.16 fixed point; the sample entry size is the fallback
+        track.setWidth(body.getInt() >>> 16);
+        track.setHeight(body.getInt() >>> 16);
+    }
+
+    private static void parseMdia(ByteBuffer mdia, Mp4Track track) throws Mp4FormatException {
+        forEachChild(mdia, (type, body) -> {
+            switch (type) {
+                case "mdhd" -> {
+                    int version = fullBoxVersion(body);
+                    if (version == 1) {
+                        body.position(body.position() + 16);
+                        track.setTimescale(body.getInt() & 0xFFFFFFFFL);
+                        track.setDuration(body.getLong());
+                    } else {
+                        body.position(body.position() + 8);
+                        track.setTimescale(body.getInt() & 0xFFFFFFFFL);
+                        track.setDuration(body.getInt() & 0xFFFFFFFFL);
+                    }
+                }
+                case "hdlr" -> {
+                    fullBoxVersion(body);
+                    body.position(body.position() + 4);
+                    track.setHandlerType(fourcc(body));
+                }
+                case "minf" -> forEachChild(body, (minfType, minfBody) -> {
+                    if ("stbl".equals(minfType)) {
+                        parseStbl(minfBody, track);
+                    }
+                });
+                default -> {
+                }
+            }
+        });
+    }
+
+    private static void parseStbl(ByteBuffer stbl, Mp4Track track) throws Mp4FormatException {
+        forEachChild(stbl, (type, body) -> {
+            switch (type) {
+                case "stsd" -> {
+                    fullBoxVersion(body);
+                    int entryCount = body.getInt();
+                    if (entryCount > 0 && body.remaining() >= 8) {
+                        int entryStart = body.position();
+                        body.getInt();
+                        track.setCodec(fourcc(body));
+                        // VisualSampleEntry: SampleEntry(8) pre_defined/reserved(16) width(2) height(2)
+                        if (body.remaining() >= 28 && (track.getWidth() == 0 || track.getHeight() == 0)
+                                && Mp4Track.HANDLER_VIDEO.equals(track.getHandlerType())) {
+                            body.position(entryStart + 8 + 24);
+                            track.setWidth(body.getShort() & 0xFFFF);
+                            track.setHeight(body.getShort() & 0xFFFF);
+                        }
+                    }
+                }
+                case "stsz", "stz2" -> {
+                    fullBoxVersion(body);
+                    body.getInt();
+                    track.setSampleCount(body.getInt() & 0xFFFFFFFFL);
+                }
+                case "stts" -> {
+                    if (track.getSampleCount() == 0) {
+                        fullBoxVersion(body);
+                        long entryCount = body.getInt() & 0xFFFFFFFFL;
+                        long samples = 0;
+                        for (long i = 0; i < entryCount && body.remaining() >= 8; i++) {
+                            samples += body.getInt() & 0xFFFFFFFFL;
+                            body.getInt();
+                        }
+                        track.setSampleCount(samples);
+                    }
+                }
+                default -> {
+                }
+            }
+        });
+    }
+
+    private static Mp4SampleTable parseSampleTable(ByteBuffer trak) throws Mp4FormatException {
+        Mp4Track track = parseTrak(trak.duplicate());
+        ByteBuffer[] stbl = new ByteBuffer[1];
+        forEachChild(trak, (type, body) -> {
+            if ("mdia".equals(type)) {
+                forEachChild(body, (mdiaType, mdiaBody) -> {
+                    if ("minf".equals(mdiaType)) {
+                        forEachChild(mdiaBody, (minfType, minfBody) -> {
+                            if ("stbl".equals(minfType)) {
+                                stbl[0] = minfBody;
+                            }
+                        });
+                    }
+                });
+            }
+        });
+        if (stbl[0] == null) {
+            throw new Mp4FormatException("Track " + track.getTrackId() + " has no sample table");
+        }
+
+        SampleBoxes boxes = new SampleBoxes();
+        forEachChild(stbl[0], (type, body) -> {
+            switch (type) {
+                case "stsz" -> boxes.sizes = readStsz(body);
+                case "stz2" -> boxes.sizes = readStz2(body);
+                case "stco" -> boxes.chunkOffsets = readChunkOffsets(body, false);
+                case "co64" -> boxes.chunkOffsets = readChunkOffsets(body, true);
+                case "stsc" -> boxes.stsc = body;
+                case "stts" -> boxes.stts = body;
+                case "ctts" -> boxes.ctts = body;
+                case "stss" -> boxes.stss = body;
+                default -> {
+                }
+            }
+        });
+        if (boxes.sizes == null || boxes.chunkOffsets == null || boxes.stsc == null || boxes.stts == null) {
+            throw new Mp4FormatException("Track " + track.getTrackId() + " is missing sample table boxes");
+        }
+
+        int sampleCount = boxes.sizes.length;
+        try {
+            long[] offsets = sampleOffsets(boxes.stsc, boxes.chunkOffsets, boxes.sizes);
+            int[] durations = new int[sampleCount];
+            long[] decodeTimes = new long[sampleCount];
+            expandTimeToSample(boxes.stts, durations, decodeTimes);
+            int[] compositionOffsets = boxes.ctts != null ? expandCompositionOffsets(boxes.ctts, sampleCount) : null;
+            boolean[] sync = boxes.stss != null ? expandSyncSamples(boxes.stss, sampleCount) : null;
+            return new Mp4SampleTable(track, trak.duplicate(), offsets, boxes.sizes, decodeTimes, durations,
+                    compositionOffsets, sync);
+        } catch (RuntimeException e) {
+            throw new Mp4FormatException("Malformed sample table of track " + track.getTrackId() + ": " + e);
+        }
+    }
+
+    private static class SampleBoxes {
+        int[] sizes;
+        long[] chunkOffsets;
+        ByteBuffer stsc;
+        ByteBuffer stts;
+        ByteBuffer ctts;
+        ByteBuffer stss;
+    }
+
+    private static int[] readStsz(ByteBuffer body) throws Mp4FormatException {
+        fullBoxVersion(body);
+        int sampleSize = body.getInt();
+        int count = entryCount(body, sampleSize == 0 ? 4 : 0);
+        int[] sizes = new int[count];
+        for (int i = 0; i < count; i++) {
+            sizes[i] = sampleSize != 0 ? sampleSize : body.getInt();
+        }
+        return sizes;
+    }
+
+    private static int[] readStz2(ByteBuffer body) throws Mp4FormatException {
+        fullBoxVersion(body);
+        int fieldSize = body.getInt() & 0xFF;
+        long count = body.getInt() & 0xFFFFFFFFL;
+        if (fieldSize != 4 && fieldSize != 8 && fieldSize != 16) {
+            throw new Mp4FormatException("Unsupported stz2 field size " + fieldSize);
+        }
+        if (count * fieldSize > body.remaining() * 8L) {
+            throw new Mp4FormatException("stz2 with " + count + " entries overruns its box");
+        }
+        int[] sizes = new int[(int) count];
+        for (int i = 0; i < count; i++) {
+            sizes[i] = switch (fieldSize) {
+                case 4 -> {
+                    int packed = body.get(body.position() + i / 2) & 0xFF;
+                    yield i % 2 == 0 ? packed >>> 4 : packed & 0x0F;
+                }
+                case 8 -> body.get() & 0xFF;
+                default -> body.getShort() & 0xFFFF;
+            };
+        }
+        return sizes;
+    }
+
+    private static long[] readChunkOffsets(ByteBuffer body, boolean wide) throws Mp4FormatException {
+        fullBoxVersion(body);
+        int count = entryCount(body, wide ? 8 : 4);
+        long[] offsets = new long[count];
+        for (int i = 0; i < count; i++) {
+            offsets[i] = wide ? body.getLong() : body.getInt() & 0xFFFFFFFFL;
+        }
+        return offsets;
+    }
+
+    /**
+     * Read an entry count and check that the entries fit in the rest of the box
+     */
+    private static int entryCount(ByteBuffer body, int entrySize) throws Mp4FormatException {
+        long count = body.getInt() & 0xFFFFFFFFL;
+        if (count * entrySize > body.remaining() || count > Integer.MAX_VALUE) {
+            throw new Mp4FormatException("Table with " + count + " entries overruns its box");
+        }
+        return (int) count;
+    }
+
+    /**
+     * Walk chunks in order, handing each the number of samples stsc assigns to it
+     */
+    private static long[] sampleOffsets(ByteBuffer stsc, long[] chunkOffsets, int[] sizes) throws Mp4FormatException {
+        fullBoxVersion(stsc);
+        int entries = entryCount(stsc, 12);
+        long[] offsets = new long[sizes.length];
+        int sample = 0;
+        for (int entry = 0; entry < entries && sample < sizes.length; entry++) {
+            int firstChunk = stsc.getInt(8 + entry * 12) - 1;
+            int samplesPerChunk = stsc.getInt(8 + entry * 12 + 4);
+            int lastChunk = entry + 1 < entries ? stsc.getInt(8 + (entry + 1) * 12) - 1 : chunkOffsets.length;
+            for (int chunk = firstChunk; chunk < lastChunk && chunk < chunkOffsets.length; chunk++) {
+                long offset = chunkOffsets[chunk];
+                for (int i = 0; i < samplesPerChunk && sample < sizes.length; i++) {
+                    offsets[sample] = offset;
+                    offset += sizes[sample];
+                    sample++;
+                }
+            }
+        }
+        if (sample != sizes.length) {
+            throw new Mp4FormatException("Chunks hold " + sample + " of " + sizes.length + " samples");
+        }
+        return offsets;
+    }
+
+    private static void expandTimeToSample(ByteBuffer stts, int[] durations, long[] decodeTimes) throws Mp4FormatException {
+        fullBoxVersion(stts);
+        int entries = entryCount(stts, 8);
+        int sample = 0;
+        long time = 0;
+        for (int entry = 0; entry < entries && sample < durations.length; entry++) {
+            long count = stts.getInt() & 0xFFFFFFFFL;
+            int delta = stts.getInt();
+            for (long i = 0; i < count && sample < durations.length; i++) {
+                durations[sample] = delta;
+                decodeTimes[sample] = time;
+                time += delta & 0xFFFFFFFFL;
+                sample++;
+            }
+        }
+        if (sample != durations.length) {
+            throw new Mp4FormatException("stts covers " + sample + " of " + durations.length + " samples");
+        }
+    }
+
+    private static int[] expandCompositionOffsets(ByteBuffer ctts, int sampleCount) throws Mp4FormatException {
+        // Version 0 offsets are unsigned, version 1 signed; real values fit in an int either way
+        fullBoxVersion(ctts);
+        int entries = entryCount(ctts, 8);
+        int[] offsets = new int[sampleCount];
+        int sample = 0;
+        for (int entry = 0; entry < entries && sample < sampleCount; entry++) {
+            long count = ctts.getInt() & 0xFFFFFFFFL;
+            int offset = ctts.getInt();
+            for (long i = 0; i < count && sample < sampleCount; i++) {
+                offsets[sample++] = offset;
+            }
+        }
+        return offsets;
+    }
+
+    private static boolean[] expandSyncSamples(ByteBuffer stss, int sampleCount) throws Mp4FormatException {
+        fullBoxVersion(stss);
+        int entries = entryCount(stss, 4);
+        boolean[] sync = new boolean[sampleCount];
+        for (int i = 0; i < entries; i++) {
+            long sample = (stss.getInt() & 0xFFFFFFFFL) - 1;
+            if (sample >= 0 && sample < sampleCount) {
+                sync[(int) sample] = true;
+            }
+        }
+        return sync;
+    }
+
+    @FunctionalInterface
+    interface BoxHandler {
+        void handle(String type, ByteBuffer body) throws Mp4FormatException;
+    }
+
+    /**
+     * Call the handler for each box directly inside a container body. Each body
+     * is handed over as its own slice, so handlers cannot read past their box.
+     */
+    static void forEachChild(ByteBuffer container, BoxHandler handler) throws Mp4FormatException {
+        ByteBuffer buffer = container.duplicate();
+        while (buffer.remaining() >= 8) {
+            int start = buffer.position();
+            long size = buffer.getInt() & 0xFFFFFFFFL;
+            String type = fourcc(buffer);
+            int headerSize = 8;
+            if (size == 1) {
+                if (buffer.remaining() < 8) {
+                    throw new Mp4FormatException("Truncated 64-bit size of box " + type);
+                }
+                size = buffer.getLong();
+                headerSize = 16;
+            } else if (size == 0) {
+                size = buffer.limit() - start;
+            }
+            if (size < headerSize || size > buffer.limit() - start) {
+                throw new Mp4FormatException("Box " + type + " overruns its parent");
+            }
+
+            ByteBuffer body = buffer.duplicate().limit(start + (int) size).position(start + headerSize).slice();
+            try {
+                handler.handle(type, body);
+            } catch (RuntimeException e) {
+                // BufferUnderflowException and friends from a box shorter than its fields
+                throw new Mp4FormatException("Malformed " + type + " box: " + e);
+            }
+            buffer.position(start + (int) size);
+        }
+    }
+
+    /**
+     * Read the version and flags of a full box, leaving the buffer after them
+     */
+    static int fullBoxVersion(ByteBuffer body) {
+        int versionAndFlags = body.getInt();
+        return versionAndFlags >>> 24;
+    }
+
+    static String fourcc(ByteBuffer buffer) {
+        byte[] type = new byte[4];
+        buffer.get(type);
+        return new String(type, StandardCharsets.ISO_8859_1);
+    }
+}
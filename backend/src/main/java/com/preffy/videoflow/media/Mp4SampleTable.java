@@ -0,0 +1,111 @@
+package com.preffy.videoflow.media;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Per-sample index of one track, expanded from the stbl boxes: where each
+ * sample lives in the file, how big it is, when it is decoded and presented,
+ * and whether it is a sync sample (keyframe). The raw trak box is kept so the
+ * track can be re-described in a fragmented file.
+ */
+public class Mp4SampleTable {
+
+    private final Mp4Track track;
+    private final ByteBuffer trak;
+    private final long[] offsets;
+    private final int[] sizes;
+    private final long[] decodeTimes;
+    private final int[] durations;
+    private final int[] compositionOffsets;
+    private final boolean[] sync;
+
+    Mp4SampleTable(Mp4Track track, ByteBuffer trak, long[] offsets, int[] sizes, long[] decodeTimes,
+                   int[] durations, int[] compositionOffsets, boolean[] sync) {
+        this.track = track;
+        this.trak = trak;
+        this.offsets = offsets;
+        this.sizes = sizes;
+        this.decodeTimes = decodeTimes;
+        this.durations = durations;
+        this.compositionOffsets = compositionOffsets;
+        this.sync = sync;
+    }
+
+    public Mp4Track getTrack() {
+        return track;
+    }
+
+    /**
+     * Body of the original trak box (read-only view)
+     */
+    public ByteBuffer getTrak() {
+        return trak.asReadOnlyBuffer();
+    }
+
+    public int getSampleCount() {
+        return sizes.length;
+    }
+
+    public long getOffset(int sample) {
+        return offsets[sample];
+    }
+
+    public int getSize(int sample) {
+        return sizes[sample];
+    }
+
+    /**
+     * Decode time in track timescale units
+     */
+    public long getDecodeTime(int sample) {
+        return decodeTimes[sample];
+    }
+
+    public int getDuration(int sample) {
+        return durations[sample];
+    }
+
+    /**
+     * Presentation minus decode time, 0 when the track has no ctts box
+     */
+    public int getCompositionOffset(int sample) {
+        return compositionOffsets == null ? 0 : compositionOffsets[sample];
+    }
+
+    public boolean hasCompositionOffsets() {
+        return compositionOffsets != null;
+    }
+
+    /**
+     * True for sync samples; every sample is a sync sample when the track has no stss box
+     */
+    public boolean isSync(int sample) {
+        return sync == null || sync[sample];
+    }
+
+    /**
+     * Decode time just past the last sample
+     */
+    public long getEndTime() {
+        int last = sizes.length - 1;
+        return last < 0 ? 0 : decodeTimes[last] + durations[last];
+    }
+
+    /**
+     * Index of the first sample decoded at or after the given time, or the
+     * sample count if there is none
+     */
+    public int firstSampleAtOrAfter(long decodeTime) {
+        int low = 0;
+        int high = decodeTimes.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (decodeTimes[mid] < decodeTime) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,109 @@
+package com.preffy.videoflow.media;
+
+/**
+ * One track of an MP4/MOV file as described by its trak box
+ */
+public class Mp4Track {
+
+    public static final String HANDLER_VIDEO = "vide";
+    public static final String HANDLER_AUDIO = "soun";
+
+    private int trackId;
+    private String handlerType;
+    private long timescale;
+    private long duration;
+    private int width;
+    private int height;
+    private String codec;
+    private long sampleCount;
+
+    public boolean isVideo() {
+        return HANDLER_VIDEO.equals(handlerType);
+    }
+
+    public boolean isAudio() {
+        return HANDLER_AUDIO.equals(handlerType);
+    }
+
+    /**
+     * Track duration in seconds, from the media header
+     */
+    public double getDurationSeconds() {
+        return timescale > 0 ? (double) duration / timescale : 0;
+    }
+
+    /**
+     * Average samples per second; for video tracks, the frame rate
+     */
+    public double getSampleRate() {
+        double seconds = getDurationSeconds();
+        return seconds > 0 ? sampleCount / seconds : 0;
+    }
+
+    public int getTrackId() {
+        return trackId;
+    }
+
+    void setTrackId(int trackId) {
+        this.trackId = trackId;
+    }
+
+    public String getHandlerType() {
+        return handlerType;
+    }
+
+    void setHandlerType(String handlerType) {
+        this.handlerType = handlerType;
+    }
+
+    public long getTimescale() {
+        return timescale;
+    }
+
+    void setTimescale(long timescale) {
+        this.timescale = timescale;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    void setWidth(int width) {
+        this.width = width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    void setHeight(int height) {
+        this.height = height;
+    }
+
+    /**
+     * Sample entry format of the first stsd entry, e.g. avc1, hvc1, mp4a
+     */
+    public String getCodec() {
+        return codec;
+    }
+
+    void setCodec(String codec) {
+        this.codec = codec;
+    }
+
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    void setSampleCount(long sampleCount) {
+        this.sampleCount = sampleCount;
+    }
+}
@@ -0,0 +1,120 @@
+package com.preffy.videoflow.media;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a progressive MP4 into keyframe-aligned time windows and writes each
+ * window as a standalone fragmented MP4, so independent workers can analyze
+ * parts of a long video in parallel. Windows are addressed by video frame
+ * (sample) numbers of the original file, which lets per-window results be
+ * shifted back onto the original timeline exactly.
+ */
+public final class Mp4Windows {
+
+    public static final String CONTENT_TYPE = "video/mp4";
+
+    private Mp4Windows() {
+    }
+
+    /**
+     * One window of the video track
+     * @param firstFrame First frame, a sync sample
+     * @param endFrame Frame after the last one, a sync sample or the frame count
+     * @param startSeconds Decode time of the first frame
+     * @param endSeconds Decode time just past the last frame
+     */
+    public record Window(int firstFrame, int endFrame, double startSeconds, double endSeconds) {
+    }
+
+    /**
+     * Split the video track into at most {@code maxWindows} windows of at least
+     * {@code minWindowSeconds}, each starting at a keyframe. Long GOPs can yield
+     * fewer windows than asked for.
+     * @throws Mp4FormatException if the file has no video track to split
+     */
+    public static List<Window> plan(SeekableSource source, int maxWindows, double minWindowSeconds) throws IOException {
+        Mp4SampleTable video = videoTrack(HlsPackager.packageableTracks(source, Mp4Parser.parse(source)));
+        double timescale = video.getTrack().getTimescale();
+        double totalSeconds = (video.getEndTime() - video.getDecodeTime(0)) / timescale;
+        int windowCount = (int) Math.max(1, Math.min(maxWindows, Math.floor(totalSeconds / minWindowSeconds)));
+
+        int[] boundaries = HlsPackager.segmentBoundaries(video, totalSeconds / windowCount);
+        List<Window> windows = new ArrayList<>(boundaries.length);
+        for (int i = 0; i < boundaries.length; i++) {
+            boolean last = i + 1 == boundaries.length;
+            int endFrame = last ? video.getSampleCount() : boundaries[i + 1];
+            long endTime = last ? video.getEndTime() : video.getDecodeTime(endFrame);
+            windows.add(new Window(boundaries[i], endFrame, video.getDecodeTime(boundaries[i]) / timescale,
+                    endTime / timescale));
+        }
+        return windows;
+    }
+
+    /**
+     * Write frames [firstFrame, endFrame) of the video track, plus the other
+     * tracks' samples decoded in the same time range, as init segment + moof/mdat
+     * fragments of about {@code fragmentSeconds}
+     * @return the number of bytes written
+     * @throws Mp4FormatException if the frame range does not start at a keyframe
+     *                            and end at one or at the end of the track
+     */
+    public static long write(SeekableSource source, int firstFrame, int endFrame, double fragmentSeconds,
+                             WritableByteChannel target) throws IOException {
+        Mp4Movie movie = Mp4Parser.parse(source);
+        List<Mp4SampleTable> tracks = HlsPackager.packageableTracks(source, movie);
+        Mp4SampleTable video = videoTrack(tracks);
+        int frameCount = video.getSampleCount();
+        if (firstFrame < 0 || firstFrame >= endFrame || endFrame > frameCount
+                || !video.isSync(firstFrame) || (endFrame < frameCount && !video.isSync(endFrame))) {
+            throw new Mp4FormatException("Frames " + firstFrame + "-" + endFrame + " are not a keyframe-aligned window");
+        }
+
+        long written = writeFully(target, HlsPackager.initSegment(source, movie, tracks));
+
+        long timescale = video.getTrack().getTimescale();
+        long fragmentTarget = Math.max(1, Math.round(fragmentSeconds * timescale));
+        int[] next = new int[tracks.size()];
+        long startTime = video.getDecodeTime(firstFrame);
+        for (int t = 0; t < tracks.size(); t++) {
+            Mp4SampleTable table = tracks.get(t);
+            next[t] = table.firstSampleAtOrAfter(HlsPackager.rescale(startTime, timescale, table.getTrack().getTimescale()));
+        }
+
+        int sequenceNumber = 1;
+        int fragmentStart = firstFrame;
+        for (int frame = firstFrame + 1; frame <= endFrame; frame++) {
+            boolean windowEnd = frame == endFrame;
+            if (!windowEnd && !(video.isSync(frame)
+                    && video.getDecodeTime(frame) - video.getDecodeTime(fragmentStart) >= fragmentTarget)) {
+                continue;
+            }
+            // The window that ends the track also takes trailing audio
+            long endTime = windowEnd && endFrame == frameCount ? -1 : video.getDecodeTime(frame);
+            int[][] ranges = HlsPackager.fragmentRanges(tracks, next, endTime);
+            written += writeFully(target, HlsPackager.mediaSegment(source, tracks, ranges, sequenceNumber++));
+            fragmentStart = frame;
+        }
+        return written;
+    }
+
+    private static Mp4SampleTable videoTrack(List<Mp4SampleTable> tracks) throws Mp4FormatException {
+        // Video sorts first
+        Mp4SampleTable first = tracks.get(0);
+        if (!first.getTrack().isVideo()) {
+            throw new Mp4FormatException("No video track");
+        }
+        return first;
+    }
+
+    private static long writeFully(WritableByteChannel target, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+        return bytes.length;
+    }
+}
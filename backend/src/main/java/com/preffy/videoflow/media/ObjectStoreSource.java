@@ -0,0 +1,49 @@
+package com.preffy.videoflow.media;
+
+import com.preffy.videoflow.storage.ObjectMetadata;
+import com.preffy.videoflow.storage.ObjectStore;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * {@link SeekableSource} over a stored object; every read is a ranged read
+ */
+public class ObjectStoreSource implements SeekableSource {
+
+    private final ObjectStore objectStore;
+    private final ObjectMetadata metadata;
+
+    public ObjectStoreSource(ObjectStore objectStore, ObjectMetadata metadata) {
+        this.objectStore = objectStore;
+        this.metadata = metadata;
+    }
+
+    @Override
+    public long size() {
+        return metadata.getSize();
+    }
+
+    @Override
+    public ByteBuffer read(long position, int length) throws IOException {
+        int available = (int) Math.max(0, Math.min(length, metadata.getSize() - position));
+        try (InputStream in = objectStore.getRange(metadata.getKey(), position, available)) {
+            return ByteBuffer.wrap(in.readNBytes(available));
+        }
+    }
+
+    @Override
+    public void transferTo(long position, long length, WritableByteChannel target) throws IOException {
+        // One ranged read for the whole span instead of one per chunk
+        try (InputStream in = objectStore.getRange(metadata.getKey(), position, length)) {
+            long copied = in.transferTo(Channels.newOutputStream(target));
+            if (copied != length) {
+                throw new EOFException("Read " + copied + " of " + length + " bytes at " + position + " of " + metadata.getKey());
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.preffy.videoflow.media;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Reads a batch of samples with as few source reads as possible. Samples are
+ * visited in file order and neighbours closer than {@link #MAX_READ_GAP} are
+ * fetched with one read, so interleaved audio and video chunks usually cost a
+ * single ranged read per batch.
+ */
+final class SampleReader {
+
+    static final long MAX_READ_GAP = 64 * 1024;
+
+    /**
+     * Upper bound for a single read, so a sparse batch does not pull in a large
+     * stretch of unrelated data
+     */
+    static final long MAX_READ_SIZE = 16 * 1024 * 1024;
+
+    private SampleReader() {
+    }
+
+    @FunctionalInterface
+    interface SampleConsumer {
+        /**
+         * @param index Position of the sample in the batch
+         * @param data The sample's bytes; only valid during the call
+         */
+        void accept(int index, ByteBuffer data) throws IOException;
+    }
+
+    /**
+     * Read the samples at the given offsets and sizes, handing each to the
+     * consumer in file order
+     */
+    static void read(SeekableSource source, long[] offsets, int[] sizes, SampleConsumer consumer) throws IOException {
+        Integer[] order = new Integer[offsets.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> offsets[i]));
+
+        int runStart = 0;
+        while (runStart < order.length) {
+            long readStart = offsets[order[runStart]];
+            long readEnd = readStart + sizes[order[runStart]];
+            int runEnd = runStart + 1;
+            while (runEnd < order.length) {
+                long offset = offsets[order[runEnd]];
+                long end = Math.max(readEnd, offset + sizes[order[runEnd]]);
+                if (offset - readEnd > MAX_READ_GAP || end - readStart > MAX_READ_SIZE) {
+                    break;
+                }
+                readEnd = end;
+                runEnd++;
+            }
+
+            ByteBuffer run = source.read(readStart, (int) (readEnd - readStart));
+            if (run.remaining() != readEnd - readStart) {
+                throw new Mp4FormatException("Sample data at " + readStart + " is past the end of the file");
+            }
+            for (int i = runStart; i < runEnd; i++) {
+                int sample = order[i];
+                int start = (int) (offsets[sample] - readStart);
+                consumer.accept(sample, run.duplicate().limit(start + sizes[sample]).position(start).slice());
+            }
+            runStart = runEnd;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.preffy.videoflow.media;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Sync-sample timestamps and byte offsets of one track, the minimum needed to
+ * seek without parsing the container: a player or ranged request starting at
+ * {@link #getOffset} begins at a decodable keyframe.
+ * <p>
+ * Binary form, big-endian: magic {@code VFSI}, version (int), timescale (int),
+ * entry count (int), then the presentation times (long[]) followed by the
+ * byte offsets (long[]). Two flat arrays keep a one-hour video with a keyframe
+ * every two seconds at about 28 KB.
+ */
+public final class SeekIndex {
+
+    public static final String CONTENT_TYPE = "application/octet-stream";
+
+    private static final int MAGIC = 0x56465349;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    private final int timescale;
+    private final long[] times;
+    private final long[] offsets;
+
+    private SeekIndex(int timescale, long[] times, long[] offsets) {
+        this.timescale = timescale;
+        this.times = times;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Index the sync samples of a track. Times are presentation times, so they
+     * line up with the player's clock when the track has composition offsets.
+     */
+    public static SeekIndex build(Mp4SampleTable table) throws Mp4FormatException {
+        long timescale = table.getTrack().getTimescale();
+        if (timescale <= 0 || timescale > Integer.MAX_VALUE) {
+            throw new Mp4FormatException("Invalid timescale " + timescale);
+        }
+        int count = 0;
+        for (int i = 0; i < table.getSampleCount(); i++) {
+            if (table.isSync(i)) {
+                count++;
+            }
+        }
+
+        long[] times = new long[count];
+        long[] offsets = new long[count];
+        int entry = 0;
+        for (int i = 0; i < table.getSampleCount(); i++) {
+            if (table.isSync(i)) {
+                times[entry] = table.getDecodeTime(i) + table.getCompositionOffset(i);
+                offsets[entry] = table.getOffset(i);
+                entry++;
+            }
+        }
+        return new SeekIndex((int) timescale, times, offsets);
+    }
+
+    /**
+     * Index the video track of a parsed movie, or its first audio track if it
+     * has no video
+     * @throws Mp4FormatException if the movie has neither
+     */
+    public static SeekIndex build(SeekableSource source, Mp4Movie movie) throws IOException {
+        Mp4SampleTable audio = null;
+        for (Mp4SampleTable table : Mp4Parser.readSampleTables(source, movie)) {
+            if (table.getSampleCount() == 0) {
+                continue;
+            }
+            if (table.getTrack().isVideo()) {
+                return build(table);
+            }
+            if (audio == null && table.getTrack().isAudio()) {
+                audio = table;
+            }
+        }
+        if (audio == null) {
+            throw new Mp4FormatException("No audio or video track to index");
+        }
+        return build(audio);
+    }
+
+    public byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + times.length * 16)
+                .putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(timescale)
+                .putInt(times.length);
+        buffer.asLongBuffer().put(times).put(offsets);
+        return buffer.array();
+    }
+
+    public static SeekIndex fromBytes(byte[] bytes) throws Mp4FormatException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (bytes.length < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new Mp4FormatException("Not a seek index");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new Mp4FormatException("Unsupported seek index version " + version);
+        }
+        int timescale = buffer.getInt();
+        int count = buffer.getInt();
+        if (timescale <= 0 || count < 0 || (long) count * 16 != buffer.remaining()) {
+            throw new Mp4FormatException("Corrupt seek index");
+        }
+        long[] times = new long[count];
+        long[] offsets = new long[count];
+        buffer.asLongBuffer().get(times).get(offsets);
+        return new SeekIndex(timescale, times, offsets);
+    }
+
+    public int size() {
+        return times.length;
+    }
+
+    public int getTimescale() {
+        return timescale;
+    }
+
+    public double getTimeSeconds(int entry) {
+        return (double) times[entry] / timescale;
+    }
+
+    public long getOffset(int entry) {
+        return offsets[entry];
+    }
+
+    /**
+     * The last keyframe at or before a playback position; the first keyframe for
+     * positions before it
+     * @return the entry index, or -1 if the index is empty
+     */
+    public int entryAtOrBefore(double seconds) {
+        if (times.length == 0) {
+            return -1;
+        }
+        long time = (long) Math.floor(seconds * timescale);
+        // Presentation times of keyframes ascend, even with B-frame reordering
+        int low = 0;
+        int high = times.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (times[mid] <= time) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,47 @@
+package com.preffy.videoflow.media;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Random-access view of a media file. Parsers read box headers and index boxes
+ * at known offsets and skip everything else, so a source backed by ranged
+ * object-store reads never transfers the media payload.
+ */
+public interface SeekableSource extends Closeable {
+
+    int TRANSFER_CHUNK_SIZE = 1024 * 1024;
+
+    long size() throws IOException;
+
+    /**
+     * Read {@code length} bytes starting at {@code position}. The returned buffer
+     * is positioned at zero and only comes back short at the end of the source.
+     */
+    ByteBuffer read(long position, int length) throws IOException;
+
+    /**
+     * Copy {@code length} bytes starting at {@code position} to a channel.
+     * Sources override this to stream without staging the range in memory.
+     */
+    default void transferTo(long position, long length, WritableByteChannel target) throws IOException {
+        long end = position + length;
+        while (position < end) {
+            ByteBuffer chunk = read(position, (int) Math.min(TRANSFER_CHUNK_SIZE, end - position));
+            if (!chunk.hasRemaining()) {
+                throw new EOFException("Source ended at " + position + " of " + end);
+            }
+            position += chunk.remaining();
+            while (chunk.hasRemaining()) {
+                target.write(chunk);
+            }
+        }
+    }
+
+    @Override
+    default void close() throws IOException {
+    }
+}
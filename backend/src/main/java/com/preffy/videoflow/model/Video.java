@@ -4,7 +4,10 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "videos")
+@Table(name = "videos", indexes = {
+    @Index(name = "idx_videos_filename", columnList = "filename", unique = true),
+    @Index(name = "idx_videos_content_hash", columnList = "content_hash")
+})
 public class Video {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -28,6 +31,17 @@ public class Video {
     @Column(nullable = false)
     private String storageUrl;
 
+    // SHA-256 of the content; videos with the same hash share one StoredBlob
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    @Column(name = "storage_key")
+    private String storageKey;
+
+    // HLS playlist of the fragmented MP4 rendition, set once packaging has finished
+    @Column(name = "hls_url")
+    private String hlsUrl;
+
     @Column(nullable = false)
     private Integer duration; // in seconds
 
@@ -37,6 +51,15 @@ public class Video {
     @Column
     private Integer height;
 
+    @Column(length = 32)
+    private String codec;
+
+    @Column(name = "frame_rate")
+    private Double frameRate;
+
+    @Column
+    private Long bitrate; // bits per second
+
     @Column(name = "created_at", nullable = false)
     private LocalDateTime createdAt;
 
@@ -120,6 +143,30 @@ public class Video {
         this.storageUrl = storageUrl;
     }
 
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public String getStorageKey() {
+        return storageKey;
+    }
+
+    public void setStorageKey(String storageKey) {
+        this.storageKey = storageKey;
+    }
+
+    public String getHlsUrl() {
+        return hlsUrl;
+    }
+
+    public void setHlsUrl(String hlsUrl) {
+        this.hlsUrl = hlsUrl;
+    }
+
     public Integer getDuration() {
         return duration;
     }
@@ -144,6 +191,30 @@ public class Video {
         this.height = height;
     }
 
+    public String getCodec() {
+        return codec;
+    }
+
+    public void setCodec(String codec) {
+        this.codec = codec;
+    }
+
+    public Double getFrameRate() {
+        return frameRate;
+    }
+
+    public void setFrameRate(Double frameRate) {
+        this.frameRate = frameRate;
+    }
+
+    public Long getBitrate() {
+        return bitrate;
+    }
+
+    public void setBitrate(Long bitrate) {
+        this.bitrate = bitrate;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
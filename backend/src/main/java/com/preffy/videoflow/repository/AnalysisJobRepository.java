@@ -0,0 +1,80 @@
+package com.preffy.videoflow.repository;
+
+import com.preffy.videoflow.entity.AnalysisJob;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface AnalysisJobRepository extends JpaRepository<AnalysisJob, Long> {
+
+    /**
+     * Lock a batch of jobs that are due or whose lease has expired. Lock
+     * timeout -2 is Hibernate's SKIP_LOCKED: rows another worker is claiming
+     * are skipped rather than waited for, so instances never contend on the
+     * same jobs (FOR UPDATE SKIP LOCKED on MySQL 8; dialects without it fall
+     * back to a plain FOR UPDATE).
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("select j from AnalysisJob j where (j.status = :pending and j.runAfter <= :now)"
+            + " or (j.status = :running and j.leaseExpiresAt < :now) order by j.runAfter")
+    List<AnalysisJob> findClaimable(@Param("pending") AnalysisJob.JobStatus pending,
+                                    @Param("running") AnalysisJob.JobStatus running,
+                                    @Param("now") LocalDateTime now,
+                                    Pageable page);
+
+    /**
+     * Lock a running job for a state change by its lease owner. Reads the
+     * current row (FOR UPDATE), so a job another instance reclaimed, or is
+     * reclaiming, is not returned to the old owner.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select j from AnalysisJob j where j.id = :id and j.leaseOwner = :owner and j.status = :running")
+    Optional<AnalysisJob> findOwnedForUpdate(@Param("id") Long id,
+                                             @Param("owner") String owner,
+                                             @Param("running") AnalysisJob.JobStatus running);
+
+    @Transactional
+    @Modifying
+    @Query("update AnalysisJob j set j.leaseExpiresAt = :expiresAt"
+            + " where j.id in :ids and j.leaseOwner = :owner and j.status = :running")
+    int extendLeases(@Param("ids") Collection<Long> ids,
+                     @Param("owner") String owner,
+                     @Param("running") AnalysisJob.JobStatus running,
+                     @Param("expiresAt") LocalDateTime expiresAt);
+
+    long countByStatus(AnalysisJob.JobStatus status);
+
+    Optional<AnalysisJob> findFirstByTypeAndDedupeKeyAndStatusIn(AnalysisJob.JobType type, String dedupeKey,
+                                                                  Collection<AnalysisJob.JobStatus> statuses);
+
+    boolean existsByRunningKey(String runningKey);
+
+    /**
+     * Drop pending jobs of a type for some work. A conditional update, so a
+     * job another instance claims meanwhile is left running.
+     */
+    @Transactional
+    @Modifying
+    @Query("update AnalysisJob j set j.status = :superseded, j.updatedAt = :now"
+            + " where j.type = :type and j.dedupeKey = :dedupeKey and j.status = :pending")
+    int supersede(@Param("type") AnalysisJob.JobType type,
+                  @Param("dedupeKey") String dedupeKey,
+                  @Param("pending") AnalysisJob.JobStatus pending,
+                  @Param("superseded") AnalysisJob.JobStatus superseded,
+                  @Param("now") LocalDateTime now);
+}
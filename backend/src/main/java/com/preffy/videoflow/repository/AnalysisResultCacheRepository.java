@@ -0,0 +1,36 @@
+package com.preffy.videoflow.repository;
+
+import com.preffy.videoflow.entity.AnalysisResultCacheEntry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface AnalysisResultCacheRepository extends JpaRepository<AnalysisResultCacheEntry, Long> {
+
+    Optional<AnalysisResultCacheEntry> findByCacheKey(String cacheKey);
+
+    @Transactional
+    @Modifying
+    @Query("update AnalysisResultCacheEntry e set e.hits = e.hits + 1, e.lastAccessedAt = :now where e.id = :id")
+    int recordHit(@Param("id") Long id, @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("delete from AnalysisResultCacheEntry e where e.expiresAt < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+
+    /**
+     * Ids of entries, least recently used first
+     */
+    @Query("select e.id from AnalysisResultCacheEntry e order by e.lastAccessedAt")
+    List<Long> findIdsByLeastRecentlyUsed(Pageable page);
+}
@@ -3,12 +3,20 @@ package com.preffy.videoflow.repository;
 import com.preffy.videoflow.model.Project;
 import com.preffy.videoflow.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface ProjectRepository extends JpaRepository<Project, Long> {
     List<Project> findByUser(User user);
     List<Project> findByUserOrderByCreatedAtDesc(User user);
+    List<Project> findByStatusAndUpdatedAtBefore(Project.ProjectStatus status, LocalDateTime cutoff);
+    
+    @Query("SELECT p.user.id FROM Project p WHERE p.id = :projectId")
+    Optional<Long> findUserIdById(@Param("projectId") Long projectId);
 }
@@ -0,0 +1,34 @@
+package com.preffy.videoflow.repository;
+
+import com.preffy.videoflow.entity.StoredBlob;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+@Repository
+public interface StoredBlobRepository extends JpaRepository<StoredBlob, Long> {
+
+    Optional<StoredBlob> findByContentHash(String contentHash);
+
+    Optional<StoredBlob> findFirstByStorageKey(String storageKey);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select b from StoredBlob b where b.contentHash = :contentHash")
+    Optional<StoredBlob> findByContentHashForUpdate(@Param("contentHash") String contentHash);
+
+    @Modifying(clearAutomatically = true)
+    @Query("update StoredBlob b set b.refCount = b.refCount + 1, b.updatedAt = CURRENT_TIMESTAMP where b.contentHash = :contentHash")
+    int incrementRefCount(@Param("contentHash") String contentHash);
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update StoredBlob b set b.hlsPlaylistKey = :playlistKey, b.updatedAt = CURRENT_TIMESTAMP where b.contentHash = :contentHash")
+    int setHlsPlaylistKey(@Param("contentHash") String contentHash, @Param("playlistKey") String playlistKey);
+}
@@ -2,7 +2,11 @@ package com.preffy.videoflow.repository;
 
 import com.preffy.videoflow.model.Video;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
@@ -12,7 +16,18 @@ public interface VideoRepository extends JpaRepository<Video, Long> {
     
     List<Video> findByProjectId(String projectId);
     
+    Optional<Video> findByFilename(String filename);
+
     Optional<Video> findByProjectIdAndFilename(String projectId, String filename);
     
     Optional<Video> findFirstByProjectIdOrderByCreatedAtDesc(String projectId);
+
+    List<Video> findByContentHash(String contentHash);
+
+    Optional<Video> findFirstByStorageUrl(String storageUrl);
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update Video v set v.hlsUrl = :hlsUrl, v.updatedAt = CURRENT_TIMESTAMP where v.contentHash = :contentHash")
+    int setHlsUrlByContentHash(@Param("contentHash") String contentHash, @Param("hlsUrl") String hlsUrl);
 }
@@ -0,0 +1,75 @@
+package com.preffy.videoflow.security;
+
+import com.preffy.videoflow.service.UserService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+/**
+ * Authenticates STOMP sessions from the JWT in the CONNECT frame's
+ * Authorization header, since browsers cannot set headers on the WebSocket
+ * handshake itself. The session's user is named by the user id, which is what
+ * user destinations are addressed by. Subscriptions are limited to the
+ * session's own user queues, and clients cannot send.
+ */
+@Component
+public class JwtChannelInterceptor implements ChannelInterceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(JwtChannelInterceptor.class);
+
+    private static final String USER_QUEUE_PREFIX = "/user/queue/";
+
+    @Autowired
+    private JwtTokenProvider tokenProvider;
+
+    @Autowired
+    private UserService userService;
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() == null) {
+            return message;
+        }
+
+        if (accessor.getCommand() == StompCommand.CONNECT) {
+            String jwt = getJwt(accessor.getFirstNativeHeader("Authorization"));
+            if (!StringUtils.hasText(jwt) || !tokenProvider.validateToken(jwt)) {
+                throw new BadCredentialsException("A valid bearer token is required to connect");
+            }
+            Long userId = tokenProvider.getUserIdFromJWT(jwt);
+            UserDetails userDetails = userService.loadUserById(userId);
+            accessor.setUser(new UsernamePasswordAuthenticationToken(userId.toString(), null,
+                    userDetails.getAuthorities()));
+            logger.debug("STOMP session {} connected for user {}", accessor.getSessionId(), userId);
+        } else if (accessor.getCommand() == StompCommand.SUBSCRIBE) {
+            String destination = accessor.getDestination();
+            if (accessor.getUser() == null || destination == null || !destination.startsWith(USER_QUEUE_PREFIX)) {
+                throw new AccessDeniedException("Not allowed to subscribe to " + destination);
+            }
+        } else if (accessor.getCommand() == StompCommand.SEND) {
+            // The channel is push-only
+            throw new AccessDeniedException("Clients cannot send to " + accessor.getDestination());
+        }
+        return message;
+    }
+
+    private static String getJwt(String authorization) {
+        if (StringUtils.hasText(authorization) && authorization.startsWith("Bearer ")) {
+            return authorization.substring(7);
+        }
+        return null;
+    }
+}
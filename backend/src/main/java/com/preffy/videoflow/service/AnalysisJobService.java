@@ -0,0 +1,311 @@
+package com.preffy.videoflow.service;
+
+import com.preffy.videoflow.entity.AnalysisJob;
+import com.preffy.videoflow.entity.AnalysisJob.JobStatus;
+import com.preffy.videoflow.repository.AnalysisJobRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Durable queue of analysis jobs in the analysis_jobs table. Claims, lease
+ * renewals and completions are short transactions; the work itself runs in
+ * {@link AnalysisJobWorker} outside of any transaction. Every state change
+ * after a claim is fenced on the lease owner under a row lock, so a worker that
+ * lost its lease (e.g. after a long GC pause) cannot overwrite the new owner's
+ * outcome.
+ */
+@Service
+public class AnalysisJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisJobService.class);
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    @Value("${app.jobs.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${app.jobs.lease-seconds:60}")
+    private long leaseSeconds;
+
+    @Value("${app.jobs.backoff-base-seconds:10}")
+    private long backoffBaseSeconds;
+
+    @Value("${app.jobs.backoff-max-seconds:600}")
+    private long backoffMaxSeconds;
+
+    @Autowired
+    private AnalysisJobRepository analysisJobRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final String instanceId = instanceName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+
+    @PostConstruct
+    void registerMetrics() {
+        for (JobStatus status : List.of(JobStatus.PENDING, JobStatus.RUNNING, JobStatus.DEAD)) {
+            Gauge.builder("analysis.jobs", analysisJobRepository, repository -> repository.countByStatus(status))
+                    .description("Analysis jobs in the queue by status")
+                    .tag("status", status.name().toLowerCase())
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Identifies this instance as a lease owner
+     */
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    /**
+     * Dedupe key of the analysis of a project's video
+     */
+    public static String videoKey(String projectId, Long videoId) {
+        return "project:" + projectId + ":video:" + videoId;
+    }
+
+    /**
+     * Add a job to the queue. Joins the caller's transaction, so a job for
+     * work whose setup rolls back is never seen by workers.
+     */
+    @Transactional
+    public AnalysisJob enqueue(AnalysisJob.JobType type, String projectId, String payload) {
+        return enqueue(type, projectId, payload, null);
+    }
+
+    /**
+     * Add a job to the queue unless a job of the same type with the same
+     * dedupe key is pending or running, in which case that job is returned.
+     * Queueing a workflow job supersedes pending body language jobs with its
+     * key, since the workflow runs body language analysis itself.
+     * @param dedupeKey Identifies the work, e.g. {@link #videoKey}; null for none
+     */
+    @Transactional
+    public AnalysisJob enqueue(AnalysisJob.JobType type, String projectId, String payload, String dedupeKey) {
+        if (dedupeKey != null) {
+            Optional<AnalysisJob> active = analysisJobRepository.findFirstByTypeAndDedupeKeyAndStatusIn(type,
+                    dedupeKey, List.of(JobStatus.PENDING, JobStatus.RUNNING));
+            if (active.isPresent()) {
+                logger.info("{} job {} for project {} is already {}, not queueing another", type,
+                        active.get().getId(), projectId, active.get().getStatus());
+                return active.get();
+            }
+            if (type == AnalysisJob.JobType.PROJECT_ANALYSIS) {
+                int superseded = analysisJobRepository.supersede(AnalysisJob.JobType.BODY_LANGUAGE, dedupeKey,
+                        JobStatus.PENDING, JobStatus.SUPERSEDED, LocalDateTime.now());
+                if (superseded > 0) {
+                    logger.info("Superseded {} pending body language jobs for project {}", superseded, projectId);
+                }
+            }
+        }
+        AnalysisJob job = new AnalysisJob(type, projectId, payload, maxAttempts);
+        job.setDedupeKey(dedupeKey);
+        job = analysisJobRepository.save(job);
+        logger.info("Queued {} job {} for project {}", type, job.getId(), projectId);
+        return job;
+    }
+
+    /**
+     * Lease up to {@code limit} due jobs to this instance. Jobs whose previous
+     * lease expired count that run as a failed attempt, so a job that keeps
+     * killing its instance ends up DEAD instead of looping forever.
+     * A pending job whose dedupe key is held by a running job is put off
+     * rather than claimed; should two instances still claim jobs with the same
+     * key at once, the unique running_key makes one claim fail as a whole.
+     * @return the claimed jobs, RUNNING, plus any that just went DEAD this way
+     *         so the caller can run their failure handling
+     */
+    @Transactional
+    public List<AnalysisJob> claim(int limit) {
+        LocalDateTime now = LocalDateTime.now();
+        List<AnalysisJob> claimed = new ArrayList<>();
+        for (AnalysisJob job : analysisJobRepository.findClaimable(JobStatus.PENDING, JobStatus.RUNNING, now,
+                PageRequest.of(0, limit))) {
+            if (job.getStatus() == JobStatus.RUNNING) {
+                logger.warn("Lease of {} on job {} expired, reclaiming", job.getLeaseOwner(), job.getId());
+                if (job.getAttempts() >= job.getMaxAttempts()) {
+                    markDead(job, "Lease expired on the last attempt");
+                    claimed.add(job);
+                    continue;
+                }
+            } else if (job.getDedupeKey() != null) {
+                if (analysisJobRepository.existsByRunningKey(job.getDedupeKey())) {
+                    logger.debug("Putting off {} job {}: the same work is running", job.getType(), job.getId());
+                    job.setRunAfter(now.plusSeconds(leaseSeconds));
+                    continue;
+                }
+                job.setRunningKey(job.getDedupeKey());
+            }
+            job.setStatus(JobStatus.RUNNING);
+            job.setAttempts(job.getAttempts() + 1);
+            job.setLeaseOwner(instanceId);
+            job.setLeaseExpiresAt(now.plusSeconds(leaseSeconds));
+            job.setUpdatedAt(now);
+            claimed.add(job);
+        }
+        return claimed;
+    }
+
+    /**
+     * Renew the leases of jobs this instance is still running
+     * @return the number of leases renewed; fewer than asked means some were lost
+     */
+    public int heartbeat(Collection<Long> jobIds) {
+        if (jobIds.isEmpty()) {
+            return 0;
+        }
+        return analysisJobRepository.extendLeases(jobIds, instanceId, JobStatus.RUNNING,
+                LocalDateTime.now().plusSeconds(leaseSeconds));
+    }
+
+    /**
+     * Mark a job done
+     * @return false if this instance no longer held the lease
+     */
+    @Transactional
+    public boolean complete(Long jobId) {
+        Optional<AnalysisJob> job = ownedJob(jobId);
+        if (job.isEmpty()) {
+            return false;
+        }
+        job.get().setStatus(JobStatus.SUCCEEDED);
+        job.get().setRunningKey(null);
+        job.get().setLeaseOwner(null);
+        job.get().setLeaseExpiresAt(null);
+        job.get().setUpdatedAt(LocalDateTime.now());
+        return true;
+    }
+
+    /**
+     * Record a failed attempt: schedule a retry with exponential backoff and
+     * jitter, or park the job as DEAD once its attempts are used up
+     * @return the job's new status, or empty if this instance no longer held the lease
+     */
+    @Transactional
+    public Optional<JobStatus> fail(Long jobId, String error) {
+        Optional<AnalysisJob> jobOpt = ownedJob(jobId);
+        if (jobOpt.isEmpty()) {
+            return Optional.empty();
+        }
+        AnalysisJob job = jobOpt.get();
+        if (job.getAttempts() >= job.getMaxAttempts()) {
+            markDead(job, error);
+            return Optional.of(JobStatus.DEAD);
+        }
+
+        Duration delay = backoff(job.getAttempts());
+        job.setStatus(JobStatus.PENDING);
+        job.setRunAfter(LocalDateTime.now().plus(delay));
+        job.setRunningKey(null);
+        job.setLeaseOwner(null);
+        job.setLeaseExpiresAt(null);
+        job.setLastError(truncate(error));
+        job.setUpdatedAt(LocalDateTime.now());
+        logger.warn("{} job {} failed (attempt {}/{}), retrying in {} s: {}", job.getType(), jobId,
+                job.getAttempts(), job.getMaxAttempts(), delay.toSeconds(), error);
+        return Optional.of(JobStatus.PENDING);
+    }
+
+    /**
+     * Hand jobs back to the queue without counting an attempt, e.g. on shutdown
+     */
+    @Transactional
+    public void release(Collection<Long> jobIds) {
+        for (Long jobId : jobIds) {
+            ownedJob(jobId).ifPresent(job -> requeue(job, Duration.ZERO));
+        }
+    }
+
+    /**
+     * Put a job off without counting an attempt, e.g. while the service it
+     * calls is known to be unavailable
+     * @return false if this instance no longer held the lease
+     */
+    @Transactional
+    public boolean defer(Long jobId, Duration delay, String reason) {
+        Optional<AnalysisJob> job = ownedJob(jobId);
+        if (job.isEmpty()) {
+            return false;
+        }
+        requeue(job.get(), delay);
+        job.get().setLastError(truncate(reason));
+        logger.info("{} job {} put off for {} s: {}", job.get().getType(), jobId, delay.toSeconds(), reason);
+        return true;
+    }
+
+    /**
+     * Exponential backoff with jitter: a random delay between half and all of
+     * base * 2^(attempt - 1), capped, so retries of jobs that failed together
+     * (e.g. during an outage of the analysis service) spread out
+     */
+    Duration backoff(int attempt) {
+        long ceiling = backoffBaseSeconds << Math.min(Math.max(attempt - 1, 0), 20);
+        long seconds = Math.min(backoffMaxSeconds, ceiling);
+        return Duration.ofMillis((long) (seconds * 1000 * (0.5 + ThreadLocalRandom.current().nextDouble() * 0.5)));
+    }
+
+    private void requeue(AnalysisJob job, Duration delay) {
+        job.setStatus(JobStatus.PENDING);
+        job.setAttempts(Math.max(0, job.getAttempts() - 1));
+        job.setRunAfter(LocalDateTime.now().plus(delay));
+        job.setRunningKey(null);
+        job.setLeaseOwner(null);
+        job.setLeaseExpiresAt(null);
+        job.setUpdatedAt(LocalDateTime.now());
+    }
+
+    /**
+     * The job if this instance holds its lease, row-locked until the end of
+     * the transaction so the owner check and the update that follows cannot
+     * interleave with a reclaim
+     */
+    private Optional<AnalysisJob> ownedJob(Long jobId) {
+        return analysisJobRepository.findOwnedForUpdate(jobId, instanceId, JobStatus.RUNNING);
+    }
+
+    private void markDead(AnalysisJob job, String error) {
+        job.setStatus(JobStatus.DEAD);
+        job.setRunningKey(null);
+        job.setLeaseOwner(null);
+        job.setLeaseExpiresAt(null);
+        job.setLastError(truncate(error));
+        job.setUpdatedAt(LocalDateTime.now());
+        logger.error("{} job {} for project {} is dead after {} attempts: {}", job.getType(), job.getId(),
+                job.getProjectId(), job.getAttempts(), error);
+    }
+
+    private static String truncate(String error) {
+        return error != null && error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+    }
+
+    private static String instanceName() {
+        String name = System.getenv("K_REVISION");
+        if (name != null) {
+            return name;
+        }
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "instance";
+        }
+    }
+}
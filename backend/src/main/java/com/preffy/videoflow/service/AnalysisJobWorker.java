@@ -0,0 +1,175 @@
+package com.preffy.videoflow.service;
+
+import com.preffy.videoflow.client.CallNotPermittedException;
+import com.preffy.videoflow.entity.AnalysisJob;
+import com.preffy.videoflow.entity.AnalysisJob.JobStatus;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs queued analysis jobs on the analysis-jobs executor. Polls for due
+ * jobs only when it has free threads, so an instance never leases more work
+ * than it can start, and renews the leases of running jobs until they finish.
+ */
+@Component
+public class AnalysisJobWorker {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisJobWorker.class);
+
+    @Value("${app.jobs.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.jobs.worker-threads:4}")
+    private int workerThreads;
+
+    @Autowired
+    private AnalysisJobService analysisJobService;
+
+    @Autowired
+    private ProjectService projectService;
+
+    @Autowired
+    private BodyLanguageAnalysisService bodyLanguageAnalysisService;
+
+    @Autowired
+    @Qualifier("analysisJobExecutor")
+    private ExecutorService executor;
+
+    private final Set<Long> runningJobs = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean stopping;
+
+    /**
+     * Stop claiming and interrupt the running jobs. Jobs interrupted this way
+     * are released rather than failed, so shutdowns do not use up attempts,
+     * and another instance can pick them up without waiting out the lease.
+     */
+    @PreDestroy
+    void stop() throws InterruptedException {
+        stopping = true;
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        // Jobs that did not stop in time still hold their leases
+        List<Long> unfinished = List.copyOf(runningJobs);
+        if (!unfinished.isEmpty()) {
+            logger.info("Releasing {} unfinished analysis jobs", unfinished.size());
+            analysisJobService.release(unfinished);
+        }
+    }
+
+    /**
+     * Claim due jobs for the free worker threads
+     */
+    @Scheduled(fixedDelayString = "${app.jobs.poll-interval-ms:2000}")
+    public void poll() {
+        int free = workerThreads - runningJobs.size();
+        if (!enabled || stopping || free <= 0) {
+            return;
+        }
+        try {
+            for (AnalysisJob job : analysisJobService.claim(free)) {
+                if (job.getStatus() == JobStatus.DEAD) {
+                    onDead(job);
+                    continue;
+                }
+                runningJobs.add(job.getId());
+                try {
+                    executor.execute(() -> run(job));
+                } catch (RejectedExecutionException e) {
+                    runningJobs.remove(job.getId());
+                    analysisJobService.release(List.of(job.getId()));
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Failed to claim analysis jobs: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Renew the leases of running jobs
+     */
+    @Scheduled(fixedDelayString = "${app.jobs.heartbeat-interval-ms:20000}")
+    public void heartbeat() {
+        List<Long> jobIds = List.copyOf(runningJobs);
+        try {
+            int renewed = analysisJobService.heartbeat(jobIds);
+            if (renewed < jobIds.size()) {
+                logger.warn("Lost the lease on {} of {} running analysis jobs", jobIds.size() - renewed, jobIds.size());
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Failed to renew analysis job leases: {}", e.getMessage());
+        }
+    }
+
+    private void run(AnalysisJob job) {
+        try {
+            logger.info("Running {} job {} for project {} (attempt {}/{})", job.getType(), job.getId(),
+                    job.getProjectId(), job.getAttempts(), job.getMaxAttempts());
+            switch (job.getType()) {
+                case BODY_LANGUAGE -> bodyLanguageAnalysisService.runAnalysis(job.getProjectId(), job.getPayload());
+                case PROJECT_ANALYSIS -> projectService.runAnalysisWorkflow(Long.valueOf(job.getProjectId()),
+                        Long.valueOf(job.getPayload()));
+            }
+            if (!analysisJobService.complete(job.getId())) {
+                logger.warn("Finished {} job {} after losing its lease", job.getType(), job.getId());
+            }
+        } catch (Exception e) {
+            if (stopping) {
+                logger.info("Releasing {} job {} interrupted by shutdown", job.getType(), job.getId());
+                analysisJobService.release(List.of(job.getId()));
+                return;
+            }
+            Optional<CallNotPermittedException> notPermitted = notPermitted(e);
+            if (notPermitted.isPresent()) {
+                analysisJobService.defer(job.getId(), notPermitted.get().getRetryAfter(), notPermitted.get().getMessage());
+                return;
+            }
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            Optional<JobStatus> status = analysisJobService.fail(job.getId(), cause.getClass().getSimpleName()
+                    + ": " + cause.getMessage());
+            if (status.isPresent() && status.get() == JobStatus.DEAD) {
+                onDead(job);
+            }
+        } finally {
+            runningJobs.remove(job.getId());
+        }
+    }
+
+    /**
+     * The refusal by a circuit breaker or bulkhead behind a failure, if any
+     */
+    private static Optional<CallNotPermittedException> notPermitted(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CallNotPermittedException notPermitted) {
+                return Optional.of(notPermitted);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private void onDead(AnalysisJob job) {
+        try {
+            switch (job.getType()) {
+                case BODY_LANGUAGE -> bodyLanguageAnalysisService.markFailed(job.getProjectId());
+                case PROJECT_ANALYSIS -> projectService.markAnalysisFailed(Long.valueOf(job.getProjectId()));
+            }
+        } catch (RuntimeException e) {
+            logger.error("Failed to record dead {} job {}: {}", job.getType(), job.getId(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.preffy.videoflow.service;
+
+import com.preffy.videoflow.dto.ProjectProgressEvent;
+import com.preffy.videoflow.model.Project;
+import com.preffy.videoflow.repository.ProjectRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.stereotype.Service;
+
+/**
+ * Pushes project progress to the project's owner on
+ * {@code /user/queue/projects}, so clients follow uploads and analyses without
+ * polling. Events are only sent while the owner has a session on this
+ * instance, and nothing is looked up when nobody is connected. Publishing
+ * never fails the caller.
+ */
+@Service
+public class AnalysisProgressPublisher {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisProgressPublisher.class);
+
+    public static final String DESTINATION = "/queue/projects";
+
+    public static final String STARTED = "started";
+    public static final String COMPLETED = "completed";
+    public static final String FAILED = "failed";
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private SimpUserRegistry userRegistry;
+
+    @Autowired
+    private ProjectRepository projectRepository;
+
+    /**
+     * A project moved to a new status
+     */
+    public void projectStatus(Long projectId, Project.ProjectStatus status) {
+        publish(null, new ProjectProgressEvent(projectId, "project", status.name(), null));
+    }
+
+    /**
+     * A stage of the analysis of a project started, completed or failed
+     * @param stage audio_extraction, script_analysis or body_language_analysis
+     */
+    public void stage(Long projectId, String stage, String status) {
+        publish(null, new ProjectProgressEvent(projectId, stage, status, null));
+    }
+
+    /**
+     * An upload operation moved to a new stage
+     */
+    public void upload(ProjectOperation operation) {
+        publish(operation.getUserId(), new ProjectProgressEvent(operation.getProjectId(), "upload",
+                operation.getStage().name().toLowerCase(), operation.getPercent()));
+    }
+
+    private void publish(Long userId, ProjectProgressEvent event) {
+        if (userRegistry.getUserCount() == 0) {
+            return;
+        }
+        try {
+            Long ownerId = userId != null ? userId
+                    : projectRepository.findUserIdById(Long.valueOf(event.getProjectId())).orElse(null);
+            if (ownerId == null || userRegistry.getUser(ownerId.toString()) == null) {
+                return;
+            }
+            messagingTemplate.convertAndSendToUser(ownerId.toString(), DESTINATION, event);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to publish {} {} of project {}: {}", event.getStage(), event.getStatus(),
+                    event.getProjectId(), e.getMessage());
+        }
+    }
+}
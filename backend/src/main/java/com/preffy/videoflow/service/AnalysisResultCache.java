@@ -0,0 +1,154 @@
+package com.preffy.videoflow.service;
+
+import com.preffy.videoflow.entity.AnalysisResultCacheEntry;
+import com.preffy.videoflow.repository.AnalysisResultCacheRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Database-backed cache of completed analysis results, so media with the same
+ * content is sent to a remote model only once, whichever project or instance
+ * asks. Entries expire after a TTL and the least recently used are dropped
+ * beyond a maximum count. Failed analyses are never cached.
+ */
+@Component
+public class AnalysisResultCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisResultCache.class);
+
+    @Value("${app.analysis.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.analysis.cache.ttl-hours:720}")
+    private long ttlHours;
+
+    @Value("${app.analysis.cache.max-entries:10000}")
+    private int maxEntries;
+
+    @Autowired
+    private AnalysisResultCacheRepository cacheRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * What identifies a result: the analysis, the content hash of the media
+     * analyzed, the model version and any parameters sent with the media
+     */
+    public record Key(AnalysisResultCacheEntry.AnalysisType type, String mediaHash, String modelVersion,
+                      Map<String, String> parameters) {
+
+        /**
+         * The parameters in a stable order, as name=value pairs joined by '&'
+         */
+        String parametersString() {
+            return new TreeMap<>(parameters).entrySet().stream()
+                    .map(parameter -> parameter.getKey() + "=" + parameter.getValue())
+                    .collect(Collectors.joining("&"));
+        }
+
+        String digest() {
+            try {
+                MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+                String canonical = type + "\n" + mediaHash + "\n" + modelVersion + "\n" + parametersString();
+                return HexFormat.of().formatHex(sha256.digest(canonical.getBytes(StandardCharsets.UTF_8)));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+    }
+
+    /**
+     * The cached result for a key, if there is one that has not expired
+     */
+    public Optional<String> get(Key key) {
+        if (!enabled || key.mediaHash() == null) {
+            return Optional.empty();
+        }
+        LocalDateTime now = LocalDateTime.now();
+        Optional<AnalysisResultCacheEntry> entry = cacheRepository.findByCacheKey(key.digest())
+                .filter(cached -> cached.getExpiresAt().isAfter(now));
+        entry.ifPresent(cached -> cacheRepository.recordHit(cached.getId(), now));
+        requests(key.type(), entry.isPresent() ? "hit" : "miss").increment();
+        return entry.map(AnalysisResultCacheEntry::getResult);
+    }
+
+    /**
+     * Cache a completed result, replacing any earlier one for the key
+     */
+    public void put(Key key, String result) {
+        if (!enabled || key.mediaHash() == null || result == null) {
+            return;
+        }
+        String cacheKey = key.digest();
+        LocalDateTime now = LocalDateTime.now();
+        AnalysisResultCacheEntry entry = cacheRepository.findByCacheKey(cacheKey)
+                .orElseGet(() -> new AnalysisResultCacheEntry(cacheKey, key.type(), key.mediaHash(),
+                        key.modelVersion(), key.parametersString()));
+        if (entry.getCreatedAt() == null) {
+            entry.setCreatedAt(now);
+        }
+        entry.setResult(result);
+        entry.setLastAccessedAt(now);
+        entry.setExpiresAt(now.plusHours(ttlHours));
+        try {
+            cacheRepository.save(entry);
+        } catch (DataIntegrityViolationException e) {
+            // Another instance cached the same result first
+            logger.debug("{} result for {} already cached", key.type(), key.mediaHash());
+        }
+    }
+
+    /**
+     * Drop expired entries, then the least recently used ones over the maximum
+     */
+    @Scheduled(fixedDelayString = "${app.analysis.cache.eviction-interval-ms:600000}")
+    public void evict() {
+        if (!enabled) {
+            return;
+        }
+        int expired = cacheRepository.deleteExpired(LocalDateTime.now());
+        long surplus = cacheRepository.count() - maxEntries;
+        int dropped = 0;
+        if (surplus > 0) {
+            List<Long> ids = cacheRepository.findIdsByLeastRecentlyUsed(
+                    PageRequest.of(0, (int) Math.min(surplus, Integer.MAX_VALUE)));
+            cacheRepository.deleteAllByIdInBatch(ids);
+            dropped = ids.size();
+        }
+        if (expired + dropped > 0) {
+            Counter.builder("analysis.cache.evictions")
+                    .description("Analysis results dropped from the cache")
+                    .register(meterRegistry)
+                    .increment(expired + dropped);
+            logger.info("Evicted {} expired and {} least recently used analysis results", expired, dropped);
+        }
+    }
+
+    private Counter requests(AnalysisResultCacheEntry.AnalysisType type, String result) {
+        return Counter.builder("analysis.cache.requests")
+                .description("Analysis result cache lookups")
+                .tag("type", type.name())
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
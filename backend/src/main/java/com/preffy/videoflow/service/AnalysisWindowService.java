@@ -0,0 +1,101 @@
+package com.preffy.videoflow.service;
+
+import com.preffy.videoflow.entity.StoredBlob;
+import com.preffy.videoflow.media.Mp4FormatException;
+import com.preffy.videoflow.media.Mp4Windows;
+import com.preffy.videoflow.media.SeekableSource;
+import com.preffy.videoflow.model.Video;
+import com.preffy.videoflow.repository.StoredBlobRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Splits stored videos into keyframe-aligned windows for parallel analysis and
+ * serves each window as a standalone fragmented MP4 at
+ * {@code /api/videos/windows/<content hash>/<first frame>-<end frame>.mp4}.
+ * Windows are cut from the stored blob on request (only the window's samples
+ * are read), so nothing extra is stored.
+ */
+@Service
+public class AnalysisWindowService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisWindowService.class);
+
+    private static final String WINDOW_PATH = "/api/videos/windows/";
+
+    private static final Pattern CONTENT_HASH = Pattern.compile("[0-9a-f]{64}");
+
+    @Value("${app.storage.base-url:http://localhost:8080}")
+    private String baseUrl;
+
+    @Value("${app.analysis.windows.max-windows:4}")
+    private int maxWindows;
+
+    @Value("${app.analysis.windows.min-window-seconds:60}")
+    private double minWindowSeconds;
+
+    @Value("${app.analysis.windows.fragment-seconds:2}")
+    private double fragmentSeconds;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private StoredBlobRepository storedBlobRepository;
+
+    /**
+     * Plan the analysis windows of a video
+     * @return the windows, or empty if the video is not a splittable MP4 or is
+     *         too short to be worth splitting
+     */
+    public Optional<List<Mp4Windows.Window>> plan(Video video) {
+        if (video.getContentHash() == null || video.getStorageKey() == null) {
+            return Optional.empty();
+        }
+        try (SeekableSource source = fileStorageService.openSource(video.getStorageKey())) {
+            List<Mp4Windows.Window> windows = Mp4Windows.plan(source, maxWindows, minWindowSeconds);
+            return windows.size() > 1 ? Optional.of(windows) : Optional.empty();
+        } catch (Mp4FormatException e) {
+            logger.info("Not splitting {} for analysis: {}", video.getStorageKey(), e.getMessage());
+        } catch (IOException e) {
+            logger.warn("Failed to plan analysis windows of {}: {}", video.getStorageKey(), e.getMessage());
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Absolute URL the analysis service downloads a window from
+     */
+    public String windowUrl(String contentHash, Mp4Windows.Window window) {
+        return baseUrl + WINDOW_PATH + contentHash + "/" + window.firstFrame() + "-" + window.endFrame() + ".mp4";
+    }
+
+    /**
+     * Write a window of a stored blob
+     * @return false if the hash is malformed or no such blob exists
+     * @throws Mp4FormatException if the frame range is not a keyframe-aligned window
+     */
+    public boolean writeWindow(String contentHash, int firstFrame, int endFrame, WritableByteChannel target)
+            throws IOException {
+        if (!CONTENT_HASH.matcher(contentHash).matches()) {
+            return false;
+        }
+        Optional<StoredBlob> blob = storedBlobRepository.findByContentHash(contentHash);
+        if (blob.isEmpty()) {
+            return false;
+        }
+        try (SeekableSource source = fileStorageService.openSource(blob.get().getStorageKey())) {
+            Mp4Windows.write(source, firstFrame, endFrame, fragmentSeconds, target);
+        }
+        return true;
+    }
+}
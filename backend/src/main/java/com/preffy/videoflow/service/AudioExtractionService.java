@@ -0,0 +1,142 @@
+package com.preffy.videoflow.service;
+
+import com.preffy.videoflow.media.AdtsExtractor;
+import com.preffy.videoflow.media.Mp4FormatException;
+import com.preffy.videoflow.media.SeekableSource;
+import com.preffy.videoflow.model.Video;
+import com.preffy.videoflow.storage.ObjectStore;
+import com.preffy.videoflow.storage.ObjectStoreResource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts the audio track of an uploaded video for script analysis. The AAC
+ * samples are demuxed in process and stored as an ADTS file next to the video
+ * under {@code audio/<content hash>.aac}, so the analysis service downloads a
+ * few MB of audio instead of the whole video. Like HLS renditions, the audio
+ * is keyed by the blob's content hash: it is extracted once per distinct
+ * upload and deleted with the blob.
+ */
+@Service
+public class AudioExtractionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AudioExtractionService.class);
+
+    public static final String AUDIO_FOLDER = "audio";
+
+    private static final String AUDIO_EXTENSION = ".aac";
+
+    private static final String AUDIO_PATH = "/api/videos/audio/";
+
+    private static final Pattern AUDIO_FILE = Pattern.compile("[0-9a-f]{64}\\" + AUDIO_EXTENSION);
+
+    @Value("${app.storage.base-url:http://localhost:8080}")
+    private String baseUrl;
+
+    @Autowired
+    private ObjectStore objectStore;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private SignedUrlService signedUrlService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Key of the extracted audio of a blob
+     */
+    public static String audioKey(String contentHash) {
+        return AUDIO_FOLDER + "/" + contentHash + AUDIO_EXTENSION;
+    }
+
+    /**
+     * URL of the video's audio track for downstream analysis. Falls back to the
+     * video's own URL when there is no AAC track to extract (the analysis
+     * service then decodes the container itself).
+     */
+    public String extractAudio(Video video) {
+        if (video.getContentHash() == null || video.getStorageKey() == null) {
+            logger.warn("Video {} has no stored blob, passing the video URL for audio analysis", video.getId());
+            return video.getStorageUrl();
+        }
+
+        String key = audioKey(video.getContentHash());
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            if (objectStore.head(key).isPresent()) {
+                sample.stop(timer("reused"));
+                return audioUrl(video.getContentHash());
+            }
+
+            Path output = fileStorageService.createStagingFile(AUDIO_EXTENSION);
+            try {
+                AdtsExtractor.AdtsStream stream;
+                try (SeekableSource source = fileStorageService.openSource(video.getStorageKey());
+                     FileChannel channel = FileChannel.open(output, StandardOpenOption.WRITE)) {
+                    stream = AdtsExtractor.extract(source, channel);
+                }
+                objectStore.moveFrom(key, output, AdtsExtractor.CONTENT_TYPE);
+                long nanos = sample.stop(timer("extracted"));
+                logger.info("Extracted {} AAC frames ({} Hz, {} ch, {} bytes) from {} in {} ms",
+                        stream.frames(), stream.sampleRate(), stream.channels(), stream.bytes(),
+                        video.getStorageKey(), nanos / 1_000_000);
+            } finally {
+                Files.deleteIfExists(output);
+            }
+            return audioUrl(video.getContentHash());
+
+        } catch (Mp4FormatException e) {
+            sample.stop(timer("skipped"));
+            logger.info("No extractable audio in {}, passing the video URL: {}", video.getStorageKey(), e.getMessage());
+            return video.getStorageUrl();
+        } catch (IOException e) {
+            sample.stop(timer("failed"));
+            logger.warn("Audio extraction from {} failed, passing the video URL: {}", video.getStorageKey(), e.getMessage());
+            return video.getStorageUrl();
+        }
+    }
+
+    /**
+     * Load an extracted audio file for streaming
+     * @return the object, or empty if the name is malformed or the object does not exist
+     */
+    public Optional<ObjectStoreResource> loadAudio(String filename) throws IOException {
+        if (!AUDIO_FILE.matcher(filename).matches()) {
+            return Optional.empty();
+        }
+        return fileStorageService.loadObject(AUDIO_FOLDER + "/" + filename);
+    }
+
+    /**
+     * Signed URL when enabled, else the store's public URL, else the streaming API
+     */
+    private String audioUrl(String contentHash) {
+        String key = audioKey(contentHash);
+        return signedUrlService.getSignedUrl(key)
+                .or(() -> objectStore.getPublicUrl(key))
+                .orElseGet(() -> baseUrl + AUDIO_PATH + contentHash + AUDIO_EXTENSION);
+    }
+
+    private Timer timer(String result) {
+        return Timer.builder("media.audio.extraction")
+                .description("Time to demux the audio track of a stored video")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -1,20 +1,39 @@
 package com.preffy.videoflow.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.preffy.videoflow.client.AnalysisHttpClient;
+import com.preffy.videoflow.client.BulkheadFullException;
+import com.preffy.videoflow.client.Downstream;
+import com.preffy.videoflow.client.SingleFlight;
+import com.preffy.videoflow.entity.AnalysisResultCacheEntry;
 import com.preffy.videoflow.entity.BodyLanguageAnalysis;
+import com.preffy.videoflow.media.Mp4Windows;
+import com.preffy.videoflow.model.Video;
 import com.preffy.videoflow.repository.BodyLanguageAnalysisRepository;
+import com.preffy.videoflow.repository.VideoRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.web.client.RestClientException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Service
 public class BodyLanguageAnalysisService {
@@ -30,107 +49,396 @@ public class BodyLanguageAnalysisService {
     @Autowired
     private BodyLanguageAnalysisRepository analysisRepository;
     
-    private final RestTemplate restTemplate;
+    @Autowired
+    private VideoRepository videoRepository;
     
-    public BodyLanguageAnalysisService() {
-        this.restTemplate = new RestTemplate();
-    }
+    @Autowired
+    private AnalysisWindowService analysisWindowService;
+    
+    @Autowired
+    private AnalysisResultCache resultCache;
+    
+    @Autowired
+    private AnalysisProgressPublisher progressPublisher;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Value("${body-language.api.timeout-seconds:600}")
+    private long requestTimeoutSeconds;
+    
+    // Part of the result cache key; change it when the remote model changes
+    @Value("${body-language.api.model-version:1}")
+    private String modelVersion;
+    
+    @Value("${app.analysis.windows.enabled:false}")
+    private boolean windowedAnalysisEnabled;
     
     /**
-     * Automatically trigger body language analysis for a video
-     * This runs asynchronously and doesn't block the video upload response
+     * A period that ends within this many frames of a window boundary and one
+     * that starts as close after it are the same occurrence cut in two
      */
-    public CompletableFuture<Void> triggerAnalysisAsync(String projectId, String videoStorageUrl) {
-        return CompletableFuture.runAsync(() -> {
-            try {
-                triggerAnalysis(projectId, videoStorageUrl);
-            } catch (Exception e) {
-                logger.error("Failed to trigger body language analysis for project {}: {}", projectId, e.getMessage());
-            }
-        });
-    }
+    private static final int WINDOW_JOIN_TOLERANCE_FRAMES = 5;
+    
+    private static final Duration HEALTH_CHECK_TIMEOUT = Duration.ofSeconds(5);
+    
+    @Autowired
+    private AnalysisHttpClient analysisHttpClient;
+    
+    @Autowired
+    @Qualifier("bodyLanguageDownstream")
+    private Downstream bodyLanguageDownstream;
+    
+    private final SingleFlight<String, Void> inFlight = new SingleFlight<>();
     
     /**
-     * Trigger body language analysis for a video and store results
+     * Trigger body language analysis for a video and store results. Failures
+     * are recorded as the analysis status rather than thrown.
      */
     public void triggerAnalysis(String projectId, String videoStorageUrl) {
         try {
-            // Construct full video URL
-            String fullVideoUrl = storageBaseUrl + videoStorageUrl;
-            
-            // If the video URL is local, use a public demo video for analysis
-            // This is a workaround since the remote FastAPI service can't access local URLs
-            String analysisUrl = fullVideoUrl;
-            if (fullVideoUrl.contains("localhost")) {
-                analysisUrl = "https://media.w3.org/2010/05/sintel/trailer.mp4";
-                logger.info("Using public demo video for analysis since local video is not accessible to remote service");
-            }
-            
-            logger.info("Triggering body language analysis for project {} with video URL: {}", projectId, analysisUrl);
-            
-            // Prepare request body
-            Map<String, String> requestBody = new HashMap<>();
-            requestBody.put("video_url", analysisUrl);
-            requestBody.put("project_id", projectId);
-            
-            // Set headers
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            
-            HttpEntity<Map<String, String>> entity = new HttpEntity<>(requestBody, headers);
+            runAnalysis(projectId, videoStorageUrl);
             
-            // Make the API call
-            String analysisEndpoint = bodyLanguageApiBaseUrl + "/analysis/action";
-            ResponseEntity<String> response = restTemplate.exchange(
-                analysisEndpoint,
-                HttpMethod.POST,
-                entity,
-                String.class
-            );
+        } catch (IOException e) {
+            logger.error("Failed to call body language analysis API for project {}: {}", projectId, e.getMessage());
             
-            if (response.getStatusCode().is2xxSuccessful()) {
-                logger.info("Successfully received body language analysis for project {}", projectId);
-                
-                // Store the analysis results in database
-                String analysisResults = response.getBody();
-                BodyLanguageAnalysis analysis = new BodyLanguageAnalysis(projectId, analysisResults, "completed");
-                
-                // Check if analysis already exists and update, otherwise create new
-                Optional<BodyLanguageAnalysis> existingAnalysis = analysisRepository.findByProjectId(projectId);
-                if (existingAnalysis.isPresent()) {
-                    BodyLanguageAnalysis existing = existingAnalysis.get();
-                    existing.setAnalysisResults(analysisResults);
-                    existing.setStatus("completed");
-                    analysisRepository.save(existing);
-                    logger.info("Updated existing analysis results for project {}", projectId);
-                } else {
-                    analysisRepository.save(analysis);
-                    logger.info("Saved new analysis results for project {}", projectId);
-                }
-                
-            } else {
-                logger.warn("Body language analysis API returned status: {} for project {}", 
-                    response.getStatusCode(), projectId);
-                
-                // Store error status in database
-                BodyLanguageAnalysis analysis = new BodyLanguageAnalysis(projectId, null, "failed");
-                analysisRepository.save(analysis);
-            }
+            // Store error status in database
+            saveResults(projectId, null, "error");
             
-        } catch (RestClientException e) {
-            logger.error("Failed to call body language analysis API for project {}: {}", projectId, e.getMessage());
+        } catch (AnalysisFailedException e) {
+            logger.warn("{} for project {}", e.getMessage(), projectId);
             
             // Store error status in database
-            BodyLanguageAnalysis analysis = new BodyLanguageAnalysis(projectId, null, "error");
-            analysisRepository.save(analysis);
+            saveResults(projectId, null, "failed");
             
         } catch (Exception e) {
             logger.error("Unexpected error during body language analysis for project {}: {}", projectId, e.getMessage());
             
             // Store error status in database
-            BodyLanguageAnalysis analysis = new BodyLanguageAnalysis(projectId, null, "error");
-            analysisRepository.save(analysis);
+            saveResults(projectId, null, "error");
+        }
+    }
+    
+    /**
+     * Run body language analysis for a video and store the results, throwing on
+     * failure so a queued job can be retried. A call for a project and video
+     * whose analysis is already running here (e.g. the upload's job and the
+     * workflow, or a manual trigger) waits for that run and shares its outcome.
+     */
+    public void runAnalysis(String projectId, String videoStorageUrl) throws IOException {
+        String key = projectId + ":" + videoStorageUrl;
+        if (inFlight.isInFlight(key)) {
+            logger.info("Joining body language analysis in flight for project {}", projectId);
+        }
+        inFlight.execute(key, () -> {
+            analyze(projectId, videoStorageUrl);
+            return null;
+        });
+    }
+    
+    private void analyze(String projectId, String videoStorageUrl) throws IOException {
+        // Construct full video URL
+        String fullVideoUrl = storageBaseUrl + videoStorageUrl;
+        
+        // If the video URL is local, use a public demo video for analysis
+        // This is a workaround since the remote FastAPI service can't access local URLs
+        String analysisUrl = fullVideoUrl;
+        if (fullVideoUrl.contains("localhost")) {
+            analysisUrl = "https://media.w3.org/2010/05/sintel/trailer.mp4";
+            logger.info("Using public demo video for analysis since local video is not accessible to remote service");
+        }
+        
+        // Identical content analyzed before, for any project, is not sent again. The
+        // demo video's result says nothing about this content, so it is never cached.
+        Optional<Video> video = videoRepository.findFirstByStorageUrl(videoStorageUrl);
+        boolean cacheable = analysisUrl.equals(fullVideoUrl);
+        AnalysisResultCache.Key cacheKey = cacheKey(video.map(Video::getContentHash).orElse(null));
+        Optional<String> cached = cacheable ? resultCache.get(cacheKey) : Optional.empty();
+        if (cached.isPresent()) {
+            saveResults(projectId, cached.get(), "completed");
+            logger.info("Reused cached body language analysis of identical video for project {}", projectId);
+            return;
+        }
+        
+        // Retried submissions of the same video for the same project carry the same key
+        String idempotencyKey = idempotencyKey(projectId,
+            video.map(Video::getContentHash).orElse(videoStorageUrl));
+        
+        // Long videos can be cut into keyframe-aligned windows and analyzed in parallel;
+        // window URLs point at this server, so this needs a publicly reachable base URL
+        if (windowedAnalysisEnabled && !fullVideoUrl.contains("localhost")) {
+            Optional<List<Mp4Windows.Window>> windows = video.flatMap(analysisWindowService::plan);
+            if (windows.isPresent()) {
+                try {
+                    String mergedResults = analyzeWindows(projectId, video.get().getContentHash(), windows.get(),
+                        idempotencyKey);
+                    saveResults(projectId, mergedResults, "completed");
+                    resultCache.put(cacheKey, mergedResults);
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof AnalysisFailedException failed) {
+                        throw failed;
+                    }
+                    throw AnalysisHttpClient.asIOException(e, analysisEndpoint());
+                }
+                return;
+            }
+        }
+        
+        logger.info("Triggering body language analysis for project {} with video URL: {}", projectId, analysisUrl);
+        
+        // Make the API call
+        Map<String, String> requestBody = requestBody(projectId, analysisUrl);
+        HttpResponse<String> response = bodyLanguageDownstream.call(analysisEndpoint(),
+            () -> analysisHttpClient.postJsonAsync(analysisEndpoint(), requestBody,
+                Map.of(AnalysisHttpClient.IDEMPOTENCY_KEY, idempotencyKey), Duration.ofSeconds(requestTimeoutSeconds)));
+        
+        if (response.statusCode() / 100 != 2) {
+            throw new AnalysisFailedException("Body language analysis API returned status: " + response.statusCode());
+        }
+        logger.info("Successfully received body language analysis for project {}", projectId);
+        
+        // Store the analysis results in database
+        saveResults(projectId, response.body(), "completed");
+        if (cacheable) {
+            resultCache.put(cacheKey, response.body());
+        }
+    }
+    
+    /**
+     * Record that analysis of a project failed for good
+     */
+    public void markFailed(String projectId) {
+        saveResults(projectId, null, "error");
+    }
+    
+    private String analysisEndpoint() {
+        return bodyLanguageApiBaseUrl + "/analysis/action";
+    }
+    
+    private AnalysisResultCache.Key cacheKey(String contentHash) {
+        return new AnalysisResultCache.Key(AnalysisResultCacheEntry.AnalysisType.BODY_LANGUAGE, contentHash,
+            modelVersion, Map.of());
+    }
+    
+    private static String idempotencyKey(String projectId, String video) {
+        return "body-language:" + projectId + ":" + video;
+    }
+    
+    private Map<String, String> requestBody(String projectId, String videoUrl) {
+        Map<String, String> requestBody = new HashMap<>();
+        requestBody.put("video_url", videoUrl);
+        requestBody.put("project_id", projectId);
+        return requestBody;
+    }
+    
+    /**
+     * Analyze the windows of a video concurrently and merge the results onto
+     * the original timeline. Fails as a whole if any window fails. No more
+     * windows are started at once than the bulkhead has free slots, so one job
+     * does not crowd out the others.
+     */
+    private String analyzeWindows(String projectId, String contentHash, List<Mp4Windows.Window> windows,
+                                  String idempotencyKey) throws IOException {
+        int freeSlots = bodyLanguageDownstream.getMaxConcurrentCalls() - bodyLanguageDownstream.getActiveCalls();
+        int parallelism = Math.max(1, Math.min(windows.size(), freeSlots));
+        logger.info("Triggering body language analysis for project {} in {} windows, {} at a time",
+            projectId, windows.size(), parallelism);
+        long start = System.nanoTime();
+        
+        List<String> results = new WindowFanOut(projectId, contentHash, windows, idempotencyKey)
+            .run(parallelism)
+            .join();
+        String merged = mergeWindowResults(projectId, windows, results);
+        logger.info("Body language analysis of {} windows for project {} took {} ms", windows.size(), projectId,
+            (System.nanoTime() - start) / 1_000_000);
+        return merged;
+    }
+    
+    private CompletableFuture<String> analyzeWindow(String projectId, String contentHash, Mp4Windows.Window window,
+                                                    String idempotencyKey) {
+        String windowUrl = analysisWindowService.windowUrl(contentHash, window);
+        Map<String, String> headers = Map.of(AnalysisHttpClient.IDEMPOTENCY_KEY,
+            idempotencyKey + ":" + window.firstFrame() + "-" + window.endFrame());
+        return bodyLanguageDownstream.callAsync(() -> analysisHttpClient.postJsonAsync(analysisEndpoint(),
+                requestBody(projectId, windowUrl), headers, Duration.ofSeconds(requestTimeoutSeconds)))
+            .thenApply(response -> {
+                if (response.statusCode() / 100 != 2) {
+                    throw new AnalysisFailedException("Analysis of " + windowUrl + " returned " + response.statusCode());
+                }
+                return response.body();
+            });
+    }
+    
+    /**
+     * The windows of one job, run a few at a time. A window refused by a full
+     * bulkhead while others of the job are in flight waits for one of them to
+     * finish and is tried again; any other failure fails the job at once and
+     * cancels the windows still running, so their retries stop.
+     */
+    private class WindowFanOut {
+        
+        private final String projectId;
+        private final String contentHash;
+        private final List<Mp4Windows.Window> windows;
+        private final String idempotencyKey;
+        private final CompletableFuture<List<String>> done = new CompletableFuture<>();
+        
+        // Guarded by this
+        private final String[] results;
+        private final Deque<Integer> pending = new ArrayDeque<>();
+        private final Map<Integer, CompletableFuture<String>> running = new HashMap<>();
+        private int completed;
+        
+        WindowFanOut(String projectId, String contentHash, List<Mp4Windows.Window> windows, String idempotencyKey) {
+            this.projectId = projectId;
+            this.contentHash = contentHash;
+            this.windows = windows;
+            this.idempotencyKey = idempotencyKey;
+            this.results = new String[windows.size()];
+        }
+        
+        synchronized CompletableFuture<List<String>> run(int parallelism) {
+            for (int i = 0; i < windows.size(); i++) {
+                pending.add(i);
+            }
+            for (int i = 0; i < parallelism; i++) {
+                startNext();
+            }
+            return done;
+        }
+        
+        private void startNext() {
+            Integer index = pending.poll();
+            if (index == null || done.isDone()) {
+                return;
+            }
+            CompletableFuture<String> call = analyzeWindow(projectId, contentHash, windows.get(index), idempotencyKey);
+            running.put(index, call);
+            call.whenComplete((result, error) -> finished(index, result, error));
+        }
+        
+        private synchronized void finished(int index, String result, Throwable error) {
+            running.remove(index);
+            if (done.isDone()) {
+                return;
+            }
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+                if (cause instanceof BulkheadFullException && !running.isEmpty()) {
+                    pending.addFirst(index);
+                    return;
+                }
+                done.completeExceptionally(cause);
+                List.copyOf(running.values()).forEach(sibling -> sibling.cancel(true));
+                return;
+            }
+            results[index] = result;
+            if (++completed == windows.size()) {
+                done.complete(Arrays.asList(results));
+            } else {
+                startNext();
+            }
+        }
+    }
+    
+    /**
+     * Merge per-window results into one result in the service's own format.
+     * Frame numbers are shifted by each window's first frame, and an occurrence
+     * cut by a window boundary is joined back into one period.
+     */
+    private String mergeWindowResults(String projectId, List<Mp4Windows.Window> windows, List<String> results)
+            throws IOException {
+        Map<String, ObjectNode> actions = new LinkedHashMap<>();
+        int totalBadPostures = 0;
+        double totalDurationSeconds = 0;
+        for (int i = 0; i < windows.size(); i++) {
+            int frameOffset = windows.get(i).firstFrame();
+            JsonNode result = objectMapper.readTree(results.get(i));
+            totalBadPostures += result.path("totalBadPostures").asInt();
+            totalDurationSeconds += result.path("totalDurationSeconds").asDouble();
+            
+            for (JsonNode action : result.path("detectedActions")) {
+                ObjectNode merged = actions.computeIfAbsent(action.path("actionName").asText(), name -> {
+                    ObjectNode node = objectMapper.createObjectNode();
+                    node.put("actionName", name);
+                    node.putArray("periods");
+                    node.putObject("summary").put("totalDurationSeconds", 0.0).put("occurrenceCount", 0);
+                    return node;
+                });
+                ArrayNode periods = (ArrayNode) merged.get("periods");
+                ObjectNode summary = (ObjectNode) merged.get("summary");
+                summary.put("totalDurationSeconds", summary.path("totalDurationSeconds").asDouble()
+                    + action.path("summary").path("totalDurationSeconds").asDouble());
+                
+                for (JsonNode period : action.path("periods")) {
+                    int startFrame = period.path("startFrame").asInt() + frameOffset;
+                    int endFrame = period.path("endFrame").asInt() + frameOffset;
+                    double seconds = period.path("durationSeconds").asDouble();
+                    ObjectNode previous = periods.isEmpty() ? null : (ObjectNode) periods.get(periods.size() - 1);
+                    int previousEnd = previous == null ? -1 : previous.path("endFrame").asInt();
+                    boolean continuesPrevious = previous != null && previousEnd < frameOffset
+                        && previousEnd >= frameOffset - 1 - WINDOW_JOIN_TOLERANCE_FRAMES
+                        && startFrame - frameOffset <= WINDOW_JOIN_TOLERANCE_FRAMES;
+                    if (continuesPrevious) {
+                        previous.put("endFrame", endFrame);
+                        previous.put("durationSeconds", previous.path("durationSeconds").asDouble() + seconds);
+                        totalBadPostures--;
+                    } else {
+                        periods.addObject()
+                            .put("startFrame", startFrame)
+                            .put("endFrame", endFrame)
+                            .put("durationSeconds", seconds);
+                    }
+                }
+                summary.put("occurrenceCount", periods.size());
+            }
+        }
+        
+        ObjectNode merged = objectMapper.createObjectNode();
+        merged.put("projectId", projectId);
+        merged.put("totalBadPostures", Math.max(0, totalBadPostures));
+        merged.put("totalDurationSeconds", totalDurationSeconds);
+        ArrayNode detectedActions = merged.putArray("detectedActions");
+        actions.values().forEach(detectedActions::add);
+        return objectMapper.writeValueAsString(merged);
+    }
+    
+    /**
+     * The analysis service answered, but not with results
+     */
+    static class AnalysisFailedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        AnalysisFailedException(String message) {
+            super(message);
+        }
+    }
+    
+    private void saveResults(String projectId, String analysisResults, String status) {
+        // Check if analysis already exists and update, otherwise create new
+        Optional<BodyLanguageAnalysis> existingAnalysis = analysisRepository.findByProjectId(projectId);
+        if (existingAnalysis.isPresent()) {
+            BodyLanguageAnalysis existing = existingAnalysis.get();
+            existing.setAnalysisResults(analysisResults);
+            existing.setStatus(status);
+            analysisRepository.save(existing);
+            logger.info("Updated existing analysis results for project {}", projectId);
+        } else {
+            analysisRepository.save(new BodyLanguageAnalysis(projectId, analysisResults, status));
+            logger.info("Saved new analysis results for project {}", projectId);
+        }
+        publishResult(projectId, status);
+    }
+    
+    private void publishResult(String projectId, String status) {
+        if (!projectId.matches("\\d{1,18}")) {
+            // Not a project of this application; nobody to notify
+            return;
         }
+        // "error" and "failed" both count as failed
+        progressPublisher.stage(Long.valueOf(projectId), "body_language_analysis",
+            "completed".equals(status) ? AnalysisProgressPublisher.COMPLETED : AnalysisProgressPublisher.FAILED);
     }
     
     /**
@@ -146,8 +454,8 @@ public class BodyLanguageAnalysisService {
     public boolean isServiceAvailable() {
         try {
             String healthEndpoint = bodyLanguageApiBaseUrl + "/health";
-            ResponseEntity<String> response = restTemplate.getForEntity(healthEndpoint, String.class);
-            return response.getStatusCode().is2xxSuccessful();
+            HttpResponse<String> response = analysisHttpClient.get(healthEndpoint, HEALTH_CHECK_TIMEOUT);
+            return response.statusCode() / 100 == 2;
         } catch (Exception e) {
             logger.warn("Body language analysis service health check failed: {}", e.getMessage());
             return false;
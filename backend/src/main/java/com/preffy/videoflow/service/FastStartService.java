@@ -0,0 +1,131 @@
+package com.preffy.videoflow.service;
+
+import com.preffy.videoflow.media.FastStartRewriter;
+import com.preffy.videoflow.media.FileSource;
+import com.preffy.videoflow.media.Mp4FormatException;
+import com.preffy.videoflow.media.Mp4Movie;
+import com.preffy.videoflow.media.Mp4Parser;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingest stage that moves the moov box of tail-moov MP4s (typical for phone
+ * recordings) in front of the media data before the file is stored. Players
+ * and the analysis service can then start from the first few hundred KB
+ * instead of fetching the end of the file first. Runs on the local copy of the
+ * upload, so the rewrite costs one sequential local copy and no extra transfer
+ * to or from the object store.
+ */
+@Service
+public class FastStartService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FastStartService.class);
+
+    @Value("${app.ingest.faststart.enabled:true}")
+    private boolean enabled;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Parse a local upload and rewrite it in place if its moov box follows the
+     * media data. Files that are already faststart or fragmented are left as
+     * they are; so is the original if the rewrite fails.
+     * @return the structure of the file as it is now, so later ingest stages
+     *         need not parse it again; empty if it is not a readable MP4
+     */
+    public Optional<Mp4Movie> prepare(Path file) {
+        Mp4Movie movie;
+        try (FileSource source = new FileSource(file)) {
+            movie = Mp4Parser.parse(source);
+        } catch (Mp4FormatException e) {
+            logger.debug("Not rewriting {}: {}", file.getFileName(), e.getMessage());
+            return Optional.empty();
+        } catch (IOException e) {
+            logger.warn("Failed to inspect {} for faststart: {}", file.getFileName(), e.getMessage());
+            return Optional.empty();
+        }
+        if (!enabled) {
+            return Optional.of(movie);
+        }
+        if (!FastStartRewriter.needsRewrite(movie)) {
+            count(movie.isFastStart() ? "already-faststart" : "skipped");
+            return Optional.of(movie);
+        }
+
+        Path rewritten = file.resolveSibling(file.getFileName() + ".faststart");
+        long start = System.nanoTime();
+        Mp4Movie rewrittenMovie;
+        try {
+            try (FileSource source = new FileSource(file);
+                 FileChannel target = FileChannel.open(rewritten, StandardOpenOption.CREATE,
+                         StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                FastStartRewriter.rewrite(source, target);
+            }
+            rewrittenMovie = verify(rewritten, movie);
+            Files.move(rewritten, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            count("failed");
+            logger.warn("Faststart rewrite of {} failed, storing it unchanged: {}", file.getFileName(), e.getMessage());
+            deleteQuietly(rewritten);
+            return Optional.of(movie);
+        }
+
+        long nanos = System.nanoTime() - start;
+        Timer.builder("ingest.faststart.duration")
+                .description("Time to rewrite tail-moov uploads into faststart layout")
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        count("rewritten");
+        logger.info("Moved {} byte moov of {} from offset {} to the front ({} bytes) in {} ms",
+                movie.getMoovSize(), file.getFileName(), movie.getMoovOffset(), movie.getFileSize(), nanos / 1_000_000);
+        return Optional.of(rewrittenMovie);
+    }
+
+    /**
+     * Re-parse the rewritten file before it replaces the original
+     * @return the rewritten file's structure
+     */
+    private Mp4Movie verify(Path rewritten, Mp4Movie original) throws IOException {
+        Mp4Movie movie;
+        try (FileSource source = new FileSource(rewritten)) {
+            movie = Mp4Parser.parse(source);
+        }
+        if (!movie.isFastStart() || movie.getTracks().size() != original.getTracks().size()
+                || movie.getDuration() != original.getDuration()) {
+            throw new Mp4FormatException("Rewritten file does not match the original structure");
+        }
+        return movie;
+    }
+
+    private void count(String result) {
+        Counter.builder("ingest.faststart")
+                .description("Uploads inspected for faststart layout")
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.debug("Failed to delete {}: {}", path, e.getMessage());
+        }
+    }
+}
@@ -1,240 +1,289 @@
 package com.preffy.videoflow.service;
 
-import com.google.cloud.storage.Blob;
-import com.google.cloud.storage.BlobId;
-import com.google.cloud.storage.BlobInfo;
-import com.google.cloud.storage.Storage;
-import com.google.cloud.storage.StorageOptions;
+import com.preffy.videoflow.entity.StoredBlob;
+import com.preffy.videoflow.media.FileSource;
+import com.preffy.videoflow.media.ObjectStoreSource;
+import com.preffy.videoflow.media.SeekableSource;
+import com.preffy.videoflow.model.Video;
+import com.preffy.videoflow.repository.VideoRepository;
+import com.preffy.videoflow.storage.CachingObjectStore;
+import com.preffy.videoflow.storage.GcsObjectStore;
+import com.preffy.videoflow.storage.ObjectMetadata;
+import com.preffy.videoflow.storage.ObjectStore;
+import com.preffy.videoflow.storage.ObjectStoreResource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Maps uploads and public URLs onto keys in the configured {@link ObjectStore}.
+ * Which backend holds the bytes (local disk, GCS, memory) is decided by
+ * ObjectStoreConfig; this service only deals in keys and URLs. Uploads are
+ * stored content-addressed (key derived from the SHA-256), so identical files
+ * share one object.
+ */
 @Service
 public class FileStorageService {
 
-    @Value("${app.storage.type:local}")
-    private String storageType;
+    private static final Logger logger = LoggerFactory.getLogger(FileStorageService.class);
 
-    @Value("${app.storage.local.path:${user.home}/preffy-uploads}")
-    private String localStoragePath;
+    public static final String VIDEO_FOLDER = "videos";
+
+    private static final String STREAM_PATH = "/api/videos/stream/";
+
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
 
     @Value("${app.storage.base-url:http://localhost:8080}")
     private String baseUrl;
 
-    @Value("${app.storage.gcs.bucket:preffy-video-storage}")
-    private String gcsStorageBucket;
+    @Value("${app.storage.staging-path:${java.io.tmpdir}/preffy-ingest}")
+    private Path stagingPath;
+
+    @Autowired
+    private ObjectStore objectStore;
+
+    @Autowired
+    private StoredBlobService storedBlobService;
+
+    @Autowired
+    private VideoRepository videoRepository;
+
+    @Autowired
+    private VideoMetadataCache videoMetadataCache;
 
-    @Value("${app.storage.gcs.folder:videos}")
-    private String gcsStorageFolder;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final AtomicLong inFlightUploadBytes = new AtomicLong();
+
+    private Counter deduplicatedBytes;
+
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("storage.upload.inflight.bytes", inFlightUploadBytes, AtomicLong::get)
+                .description("Bytes of uploads currently being streamed to storage and not yet committed")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        deduplicatedBytes = Counter.builder("storage.dedup.bytes")
+                .description("Bytes of uploads that matched an already stored blob and were not stored again")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
 
     /**
-     * Upload file to storage (local for now, can be extended to GCS)
-     * @param file MultipartFile to upload
-     * @param folder Folder name in the storage
-     * @return Public URL of the uploaded file
+     * Move an uploaded multipart file to the staging directory so it can be
+     * stored with {@link #storeBlob(Path, String, String, String, Consumer)}.
+     * Multipart parts are already spooled to disk, so this is usually a rename.
+     * The content is not hashed here: that would turn the rename into a copy
+     * on the request thread, and storeBlob has to hash files staged elsewhere,
+     * e.g. resumable uploads assembled out of order, anyway.
+     * @return the staged file; the caller deletes it if it is not stored
      */
-    public String uploadFile(MultipartFile file, String folder) throws IOException {
-        if ("gcs".equalsIgnoreCase(storageType)) {
-            return uploadToGoogleCloudStorage(file, folder);
-        } else {
-            return uploadToLocalStorage(file, folder);
-        }
+    public Path stage(MultipartFile file) throws IOException {
+        Path staged = Files.createDirectories(stagingPath).resolve(UUID.randomUUID() + ".upload");
+        file.transferTo(staged.toFile());
+        return staged;
     }
 
     /**
-     * Upload to local storage
+     * Create an empty file in the staging directory for output that is later
+     * moved into the object store
      */
-    private String uploadToLocalStorage(MultipartFile file, String folder) throws IOException {
-        // Create directory if it doesn't exist
-        Path uploadDir = Paths.get(localStoragePath, folder);
-        Files.createDirectories(uploadDir);
-
-        // Generate unique filename
-        String originalFilename = file.getOriginalFilename();
-        String extension = originalFilename != null && originalFilename.contains(".") 
-            ? originalFilename.substring(originalFilename.lastIndexOf(".")) 
-            : "";
-        String filename = UUID.randomUUID().toString() + extension;
-
-        // Save file
-        Path filePath = uploadDir.resolve(filename);
-        Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
+    public Path createStagingFile(String suffix) throws IOException {
+        return Files.createTempFile(Files.createDirectories(stagingPath), "derived-", suffix);
+    }
 
-        // Return public URL
-        return String.format("%s/api/videos/stream/%s", baseUrl, filename);
+    /**
+     * Store a file that has already been fully received on local disk, e.g. an
+     * assembled resumable upload. The source path no longer exists afterwards;
+     * local storage moves it into place instead of copying, and duplicates are
+     * simply discarded.
+     * @param source Local file to store
+     * @param originalFilename Client-side filename, used for the extension
+     * @param contentType MIME type of the file
+     * @param folder Folder name in the storage
+     * @return The blob holding the content, with a reference taken for the caller
+     */
+    public StoredBlob storeBlob(Path source, String originalFilename, String contentType, String folder) throws IOException {
+        return storeBlob(source, originalFilename, contentType, folder, file -> { });
     }
 
     /**
-     * Upload to Google Cloud Storage (placeholder for future implementation)
+     * Store a local file, letting an ingest stage rewrite it first. The blob is
+     * still addressed by the hash of the file as received, so re-uploads of the
+     * same original are deduplicated without running the stage again.
+     * @param prepare Rewrites the file in place; only called for new content
      */
-    private String uploadToGoogleCloudStorage(MultipartFile file, String folder) throws IOException {
+    public StoredBlob storeBlob(Path source, String originalFilename, String contentType, String folder,
+                                Consumer<Path> prepare) throws IOException {
+        long receivedSize = Files.size(source);
+        // One read of the local file; for project uploads this runs on the upload-processing
+        // executor rather than the request thread, see stage()
+        String contentHash;
+        try (InputStream in = Files.newInputStream(source)) {
+            contentHash = sha256(in);
+        }
+
+        Optional<StoredBlob> existing = storedBlobService.acquire(contentHash);
+        if (existing.isPresent()) {
+            Files.deleteIfExists(source);
+            return deduplicated(existing.get(), receivedSize);
+        }
+
+        prepare.accept(source);
+        long size = Files.size(source);
+
+        String key = blobKey(folder, contentHash, originalFilename);
+        inFlightUploadBytes.addAndGet(size);
         try {
-            // Initialize Storage client
-            Storage storage = StorageOptions.getDefaultInstance().getService();
-            
-            // Get bucket name from properties
-            String bucketName = gcsStorageBucket;
-            
-            // Generate unique filename
-            String originalFilename = file.getOriginalFilename();
-            String extension = originalFilename != null && originalFilename.contains(".") 
-                ? originalFilename.substring(originalFilename.lastIndexOf(".")) 
-                : "";
-            String filename = UUID.randomUUID().toString() + extension;
-            
-            // Create blob path
-            String blobPath = folder + "/" + filename;
-            
-            // Create BlobId and BlobInfo
-            BlobId blobId = BlobId.of(bucketName, blobPath);
-            BlobInfo blobInfo = BlobInfo.newBuilder(blobId)
-                    .setContentType(file.getContentType())
-                    .build();
-            
-            // Upload the file
-            storage.create(blobInfo, file.getBytes());
-            
-            // Generate public URL (direct access)
-            String publicUrl = String.format("https://storage.googleapis.com/%s/%s", bucketName, blobPath);
-            
-            System.out.println("File uploaded to GCS: " + publicUrl);
-            return publicUrl;
-            
-        } catch (Exception e) {
-            System.err.println("Failed to upload to GCS: " + e.getMessage());
-            e.printStackTrace();
-            // Fall back to local storage
-            System.out.println("Falling back to local storage");
-            return uploadToLocalStorage(file, folder);
+            objectStore.moveFrom(key, source, contentType);
+        } finally {
+            inFlightUploadBytes.addAndGet(-size);
         }
+
+        logger.info("File uploaded to {} storage: {}", objectStore.getType(), key);
+        return register(contentHash, key, size, contentType);
+    }
+
+    /**
+     * Drop a video's reference on a blob, deleting the object when it was the last one
+     */
+    public void releaseBlob(String contentHash) {
+        storedBlobService.release(contentHash);
+    }
+
+    /**
+     * Public URL for a video stored in the given blob. Object stores with public
+     * URLs share one URL per blob; otherwise the URL goes through the streaming
+     * API using the video's own filename.
+     */
+    public String getPublicUrl(StoredBlob blob, String filename) {
+        return objectStore.getPublicUrl(blob.getStorageKey())
+                .orElseGet(() -> baseUrl + STREAM_PATH + filename);
     }
 
     /**
-     * Delete file from storage
+     * Delete file from storage. The URL of a content-addressed blob drops one
+     * reference on it instead, so videos sharing the blob keep their bytes.
      * @param fileUrl Public URL of the file to delete
      * @return true if deleted successfully
      */
     public boolean deleteFile(String fileUrl) {
         try {
-            if ("gcs".equalsIgnoreCase(storageType)) {
-                return deleteFromGoogleCloudStorage(fileUrl);
-            } else {
-                return deleteFromLocalStorage(fileUrl);
+            String key = resolveKey(fileUrl);
+            if (key == null) return false;
+
+            Optional<StoredBlob> blob = storedBlobService.findByStorageKey(key);
+            if (blob.isPresent()) {
+                storedBlobService.release(blob.get().getContentHash());
+                return true;
             }
+            return objectStore.delete(key);
         } catch (Exception e) {
-            e.printStackTrace();
+            logger.warn("Failed to delete {} from {} storage: {}", fileUrl, objectStore.getType(), e.getMessage());
             return false;
         }
     }
 
     /**
-     * Delete from local storage
+     * Check if file exists
+     * @param fileUrl Public URL of the file
+     * @return true if file exists
      */
-    private boolean deleteFromLocalStorage(String fileUrl) {
+    public boolean fileExists(String fileUrl) {
         try {
-            // Extract filename from URL
-            String filename = extractFilenameFromUrl(fileUrl);
-            if (filename == null) return false;
-
-            Path filePath = Paths.get(localStoragePath, "videos", filename);
-            return Files.deleteIfExists(filePath);
+            String key = resolveKey(fileUrl);
+            return key != null && objectStore.head(key).isPresent();
         } catch (Exception e) {
             return false;
         }
     }
 
     /**
-     * Delete from Google Cloud Storage (placeholder)
+     * Load a stored file as a Resource for streaming
+     * @param fileUrl Public or relative URL of the file
+     * @return the resource, or empty if the object does not exist
      */
-    private boolean deleteFromGoogleCloudStorage(String fileUrl) {
-        try {
-            // Extract blob name from URL
-            String blobName = extractBlobNameFromGcsUrl(fileUrl);
-            if (blobName == null) return false;
-            
-            // Initialize Storage client
-            Storage storage = StorageOptions.getDefaultInstance().getService();
-            
-            // Delete the blob
-            BlobId blobId = BlobId.of(gcsStorageBucket, blobName);
-            return storage.delete(blobId);
-            
-        } catch (Exception e) {
-            System.err.println("Failed to delete from GCS: " + e.getMessage());
-            return false;
+    public Optional<ObjectStoreResource> loadAsResource(String fileUrl) throws IOException {
+        String key = resolveKey(fileUrl);
+        if (key == null) {
+            return Optional.empty();
         }
+        return loadObject(key);
     }
 
     /**
-     * Check if file exists
-     * @param fileUrl Public URL of the file
-     * @return true if file exists
+     * Load a stored object by key as a Resource for streaming
+     * @return the resource, or empty if the object does not exist
      */
-    public boolean fileExists(String fileUrl) {
-        try {
-            if ("gcs".equalsIgnoreCase(storageType)) {
-                String blobName = extractBlobNameFromGcsUrl(fileUrl);
-                if (blobName == null) return false;
-                
-                Storage storage = StorageOptions.getDefaultInstance().getService();
-                BlobId blobId = BlobId.of(gcsStorageBucket, blobName);
-                Blob blob = storage.get(blobId);
-                return blob != null && blob.exists();
-            } else {
-                String filename = extractFilenameFromUrl(fileUrl);
-                if (filename == null) return false;
-                
-                Path filePath = Paths.get(localStoragePath, "videos", filename);
-                return Files.exists(filePath);
-            }
-        } catch (Exception e) {
-            return false;
-        }
+    public Optional<ObjectStoreResource> loadObject(String key) throws IOException {
+        return objectStore.head(key).map(metadata -> new ObjectStoreResource(objectStore, metadata));
     }
 
     /**
-     * Extract filename from URL
+     * Open a stored object for random access, reading the local file directly
+     * when the backend has one and using ranged reads otherwise
      */
-    private String extractFilenameFromUrl(String fileUrl) {
-        try {
-            // For local storage: http://localhost:8080/api/videos/stream/filename.ext
-            if (fileUrl.contains("/stream/")) {
-                return fileUrl.substring(fileUrl.lastIndexOf("/stream/") + 8);
-            }
-            return null;
-        } catch (Exception e) {
-            return null;
+    public SeekableSource openSource(String key) throws IOException {
+        Optional<Path> localPath = objectStore.localPath(key);
+        if (localPath.isPresent()) {
+            return new FileSource(localPath.get());
         }
+        ObjectMetadata metadata = objectStore.head(key)
+                .orElseThrow(() -> new FileNotFoundException("Object not found: " + key));
+        return new ObjectStoreSource(objectStore, metadata);
     }
 
     /**
-     * Extract blob name from GCS URL
+     * Resolve the storage key referenced by a public URL. Handles both API stream
+     * URLs (absolute or relative) and direct object-store URLs. A stream URL
+     * names the video, not the object: content-addressed videos resolve to
+     * their blob's key, while videos stored before content addressing live
+     * under their own filename. Videos are looked up through the metadata
+     * cache, as the stream endpoint does.
      */
-    private String extractBlobNameFromGcsUrl(String fileUrl) {
-        try {
-            // GCS signed URLs contain the blob path
-            // We need to extract the folder/filename part
-            if (fileUrl.contains(gcsStorageFolder + "/")) {
-                int startIndex = fileUrl.indexOf(gcsStorageFolder + "/");
-                String remaining = fileUrl.substring(startIndex);
-                // Remove query parameters if any
-                int queryIndex = remaining.indexOf("?");
-                if (queryIndex > 0) {
-                    remaining = remaining.substring(0, queryIndex);
-                }
-                return remaining;
-            }
-            return null;
-        } catch (Exception e) {
+    public String resolveKey(String fileUrl) {
+        if (fileUrl == null) {
             return null;
         }
+
+        // For API streaming: http://localhost:8080/api/videos/stream/filename.ext
+        if (fileUrl.contains(STREAM_PATH)) {
+            String filename = fileUrl.substring(fileUrl.lastIndexOf(STREAM_PATH) + STREAM_PATH.length());
+            return videoMetadataCache.get(filename, videoRepository::findByFilename)
+                    .map(Video::getStorageKey)
+                    .orElse(VIDEO_FOLDER + "/" + filename);
+        }
+
+        // For direct object URLs, e.g. https://storage.googleapis.com/bucket/videos/filename.ext
+        Optional<String> urlPrefix = objectStore.getPublicUrl("");
+        if (urlPrefix.isPresent() && fileUrl.startsWith(urlPrefix.get())) {
+            String key = fileUrl.substring(urlPrefix.get().length());
+            int queryIndex = key.indexOf('?');
+            return queryIndex > 0 ? key.substring(0, queryIndex) : key;
+        }
+        return null;
     }
 
     /**
@@ -242,24 +291,71 @@ public class FileStorageService {
      */
     public void initializeStorage() {
         try {
-            if ("local".equalsIgnoreCase(storageType)) {
-                // Create local storage directories
-                Path uploadDir = Paths.get(localStoragePath, "videos");
-                Files.createDirectories(uploadDir);
-                System.out.println("Local storage initialized at: " + uploadDir.toAbsolutePath());
-            } else if ("gcs".equalsIgnoreCase(storageType)) {
-                // Initialize GCS - check if bucket exists
-                try {
-                    Storage storage = StorageOptions.getDefaultInstance().getService();
-                    storage.get(gcsStorageBucket);
-                    System.out.println("GCS storage initialized. Bucket: " + gcsStorageBucket);
-                } catch (Exception e) {
-                    System.err.println("Failed to connect to GCS bucket '" + gcsStorageBucket + "': " + e.getMessage());
-                    System.out.println("Make sure the bucket exists and credentials are properly configured.");
+            ObjectStore backend = objectStore instanceof CachingObjectStore cachingObjectStore
+                    ? cachingObjectStore.getDelegate()
+                    : objectStore;
+            if (backend instanceof GcsObjectStore gcsObjectStore) {
+                // Check the bucket up front so credential problems show at startup
+                if (gcsObjectStore.bucketExists()) {
+                    logger.info("GCS storage initialized. Bucket: {}", gcsObjectStore.getBucket());
+                } else {
+                    logger.error("GCS bucket '{}' does not exist", gcsObjectStore.getBucket());
                 }
+            } else {
+                logger.info("{} storage initialized", objectStore.getType());
             }
         } catch (Exception e) {
-            System.err.println("Failed to initialize storage: " + e.getMessage());
+            logger.error("Failed to initialize {} storage: {}. Make sure the bucket exists and credentials are properly configured.",
+                    objectStore.getType(), e.getMessage());
+        }
+    }
+
+    /**
+     * Generate a unique filename, keeping the original extension
+     */
+    public String generateFilename(String originalFilename) {
+        return UUID.randomUUID().toString() + extensionOf(originalFilename);
+    }
+
+    private StoredBlob register(String contentHash, String key, long size, String contentType) {
+        try {
+            return storedBlobService.register(contentHash, key, size, contentType);
+        } catch (DataIntegrityViolationException e) {
+            // A concurrent upload of the same content registered first; it wrote
+            // identical bytes, so share its blob
+            return storedBlobService.acquire(contentHash).orElseThrow(() -> e);
+        }
+    }
+
+    private StoredBlob deduplicated(StoredBlob blob, long size) {
+        deduplicatedBytes.increment(size);
+        logger.info("Upload matches stored blob {} ({} references), skipped storing {} bytes",
+                blob.getStorageKey(), blob.getRefCount(), size);
+        return blob;
+    }
+
+    private String blobKey(String folder, String contentHash, String originalFilename) {
+        return folder + "/" + contentHash + extensionOf(originalFilename);
+    }
+
+    private String extensionOf(String originalFilename) {
+        return originalFilename != null && originalFilename.contains(".")
+            ? originalFilename.substring(originalFilename.lastIndexOf(".")).toLowerCase()
+            : "";
+    }
+
+    private static String sha256(InputStream in) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        byte[] buffer = new byte[HASH_BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
         }
+        return HexFormat.of().formatHex(digest.digest());
     }
 }
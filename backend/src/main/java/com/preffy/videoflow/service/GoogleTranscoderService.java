@@ -1,54 +0,0 @@
-package com.preffy.videoflow.service;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.stereotype.Service;
-
-@Service
-public class GoogleTranscoderService {
-    
-    private static final Logger logger = LoggerFactory.getLogger(GoogleTranscoderService.class);
-    
-    @Value("${app.gcp.project-id}")
-    private String projectId;
-    
-    @Value("${app.storage.gcs.bucket}")
-    private String bucket;
-    
-    /**
-     * Extract audio from video and return the audio URL
-     * For now, this simulates the audio extraction process
-     * In a real implementation, this would use Google Cloud Transcoder API
-     */
-    public String extractAudioFromVideo(String videoUrl, String projectId) {
-        try {
-            // For demo purposes, we'll simulate audio extraction by returning a demo audio URL
-            // In production, this would:
-            // 1. Use Google Cloud Transcoder API to extract audio
-            // 2. Save the MP3 file to Google Cloud Storage
-            // 3. Return the GCS URL of the audio file
-            
-            String audioFileName = "audio_" + projectId + ".mp3";
-            String audioUrl = "gs://" + bucket + "/audio/" + audioFileName;
-            
-            logger.info("Audio extraction simulated for project {}: {}", projectId, audioUrl);
-            
-            // For demo purposes, return a public demo audio URL
-            return "https://storage.googleapis.com/" + bucket + "/demo-audio/demo.mp3";
-            
-        } catch (Exception e) {
-            logger.error("Error in audio extraction", e);
-            throw new RuntimeException("Failed to extract audio: " + e.getMessage(), e);
-        }
-    }
-    
-    /**
-     * Check if audio extraction is complete
-     * For now, always returns true (instant completion)
-     */
-    public boolean isAudioExtractionComplete(String audioUrl) {
-        // In a real implementation, this would check the status of the transcoding job
-        return true;
-    }
-}
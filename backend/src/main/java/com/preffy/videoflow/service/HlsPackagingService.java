@@ -0,0 +1,197 @@
+package com.preffy.videoflow.service;
+
+import com.preffy.videoflow.media.HlsPackager;
+import com.preffy.videoflow.media.Mp4FormatException;
+import com.preffy.videoflow.media.SeekableSource;
+import com.preffy.videoflow.model.Video;
+import com.preffy.videoflow.repository.StoredBlobRepository;
+import com.preffy.videoflow.repository.VideoRepository;
+import com.preffy.videoflow.storage.ObjectMetadata;
+import com.preffy.videoflow.storage.ObjectStore;
+import com.preffy.videoflow.storage.ObjectStoreResource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Pattern;
+
+/**
+ * Packages stored MP4 blobs into fragmented MP4 segments plus an HLS playlist,
+ * stored next to the blob under {@code hls/<content hash>/}. Renditions are
+ * content-addressed like blobs, so their objects never change once written and
+ * are served with immutable cache headers; videos sharing a blob share one
+ * rendition.
+ */
+@Service
+public class HlsPackagingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(HlsPackagingService.class);
+
+    public static final String HLS_FOLDER = "hls";
+
+    private static final String HLS_PATH = "/api/videos/hls/";
+
+    private static final Pattern CONTENT_HASH = Pattern.compile("[0-9a-f]{64}");
+    private static final Pattern OBJECT_NAME = Pattern.compile("[a-z0-9_]+\\.(m3u8|mp4|m4s)");
+
+    @Value("${app.streaming.hls.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.streaming.hls.segment-seconds:6}")
+    private double segmentSeconds;
+
+    @Autowired
+    private ObjectStore objectStore;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private StoredBlobRepository storedBlobRepository;
+
+    @Autowired
+    private VideoRepository videoRepository;
+
+    @Autowired
+    private VideoMetadataCache videoMetadataCache;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    @Qualifier("uploadProcessingExecutor")
+    private ExecutorService uploadProcessingExecutor;
+
+    private final Set<String> inProgress = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Key prefix of the rendition of a blob
+     */
+    public static String renditionPrefix(String contentHash) {
+        return HLS_FOLDER + "/" + contentHash + "/";
+    }
+
+    /**
+     * Relative URL of the HLS playlist of a blob
+     */
+    public static String playlistUrl(String contentHash) {
+        return HLS_PATH + contentHash + "/" + HlsPackager.PLAYLIST;
+    }
+
+    /**
+     * Package a blob in the background. Does nothing if packaging is disabled
+     * or the same blob is already being packaged.
+     */
+    public CompletableFuture<Void> packageAsync(String contentHash, String storageKey) {
+        if (!enabled || contentHash == null || !inProgress.add(contentHash)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        try {
+            return CompletableFuture.runAsync(() -> {
+                try {
+                    packageBlob(contentHash, storageKey);
+                } catch (Exception e) {
+                    logger.error("Failed to package {} for HLS: {}", storageKey, e.getMessage());
+                } finally {
+                    inProgress.remove(contentHash);
+                }
+            }, uploadProcessingExecutor);
+        } catch (RejectedExecutionException e) {
+            // Progressive playback keeps working; the next upload of the blob retries
+            inProgress.remove(contentHash);
+            logger.warn("Not packaging {} for HLS: {}", storageKey, e.getMessage());
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /**
+     * Write the rendition of a blob and point its videos at the playlist. Files
+     * that cannot be packaged (not MP4, already fragmented) keep progressive
+     * playback only.
+     * @return true if a rendition was written
+     */
+    public boolean packageBlob(String contentHash, String storageKey) throws IOException {
+        String prefix = renditionPrefix(contentHash);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        int segments;
+        try (SeekableSource source = fileStorageService.openSource(storageKey)) {
+            segments = HlsPackager.packageHls(source, segmentSeconds, (name, content, contentType) ->
+                    objectStore.put(prefix + name, new ByteArrayInputStream(content), content.length, contentType));
+        } catch (Mp4FormatException e) {
+            sample.stop(timer("skipped"));
+            logger.info("Not packaging {} for HLS: {}", storageKey, e.getMessage());
+            return false;
+        } catch (IOException | RuntimeException e) {
+            sample.stop(timer("failed"));
+            deleteRendition(contentHash);
+            throw e;
+        }
+        long nanos = sample.stop(timer("packaged"));
+
+        String playlistKey = prefix + HlsPackager.PLAYLIST;
+        if (storedBlobRepository.setHlsPlaylistKey(contentHash, playlistKey) == 0) {
+            // The last video of this blob was deleted while packaging ran
+            deleteRendition(contentHash);
+            return false;
+        }
+        // After the blob is marked, so videos registered meanwhile are covered either here or at registration
+        videoRepository.setHlsUrlByContentHash(contentHash, playlistUrl(contentHash));
+        for (Video video : videoRepository.findByContentHash(contentHash)) {
+            videoMetadataCache.evict(video.getFilename());
+        }
+
+        logger.info("Packaged {} into {} HLS segments under {} in {} ms", storageKey, segments, prefix, nanos / 1_000_000);
+        return true;
+    }
+
+    /**
+     * Load an object of a rendition for streaming
+     * @return the object, or empty if the hash or name is malformed or the object does not exist
+     */
+    public Optional<ObjectStoreResource> loadRenditionObject(String contentHash, String name) throws IOException {
+        if (!CONTENT_HASH.matcher(contentHash).matches() || !OBJECT_NAME.matcher(name).matches()) {
+            return Optional.empty();
+        }
+        return fileStorageService.loadObject(renditionPrefix(contentHash) + name);
+    }
+
+    /**
+     * Content type of a rendition object by name
+     */
+    public static String contentTypeOf(String name) {
+        return name.endsWith(".m3u8") ? HlsPackager.PLAYLIST_CONTENT_TYPE : HlsPackager.SEGMENT_CONTENT_TYPE;
+    }
+
+    /**
+     * Delete every object of a blob's rendition
+     */
+    public void deleteRendition(String contentHash) {
+        try {
+            for (ObjectMetadata object : objectStore.list(renditionPrefix(contentHash))) {
+                objectStore.delete(object.getKey());
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to delete HLS rendition of {}: {}", contentHash, e.getMessage());
+        }
+    }
+
+    private Timer timer(String result) {
+        return Timer.builder("media.hls.packaging")
+                .description("Time to package a stored video into HLS segments")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
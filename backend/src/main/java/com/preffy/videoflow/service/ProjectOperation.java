@@ -0,0 +1,147 @@
+package com.preffy.videoflow.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * In-memory state of a project being created from an uploaded video, from the
+ * moment its bytes are staged until the video is stored and analysis queued.
+ * Progress through the storing stage is estimated from the file size and the
+ * store throughput observed for earlier uploads.
+ */
+public class ProjectOperation {
+
+    public enum Stage {
+        /** The upload is staged on local disk, waiting for an upload-processing thread */
+        RECEIVED,
+        /** The video is being rewritten for streaming, deduplicated and stored */
+        STORING,
+        /** The video is stored and the analysis workflow is being queued */
+        QUEUEING_ANALYSIS,
+        DONE,
+        FAILED
+    }
+
+    private static final int RECEIVED_PERCENT = 5;
+    private static final int STORED_PERCENT = 90;
+
+    private final String id;
+    private final Long userId;
+    private final Long projectId;
+    private final long fileSize;
+    private final LocalDateTime createdAt;
+    private volatile Stage stage = Stage.RECEIVED;
+    private volatile long stageStartedNanos = System.nanoTime();
+    private final Duration expectedStoreTime;
+    private volatile Duration storeTime;
+    private volatile String error;
+    private volatile LocalDateTime finishedAt;
+
+    public ProjectOperation(String id, Long userId, Long projectId, long fileSize, Duration expectedStoreTime) {
+        this.id = id;
+        this.userId = userId;
+        this.projectId = projectId;
+        this.fileSize = fileSize;
+        this.expectedStoreTime = expectedStoreTime;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    void advance(Stage stage) {
+        if (this.stage == Stage.STORING) {
+            storeTime = getStageElapsed();
+        }
+        this.stage = stage;
+        this.stageStartedNanos = System.nanoTime();
+        if (stage == Stage.DONE || stage == Stage.FAILED) {
+            this.finishedAt = LocalDateTime.now();
+        }
+    }
+
+    void fail(String error) {
+        this.error = error;
+        advance(Stage.FAILED);
+    }
+
+    /**
+     * Time spent in the current stage
+     */
+    Duration getStageElapsed() {
+        return Duration.ofNanos(System.nanoTime() - stageStartedNanos);
+    }
+
+    /**
+     * Estimated completion, 0-100. While storing it follows the expected store
+     * time but holds short of the next stage if storing takes longer.
+     */
+    public int getPercent() {
+        return switch (stage) {
+            case RECEIVED -> 0;
+            case STORING -> {
+                double expected = Math.max(1, expectedStoreTime.toMillis());
+                double share = Math.min(1, getStageElapsed().toMillis() / expected);
+                yield RECEIVED_PERCENT + (int) ((STORED_PERCENT - 1 - RECEIVED_PERCENT) * share);
+            }
+            case QUEUEING_ANALYSIS -> STORED_PERCENT;
+            case DONE -> 100;
+            case FAILED -> 0;
+        };
+    }
+
+    /**
+     * Estimated time left, or null once finished or if storing is overdue
+     */
+    public Duration getEta() {
+        return switch (stage) {
+            case RECEIVED -> expectedStoreTime;
+            case STORING -> {
+                Duration left = expectedStoreTime.minus(getStageElapsed());
+                yield left.isNegative() ? null : left;
+            }
+            case QUEUEING_ANALYSIS -> Duration.ZERO;
+            case DONE, FAILED -> null;
+        };
+    }
+
+    /**
+     * How long storing took, once it is over
+     */
+    Duration getStoreTime() {
+        return storeTime;
+    }
+
+    public boolean isFinished() {
+        return stage == Stage.DONE || stage == Stage.FAILED;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public Long getProjectId() {
+        return projectId;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public Stage getStage() {
+        return stage;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+}
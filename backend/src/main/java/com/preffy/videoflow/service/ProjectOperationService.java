@@ -0,0 +1,179 @@
+package com.preffy.videoflow.service;
+
+import com.preffy.videoflow.dto.ProjectRequest;
+import com.preffy.videoflow.model.Project;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+
+/**
+ * Accepts projects created with a video upload and tracks them as in-memory
+ * operations. The request only stages the upload and creates the project; the
+ * video is stored and the analysis queued on the upload-processing executor,
+ * while clients poll the operation or follow its upload events on the
+ * progress channel. Finished operations are kept for a while so a last poll
+ * still finds them.
+ * <p>
+ * Operations are instance-local: they are not shared between instances and
+ * do not survive a restart, so polling one elsewhere returns 404. A project
+ * whose instance stopped before its video was stored would stay UPLOADING;
+ * a sweep, which also runs at startup, removes those once they are older than
+ * any upload still in progress could be, as a failed upload would be.
+ */
+@Service
+public class ProjectOperationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProjectOperationService.class);
+
+    // Weight of the latest upload in the store throughput estimate
+    private static final double THROUGHPUT_SMOOTHING = 0.2;
+    private static final Duration MIN_SAMPLE_TIME = Duration.ofMillis(100);
+
+    @Value("${app.operations.retention-minutes:30}")
+    private long retentionMinutes;
+
+    @Value("${app.operations.stale-upload-minutes:60}")
+    private long staleUploadMinutes;
+
+    @Value("${app.operations.initial-store-bytes-per-second:20000000}")
+    private double storeBytesPerSecond;
+
+    @Autowired
+    private ProjectService projectService;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private AnalysisProgressPublisher progressPublisher;
+
+    private final Map<String, ProjectOperation> operations = new ConcurrentHashMap<>();
+
+    /**
+     * Stage an uploaded video, create its project and start storing it in the
+     * background
+     * @throws RejectedExecutionException if the upload-processing executor is
+     *         full; nothing is kept in that case
+     */
+    public ProjectOperation accept(ProjectRequest request, MultipartFile videoFile, Long userId) throws IOException {
+        Path staged = fileStorageService.stage(videoFile);
+        Project project;
+        try {
+            project = projectService.createUploadingProject(request, userId);
+        } catch (RuntimeException e) {
+            Files.deleteIfExists(staged);
+            throw e;
+        }
+
+        ProjectOperation operation = new ProjectOperation(UUID.randomUUID().toString(), userId, project.getId(),
+                videoFile.getSize(), expectedStoreTime(videoFile.getSize()));
+        operations.put(operation.getId(), operation);
+        try {
+            projectService.attachUploadedVideo(operation, staged, videoFile.getOriginalFilename(),
+                    videoFile.getContentType())
+                    .whenComplete((stored, error) -> finish(operation, error));
+        } catch (RejectedExecutionException e) {
+            operations.remove(operation.getId());
+            Files.deleteIfExists(staged);
+            projectService.deleteFailedUpload(project.getId());
+            throw e;
+        }
+        logger.info("Accepted project {} with a {} byte video as operation {}", project.getId(),
+                videoFile.getSize(), operation.getId());
+        return operation;
+    }
+
+    /**
+     * An operation of the given user
+     */
+    public Optional<ProjectOperation> getOperation(String operationId, Long userId) {
+        return Optional.ofNullable(operations.get(operationId))
+                .filter(operation -> operation.getUserId().equals(userId));
+    }
+
+    /**
+     * Drop operations that finished more than the retention time ago
+     */
+    @Scheduled(fixedDelayString = "${app.operations.cleanup-interval-ms:60000}")
+    public void expireFinished() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(retentionMinutes);
+        operations.values().removeIf(operation -> operation.isFinished()
+                && operation.getFinishedAt().isBefore(cutoff));
+    }
+
+    /**
+     * Remove projects left UPLOADING by an instance that stopped while storing
+     * their video. Runs once at startup and then periodically.
+     */
+    @Scheduled(fixedDelayString = "${app.operations.stale-sweep-interval-ms:600000}")
+    public void failStaleUploads() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(staleUploadMinutes);
+        Set<Long> running = operations.values().stream()
+                .filter(operation -> !operation.isFinished())
+                .map(ProjectOperation::getProjectId)
+                .collect(Collectors.toSet());
+        for (Long projectId : projectService.findStaleUploads(cutoff)) {
+            if (running.contains(projectId)) {
+                continue;
+            }
+            logger.warn("Project {} has been uploading for over {} minutes without an operation; removing it",
+                    projectId, staleUploadMinutes);
+            try {
+                projectService.deleteFailedUpload(projectId);
+            } catch (RuntimeException e) {
+                logger.error("Failed to remove stale uploading project {}: {}", projectId, e.getMessage());
+            }
+        }
+    }
+
+    private void finish(ProjectOperation operation, Throwable error) {
+        if (error == null) {
+            recordStoreTime(operation);
+            operation.advance(ProjectOperation.Stage.DONE);
+            progressPublisher.upload(operation);
+            progressPublisher.projectStatus(operation.getProjectId(), Project.ProjectStatus.PROCESSING);
+            return;
+        }
+        Throwable cause = error.getCause() != null ? error.getCause() : error;
+        operation.fail(cause.getMessage());
+        progressPublisher.upload(operation);
+        try {
+            // The project never got its video; creating it again is up to the user
+            projectService.deleteFailedUpload(operation.getProjectId());
+        } catch (RuntimeException e) {
+            logger.error("Failed to remove project {} after its upload failed: {}", operation.getProjectId(),
+                    e.getMessage());
+        }
+    }
+
+    private synchronized void recordStoreTime(ProjectOperation operation) {
+        Duration storeTime = operation.getStoreTime();
+        if (storeTime == null || storeTime.compareTo(MIN_SAMPLE_TIME) < 0 || operation.getFileSize() <= 0) {
+            // Too quick to say anything, e.g. a duplicate of a stored video
+            return;
+        }
+        double observed = operation.getFileSize() / (storeTime.toNanos() / 1e9);
+        storeBytesPerSecond = (1 - THROUGHPUT_SMOOTHING) * storeBytesPerSecond + THROUGHPUT_SMOOTHING * observed;
+    }
+
+    private synchronized Duration expectedStoreTime(long fileSize) {
+        return Duration.ofMillis((long) (fileSize / storeBytesPerSecond * 1000));
+    }
+}
@@ -1,6 +1,7 @@
 package com.preffy.videoflow.service;
 
 import com.preffy.videoflow.dto.ProjectRequest;
+import com.preffy.videoflow.entity.AnalysisJob;
 import com.preffy.videoflow.entity.ScriptAnalysis;
 import com.preffy.videoflow.model.Project;
 import com.preffy.videoflow.model.User;
@@ -9,13 +10,22 @@ import com.preffy.videoflow.repository.ProjectRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.multipart.MultipartFile;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 
 @Service
 @Transactional
@@ -33,7 +43,7 @@ public class ProjectService {
     private VideoService videoService;
     
     @Autowired
-    private GoogleTranscoderService transcoderService;
+    private AudioExtractionService audioExtractionService;
     
     @Autowired
     private BodyLanguageAnalysisService bodyLanguageAnalysisService;
@@ -41,6 +51,19 @@ public class ProjectService {
     @Autowired
     private ScriptAnalysisService scriptAnalysisService;
     
+    @Autowired
+    private AnalysisJobService analysisJobService;
+    
+    @Autowired
+    private AnalysisProgressPublisher progressPublisher;
+    
+    @Autowired
+    @Qualifier("scriptAnalysisExecutor")
+    private ExecutorService scriptAnalysisExecutor;
+    
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    
     public List<Project> getProjectsByUserId(Long userId) {
         logger.debug("Fetching projects for user: {}", userId);
         User user = userService.findById(userId);
@@ -92,78 +115,199 @@ public class ProjectService {
     }
     
     /**
-     * Create project with video upload and trigger analysis
+     * Create the project for a video being uploaded; it stays UPLOADING until
+     * {@link #attachUploadedVideo} has stored the video
      */
-    @Async
-    public CompletableFuture<Project> createProjectWithVideo(ProjectRequest request, MultipartFile videoFile, Long userId) {
+    public Project createUploadingProject(ProjectRequest request, Long userId) {
+        Project project = createProject(request, userId);
+        project.setStatus(Project.ProjectStatus.UPLOADING);
+        return projectRepository.save(project);
+    }
+    
+    /**
+     * Store the staged video of an uploading project and queue its analysis,
+     * reporting the stages on the operation. The staged file is removed.
+     * No transaction is held while the video goes to the object store; the
+     * project update and the workflow job are written in one short
+     * transaction afterwards, and the stored video is discarded again if
+     * that fails.
+     */
+    @Async("uploadProcessingExecutor")
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public CompletableFuture<Project> attachUploadedVideo(ProjectOperation operation, Path stagedVideo,
+                                                          String originalFilename, String contentType) {
+        Long projectId = operation.getProjectId();
+        Video video = null;
         try {
-            logger.info("Starting project creation with video for user: {}", userId);
-            
-            // Create the project first
-            Project project = createProject(request, userId);
-            project.setStatus(Project.ProjectStatus.UPLOADING);
-            project = projectRepository.save(project);
+            if (!projectRepository.existsById(projectId)) {
+                throw new IllegalStateException("Project " + projectId + " not found");
+            }
             
             // Upload video
-            logger.info("Uploading video for project: {}", project.getId());
-            Video video = videoService.uploadVideo(project.getId().toString(), videoFile);
+            logger.info("Uploading video for project: {}", projectId);
+            operation.advance(ProjectOperation.Stage.STORING);
+            progressPublisher.upload(operation);
+            video = videoService.uploadVideo(projectId.toString(), stagedVideo, originalFilename, contentType);
+            operation.advance(ProjectOperation.Stage.QUEUEING_ANALYSIS);
+            progressPublisher.upload(operation);
             
-            // Update project with video path
-            project.setVideoPath(video.getStorageUrl());
-            project.setStatus(Project.ProjectStatus.PROCESSING);
-            project = projectRepository.save(project);
-            
-            // Start analysis workflow asynchronously
-            startAnalysisWorkflow(project, video);
+            // Update project with video path and queue the analysis workflow
+            Video storedVideo = video;
+            Project project = transactionTemplate.execute(status -> {
+                Project uploading = projectRepository.findById(projectId)
+                        .orElseThrow(() -> new IllegalStateException("Project " + projectId + " not found"));
+                uploading.setVideoPath(storedVideo.getStorageUrl());
+                uploading.setStatus(Project.ProjectStatus.PROCESSING);
+                Project saved = projectRepository.save(uploading);
+                startAnalysisWorkflow(saved, storedVideo);
+                return saved;
+            });
             
             return CompletableFuture.completedFuture(project);
             
         } catch (Exception e) {
             logger.error("Error creating project with video: {}", e.getMessage(), e);
+            if (video != null) {
+                discardVideo(video);
+            }
             throw new RuntimeException("Failed to create project with video: " + e.getMessage(), e);
+        } finally {
+            try {
+                Files.deleteIfExists(stagedVideo);
+            } catch (IOException e) {
+                logger.warn("Failed to delete staged upload {}: {}", stagedVideo, e.getMessage());
+            }
         }
     }
     
     /**
-     * Start the complete analysis workflow
+     * Delete a video whose project could not be updated, releasing its blob reference
      */
-    @Async
-    public void startAnalysisWorkflow(Project project, Video video) {
+    private void discardVideo(Video video) {
         try {
-            logger.info("Starting analysis workflow for project: {}", project.getId());
-            
-            // 1. Extract MP3 audio from video
-            logger.info("Extracting audio for project: {}", project.getId());
-            String audioUrl = transcoderService.extractAudioFromVideo(video.getStorageUrl(), project.getId().toString());
-            
-            // 2. Start body language analysis (using video URL)
-            logger.info("Starting body language analysis for project: {}", project.getId());
-            CompletableFuture<Void> bodyAnalysisFuture = CompletableFuture.runAsync(() -> {
-                bodyLanguageAnalysisService.triggerAnalysis(project.getId().toString(), video.getStorageUrl());
-            });
-            
-            // 3. Start script analysis (using audio URL)
-            logger.info("Starting script analysis for project: {}", project.getId());
-            CompletableFuture<ScriptAnalysis> scriptAnalysisFuture = CompletableFuture.supplyAsync(() -> {
-                return scriptAnalysisService.analyzeScript(project.getId(), audioUrl);
-            });
-            
-            // 4. Wait for both analyses to complete
-            CompletableFuture.allOf(bodyAnalysisFuture, scriptAnalysisFuture).join();
-            
-            // 5. Update project status
-            project.setStatus(Project.ProjectStatus.ANALYZED);
-            projectRepository.save(project);
-            
-            logger.info("Analysis workflow completed for project: {}", project.getId());
-            
+            videoService.deleteVideo(video.getId());
         } catch (Exception e) {
-            logger.error("Error in analysis workflow for project {}: {}", project.getId(), e.getMessage(), e);
+            logger.error("Failed to discard video {} of a failed upload: {}", video.getId(), e.getMessage());
+        }
+    }
+    
+    /**
+     * Projects that have been UPLOADING since before the cutoff
+     */
+    public List<Long> findStaleUploads(LocalDateTime cutoff) {
+        return projectRepository.findByStatusAndUpdatedAtBefore(Project.ProjectStatus.UPLOADING, cutoff).stream()
+                .map(Project::getId)
+                .toList();
+    }
+    
+    /**
+     * Remove a project whose video could not be stored
+     */
+    public void deleteFailedUpload(Long projectId) {
+        projectRepository.findById(projectId)
+                .filter(project -> project.getStatus() == Project.ProjectStatus.UPLOADING)
+                .ifPresent(project -> {
+                    projectRepository.delete(project);
+                    logger.info("Removed project {} after its video upload failed", projectId);
+                });
+    }
+    
+    /**
+     * Queue the complete analysis workflow; it runs on a job worker, possibly
+     * on another instance, once this transaction commits. Replaces the upload's
+     * pending body language job, and is not queued twice for the same video.
+     */
+    public void startAnalysisWorkflow(Project project, Video video) {
+        logger.info("Queueing analysis workflow for project: {}", project.getId());
+        String projectId = project.getId().toString();
+        analysisJobService.enqueue(AnalysisJob.JobType.PROJECT_ANALYSIS, projectId, video.getId().toString(),
+                AnalysisJobService.videoKey(projectId, video.getId()));
+    }
+    
+    /**
+     * Run the complete analysis workflow. Runs outside of a transaction since
+     * it waits on remote services; throws on failure so the job is retried.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void runAnalysisWorkflow(Long projectId, Long videoId) {
+        Project project = projectRepository.findById(projectId)
+                .orElseThrow(() -> new IllegalStateException("Project " + projectId + " not found"));
+        Video video = videoService.getVideoById(videoId)
+                .orElseThrow(() -> new IllegalStateException("Video " + videoId + " not found"));
+        
+        logger.info("Starting analysis workflow for project: {}", projectId);
+        
+        CompletableFuture<ScriptAnalysis> scriptAnalysisFuture;
+        Optional<ScriptAnalysis> completedScript = scriptAnalysisService.getCompletedAnalysis(projectId);
+        if (completedScript.isPresent()) {
+            // A retried run does not repeat a script analysis that already completed
+            logger.info("Script analysis of project {} already completed", projectId);
+            scriptAnalysisFuture = CompletableFuture.completedFuture(completedScript.get());
+        } else {
+            // 1. Extract the AAC audio track from the video
+            logger.info("Extracting audio for project: {}", projectId);
+            progressPublisher.stage(projectId, "audio_extraction", AnalysisProgressPublisher.STARTED);
+            String audioUrl;
+            try {
+                audioUrl = audioExtractionService.extractAudio(video);
+            } catch (RuntimeException e) {
+                progressPublisher.stage(projectId, "audio_extraction", AnalysisProgressPublisher.FAILED);
+                throw e;
+            }
+            progressPublisher.stage(projectId, "audio_extraction", AnalysisProgressPublisher.COMPLETED);
             
-            // Update project status to indicate error
+            // 2. Start script analysis (using audio URL)
+            logger.info("Starting script analysis for project: {}", projectId);
+            progressPublisher.stage(projectId, "script_analysis", AnalysisProgressPublisher.STARTED);
+            scriptAnalysisFuture = CompletableFuture.supplyAsync(() -> {
+                ScriptAnalysis analysis;
+                try {
+                    analysis = scriptAnalysisService.analyzeScript(projectId, audioUrl,
+                            video.getContentHash() != null ? video.getContentHash() : video.getStorageUrl());
+                } catch (RuntimeException e) {
+                    progressPublisher.stage(projectId, "script_analysis", AnalysisProgressPublisher.FAILED);
+                    throw e;
+                }
+                // Errors of the service are saved as the result rather than thrown
+                progressPublisher.stage(projectId, "script_analysis", scriptAnalysisService.isCompleted(analysis)
+                        ? AnalysisProgressPublisher.COMPLETED : AnalysisProgressPublisher.FAILED);
+                return analysis;
+            }, scriptAnalysisExecutor);
+        }
+        
+        // 3. Run body language analysis (using video URL) on this thread meanwhile
+        logger.info("Starting body language analysis for project: {}", projectId);
+        progressPublisher.stage(projectId, "body_language_analysis", AnalysisProgressPublisher.STARTED);
+        try {
+            bodyLanguageAnalysisService.runAnalysis(projectId.toString(), video.getStorageUrl());
+        } catch (IOException e) {
+            progressPublisher.stage(projectId, "body_language_analysis", AnalysisProgressPublisher.FAILED);
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            progressPublisher.stage(projectId, "body_language_analysis", AnalysisProgressPublisher.FAILED);
+            throw e;
+        }
+        
+        // 4. Wait for script analysis to complete
+        scriptAnalysisFuture.join();
+        
+        // 5. Update project status
+        project.setStatus(Project.ProjectStatus.ANALYZED);
+        projectRepository.save(project);
+        progressPublisher.projectStatus(projectId, Project.ProjectStatus.ANALYZED);
+        
+        logger.info("Analysis workflow completed for project: {}", projectId);
+    }
+    
+    /**
+     * Reset a project whose analysis failed for good
+     */
+    public void markAnalysisFailed(Long projectId) {
+        projectRepository.findById(projectId).ifPresent(project -> {
             project.setStatus(Project.ProjectStatus.CREATED); // Reset to created state
             projectRepository.save(project);
-        }
+            progressPublisher.projectStatus(projectId, Project.ProjectStatus.CREATED);
+        });
     }
     
     public Project updateProject(Long projectId, ProjectRequest request, Long userId) {
@@ -2,15 +2,23 @@ package com.preffy.videoflow.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.preffy.videoflow.client.AnalysisHttpClient;
+import com.preffy.videoflow.client.CallNotPermittedException;
+import com.preffy.videoflow.client.Downstream;
+import com.preffy.videoflow.entity.AnalysisResultCacheEntry;
 import com.preffy.videoflow.entity.ScriptAnalysis;
 import com.preffy.videoflow.repository.ScriptAnalysisRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.*;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
+import java.io.UncheckedIOException;
+import java.net.http.HttpResponse;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -21,20 +29,53 @@ public class ScriptAnalysisService {
     private static final Logger logger = LoggerFactory.getLogger(ScriptAnalysisService.class);
     private static final String SCRIPT_FEEDBACK_API_URL = "http://moonsvr.com:8001/api/v1/script/feedback";
     
+    private static final String STATUS_COMPLETED = "completed";
+    private static final String STATUS_ERROR = "error";
+    
     @Autowired
     private ScriptAnalysisRepository scriptAnalysisRepository;
     
     @Autowired
-    private RestTemplate restTemplate;
+    private AnalysisHttpClient analysisHttpClient;
+    
+    @Autowired
+    @Qualifier("scriptAnalysisDownstream")
+    private Downstream scriptAnalysisDownstream;
     
     @Autowired
     private ObjectMapper objectMapper;
     
+    @Value("${script-analysis.api.timeout-seconds:300}")
+    private long requestTimeoutSeconds;
+    
+    // Part of the result cache key; change it when the remote model changes
+    @Value("${script-analysis.api.model-version:1}")
+    private String modelVersion;
+    
+    @Autowired
+    private AnalysisResultCache resultCache;
+    
     /**
-     * Request script feedback analysis from external API
+     * Request script feedback analysis from external API. Failures are saved
+     * as the analysis result, except a call refused by the circuit breaker or
+     * bulkhead, which is thrown as an UncheckedIOException.
+     * @param contentHash Content hash of the video the audio came from, which
+     *                    with the project identifies retried submissions and
+     *                    keys the result cache
      */
-    public ScriptAnalysis analyzeScript(Long projectId, String audioUrl) {
+    public ScriptAnalysis analyzeScript(Long projectId, String audioUrl, String contentHash) {
+        AnalysisResultCache.Key cacheKey = new AnalysisResultCache.Key(AnalysisResultCacheEntry.AnalysisType.SCRIPT,
+            contentHash, modelVersion, Map.of());
         try {
+            // Identical content analyzed before, for any project, is not sent again
+            Optional<String> cached = resultCache.get(cacheKey);
+            if (cached.isPresent()) {
+                JsonNode cachedJson = objectMapper.readTree(cached.get());
+                logger.info("Reused cached script analysis of identical media for project {}", projectId);
+                return saveResult(projectId, audioUrl, cachedJson.path("transcript").asText(),
+                    cachedJson.path("feedback").asText(), STATUS_COMPLETED);
+            }
+            
             logger.info("Starting script analysis for project: {}", projectId);
             
             // Prepare request payload
@@ -42,26 +83,20 @@ public class ScriptAnalysisService {
             requestPayload.put("project_id", projectId);
             requestPayload.put("audio_url", audioUrl);
             
-            // Set headers
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            
-            // Create request entity
-            HttpEntity<Map<String, Object>> requestEntity = new HttpEntity<>(requestPayload, headers);
-            
             logger.info("Sending script feedback request to: {}", SCRIPT_FEEDBACK_API_URL);
             logger.info("Request payload: {}", requestPayload);
             
             // Make API call
-            ResponseEntity<String> response = restTemplate.exchange(
-                SCRIPT_FEEDBACK_API_URL,
-                HttpMethod.POST,
-                requestEntity,
-                String.class
-            );
+            HttpResponse<String> response = scriptAnalysisDownstream.call(SCRIPT_FEEDBACK_API_URL,
+                () -> analysisHttpClient.postJsonAsync(
+                    SCRIPT_FEEDBACK_API_URL,
+                    requestPayload,
+                    Map.of(AnalysisHttpClient.IDEMPOTENCY_KEY, "script:" + projectId + ":" + contentHash),
+                    Duration.ofSeconds(requestTimeoutSeconds)
+                ));
             
-            if (response.getStatusCode() == HttpStatus.OK) {
-                String responseBody = response.getBody();
+            if (response.statusCode() == 200) {
+                String responseBody = response.body();
                 logger.info("Script feedback API response: {}", responseBody);
                 
                 // Parse response
@@ -72,26 +107,69 @@ public class ScriptAnalysisService {
                 String transcript = responseJson.has("transcript") ? responseJson.get("transcript").asText() : "";
                 
                 // Save analysis result
-                ScriptAnalysis analysis = new ScriptAnalysis(projectId, audioUrl, transcript, feedback);
-                ScriptAnalysis savedAnalysis = scriptAnalysisRepository.save(analysis);
+                ScriptAnalysis savedAnalysis = saveResult(projectId, audioUrl, transcript, feedback, STATUS_COMPLETED);
+                resultCache.put(cacheKey, objectMapper.writeValueAsString(
+                    Map.of("transcript", transcript, "feedback", feedback)));
                 
                 logger.info("Script analysis saved with ID: {}", savedAnalysis.getId());
                 return savedAnalysis;
                 
             } else {
-                throw new RuntimeException("Script feedback API returned status: " + response.getStatusCode());
+                throw new RuntimeException("Script feedback API returned status: " + response.statusCode());
             }
             
+        } catch (CallNotPermittedException e) {
+            // The service is known to be unavailable; let the caller put the work off
+            logger.warn("Script analysis for project {} refused: {}", projectId, e.getMessage());
+            throw new UncheckedIOException(e);
+            
         } catch (Exception e) {
             logger.error("Error in script analysis for project {}: {}", projectId, e.getMessage(), e);
             
             // Save error analysis
             String errorFeedback = "Script analysis failed: " + e.getMessage();
-            ScriptAnalysis errorAnalysis = new ScriptAnalysis(projectId, audioUrl, "", errorFeedback);
-            return scriptAnalysisRepository.save(errorAnalysis);
+            return saveResult(projectId, audioUrl, "", errorFeedback, STATUS_ERROR);
+        }
+    }
+    
+    /**
+     * Save the analysis of a project over any earlier one, so that a retried
+     * workflow leaves a single row per project
+     */
+    private ScriptAnalysis saveResult(Long projectId, String audioUrl, String transcript, String feedback,
+                                      String status) {
+        try {
+            return scriptAnalysisRepository.save(fill(projectId, audioUrl, transcript, feedback, status));
+        } catch (DataIntegrityViolationException e) {
+            // Another run inserted the project's row first; overwrite it
+            return scriptAnalysisRepository.save(fill(projectId, audioUrl, transcript, feedback, status));
         }
     }
     
+    private ScriptAnalysis fill(Long projectId, String audioUrl, String transcript, String feedback, String status) {
+        ScriptAnalysis analysis = scriptAnalysisRepository.findByProjectId(projectId)
+            .orElseGet(() -> new ScriptAnalysis(projectId, audioUrl, transcript, feedback));
+        analysis.setAudioUrl(audioUrl);
+        analysis.setTranscript(transcript);
+        analysis.setFeedback(feedback);
+        analysis.setStatus(status);
+        return analysis;
+    }
+    
+    /**
+     * The project's script analysis, if it completed without error
+     */
+    public Optional<ScriptAnalysis> getCompletedAnalysis(Long projectId) {
+        return scriptAnalysisRepository.findByProjectId(projectId).filter(this::isCompleted);
+    }
+    
+    /**
+     * Whether an analysis completed, as opposed to recording an error
+     */
+    public boolean isCompleted(ScriptAnalysis analysis) {
+        return STATUS_COMPLETED.equals(analysis.getStatus());
+    }
+    
     /**
      * Get script analysis by project ID
      */
@@ -0,0 +1,201 @@
+package com.preffy.videoflow.service;
+
+import com.preffy.videoflow.media.FileSource;
+import com.preffy.videoflow.media.Mp4FormatException;
+import com.preffy.videoflow.media.Mp4Movie;
+import com.preffy.videoflow.media.Mp4Parser;
+import com.preffy.videoflow.media.SeekIndex;
+import com.preffy.videoflow.media.SeekableSource;
+import com.preffy.videoflow.model.Video;
+import com.preffy.videoflow.storage.ObjectStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Keeps a keyframe seek index per stored blob under
+ * {@code index/<content hash>.seekidx}. Indexes are built at ingest from the
+ * sample tables of the upload's local copy and are immutable like the blob itself, so the
+ * parsed form is cached in memory without invalidation. Videos stored before
+ * indexing existed get their index built on first request.
+ */
+@Service
+public class SeekIndexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SeekIndexService.class);
+
+    public static final String INDEX_FOLDER = "index";
+
+    private static final String INDEX_EXTENSION = ".seekidx";
+
+    @Value("${app.video.seek-index.cache-entries:500}")
+    private int maxEntries;
+
+    @Autowired
+    private ObjectStore objectStore;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Map<String, SeekIndex> cache;
+
+    @PostConstruct
+    void init() {
+        cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SeekIndex> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Key of the seek index of a blob
+     */
+    public static String indexKey(String contentHash) {
+        return INDEX_FOLDER + "/" + contentHash + INDEX_EXTENSION;
+    }
+
+    /**
+     * Build and store the index of a blob unless it already has one. Failures
+     * are logged, not thrown: seeking then falls back to the player's own parsing.
+     */
+    public void buildIfMissing(String contentHash, String storageKey) {
+        try {
+            if (objectStore.head(indexKey(contentHash)).isEmpty()) {
+                build(contentHash, storageKey);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to index {} for seeking: {}", storageKey, e.getMessage());
+        }
+    }
+
+    /**
+     * Index a local file whose structure is already parsed, e.g. an upload
+     * before it is stored, without reading it back from the object store
+     * @return the index, or empty if the file has nothing to index or cannot be read
+     */
+    public Optional<SeekIndex> index(Path file, Mp4Movie movie) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        SeekIndex index;
+        try (SeekableSource source = new FileSource(file)) {
+            index = SeekIndex.build(source, movie);
+        } catch (Mp4FormatException e) {
+            sample.stop(timer("skipped"));
+            logger.info("Not indexing {} for seeking: {}", file.getFileName(), e.getMessage());
+            return Optional.empty();
+        } catch (IOException | RuntimeException e) {
+            sample.stop(timer("failed"));
+            logger.warn("Failed to index {} for seeking: {}", file.getFileName(), e.getMessage());
+            return Optional.empty();
+        }
+        sample.stop(timer("built"));
+        return Optional.of(index);
+    }
+
+    /**
+     * Store the index of a blob built by {@link #index(Path, Mp4Movie)}.
+     * Failures are logged, not thrown, like {@link #buildIfMissing}.
+     */
+    public void store(String contentHash, SeekIndex index) {
+        try {
+            write(contentHash, index);
+            synchronized (cache) {
+                cache.put(contentHash, index);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to store seek index of {}: {}", contentHash, e.getMessage());
+        }
+    }
+
+    /**
+     * Seek index of a video, loading or building it as needed
+     * @return the index, or empty if the video is not an indexable MP4
+     */
+    public Optional<SeekIndex> getIndex(Video video) throws IOException {
+        String contentHash = video.getContentHash();
+        if (contentHash == null || video.getStorageKey() == null) {
+            return Optional.empty();
+        }
+        synchronized (cache) {
+            SeekIndex cached = cache.get(contentHash);
+            if (cached != null) {
+                return Optional.of(cached);
+            }
+        }
+
+        Optional<SeekIndex> index = load(contentHash);
+        if (index.isEmpty()) {
+            index = build(contentHash, video.getStorageKey());
+        }
+        index.ifPresent(loaded -> {
+            synchronized (cache) {
+                cache.put(contentHash, loaded);
+            }
+        });
+        return index;
+    }
+
+    private Optional<SeekIndex> load(String contentHash) throws IOException {
+        String key = indexKey(contentHash);
+        if (objectStore.head(key).isEmpty()) {
+            return Optional.empty();
+        }
+        try (InputStream in = objectStore.get(key)) {
+            return Optional.of(SeekIndex.fromBytes(in.readAllBytes()));
+        } catch (Mp4FormatException e) {
+            logger.warn("Discarding unreadable seek index {}: {}", key, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private Optional<SeekIndex> build(String contentHash, String storageKey) throws IOException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        SeekIndex index;
+        try (SeekableSource source = fileStorageService.openSource(storageKey)) {
+            index = SeekIndex.build(source, Mp4Parser.parse(source));
+        } catch (Mp4FormatException e) {
+            sample.stop(timer("skipped"));
+            logger.info("Not indexing {} for seeking: {}", storageKey, e.getMessage());
+            return Optional.empty();
+        } catch (IOException | RuntimeException e) {
+            sample.stop(timer("failed"));
+            throw e;
+        }
+
+        int bytes = write(contentHash, index);
+        long nanos = sample.stop(timer("built"));
+        logger.info("Indexed {} keyframes of {} ({} bytes) in {} ms", index.size(), storageKey, bytes,
+                nanos / 1_000_000);
+        return Optional.of(index);
+    }
+
+    private int write(String contentHash, SeekIndex index) throws IOException {
+        byte[] bytes = index.toBytes();
+        objectStore.put(indexKey(contentHash), new ByteArrayInputStream(bytes), bytes.length, SeekIndex.CONTENT_TYPE);
+        return bytes.length;
+    }
+
+    private Timer timer(String result) {
+        return Timer.builder("media.seekindex.build")
+                .description("Time to build the keyframe seek index of a stored video")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
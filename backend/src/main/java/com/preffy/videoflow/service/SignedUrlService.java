@@ -0,0 +1,85 @@
+package com.preffy.videoflow.service;
+
+import com.preffy.videoflow.storage.ObjectStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Issues short-lived signed URLs for stored objects so clients can fetch video
+ * bytes straight from the object store. Signing is a local crypto operation for
+ * key-file credentials but an IAM call on Cloud Run, so URLs are cached per key.
+ * A cached URL is only handed out while more than half of its lifetime is left,
+ * so every URL stays valid for at least half the TTL after a client gets it;
+ * the TTL should cover a viewing session at that.
+ */
+@Service
+public class SignedUrlService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SignedUrlService.class);
+
+    @Value("${app.storage.signed-urls.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.storage.signed-urls.ttl-minutes:120}")
+    private long ttlMinutes;
+
+    @Value("${app.storage.signed-urls.max-entries:10000}")
+    private int maxEntries;
+
+    @Autowired
+    private ObjectStore objectStore;
+
+    private final Map<String, SignedUrl> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Signed URL for the object, or empty if signing is disabled, unsupported by
+     * the backend, or failed (callers then fall back to proxying the bytes)
+     */
+    public Optional<String> getSignedUrl(String key) {
+        if (!enabled || key == null) {
+            return Optional.empty();
+        }
+
+        Instant now = Instant.now();
+        Duration validity = Duration.ofMinutes(ttlMinutes);
+        SignedUrl cached = cache.get(key);
+        if (cached != null && cached.expiresAt().minus(validity.dividedBy(2)).isAfter(now)) {
+            return Optional.of(cached.url());
+        }
+
+        try {
+            Optional<String> url = objectStore.getSignedUrl(key, validity);
+            if (url.isPresent()) {
+                if (cache.size() >= maxEntries) {
+                    cache.values().removeIf(entry -> entry.expiresAt().isBefore(now));
+                }
+                if (cache.size() < maxEntries) {
+                    cache.put(key, new SignedUrl(url.get(), now.plus(validity)));
+                }
+            }
+            return url;
+        } catch (Exception e) {
+            logger.warn("Failed to sign URL for {} in {} storage: {}", key, objectStore.getType(), e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Drop the cached URL for an object that was deleted or replaced
+     */
+    public void evict(String key) {
+        cache.remove(key);
+    }
+
+    private record SignedUrl(String url, Instant expiresAt) {
+    }
+}
@@ -0,0 +1,103 @@
+package com.preffy.videoflow.service;
+
+import com.preffy.videoflow.entity.StoredBlob;
+import com.preffy.videoflow.repository.StoredBlobRepository;
+import com.preffy.videoflow.storage.ObjectMetadata;
+import com.preffy.videoflow.storage.ObjectStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+/**
+ * Reference counting for content-addressed blobs. Acquire and register run in
+ * their own transactions so a lost insert race (two uploads of the same content
+ * at once) does not mark the caller's transaction rollback-only.
+ */
+@Service
+public class StoredBlobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StoredBlobService.class);
+
+    @Autowired
+    private StoredBlobRepository storedBlobRepository;
+
+    @Autowired
+    private ObjectStore objectStore;
+
+    @Autowired
+    private SignedUrlService signedUrlService;
+
+    /**
+     * Take a reference on an existing blob
+     * @return the blob, or empty if no blob with this hash is stored
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public Optional<StoredBlob> acquire(String contentHash) {
+        if (storedBlobRepository.incrementRefCount(contentHash) == 0) {
+            return Optional.empty();
+        }
+        return storedBlobRepository.findByContentHash(contentHash);
+    }
+
+    /**
+     * Record a freshly stored object as a blob with one reference. Throws
+     * DataIntegrityViolationException if another upload registered the hash first.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public StoredBlob register(String contentHash, String storageKey, long size, String contentType) {
+        return storedBlobRepository.saveAndFlush(new StoredBlob(contentHash, storageKey, size, contentType));
+    }
+
+    /**
+     * The blob stored under a key, if the key holds content-addressed bytes
+     */
+    public Optional<StoredBlob> findByStorageKey(String storageKey) {
+        return storedBlobRepository.findFirstByStorageKey(storageKey);
+    }
+
+    /**
+     * Drop one reference. The last release deletes the row and the stored object
+     * while the row lock is held, so a concurrent acquire either sees the blob
+     * before release or finds it gone and uploads again.
+     */
+    @Transactional
+    public void release(String contentHash) {
+        Optional<StoredBlob> blobOpt = storedBlobRepository.findByContentHashForUpdate(contentHash);
+        if (blobOpt.isEmpty()) {
+            logger.warn("Release of unknown blob {}", contentHash);
+            return;
+        }
+
+        StoredBlob blob = blobOpt.get();
+        if (blob.getRefCount() > 1) {
+            blob.setRefCount(blob.getRefCount() - 1);
+            storedBlobRepository.save(blob);
+            return;
+        }
+
+        storedBlobRepository.delete(blob);
+        storedBlobRepository.flush();
+        try {
+            objectStore.delete(blob.getStorageKey());
+            signedUrlService.evict(blob.getStorageKey());
+            String audioKey = AudioExtractionService.audioKey(contentHash);
+            objectStore.delete(audioKey);
+            signedUrlService.evict(audioKey);
+            objectStore.delete(SeekIndexService.indexKey(contentHash));
+            if (blob.getHlsPlaylistKey() != null) {
+                for (ObjectMetadata object : objectStore.list(HlsPackagingService.renditionPrefix(contentHash))) {
+                    objectStore.delete(object.getKey());
+                }
+            }
+            logger.info("Deleted unreferenced blob {} ({})", contentHash, blob.getStorageKey());
+        } catch (Exception e) {
+            logger.warn("Failed to delete unreferenced blob {} from {} storage: {}",
+                    blob.getStorageKey(), objectStore.getType(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.preffy.videoflow.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control for upload requests. Each upload holds a request thread, a
+ * multipart temp file and upload buffers while it runs, so the number of
+ * concurrent uploads and the bytes they declare are capped per instance and per
+ * client. Requests over a limit are rejected immediately instead of queueing.
+ */
+@Service
+public class UploadAdmissionService {
+
+    @Value("${app.upload.admission.max-concurrent:8}")
+    private int maxConcurrent;
+
+    @Value("${app.upload.admission.max-inflight-bytes:536870912}")
+    private long maxInflightBytes;
+
+    @Value("${app.upload.admission.max-concurrent-per-client:2}")
+    private int maxConcurrentPerClient;
+
+    @Value("${app.upload.admission.unknown-length-bytes:104857600}")
+    private long unknownLengthBytes;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final AtomicInteger activeUploads = new AtomicInteger();
+    private final AtomicLong reservedBytes = new AtomicLong();
+    private final Map<String, Integer> activeByClient = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("upload.admission.active", activeUploads, AtomicInteger::get)
+                .description("Upload requests currently admitted")
+                .register(meterRegistry);
+        Gauge.builder("upload.admission.reserved.bytes", reservedBytes, AtomicLong::get)
+                .description("Declared bytes of admitted upload requests")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Admit an upload or throw if a limit is reached. The returned permit must
+     * be closed when the request finishes.
+     * @param clientKey Authenticated user or client address
+     * @param contentLength Declared request size, or -1 if unknown
+     */
+    public Permit admit(String clientKey, long contentLength) {
+        long bytes = Math.min(contentLength >= 0 ? contentLength : unknownLengthBytes, maxInflightBytes);
+
+        if (!acquireClient(clientKey)) {
+            throw reject("client", HttpStatus.TOO_MANY_REQUESTS,
+                    "Too many concurrent uploads; at most " + maxConcurrentPerClient + " per user");
+        }
+
+        if (activeUploads.incrementAndGet() > maxConcurrent) {
+            activeUploads.decrementAndGet();
+            releaseClient(clientKey);
+            throw reject("concurrency", HttpStatus.SERVICE_UNAVAILABLE, "Upload capacity reached, retry shortly");
+        }
+
+        long reserved = reservedBytes.addAndGet(bytes);
+        // Always let a single upload through on an idle instance
+        if (reserved > maxInflightBytes && reserved != bytes) {
+            reservedBytes.addAndGet(-bytes);
+            activeUploads.decrementAndGet();
+            releaseClient(clientKey);
+            throw reject("bytes", HttpStatus.SERVICE_UNAVAILABLE, "Upload capacity reached, retry shortly");
+        }
+
+        return new Permit(clientKey, bytes);
+    }
+
+    private boolean acquireClient(String clientKey) {
+        boolean[] acquired = new boolean[1];
+        activeByClient.compute(clientKey, (key, count) -> {
+            int current = count == null ? 0 : count;
+            if (current >= maxConcurrentPerClient) {
+                return count;
+            }
+            acquired[0] = true;
+            return current + 1;
+        });
+        return acquired[0];
+    }
+
+    private void releaseClient(String clientKey) {
+        activeByClient.computeIfPresent(clientKey, (key, count) -> count <= 1 ? null : count - 1);
+    }
+
+    private UploadRejectedException reject(String reason, HttpStatus status, String message) {
+        Counter.builder("upload.admission.rejected")
+                .description("Upload requests rejected by admission control")
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+        return new UploadRejectedException(status, message);
+    }
+
+    /**
+     * Capacity held by an admitted upload
+     */
+    public class Permit implements AutoCloseable {
+
+        private final String clientKey;
+        private final long bytes;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(String clientKey, long bytes) {
+            this.clientKey = clientKey;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                reservedBytes.addAndGet(-bytes);
+                activeUploads.decrementAndGet();
+                releaseClient(clientKey);
+            }
+        }
+    }
+
+    public static class UploadRejectedException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final HttpStatus status;
+
+        public UploadRejectedException(HttpStatus status, String message) {
+            super(message);
+            this.status = status;
+        }
+
+        public HttpStatus getStatus() {
+            return status;
+        }
+    }
+}
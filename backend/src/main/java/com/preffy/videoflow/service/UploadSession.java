@@ -0,0 +1,141 @@
+package com.preffy.videoflow.service;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-memory state of a resumable upload. Chunks may arrive out of order or in
+ * parallel; received byte ranges are merged so the committed offset is always the
+ * end of the contiguous prefix starting at byte 0.
+ */
+public class UploadSession {
+
+    private final String id;
+    private final String projectId;
+    private final String originalFilename;
+    private final String contentType;
+    private final long totalSize;
+    private final Path stagingFile;
+    private final LocalDateTime createdAt;
+    private volatile LocalDateTime lastActivityAt;
+
+    // start offset -> end offset (exclusive) of merged received ranges
+    private final TreeMap<Long, Long> receivedRanges = new TreeMap<>();
+    private boolean completing;
+
+    public UploadSession(String id, String projectId, String originalFilename, String contentType,
+                         long totalSize, Path stagingFile) {
+        this.id = id;
+        this.projectId = projectId;
+        this.originalFilename = originalFilename;
+        this.contentType = contentType;
+        this.totalSize = totalSize;
+        this.stagingFile = stagingFile;
+        this.createdAt = LocalDateTime.now();
+        this.lastActivityAt = createdAt;
+    }
+
+    /**
+     * Record that bytes [start, end) were durably written to the staging file
+     */
+    public synchronized void addRange(long start, long end) {
+        long mergedStart = start;
+        long mergedEnd = end;
+
+        Map.Entry<Long, Long> floor = receivedRanges.floorEntry(start);
+        if (floor != null && floor.getValue() >= start) {
+            mergedStart = floor.getKey();
+            mergedEnd = Math.max(mergedEnd, floor.getValue());
+        }
+
+        Map.Entry<Long, Long> next = receivedRanges.ceilingEntry(mergedStart);
+        while (next != null && next.getKey() <= mergedEnd) {
+            mergedEnd = Math.max(mergedEnd, next.getValue());
+            receivedRanges.remove(next.getKey());
+            next = receivedRanges.ceilingEntry(mergedStart);
+        }
+
+        receivedRanges.put(mergedStart, mergedEnd);
+        touch();
+    }
+
+    /**
+     * End of the contiguous range of bytes received from offset 0
+     */
+    public synchronized long getCommittedOffset() {
+        Long end = receivedRanges.get(0L);
+        return end != null ? end : 0L;
+    }
+
+    public synchronized long getReceivedBytes() {
+        long total = 0;
+        for (Map.Entry<Long, Long> range : receivedRanges.entrySet()) {
+            total += range.getValue() - range.getKey();
+        }
+        return total;
+    }
+
+    public boolean isComplete() {
+        return getCommittedOffset() >= totalSize;
+    }
+
+    /**
+     * Mark the session as being finalized; returns false if another request got there first
+     */
+    public synchronized boolean beginCompletion() {
+        if (completing) {
+            return false;
+        }
+        completing = true;
+        return true;
+    }
+
+    /**
+     * Clear the completion flag after a failed finalization so it can be retried
+     */
+    public synchronized void endCompletion() {
+        completing = false;
+    }
+
+    public synchronized boolean isCompleting() {
+        return completing;
+    }
+
+    public void touch() {
+        this.lastActivityAt = LocalDateTime.now();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getProjectId() {
+        return projectId;
+    }
+
+    public String getOriginalFilename() {
+        return originalFilename;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    public Path getStagingFile() {
+        return stagingFile;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public LocalDateTime getLastActivityAt() {
+        return lastActivityAt;
+    }
+}
@@ -0,0 +1,236 @@
+package com.preffy.videoflow.service;
+
+import com.preffy.videoflow.model.Video;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resumable upload sessions. Each chunk is written at its own offset into a
+ * staging file on local disk, so chunks can be sent in parallel and a dropped
+ * connection only loses the chunk in flight. Once every byte is committed the
+ * staging file is handed to FileStorageService (moved into place locally, or
+ * streamed through a GCS resumable write channel). Completion runs on the
+ * calling request thread: hashing, the faststart rewrite and the store take
+ * time proportional to the file size. A failed completion keeps the session
+ * and its staging file so the client can retry it without re-uploading.
+ */
+@Service
+public class UploadSessionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadSessionService.class);
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    @Value("${app.upload.session.staging-path:${java.io.tmpdir}/preffy-upload-sessions}")
+    private String stagingPath;
+
+    @Value("${app.upload.session.chunk-size:8388608}")
+    private long chunkSize;
+
+    @Value("${app.upload.session.max-chunk-size:33554432}")
+    private long maxChunkSize;
+
+    @Value("${app.upload.session.max-file-size:1073741824}")
+    private long maxFileSize;
+
+    @Value("${app.upload.session.ttl-minutes:60}")
+    private long sessionTtlMinutes;
+
+    @Autowired
+    private VideoService videoService;
+
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * Open a new upload session and allocate its staging file
+     */
+    public UploadSession createSession(String projectId, String originalFilename, String contentType, long size) throws IOException {
+        if (size <= 0 || size > maxFileSize) {
+            throw new IllegalArgumentException("Upload size must be between 1 and " + maxFileSize + " bytes");
+        }
+
+        Path stagingDir = Paths.get(stagingPath);
+        Files.createDirectories(stagingDir);
+
+        String uploadId = UUID.randomUUID().toString();
+        Path stagingFile = Files.createFile(stagingDir.resolve(uploadId + ".part"));
+
+        UploadSession session = new UploadSession(uploadId, projectId, originalFilename, contentType, size, stagingFile);
+        sessions.put(uploadId, session);
+
+        logger.info("Created upload session {} for project {} ({} bytes)", uploadId, projectId, size);
+        return session;
+    }
+
+    public Optional<UploadSession> getSession(String uploadId) {
+        Optional<UploadSession> session = Optional.ofNullable(sessions.get(uploadId));
+        session.ifPresent(UploadSession::touch);
+        return session;
+    }
+
+    /**
+     * Write the byte range [start, endInclusive] of the upload from the given stream.
+     * The range is only recorded as received once all of its bytes are on disk.
+     */
+    public UploadSession writeChunk(String uploadId, long start, long endInclusive, InputStream body) throws IOException {
+        UploadSession session = requireSession(uploadId);
+        if (session.isCompleting()) {
+            throw new IllegalStateException("Upload " + uploadId + " is already being finalized");
+        }
+
+        long length = endInclusive - start + 1;
+        if (start < 0 || length <= 0 || endInclusive >= session.getTotalSize()) {
+            throw new IllegalArgumentException("Chunk range " + start + "-" + endInclusive
+                    + " is outside the upload size " + session.getTotalSize());
+        }
+        if (length > maxChunkSize) {
+            throw new IllegalArgumentException("Chunk of " + length + " bytes exceeds the maximum of " + maxChunkSize);
+        }
+
+        long written = 0;
+        try (FileChannel channel = FileChannel.open(session.getStagingFile(), StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+            int read;
+            while (written < length
+                    && (read = body.read(buffer.array(), 0, (int) Math.min(buffer.capacity(), length - written))) != -1) {
+                buffer.limit(read);
+                long position = start + written;
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+                buffer.clear();
+                written += read;
+            }
+            channel.force(false);
+        }
+
+        if (written != length) {
+            throw new IllegalArgumentException("Expected " + length + " bytes for chunk " + start + "-" + endInclusive
+                    + " but received " + written);
+        }
+
+        session.addRange(start, start + length);
+        logger.debug("Upload {} received bytes {}-{} (committed offset {})",
+                uploadId, start, endInclusive, session.getCommittedOffset());
+        return session;
+    }
+
+    /**
+     * Hand a fully received upload over to storage and create the Video record
+     */
+    public Video completeSession(String uploadId) throws IOException {
+        UploadSession session = requireSession(uploadId);
+        if (!session.isComplete()) {
+            throw new IllegalStateException("Upload " + uploadId + " is incomplete: committed "
+                    + session.getCommittedOffset() + " of " + session.getTotalSize() + " bytes");
+        }
+        if (!session.beginCompletion()) {
+            throw new IllegalStateException("Upload " + uploadId + " is already being finalized");
+        }
+
+        // Storage consumes the file it is given (rewrite, move, delete), so hand it a
+        // second link to the staging file and keep the original for a retry
+        Path handoff = session.getStagingFile().resolveSibling(uploadId + ".complete");
+        Video video;
+        try {
+            linkOrCopy(session.getStagingFile(), handoff);
+            video = videoService.uploadVideo(session.getProjectId(), handoff,
+                    session.getOriginalFilename(), session.getContentType());
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(handoff);
+            session.endCompletion();
+            logger.warn("Completing upload session {} failed, keeping it for a retry: {}", uploadId, e.getMessage());
+            throw e;
+        }
+
+        sessions.remove(uploadId);
+        deleteQuietly(handoff);
+        deleteQuietly(session.getStagingFile());
+        logger.info("Completed upload session {} as video {}", uploadId, video.getId());
+        return video;
+    }
+
+    public void abortSession(String uploadId) throws IOException {
+        UploadSession session = sessions.remove(uploadId);
+        if (session != null) {
+            Files.deleteIfExists(session.getStagingFile());
+            logger.info("Aborted upload session {}", uploadId);
+        }
+    }
+
+    public long getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Drop sessions that have not received a chunk within the TTL
+     */
+    @Scheduled(fixedDelayString = "${app.upload.session.cleanup-interval-ms:300000}")
+    public void expireStaleSessions() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(sessionTtlMinutes);
+        sessions.values().stream()
+                .filter(session -> !session.isCompleting() && session.getLastActivityAt().isBefore(cutoff))
+                .map(UploadSession::getId)
+                .toList()
+                .forEach(uploadId -> {
+                    try {
+                        abortSession(uploadId);
+                    } catch (IOException e) {
+                        logger.warn("Failed to clean up expired upload session {}: {}", uploadId, e.getMessage());
+                    }
+                });
+    }
+
+    private static void linkOrCopy(Path source, Path target) throws IOException {
+        Files.deleteIfExists(target);
+        try {
+            Files.createLink(target, source);
+        } catch (UnsupportedOperationException | IOException e) {
+            logger.debug("Hard link of {} not possible, copying it: {}", source.getFileName(), e.getMessage());
+            Files.copy(source, target);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.debug("Failed to delete {}: {}", path, e.getMessage());
+        }
+    }
+
+    private UploadSession requireSession(String uploadId) {
+        UploadSession session = sessions.get(uploadId);
+        if (session == null) {
+            throw new UploadSessionNotFoundException(uploadId);
+        }
+        session.touch();
+        return session;
+    }
+
+    public static class UploadSessionNotFoundException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public UploadSessionNotFoundException(String uploadId) {
+            super("Upload session not found: " + uploadId);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.preffy.videoflow.service;
+
+import com.preffy.videoflow.model.Video;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Bounded LRU cache of filename to Video, so resolving a stream URL does not hit
+ * the database for every range request a player makes. Only found videos are
+ * cached; entries are evicted when a video is deleted or changed.
+ * <p>
+ * Every eviction bumps a generation, and a loaded video is only inserted if no
+ * eviction happened while it was loading, so a load that read the row before
+ * a change cannot put the stale copy back. Evictions inside a transaction are
+ * repeated once it completes, for loads that read the old row before commit.
+ */
+@Component
+public class VideoMetadataCache {
+
+    @Value("${app.video.metadata-cache.max-entries:1000}")
+    private int maxEntries;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Map<String, Video> entries;
+
+    // Guarded by this, bumped on every eviction
+    private long generation;
+
+    private Counter hits;
+    private Counter misses;
+
+    @PostConstruct
+    void init() {
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Video> eldest) {
+                return size() > maxEntries;
+            }
+        };
+
+        hits = Counter.builder("video.metadata.cache")
+                .tag("result", "hit")
+                .description("Video metadata lookups by filename")
+                .register(meterRegistry);
+        misses = Counter.builder("video.metadata.cache")
+                .tag("result", "miss")
+                .description("Video metadata lookups by filename")
+                .register(meterRegistry);
+        Gauge.builder("video.metadata.cache.size", this, VideoMetadataCache::size)
+                .description("Videos currently held in the metadata cache")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Return the cached video for a filename, loading it on a miss. The loader
+     * runs outside the lock so a slow query does not block other lookups.
+     */
+    public Optional<Video> get(String filename, Function<String, Optional<Video>> loader) {
+        Video cached;
+        long loadGeneration;
+        synchronized (this) {
+            cached = entries.get(filename);
+            loadGeneration = generation;
+        }
+        if (cached != null) {
+            hits.increment();
+            return Optional.of(cached);
+        }
+
+        misses.increment();
+        Optional<Video> loaded = loader.apply(filename);
+        loaded.ifPresent(video -> {
+            synchronized (this) {
+                if (generation == loadGeneration) {
+                    entries.put(filename, video);
+                }
+            }
+        });
+        return loaded;
+    }
+
+    /**
+     * Drop the cached video, and again after the current transaction completes
+     * if there is one
+     */
+    public void evict(String filename) {
+        invalidate(filename);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    invalidate(filename);
+                }
+            });
+        }
+    }
+
+    private synchronized void invalidate(String filename) {
+        entries.remove(filename);
+        generation++;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,74 @@
+package com.preffy.videoflow.service;
+
+import com.preffy.videoflow.media.Mp4FormatException;
+import com.preffy.videoflow.media.Mp4Movie;
+import com.preffy.videoflow.media.Mp4Parser;
+import com.preffy.videoflow.media.Mp4Track;
+import com.preffy.videoflow.media.SeekableSource;
+import com.preffy.videoflow.model.Video;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Reads duration, dimensions, codec, frame rate and bitrate from stored videos.
+ * Only the container index (moov) is read, so probing a GCS object costs a few
+ * small ranged reads regardless of the video's size.
+ */
+@Service
+public class VideoMetadataService {
+
+    private static final Logger logger = LoggerFactory.getLogger(VideoMetadataService.class);
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    /**
+     * Parse the container structure of a stored object
+     * @return the parsed movie, or empty if the object is not an MP4/MOV file or cannot be read
+     */
+    public Optional<Mp4Movie> probe(String storageKey) {
+        try (SeekableSource source = fileStorageService.openSource(storageKey)) {
+            return Optional.of(Mp4Parser.parse(source));
+        } catch (Mp4FormatException e) {
+            logger.info("No MP4 metadata for {}: {}", storageKey, e.getMessage());
+        } catch (IOException e) {
+            logger.warn("Failed to read metadata of {}: {}", storageKey, e.getMessage());
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Fill the metadata columns of a video from its stored object. Unknown values
+     * are left empty; duration is 0 when it cannot be determined.
+     */
+    public void populate(Video video, String storageKey) {
+        probe(storageKey).ifPresentOrElse(movie -> populate(video, movie), () -> video.setDuration(0));
+    }
+
+    /**
+     * Fill the metadata columns of a video from an already parsed movie, e.g.
+     * the local copy of an upload
+     */
+    public void populate(Video video, Mp4Movie movie) {
+        video.setDuration((int) Math.round(movie.getDurationSeconds()));
+        video.setBitrate(movie.getBitrate());
+
+        Optional<Mp4Track> videoTrack = movie.getVideoTrack();
+        if (videoTrack.isPresent()) {
+            Mp4Track track = videoTrack.get();
+            video.setWidth(track.getWidth());
+            video.setHeight(track.getHeight());
+            video.setCodec(track.getCodec());
+            // Two decimals are enough to tell 29.97 from 30
+            video.setFrameRate(Math.round(track.getSampleRate() * 100) / 100.0);
+        }
+
+        logger.info("Video {}: {}s, {}x{}, {} at {} fps, {} bit/s", video.getStorageKey(), video.getDuration(),
+                video.getWidth(), video.getHeight(), video.getCodec(), video.getFrameRate(), video.getBitrate());
+    }
+}
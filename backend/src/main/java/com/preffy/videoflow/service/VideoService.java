@@ -1,16 +1,26 @@
 package com.preffy.videoflow.service;
 
+import com.preffy.videoflow.dto.VideoDto;
+import com.preffy.videoflow.entity.AnalysisJob;
+import com.preffy.videoflow.entity.StoredBlob;
+import com.preffy.videoflow.media.Mp4Movie;
+import com.preffy.videoflow.media.SeekIndex;
 import com.preffy.videoflow.model.Video;
 import com.preffy.videoflow.repository.VideoRepository;
+import com.preffy.videoflow.storage.ObjectStoreResource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 public class VideoService {
@@ -24,25 +34,58 @@ public class VideoService {
     private FileStorageService fileStorageService;
 
     @Autowired
-    private BodyLanguageAnalysisService bodyLanguageAnalysisService;
+    private VideoMetadataCache videoMetadataCache;
 
-    public Video uploadVideo(String projectId, MultipartFile file) throws IOException {
-        // Upload file to storage service
-        String publicUrl = fileStorageService.uploadFile(file, "videos");
+    @Autowired
+    private SignedUrlService signedUrlService;
 
-        // Extract filename from storage URL for database storage
-        String filename = extractFilenameFromUrl(publicUrl);
+    @Autowired
+    private VideoMetadataService videoMetadataService;
 
-        // Get file metadata
-        String originalFilename = file.getOriginalFilename();
-        String contentType = file.getContentType();
-        long fileSize = file.getSize();
+    @Autowired
+    private FastStartService fastStartService;
 
-        // TODO: Extract video metadata (duration, width, height) using FFmpeg or similar
-        // For now, using placeholder values
-        int duration = 596; // seconds
-        int width = 1280;
-        int height = 720;
+    @Autowired
+    private HlsPackagingService hlsPackagingService;
+
+    @Autowired
+    private SeekIndexService seekIndexService;
+
+    @Autowired
+    private AnalysisJobService analysisJobService;
+
+    public Video uploadVideo(String projectId, MultipartFile file) throws IOException {
+        Path staged = fileStorageService.stage(file);
+        try {
+            return uploadVideo(projectId, staged, file.getOriginalFilename(), file.getContentType());
+        } finally {
+            Files.deleteIfExists(staged);
+        }
+    }
+
+    /**
+     * Store a video that was received on local disk (a staged multipart upload or
+     * an assembled resumable upload). Tail-moov MP4s are rewritten to faststart
+     * layout before storing; the object is shared with identical uploads.
+     */
+    public Video uploadVideo(String projectId, Path source, String originalFilename, String contentType) throws IOException {
+        // Only new content runs the ingest stages; a duplicate leaves this unset
+        AtomicReference<LocalIngest> ingested = new AtomicReference<>();
+        StoredBlob blob = fileStorageService.storeBlob(source, originalFilename, contentType,
+                FileStorageService.VIDEO_FOLDER, file -> {
+                    Mp4Movie movie = fastStartService.prepare(file).orElse(null);
+                    SeekIndex seekIndex = movie != null ? seekIndexService.index(file, movie).orElse(null) : null;
+                    ingested.set(new LocalIngest(movie, seekIndex));
+                });
+
+        return registerVideo(projectId, blob, originalFilename, contentType, ingested.get());
+    }
+
+    private Video registerVideo(String projectId, StoredBlob blob, String originalFilename, String contentType,
+                                LocalIngest ingested) {
+        // Each video keeps its own filename even when the bytes are shared
+        String filename = fileStorageService.generateFilename(originalFilename);
+        String publicUrl = fileStorageService.getPublicUrl(blob, filename);
 
         // Create video entity
         Video video = new Video();
@@ -50,18 +93,43 @@ public class VideoService {
         video.setFilename(filename);
         video.setOriginalFilename(originalFilename);
         video.setContentType(contentType);
-        video.setFileSize(fileSize);
+        video.setFileSize(blob.getSize());
         video.setStorageUrl(publicUrl.replace("http://localhost:8080", "")); // Store relative URL
-        video.setDuration(duration);
-        video.setWidth(width);
-        video.setHeight(height);
+        video.setContentHash(blob.getContentHash());
+        video.setStorageKey(blob.getStorageKey());
+        if (blob.getHlsPlaylistKey() != null) {
+            video.setHlsUrl(HlsPackagingService.playlistUrl(blob.getContentHash()));
+        }
+
+        // Duration, dimensions, codec, frame rate and bitrate from the container index
+        populateMetadata(video, blob, ingested);
+
+        Video savedVideo;
+        try {
+            savedVideo = videoRepository.save(video);
+        } catch (RuntimeException e) {
+            fileStorageService.releaseBlob(blob.getContentHash());
+            throw e;
+        }
 
-        Video savedVideo = videoRepository.save(video);
+        // Keyframe offsets for the player's seeks, built from the local copy; a duplicate's
+        // blob was indexed when it was first stored, so that is only a head() here
+        if (ingested == null) {
+            seekIndexService.buildIfMissing(blob.getContentHash(), blob.getStorageKey());
+        } else if (ingested.seekIndex() != null) {
+            seekIndexService.store(blob.getContentHash(), ingested.seekIndex());
+        }
+
+        // Segment for adaptive streaming; progressive playback works in the meantime
+        if (savedVideo.getHlsUrl() == null) {
+            hlsPackagingService.packageAsync(blob.getContentHash(), blob.getStorageKey());
+        }
 
         // Automatically trigger body language analysis
         try {
             logger.info("Triggering automatic body language analysis for project {} after video upload", projectId);
-            bodyLanguageAnalysisService.triggerAnalysisAsync(projectId, savedVideo.getStorageUrl());
+            analysisJobService.enqueue(AnalysisJob.JobType.BODY_LANGUAGE, projectId, savedVideo.getStorageUrl(),
+                    AnalysisJobService.videoKey(projectId, savedVideo.getId()));
         } catch (Exception e) {
             logger.warn("Failed to trigger body language analysis for project {}: {}", projectId, e.getMessage());
             // Don't fail the upload if analysis trigger fails
@@ -70,6 +138,33 @@ public class VideoService {
         return savedVideo;
     }
 
+    /**
+     * Take the metadata from the upload's local parse. A duplicate upload was
+     * not parsed; it copies the metadata of a video with the same content and
+     * only reads the stored object if there is none.
+     */
+    private void populateMetadata(Video video, StoredBlob blob, LocalIngest ingested) {
+        if (ingested != null) {
+            if (ingested.movie() != null) {
+                videoMetadataService.populate(video, ingested.movie());
+            } else {
+                video.setDuration(0);
+            }
+            return;
+        }
+        Optional<Video> same = videoRepository.findByContentHash(blob.getContentHash()).stream().findFirst();
+        if (same.isPresent()) {
+            video.setDuration(same.get().getDuration());
+            video.setWidth(same.get().getWidth());
+            video.setHeight(same.get().getHeight());
+            video.setCodec(same.get().getCodec());
+            video.setFrameRate(same.get().getFrameRate());
+            video.setBitrate(same.get().getBitrate());
+        } else {
+            videoMetadataService.populate(video, blob.getStorageKey());
+        }
+    }
+
     public List<Video> getVideosByProjectId(String projectId) {
         return videoRepository.findByProjectId(projectId);
     }
@@ -79,22 +174,53 @@ public class VideoService {
     }
 
     public Optional<Video> getVideoByFilename(String filename) {
-        return videoRepository.findAll().stream()
-                .filter(video -> video.getFilename().equals(filename))
-                .findFirst();
+        return videoMetadataCache.get(filename, videoRepository::findByFilename);
+    }
+
+    /**
+     * Short-lived direct URL for playback, when the object store can sign one
+     * (GCS with app.storage.signed-urls.enabled). Lets players fetch bytes from
+     * the bucket instead of through this service.
+     */
+    public Optional<String> getSignedPlaybackUrl(Video video) {
+        return signedUrlService.getSignedUrl(video.getStorageKey());
     }
 
+    /**
+     * API view of a video, with a signed playback URL in place of the stored URL when available
+     */
+    public VideoDto toDto(Video video) {
+        VideoDto dto = new VideoDto(video);
+        getSignedPlaybackUrl(video).ifPresent(dto::setStorageUrl);
+        return dto;
+    }
+
+    /**
+     * Open the stored bytes of a video for streaming
+     */
+    public Optional<ObjectStoreResource> loadVideoResource(Video video) throws IOException {
+        if (video.getStorageKey() != null) {
+            return fileStorageService.loadObject(video.getStorageKey());
+        }
+        return fileStorageService.loadAsResource(video.getStorageUrl());
+    }
+
+    @Transactional
     public void deleteVideo(Long id) throws IOException {
         Optional<Video> videoOpt = videoRepository.findById(id);
         if (videoOpt.isPresent()) {
             Video video = videoOpt.get();
             
-            // Delete file from storage
-            String fullUrl = "http://localhost:8080" + video.getStorageUrl();
-            fileStorageService.deleteFile(fullUrl);
-            
             // Delete from database
             videoRepository.delete(video);
+            videoMetadataCache.evict(video.getFilename());
+            
+            // Release the shared blob; the object goes with the last reference
+            if (video.getContentHash() != null) {
+                fileStorageService.releaseBlob(video.getContentHash());
+            } else {
+                fileStorageService.deleteFile(video.getStorageUrl());
+            }
         }
     }
 
@@ -103,12 +229,10 @@ public class VideoService {
     }
 
     /**
-     * Extract filename from storage URL
+     * What the ingest stages learned from the local copy of an upload
+     * @param movie Its container structure; null if it is not a readable MP4
+     * @param seekIndex Its keyframe index; null if it has nothing to index
      */
-    private String extractFilenameFromUrl(String url) {
-        if (url.contains("/stream/")) {
-            return url.substring(url.lastIndexOf("/stream/") + 8);
-        }
-        return url.substring(url.lastIndexOf("/") + 1);
+    private record LocalIngest(Mp4Movie movie, SeekIndex seekIndex) {
     }
 }
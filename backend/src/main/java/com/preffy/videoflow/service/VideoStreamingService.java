@@ -0,0 +1,238 @@
+package com.preffy.videoflow.service;
+
+import com.preffy.videoflow.storage.ObjectMetadata;
+import com.preffy.videoflow.storage.ObjectStoreResource;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Writes stored videos to HTTP responses with byte-range support (RFC 9110
+ * section 14): single and multiple ranges as 206 Partial Content, If-Range,
+ * and conditional requests on ETag/Last-Modified. Local files are handed to
+ * Tomcat's sendfile when available, or copied with FileChannel.transferTo;
+ * other backends read only the requested ranges.
+ */
+@Service
+public class VideoStreamingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(VideoStreamingService.class);
+
+    private static final String SENDFILE_SUPPORTED_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
+    private static final String CRLF = "\r\n";
+
+    /**
+     * Stream a stored object, honouring the request's Range and conditional headers
+     */
+    public void stream(ObjectStoreResource resource, String contentType, String contentDisposition,
+                       HttpServletRequest request, HttpServletResponse response) throws IOException {
+        ObjectMetadata metadata = resource.getMetadata();
+        long size = metadata.getSize();
+        String etag = metadata.getEtag() != null ? "\"" + metadata.getEtag() + "\"" : null;
+        long lastModified = resource.lastModified();
+
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, contentDisposition);
+
+        // Handles If-None-Match / If-Modified-Since (304) and If-Match / If-Unmodified-Since (412)
+        if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+            return;
+        }
+
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader == null || !ifRangeMatches(request, etag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType(contentType);
+            writeRegions(resource, List.of(new Region(0, size)), contentType, size, request, response);
+            return;
+        }
+
+        List<Region> regions;
+        try {
+            regions = toRegions(HttpRange.parseRanges(rangeHeader), size);
+        } catch (IllegalArgumentException e) {
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        if (regions.size() == 1) {
+            Region region = regions.get(0);
+            response.setContentType(contentType);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, region.contentRange(size));
+        }
+        writeRegions(resource, regions, contentType, size, request, response);
+    }
+
+    private void writeRegions(ObjectStoreResource resource, List<Region> regions, String contentType, long size,
+                              HttpServletRequest request, HttpServletResponse response) throws IOException {
+        boolean headRequest = "HEAD".equalsIgnoreCase(request.getMethod());
+        Optional<Path> localPath = resource.getLocalPath();
+
+        if (regions.size() == 1) {
+            Region region = regions.get(0);
+            response.setContentLengthLong(region.length());
+            if (headRequest || region.length() == 0) {
+                return;
+            }
+            if (localPath.isPresent() && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTRIBUTE))) {
+                // Tomcat writes the file from the kernel once the handler returns
+                request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, localPath.get().toAbsolutePath().toString());
+                request.setAttribute(SENDFILE_START_ATTRIBUTE, region.start());
+                request.setAttribute(SENDFILE_END_ATTRIBUTE, region.end());
+                return;
+            }
+            writeRegion(resource, localPath, region, response.getOutputStream());
+            return;
+        }
+
+        // multipart/byteranges: each part carries its own Content-Range
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        List<byte[]> partHeaders = new ArrayList<>(regions.size());
+        long contentLength = 0;
+        for (Region region : regions) {
+            byte[] header = (CRLF + "--" + boundary + CRLF
+                    + HttpHeaders.CONTENT_TYPE + ": " + contentType + CRLF
+                    + HttpHeaders.CONTENT_RANGE + ": " + region.contentRange(size) + CRLF
+                    + CRLF).getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(header);
+            contentLength += header.length + region.length();
+        }
+        byte[] trailer = (CRLF + "--" + boundary + "--" + CRLF).getBytes(StandardCharsets.US_ASCII);
+        contentLength += trailer.length;
+
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(contentLength);
+        if (headRequest) {
+            return;
+        }
+
+        OutputStream out = response.getOutputStream();
+        for (int i = 0; i < regions.size(); i++) {
+            out.write(partHeaders.get(i));
+            writeRegion(resource, localPath, regions.get(i), out);
+        }
+        out.write(trailer);
+    }
+
+    private void writeRegion(ObjectStoreResource resource, Optional<Path> localPath, Region region,
+                             OutputStream out) throws IOException {
+        if (localPath.isPresent()) {
+            WritableByteChannel target = Channels.newChannel(out);
+            try (FileChannel channel = FileChannel.open(localPath.get(), StandardOpenOption.READ)) {
+                long position = region.start();
+                long remaining = region.length();
+                while (remaining > 0) {
+                    long transferred = channel.transferTo(position, remaining, target);
+                    if (transferred <= 0) {
+                        break;
+                    }
+                    position += transferred;
+                    remaining -= transferred;
+                }
+            }
+            return;
+        }
+
+        try (InputStream in = resource.getInputStream(region.start(), region.length())) {
+            StreamUtils.copy(in, out);
+        }
+    }
+
+    /**
+     * If-Range makes a Range conditional: serve the range only if the validator
+     * still matches, otherwise the full representation
+     */
+    private boolean ifRangeMatches(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // Strong comparison only; weak validators never match
+            return etag != null && ifRange.equals(etag);
+        }
+        try {
+            long date = request.getDateHeader(HttpHeaders.IF_RANGE);
+            return lastModified > 0 && date / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException e) {
+            logger.debug("Ignoring unparseable If-Range header: {}", ifRange);
+            return false;
+        }
+    }
+
+    /**
+     * Resolve ranges against the object size, sort them and merge overlapping or
+     * adjacent ones, so a client cannot make the server send more than the file
+     */
+    private List<Region> toRegions(List<HttpRange> ranges, long size) {
+        if (ranges.isEmpty()) {
+            throw new IllegalArgumentException("No ranges");
+        }
+
+        List<Region> regions = new ArrayList<>(ranges.size());
+        for (HttpRange range : ranges) {
+            long start = range.getRangeStart(size);
+            long end = range.getRangeEnd(size);
+            if (start > end) {
+                throw new IllegalArgumentException("Unsatisfiable range " + range);
+            }
+            regions.add(new Region(start, end + 1));
+        }
+        regions.sort(Comparator.comparingLong(Region::start));
+
+        List<Region> merged = new ArrayList<>(regions.size());
+        Region current = regions.get(0);
+        for (Region next : regions.subList(1, regions.size())) {
+            if (next.start() <= current.end()) {
+                current = new Region(current.start(), Math.max(current.end(), next.end()));
+            } else {
+                merged.add(current);
+                current = next;
+            }
+        }
+        merged.add(current);
+        return merged;
+    }
+
+    /**
+     * Byte range [start, end) of the object
+     */
+    private record Region(long start, long end) {
+
+        long length() {
+            return end - start;
+        }
+
+        String contentRange(long size) {
+            return "bytes " + start + "-" + (end - 1) + "/" + size;
+        }
+    }
+}
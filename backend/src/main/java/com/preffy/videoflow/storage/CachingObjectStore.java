@@ -0,0 +1,494 @@
+package com.preffy.videoflow.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Read-through disk cache in front of a remote object store. Objects are cached
+ * in fixed-size chunks, so a range read only fetches (and keeps) the chunks it
+ * touches. Chunks are evicted least-recently-used once the byte budget is
+ * exceeded, and concurrent misses on the same chunk share a single fetch.
+ * Chunk identity includes the object's ETag, so a replaced object is never
+ * served from stale chunks once its metadata is refreshed.
+ */
+public final class CachingObjectStore implements ObjectStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachingObjectStore.class);
+
+    private static final int MAX_CHUNK_ATTEMPTS = 2;
+
+    /**
+     * Upper bound on cached object metadata; expired entries are dropped first
+     */
+    private static final int MAX_METADATA_ENTRIES = 10_000;
+
+    // Chunk files and the temp files they are written through; nothing else in the directory is ours
+    private static final Pattern CACHE_FILE = Pattern.compile("[0-9a-f]{64}\\.chunk|\\.(fetch|fill)-.*\\.tmp");
+
+    private final ObjectStore delegate;
+    private final Path root;
+    private final long maxBytes;
+    private final int chunkSize;
+    private final Duration metadataTtl;
+
+    // Access-ordered, so iteration starts at the least recently used chunk; guarded by this
+    private final LinkedHashMap<String, CachedChunk> chunks = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+
+    private final Map<String, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, CachedMetadata> metadata = new ConcurrentHashMap<>();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter coalesced;
+    private final Counter evictions;
+
+    public CachingObjectStore(ObjectStore delegate, Path root, long maxBytes, int chunkSize,
+                              Duration metadataTtl, MeterRegistry meterRegistry) throws IOException {
+        this.delegate = delegate;
+        this.root = root.toAbsolutePath().normalize();
+        this.maxBytes = maxBytes;
+        this.chunkSize = chunkSize;
+        this.metadataTtl = metadataTtl;
+
+        // The index lives in memory, so chunks left by a previous run are unknown; start
+        // empty, but only remove files this store could have written
+        Files.createDirectories(this.root);
+        try (Stream<Path> leftovers = Files.list(this.root)) {
+            for (Path file : (Iterable<Path>) leftovers::iterator) {
+                if (CACHE_FILE.matcher(file.getFileName().toString()).matches() && Files.isRegularFile(file)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+
+        String type = delegate.getType();
+        hits = requestCounter(meterRegistry, type, "hit");
+        misses = requestCounter(meterRegistry, type, "miss");
+        coalesced = requestCounter(meterRegistry, type, "coalesced");
+        evictions = Counter.builder("storage.cache.evictions")
+                .description("Chunks evicted from the local disk cache")
+                .tag("store", type)
+                .register(meterRegistry);
+        Gauge.builder("storage.cache.size", this, CachingObjectStore::getCachedBytes)
+                .description("Bytes currently held in the local disk cache")
+                .baseUnit("bytes")
+                .tag("store", type)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String getType() {
+        return delegate.getType();
+    }
+
+    @Override
+    public ObjectMetadata put(String key, InputStream content, long size, String contentType) throws IOException {
+        invalidate(key);
+        ObjectMetadata stored = delegate.put(key, content, size, contentType);
+        cacheMetadata(stored);
+        return stored;
+    }
+
+    /**
+     * Uploads from a local file also seed the cache from that file, so freshly
+     * uploaded videos are served from disk without a round trip to the bucket
+     */
+    @Override
+    public ObjectMetadata put(String key, Path source, String contentType) throws IOException {
+        invalidate(key);
+        ObjectMetadata stored = delegate.put(key, source, contentType);
+        cacheMetadata(stored);
+        populate(stored, source);
+        return stored;
+    }
+
+    @Override
+    public ObjectMetadata moveFrom(String key, Path source, String contentType) throws IOException {
+        try {
+            return put(key, source, contentType);
+        } finally {
+            Files.deleteIfExists(source);
+        }
+    }
+
+    @Override
+    public InputStream getRange(String key, long offset, long length) throws IOException {
+        ObjectMetadata object = head(key).orElseThrow(() -> new FileNotFoundException("Object not found: " + key));
+        long end = length < 0 ? object.getSize() : Math.min(object.getSize(), offset + length);
+        return new ChunkedInputStream(object, offset, end);
+    }
+
+    @Override
+    public Optional<ObjectMetadata> head(String key) throws IOException {
+        CachedMetadata cached = metadata.get(key);
+        if (cached != null && cached.expiresAt().isAfter(Instant.now())) {
+            return Optional.of(cached.metadata());
+        }
+        Optional<ObjectMetadata> fresh = delegate.head(key);
+        fresh.ifPresentOrElse(this::cacheMetadata, () -> metadata.remove(key));
+        return fresh;
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        invalidate(key);
+        return delegate.delete(key);
+    }
+
+    @Override
+    public List<ObjectMetadata> list(String prefix) throws IOException {
+        return delegate.list(prefix);
+    }
+
+    @Override
+    public Optional<String> getSignedUrl(String key, Duration validity) throws IOException {
+        return delegate.getSignedUrl(key, validity);
+    }
+
+    @Override
+    public Optional<String> getPublicUrl(String key) {
+        return delegate.getPublicUrl(key);
+    }
+
+    public ObjectStore getDelegate() {
+        return delegate;
+    }
+
+    public synchronized long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    /**
+     * Local file holding chunk {@code index} of the object, fetching it from the
+     * delegate on a miss. Concurrent callers for the same chunk wait on one fetch.
+     */
+    private Path chunk(ObjectMetadata object, long index) throws IOException {
+        String chunkId = object.getKey() + "#" + object.getEtag() + "#" + index;
+        Path cached = lookup(chunkId);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        CompletableFuture<Path> fetch = new CompletableFuture<>();
+        CompletableFuture<Path> existing = inFlight.putIfAbsent(chunkId, fetch);
+        if (existing != null) {
+            coalesced.increment();
+            return await(existing);
+        }
+
+        try {
+            // Another thread may have finished fetching between the lookup and putIfAbsent
+            Path path = lookup(chunkId);
+            if (path == null) {
+                misses.increment();
+                path = fetch(chunkId, object, index);
+            }
+            fetch.complete(path);
+            return path;
+        } catch (IOException | RuntimeException e) {
+            fetch.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(chunkId);
+        }
+    }
+
+    private Path fetch(String chunkId, ObjectMetadata object, long index) throws IOException {
+        long start = index * chunkSize;
+        long length = Math.min(chunkSize, object.getSize() - start);
+
+        Path target = root.resolve(fileName(chunkId));
+        Path temp = Files.createTempFile(root, ".fetch-", ".tmp");
+        try {
+            try (InputStream in = delegate.getRange(object.getKey(), start, length)) {
+                Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            long fetched = Files.size(temp);
+            if (fetched != length) {
+                throw new EOFException("Expected " + length + " bytes for " + chunkId + " but received " + fetched);
+            }
+            moveIntoPlace(temp, target);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        register(chunkId, target, length);
+        return target;
+    }
+
+    /**
+     * Split a local copy of an object into cache chunks. Objects larger than
+     * half the budget are skipped so one upload cannot flush the whole cache.
+     */
+    private void populate(ObjectMetadata object, Path source) {
+        if (object.getSize() > maxBytes / 2) {
+            return;
+        }
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            long chunkCount = (object.getSize() + chunkSize - 1) / chunkSize;
+            for (long index = 0; index < chunkCount; index++) {
+                String chunkId = object.getKey() + "#" + object.getEtag() + "#" + index;
+                long start = index * chunkSize;
+                long length = Math.min(chunkSize, object.getSize() - start);
+
+                Path target = root.resolve(fileName(chunkId));
+                Path temp = Files.createTempFile(root, ".fill-", ".tmp");
+                try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    long copied = 0;
+                    while (copied < length) {
+                        long transferred = in.transferTo(start + copied, length - copied, out);
+                        if (transferred <= 0) {
+                            throw new EOFException("Source of " + object.getKey() + " ended early at " + (start + copied));
+                        }
+                        copied += transferred;
+                    }
+                    moveIntoPlace(temp, target);
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+                register(chunkId, target, length);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to seed disk cache for {}: {}", object.getKey(), e.getMessage());
+        }
+    }
+
+    private synchronized Path lookup(String chunkId) {
+        CachedChunk cached = chunks.get(chunkId);
+        return cached != null ? cached.path() : null;
+    }
+
+    private synchronized void register(String chunkId, Path path, long size) {
+        CachedChunk previous = chunks.put(chunkId, new CachedChunk(path, size));
+        if (previous != null) {
+            cachedBytes -= previous.size();
+        }
+        cachedBytes += size;
+
+        Iterator<Map.Entry<String, CachedChunk>> eldest = chunks.entrySet().iterator();
+        while (cachedBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, CachedChunk> entry = eldest.next();
+            if (entry.getKey().equals(chunkId)) {
+                continue;
+            }
+            eldest.remove();
+            cachedBytes -= entry.getValue().size();
+            evictions.increment();
+            // Readers that already opened the file keep their handle; later ones refetch
+            deleteQuietly(entry.getValue().path());
+        }
+    }
+
+    private void invalidate(String key) {
+        metadata.remove(key);
+        String prefix = key + "#";
+        synchronized (this) {
+            Iterator<Map.Entry<String, CachedChunk>> entries = chunks.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<String, CachedChunk> entry = entries.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    entries.remove();
+                    cachedBytes -= entry.getValue().size();
+                    deleteQuietly(entry.getValue().path());
+                }
+            }
+        }
+    }
+
+    private void cacheMetadata(ObjectMetadata object) {
+        Instant now = Instant.now();
+        if (metadata.size() >= MAX_METADATA_ENTRIES) {
+            trimMetadata(now);
+        }
+        metadata.put(object.getKey(), new CachedMetadata(object, now.plus(metadataTtl)));
+    }
+
+    /**
+     * Drop expired metadata, then arbitrary entries if the map is still full;
+     * a dropped entry only costs one extra head() on the delegate
+     */
+    private void trimMetadata(Instant now) {
+        metadata.values().removeIf(cached -> !cached.expiresAt().isAfter(now));
+        Iterator<String> keys = metadata.keySet().iterator();
+        while (metadata.size() >= MAX_METADATA_ENTRIES && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    int getCachedMetadataCount() {
+        return metadata.size();
+    }
+
+    private Path await(CompletableFuture<Path> fetch) throws IOException {
+        try {
+            return fetch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for cache fetch");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException("Cache fetch failed", e.getCause());
+        }
+    }
+
+    private void moveIntoPlace(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.debug("Failed to delete cached chunk {}: {}", path, e.getMessage());
+        }
+    }
+
+    private static String fileName(String chunkId) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(chunkId.getBytes(StandardCharsets.UTF_8))) + ".chunk";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static Counter requestCounter(MeterRegistry meterRegistry, String store, String result) {
+        return Counter.builder("storage.cache.requests")
+                .description("Chunk lookups in the local disk cache")
+                .tag("store", store)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private record CachedChunk(Path path, long size) {
+    }
+
+    private record CachedMetadata(ObjectMetadata metadata, Instant expiresAt) {
+    }
+
+    /**
+     * Reads [position, end) of an object chunk by chunk, fetching each chunk
+     * only when the reader reaches it
+     */
+    private class ChunkedInputStream extends InputStream {
+
+        private final ObjectMetadata object;
+        private final long end;
+        private long position;
+
+        private FileChannel current;
+        private InputStream currentStream;
+        private long currentEnd;
+
+        ChunkedInputStream(ObjectMetadata object, long position, long end) {
+            this.object = object;
+            this.position = position;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int read = read(single, 0, 1);
+            return read == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= end) {
+                return -1;
+            }
+            if (currentStream == null) {
+                openChunk();
+            }
+
+            int read = currentStream.read(b, off, (int) Math.min(len, currentEnd - position));
+            if (read == -1) {
+                throw new EOFException("Cached chunk of " + object.getKey() + " ended early at " + position);
+            }
+            position += read;
+            if (position >= currentEnd) {
+                closeChunk();
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            closeChunk();
+        }
+
+        private void openChunk() throws IOException {
+            long index = position / chunkSize;
+            long chunkStart = index * chunkSize;
+            for (int attempt = 1; ; attempt++) {
+                Path path = chunk(object, index);
+                try {
+                    current = FileChannel.open(path, StandardOpenOption.READ);
+                    break;
+                } catch (NoSuchFileException e) {
+                    // Evicted between lookup and open; the next lookup refetches it
+                    if (attempt >= MAX_CHUNK_ATTEMPTS) {
+                        throw e;
+                    }
+                }
+            }
+            current.position(position - chunkStart);
+            currentStream = Channels.newInputStream(current);
+            currentEnd = Math.min(chunkStart + chunkSize, end);
+        }
+
+        private void closeChunk() throws IOException {
+            if (current != null) {
+                current.close();
+                current = null;
+                currentStream = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.preffy.videoflow.storage;
+
+import com.google.cloud.ReadChannel;
+import com.google.cloud.WriteChannel;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.HttpMethod;
+import com.google.cloud.storage.Storage;
+import io.micrometer.core.instrument.Timer;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Object store backed by a Google Cloud Storage bucket. Uploads stream through
+ * a resumable write channel with a fixed-size copy buffer and reads use ranged
+ * read channels, so neither direction materializes an object on the heap.
+ */
+public class GcsObjectStore implements ObjectStore {
+
+    private final Storage storage;
+    private final String bucket;
+    private final GcsStorageMetrics metrics;
+    private final int uploadChunkSize;
+    private final int uploadBufferSize;
+
+    public GcsObjectStore(Storage storage, String bucket, GcsStorageMetrics metrics,
+                          int uploadChunkSize, int uploadBufferSize) {
+        this.storage = storage;
+        this.bucket = bucket;
+        this.metrics = metrics;
+        this.uploadChunkSize = uploadChunkSize;
+        this.uploadBufferSize = uploadBufferSize;
+    }
+
+    @Override
+    public String getType() {
+        return "gcs";
+    }
+
+    @Override
+    public ObjectMetadata put(String key, InputStream content, long size, String contentType) throws IOException {
+        BlobInfo blobInfo = BlobInfo.newBuilder(BlobId.of(bucket, key))
+                .setContentType(contentType)
+                .build();
+
+        long written = metrics.record("upload", () -> {
+            long total = 0;
+            try (WriteChannel writer = storage.writer(blobInfo)) {
+                writer.setChunkSize(uploadChunkSize);
+
+                ByteBuffer buffer = ByteBuffer.allocate(uploadBufferSize);
+                int read;
+                while ((read = content.read(buffer.array(), 0, buffer.capacity())) != -1) {
+                    buffer.limit(read);
+                    while (buffer.hasRemaining()) {
+                        writer.write(buffer);
+                    }
+                    buffer.clear();
+                    total += read;
+                }
+            }
+            return total;
+        });
+        metrics.recordBytes("upload", written);
+
+        return head(key).orElseThrow(() -> new IOException("Object missing after upload: " + key));
+    }
+
+    @Override
+    public InputStream getRange(String key, long offset, long length) throws IOException {
+        BlobId blobId = BlobId.of(bucket, key);
+        // The reader is lazy: a missing object surfaces on the first read, so
+        // callers that need a clean 404 should head() first. The transfer happens
+        // while the caller reads, so the read is timed until EOF or close.
+        Timer.Sample sample = metrics.start();
+        ReadChannel reader;
+        try {
+            reader = storage.reader(blobId);
+            reader.seek(offset);
+            if (length >= 0) {
+                reader.limit(offset + length);
+            }
+        } catch (IOException | RuntimeException e) {
+            metrics.stop(sample, "read", "error");
+            throw e;
+        }
+        return new ReadCountingInputStream(Channels.newInputStream(reader), sample);
+    }
+
+    @Override
+    public Optional<ObjectMetadata> head(String key) throws IOException {
+        Blob blob = metrics.record("head", () -> storage.get(BlobId.of(bucket, key)));
+        return Optional.ofNullable(blob).map(this::toMetadata);
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        return metrics.record("delete", () -> storage.delete(BlobId.of(bucket, key)));
+    }
+
+    @Override
+    public List<ObjectMetadata> list(String prefix) throws IOException {
+        return metrics.record("list", () -> {
+            List<ObjectMetadata> objects = new ArrayList<>();
+            for (Blob blob : storage.list(bucket, Storage.BlobListOption.prefix(prefix)).iterateAll()) {
+                objects.add(toMetadata(blob));
+            }
+            return objects;
+        });
+    }
+
+    @Override
+    public Optional<String> getPublicUrl(String key) {
+        return Optional.of(String.format("https://storage.googleapis.com/%s/%s", bucket, key));
+    }
+
+    /**
+     * V4 signed GET URL. Needs credentials that can sign: a service account key,
+     * or on Cloud Run the runtime service account with iam.serviceAccounts.signBlob.
+     */
+    @Override
+    public Optional<String> getSignedUrl(String key, Duration validity) throws IOException {
+        URL url = metrics.record("sign", () -> storage.signUrl(
+                BlobInfo.newBuilder(BlobId.of(bucket, key)).build(),
+                validity.toSeconds(), TimeUnit.SECONDS,
+                Storage.SignUrlOption.withV4Signature(),
+                Storage.SignUrlOption.httpMethod(HttpMethod.GET)));
+        return Optional.of(url.toString());
+    }
+
+    /**
+     * Verify that the bucket is reachable with the configured credentials
+     */
+    public boolean bucketExists() throws IOException {
+        return metrics.record("bucket", () -> storage.get(bucket) != null);
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    private ObjectMetadata toMetadata(Blob blob) {
+        OffsetDateTime updateTime = blob.getUpdateTimeOffsetDateTime();
+        return new ObjectMetadata(
+                blob.getName(),
+                blob.getSize() != null ? blob.getSize() : 0L,
+                blob.getContentType(),
+                updateTime != null ? updateTime.toInstant() : null,
+                blob.getEtag());
+    }
+
+    /**
+     * Records the bytes a caller actually read, so ranges abandoned midway
+     * (clients seeking away) are not counted in full, and times the read from
+     * opening the channel to EOF, the first failed read or close
+     */
+    private class ReadCountingInputStream extends FilterInputStream {
+
+        private final Timer.Sample sample;
+        private long bytesRead;
+        private boolean finished;
+
+        ReadCountingInputStream(InputStream in, Timer.Sample sample) {
+            super(in);
+            this.sample = sample;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b;
+            try {
+                b = super.read();
+            } catch (IOException | RuntimeException e) {
+                finish("error");
+                throw e;
+            }
+            if (b == -1) {
+                finish("success");
+            } else {
+                bytesRead++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read;
+            try {
+                read = super.read(b, off, len);
+            } catch (IOException | RuntimeException e) {
+                finish("error");
+                throw e;
+            }
+            if (read == -1) {
+                finish("success");
+            } else {
+                bytesRead += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            bytesRead += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish("success");
+            super.close();
+        }
+
+        private void finish(String outcome) {
+            if (!finished) {
+                finished = true;
+                metrics.stop(sample, "read", outcome);
+                metrics.recordBytes("read", bytesRead);
+            }
+        }
+    }
+}
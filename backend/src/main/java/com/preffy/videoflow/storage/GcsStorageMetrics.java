@@ -0,0 +1,68 @@
+package com.preffy.videoflow.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Micrometer instrumentation for object-store calls, published as
+ * storage.gcs.requests (timer tagged by operation and outcome) and
+ * storage.gcs.bytes (counter of payload bytes moved per operation).
+ */
+@Component
+public class GcsStorageMetrics {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @FunctionalInterface
+    public interface StorageCall<T> {
+        T call() throws IOException;
+    }
+
+    /**
+     * Time a single GCS operation, tagging the outcome as success or error
+     */
+    public <T> T record(String operation, StorageCall<T> call) throws IOException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "success";
+        try {
+            return call.call();
+        } catch (IOException | RuntimeException e) {
+            outcome = "error";
+            throw e;
+        } finally {
+            stop(sample, operation, outcome);
+        }
+    }
+
+    /**
+     * Start timing an operation that outlives the call starting it, e.g. a
+     * streamed read; finish it with {@link #stop}
+     */
+    public Timer.Sample start() {
+        return Timer.start(meterRegistry);
+    }
+
+    public void stop(Timer.Sample sample, String operation, String outcome) {
+        sample.stop(Timer.builder("storage.gcs.requests")
+                .description("Latency of Google Cloud Storage operations")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+
+    public void recordBytes(String operation, long bytes) {
+        Counter.builder("storage.gcs.bytes")
+                .description("Payload bytes transferred to or from Google Cloud Storage")
+                .baseUnit("bytes")
+                .tag("operation", operation)
+                .register(meterRegistry)
+                .increment(bytes);
+    }
+}
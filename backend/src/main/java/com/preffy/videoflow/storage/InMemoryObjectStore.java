@@ -0,0 +1,74 @@
+package com.preffy.videoflow.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Heap-backed object store for tests and local emulation. Not meant for real video sizes.
+ */
+public class InMemoryObjectStore implements ObjectStore {
+
+    private final Map<String, StoredObject> objects = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+
+    @Override
+    public String getType() {
+        return "memory";
+    }
+
+    @Override
+    public ObjectMetadata put(String key, InputStream content, long size, String contentType) throws IOException {
+        byte[] data = content.readAllBytes();
+        ObjectMetadata metadata = new ObjectMetadata(key, data.length, contentType, Instant.now(),
+                Long.toHexString(generation.incrementAndGet()));
+        objects.put(key, new StoredObject(data, metadata));
+        return metadata;
+    }
+
+    @Override
+    public InputStream getRange(String key, long offset, long length) throws IOException {
+        StoredObject object = objects.get(key);
+        if (object == null) {
+            throw new FileNotFoundException("Object not found: " + key);
+        }
+        int start = (int) Math.min(offset, object.data.length);
+        int count = length < 0 ? object.data.length - start : (int) Math.min(length, object.data.length - start);
+        return new ByteArrayInputStream(object.data, start, count);
+    }
+
+    @Override
+    public Optional<ObjectMetadata> head(String key) {
+        return Optional.ofNullable(objects.get(key)).map(object -> object.metadata);
+    }
+
+    @Override
+    public boolean delete(String key) {
+        return objects.remove(key) != null;
+    }
+
+    @Override
+    public List<ObjectMetadata> list(String prefix) {
+        return objects.entrySet().stream()
+                .filter(entry -> entry.getKey().startsWith(prefix))
+                .map(entry -> entry.getValue().metadata)
+                .toList();
+    }
+
+    private static class StoredObject {
+        private final byte[] data;
+        private final ObjectMetadata metadata;
+
+        StoredObject(byte[] data, ObjectMetadata metadata) {
+            this.data = data;
+            this.metadata = metadata;
+        }
+    }
+}
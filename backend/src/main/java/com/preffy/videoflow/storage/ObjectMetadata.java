@@ -0,0 +1,46 @@
+package com.preffy.videoflow.storage;
+
+import java.time.Instant;
+
+/**
+ * Attributes of a stored object as reported by an {@link ObjectStore}
+ */
+public class ObjectMetadata {
+
+    private final String key;
+    private final long size;
+    private final String contentType;
+    private final Instant lastModified;
+    private final String etag;
+
+    public ObjectMetadata(String key, long size, String contentType, Instant lastModified, String etag) {
+        this.key = key;
+        this.size = size;
+        this.contentType = contentType;
+        this.lastModified = lastModified;
+        this.etag = etag;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public Instant getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Opaque version tag that changes whenever the object content is replaced
+     */
+    public String getEtag() {
+        return etag;
+    }
+}
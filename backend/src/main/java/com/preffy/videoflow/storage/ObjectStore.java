@@ -0,0 +1,91 @@
+package com.preffy.videoflow.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Storage backend for uploaded media. Keys are slash-separated paths such as
+ * "videos/3f2c....mp4"; implementations map them onto a directory, a bucket or
+ * memory. All upload, stream, delete and existence checks go through this
+ * interface so backends can be swapped per profile via app.storage.type.
+ */
+public interface ObjectStore {
+
+    /**
+     * Short backend name used in logs and metrics ("local", "gcs", "memory")
+     */
+    String getType();
+
+    /**
+     * Store an object, replacing any existing object with the same key. The
+     * stream is consumed but not closed.
+     */
+    ObjectMetadata put(String key, InputStream content, long size, String contentType) throws IOException;
+
+    /**
+     * Store the content of a local file under the given key
+     */
+    default ObjectMetadata put(String key, Path source, String contentType) throws IOException {
+        try (InputStream in = Files.newInputStream(source)) {
+            return put(key, in, Files.size(source), contentType);
+        }
+    }
+
+    /**
+     * Store a local file that the caller no longer needs. Backends on the same
+     * filesystem may rename it instead of copying; the source is gone afterwards.
+     */
+    default ObjectMetadata moveFrom(String key, Path source, String contentType) throws IOException {
+        try {
+            return put(key, source, contentType);
+        } finally {
+            Files.deleteIfExists(source);
+        }
+    }
+
+    /**
+     * Open a stream over {@code length} bytes starting at {@code offset}; a
+     * negative length reads to the end of the object
+     */
+    InputStream getRange(String key, long offset, long length) throws IOException;
+
+    default InputStream get(String key) throws IOException {
+        return getRange(key, 0, -1);
+    }
+
+    Optional<ObjectMetadata> head(String key) throws IOException;
+
+    boolean delete(String key) throws IOException;
+
+    List<ObjectMetadata> list(String prefix) throws IOException;
+
+    /**
+     * Path of the object on the local filesystem, for backends that keep objects
+     * as plain files. Lets the web layer hand the file to the kernel (sendfile)
+     * instead of copying it through the JVM.
+     */
+    default Optional<Path> localPath(String key) {
+        return Optional.empty();
+    }
+
+    /**
+     * Time-limited URL granting read access to the object without credentials,
+     * if the backend can issue one
+     */
+    default Optional<String> getSignedUrl(String key, Duration validity) throws IOException {
+        return Optional.empty();
+    }
+
+    /**
+     * Direct URL clients can fetch the object from without going through the
+     * API, if the backend exposes one
+     */
+    default Optional<String> getPublicUrl(String key) {
+        return Optional.empty();
+    }
+}
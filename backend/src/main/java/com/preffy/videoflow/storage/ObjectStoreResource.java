@@ -0,0 +1,73 @@
+package com.preffy.videoflow.storage;
+
+import org.springframework.core.io.AbstractResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Spring Resource view of a stored object, so controllers can return objects
+ * from any backend without knowing where the bytes live
+ */
+public class ObjectStoreResource extends AbstractResource {
+
+    private final ObjectStore objectStore;
+    private final ObjectMetadata metadata;
+
+    public ObjectStoreResource(ObjectStore objectStore, ObjectMetadata metadata) {
+        this.objectStore = objectStore;
+        this.metadata = metadata;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return objectStore.get(metadata.getKey());
+    }
+
+    /**
+     * Open {@code length} bytes starting at {@code offset} without reading the
+     * bytes before it
+     */
+    public InputStream getInputStream(long offset, long length) throws IOException {
+        return objectStore.getRange(metadata.getKey(), offset, length);
+    }
+
+    /**
+     * Local file holding the object, if the backend stores objects as files
+     */
+    public Optional<Path> getLocalPath() {
+        return objectStore.localPath(metadata.getKey());
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public long contentLength() {
+        return metadata.getSize();
+    }
+
+    @Override
+    public long lastModified() {
+        return metadata.getLastModified() != null ? metadata.getLastModified().toEpochMilli() : 0L;
+    }
+
+    @Override
+    public String getFilename() {
+        String key = metadata.getKey();
+        return key.substring(key.lastIndexOf('/') + 1);
+    }
+
+    @Override
+    public String getDescription() {
+        return objectStore.getType() + " object [" + metadata.getKey() + "]";
+    }
+
+    public ObjectMetadata getMetadata() {
+        return metadata;
+    }
+}
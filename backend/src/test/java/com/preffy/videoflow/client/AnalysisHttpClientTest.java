@@ -0,0 +1,158 @@
+package com.preffy.videoflow.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Per-host request cap: requests over the cap wait in a bounded queue, a full
+ * queue refuses the request, a waiter that gave up hands its permit on, and
+ * the active and queued gauges follow along
+ */
+class AnalysisHttpClientTest {
+
+    private static final String URL = "http://analysis.test/analyze";
+    private static final Duration LONG = Duration.ofSeconds(30);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<CompletableFuture<HttpResponse<String>>> sent = new CopyOnWriteArrayList<>();
+    private HttpClient httpClient;
+
+    @BeforeEach
+    void setUp() {
+        httpClient = mock(HttpClient.class);
+        when(httpClient.sendAsync(any(), any())).thenAnswer(invocation -> {
+            CompletableFuture<HttpResponse<String>> response = new CompletableFuture<>();
+            sent.add(response);
+            return response;
+        });
+    }
+
+    @Test
+    void requestsOverTheCapWaitForAFreeSlot() throws Exception {
+        AnalysisHttpClient client = client(2, 10);
+        List<CompletableFuture<HttpResponse<String>>> calls = List.of(post(client, LONG), post(client, LONG),
+                post(client, LONG), post(client, LONG));
+
+        assertEquals(2, sent.size());
+        assertEquals(2, gauge("analysis.client.active", "analysis.test"));
+        assertEquals(2, gauge("analysis.client.queued", "analysis.test"));
+
+        sent.get(0).complete(response(200));
+        assertEquals(3, sent.size());
+        assertEquals(2, gauge("analysis.client.active", "analysis.test"));
+        assertEquals(1, gauge("analysis.client.queued", "analysis.test"));
+
+        for (int i = 1; i < 4; i++) {
+            sent.get(i).complete(response(200));
+        }
+        for (CompletableFuture<HttpResponse<String>> call : calls) {
+            assertEquals(200, call.get(5, TimeUnit.SECONDS).statusCode());
+        }
+        assertEquals(4, sent.size());
+        assertEquals(0, gauge("analysis.client.active", "analysis.test"));
+        assertEquals(0, gauge("analysis.client.queued", "analysis.test"));
+        assertEquals(4, meterRegistry.get("analysis.client.requests").tag("status", "200").timer().count());
+    }
+
+    @Test
+    void otherHostsHaveTheirOwnCap() {
+        AnalysisHttpClient client = client(1, 10);
+        post(client, LONG);
+        post(client, LONG);
+
+        client.postJsonAsync("http://other.test:8080/analyze", Map.of(), LONG);
+
+        assertEquals(2, sent.size());
+        assertEquals(1, gauge("analysis.client.active", "analysis.test"));
+        assertEquals(1, gauge("analysis.client.queued", "analysis.test"));
+        assertEquals(1, gauge("analysis.client.active", "other.test:8080"));
+        assertEquals(0, gauge("analysis.client.queued", "other.test:8080"));
+    }
+
+    @Test
+    void fullQueueRefusesTheRequest() {
+        AnalysisHttpClient client = client(1, 1);
+        post(client, LONG);
+        post(client, LONG);
+
+        ExecutionException refused = assertThrows(ExecutionException.class,
+                () -> post(client, LONG).get(5, TimeUnit.SECONDS));
+        IOException blocking = assertThrows(IOException.class, () -> client.postJson(URL, Map.of(), LONG));
+
+        assertInstanceOf(HostSaturatedException.class, refused.getCause());
+        assertInstanceOf(HostSaturatedException.class, blocking);
+        assertEquals(1, sent.size());
+        assertEquals(1, gauge("analysis.client.queued", "analysis.test"));
+        assertEquals(2, meterRegistry.get("analysis.client.requests").tag("status", "HostSaturatedException")
+                .timer().count());
+    }
+
+    @Test
+    void timedOutWaiterPassesItsPermitOn() throws Exception {
+        AnalysisHttpClient client = client(1, 2);
+        CompletableFuture<HttpResponse<String>> first = post(client, LONG);
+        CompletableFuture<HttpResponse<String>> impatient = post(client, Duration.ofMillis(50));
+        CompletableFuture<HttpResponse<String>> patient = post(client, LONG);
+
+        ExecutionException timedOut = assertThrows(ExecutionException.class,
+                () -> impatient.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(HttpTimeoutException.class, AnalysisHttpClient.asIOException(timedOut, URL));
+        assertEquals(1, sent.size());
+
+        sent.get(0).complete(response(200));
+
+        assertEquals(2, sent.size());
+        assertEquals(1, gauge("analysis.client.active", "analysis.test"));
+        assertEquals(0, gauge("analysis.client.queued", "analysis.test"));
+        assertFalse(patient.isDone());
+        HttpResponse<String> second = response(201);
+        sent.get(1).complete(second);
+        assertSame(second, patient.get(5, TimeUnit.SECONDS));
+        assertTrue(first.isDone());
+        assertEquals(0, gauge("analysis.client.active", "analysis.test"));
+    }
+
+    private AnalysisHttpClient client(int maxConcurrentPerHost, int maxQueuedPerHost) {
+        return new AnalysisHttpClient(httpClient, new ObjectMapper(), meterRegistry, maxConcurrentPerHost,
+                maxQueuedPerHost);
+    }
+
+    private static CompletableFuture<HttpResponse<String>> post(AnalysisHttpClient client, Duration timeout) {
+        return client.postJsonAsync(URL, Map.of("video", "a.mp4"), timeout);
+    }
+
+    private double gauge(String name, String host) {
+        return meterRegistry.get(name).tag("host", host).gauge().value();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static HttpResponse<String> response(int status) {
+        HttpResponse<String> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(status);
+        return response;
+    }
+}
@@ -0,0 +1,256 @@
+package com.preffy.videoflow.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drives a downstream against a local stub server that answers with a
+ * configurable status after a configurable delay, failing the first few
+ * requests with 503 if asked to
+ */
+class DownstreamTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile int status = 200;
+    private volatile long delayMillis;
+    private volatile int failFirst;
+    private final List<String> idempotencyKeys = new CopyOnWriteArrayList<>();
+    // Circuit breaker time for the tests that wait out the open state
+    private final AtomicLong clock = new AtomicLong();
+
+    private AnalysisHttpClient client;
+    private String url;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/analysis", exchange -> {
+            int request = requests.incrementAndGet();
+            idempotencyKeys.add(String.valueOf(exchange.getRequestHeaders().getFirst(AnalysisHttpClient.IDEMPOTENCY_KEY)));
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getRequestBody().readAllBytes();
+            byte[] body = "{\"ok\":true}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(request <= failFirst ? 503 : status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/analysis";
+        client = new AnalysisHttpClient(HttpClient.newHttpClient(), new ObjectMapper(), new SimpleMeterRegistry(), 16, 16);
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    void opensOnServerErrorsAndFailsFast() throws IOException {
+        Downstream downstream = downstream(Duration.ofSeconds(10), Duration.ofMinutes(1), 8);
+        status = 503;
+        for (int i = 0; i < 4; i++) {
+            assertEquals(503, call(downstream).statusCode());
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, downstream.getCircuitBreaker().getState());
+        CallNotPermittedException refused = assertThrows(CallNotPermittedException.class, () -> call(downstream));
+        assertTrue(refused.getRetryAfter().toSeconds() > 50);
+        assertEquals(4, requests.get());
+        assertEquals(1L, downstream.getRejectedOpen());
+    }
+
+    @Test
+    void clientErrorsDoNotOpen() throws IOException {
+        Downstream downstream = downstream(Duration.ofSeconds(10), Duration.ofMinutes(1), 8);
+        status = 404;
+        for (int i = 0; i < 6; i++) {
+            call(downstream);
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, downstream.getCircuitBreaker().getState());
+    }
+
+    @Test
+    void opensOnSlowCalls() throws IOException {
+        Downstream downstream = downstream(Duration.ofMillis(100), Duration.ofMinutes(1), 8);
+        delayMillis = 150;
+        for (int i = 0; i < 4; i++) {
+            assertEquals(200, call(downstream).statusCode());
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, downstream.getCircuitBreaker().getState());
+        assertThrows(CallNotPermittedException.class, () -> call(downstream));
+    }
+
+    @Test
+    void closesAfterSuccessfulProbes() throws IOException {
+        Downstream downstream = downstream(Duration.ofSeconds(10), Duration.ofMillis(200), 8, clock::get);
+        status = 500;
+        for (int i = 0; i < 4; i++) {
+            call(downstream);
+        }
+        assertThrows(CallNotPermittedException.class, () -> call(downstream));
+
+        clock.addAndGet(Duration.ofMillis(200).toNanos());
+        status = 200;
+        assertEquals(CircuitBreaker.State.HALF_OPEN, downstream.getCircuitBreaker().getState());
+        call(downstream);
+        call(downstream);
+
+        assertEquals(CircuitBreaker.State.CLOSED, downstream.getCircuitBreaker().getState());
+    }
+
+    @Test
+    void failedProbeReopens() throws IOException {
+        Downstream downstream = downstream(Duration.ofSeconds(10), Duration.ofMillis(200), 8, clock::get);
+        status = 500;
+        for (int i = 0; i < 4; i++) {
+            call(downstream);
+        }
+
+        clock.addAndGet(Duration.ofMillis(200).toNanos());
+        call(downstream);
+        call(downstream);
+
+        assertEquals(CircuitBreaker.State.OPEN, downstream.getCircuitBreaker().getState());
+    }
+
+    @Test
+    void bulkheadRefusesCallsOverTheLimit() throws Exception {
+        Downstream downstream = downstream(Duration.ofSeconds(10), Duration.ofMinutes(1), 1);
+        delayMillis = 300;
+        CompletableFuture<HttpResponse<String>> first = downstream.callAsync(
+                () -> client.postJsonAsync(url, Map.of("project_id", "1"), TIMEOUT));
+
+        CallNotPermittedException refused = assertThrows(CallNotPermittedException.class, () -> call(downstream));
+        assertEquals(200, first.get().statusCode());
+        assertEquals(1L, downstream.getRejectedFull());
+        assertEquals(0, downstream.getActiveCalls());
+        assertTrue(refused.getRetryAfter().toSeconds() > 0);
+    }
+
+    @Test
+    void connectionFailuresCount() {
+        server.stop(0);
+        Downstream downstream = downstream(Duration.ofSeconds(10), Duration.ofMinutes(1), 8);
+        for (int i = 0; i < 4; i++) {
+            IOException error = assertThrows(IOException.class, () -> call(downstream));
+            assertTrue(!(error instanceof CallNotPermittedException));
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, downstream.getCircuitBreaker().getState());
+    }
+
+    @Test
+    void retriesTransientFailuresWithTheSameKey() throws IOException {
+        Downstream downstream = retrying(3, new RetryBudget(0.2, 0, 10));
+        failFirst = 2;
+        HttpResponse<String> response = downstream.call(url, () -> client.postJsonAsync(url, Map.of("project_id", "1"),
+                Map.of(AnalysisHttpClient.IDEMPOTENCY_KEY, "script:1:abc"), TIMEOUT));
+
+        assertEquals(200, response.statusCode());
+        assertEquals(3, requests.get());
+        assertEquals(List.of("script:1:abc", "script:1:abc", "script:1:abc"), idempotencyKeys);
+        assertEquals(2L, downstream.getRetries());
+    }
+
+    @Test
+    void givesUpAfterMaxAttempts() throws IOException {
+        Downstream downstream = retrying(3, new RetryBudget(0.2, 0, 10));
+        status = 503;
+
+        assertEquals(503, call(downstream).statusCode());
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    void doesNotRetryClientErrors() throws IOException {
+        Downstream downstream = retrying(3, new RetryBudget(0.2, 0, 10));
+        status = 422;
+
+        assertEquals(422, call(downstream).statusCode());
+        assertEquals(1, requests.get());
+        assertEquals(0L, downstream.getRetries());
+    }
+
+    @Test
+    void stopsRetryingWhenTheBudgetIsSpent() throws IOException {
+        Downstream downstream = retrying(3, new RetryBudget(0.2, 0, 1));
+        status = 503;
+
+        call(downstream);
+        assertEquals(2, requests.get());
+        call(downstream);
+        assertEquals(3, requests.get());
+        assertEquals(1L, downstream.getRetries());
+        assertEquals(2L, downstream.getRetriesOverBudget());
+    }
+
+    @Test
+    void retriesConnectionFailures() {
+        server.stop(0);
+        Downstream downstream = retrying(2, new RetryBudget(0.2, 0, 10));
+
+        assertThrows(IOException.class, () -> call(downstream));
+        assertEquals(1L, downstream.getRetries());
+    }
+
+    private HttpResponse<String> call(Downstream downstream) throws IOException {
+        return downstream.call(url, () -> client.postJsonAsync(url, Map.of("project_id", "1"), TIMEOUT));
+    }
+
+    private Downstream downstream(Duration slowCallDuration, Duration openDuration, int maxConcurrentCalls) {
+        return downstream(slowCallDuration, openDuration, maxConcurrentCalls, System::nanoTime);
+    }
+
+    private Downstream downstream(Duration slowCallDuration, Duration openDuration, int maxConcurrentCalls,
+                                  LongSupplier nanoClock) {
+        CircuitBreaker.Settings settings = new CircuitBreaker.Settings(10, 4, 50, 75, slowCallDuration, openDuration, 2);
+        return new Downstream("stub", new CircuitBreaker(settings, nanoClock), maxConcurrentCalls);
+    }
+
+    private Downstream retrying(int maxAttempts, RetryBudget retryBudget) {
+        // A wide window so that retried failures do not open the circuit
+        CircuitBreaker.Settings settings = new CircuitBreaker.Settings(100, 100, 50, 75, Duration.ofSeconds(10),
+                Duration.ofMinutes(1), 2);
+        RetryPolicy retryPolicy = new RetryPolicy(maxAttempts, Duration.ofMillis(10), Duration.ofMillis(50));
+        return new Downstream("stub", new CircuitBreaker(settings), 8, retryPolicy, retryBudget);
+    }
+}
@@ -0,0 +1,106 @@
+package com.preffy.videoflow.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+    private final AtomicInteger runs = new AtomicInteger();
+
+    @Test
+    void concurrentCallsShareOneRun() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<String> leader = executor.submit(() -> singleFlight.execute("project-1", () -> {
+                runs.incrementAndGet();
+                started.countDown();
+                await(release);
+                return "result";
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            Future<String> follower = executor.submit(() -> singleFlight.execute("project-1", () -> {
+                runs.incrementAndGet();
+                return "other";
+            }));
+            while (singleFlight.getJoined() < 1) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            assertEquals("result", leader.get(5, TimeUnit.SECONDS));
+            assertEquals("result", follower.get(5, TimeUnit.SECONDS));
+            assertEquals(1, runs.get());
+            assertFalse(singleFlight.isInFlight("project-1"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void joinedCallsSeeTheFailure() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        IOException failure = new IOException("service down");
+        CompletableFuture<Void> leader = CompletableFuture.runAsync(() -> {
+            try {
+                singleFlight.execute("project-1", () -> {
+                    started.countDown();
+                    await(release);
+                    throw failure;
+                });
+            } catch (IOException e) {
+                // Expected
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<IOException> follower = CompletableFuture.supplyAsync(() ->
+                assertThrows(IOException.class, () -> singleFlight.execute("project-1", () -> "unused")));
+        while (singleFlight.getJoined() < 1) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        assertSame(failure, follower.get(5, TimeUnit.SECONDS));
+        leader.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void laterCallsRunAgain() throws IOException {
+        singleFlight.execute("project-1", () -> "first" + runs.incrementAndGet());
+        assertEquals("first2", singleFlight.execute("project-1", () -> "first" + runs.incrementAndGet()));
+        assertEquals(0L, singleFlight.getJoined());
+    }
+
+    @Test
+    void differentKeysRunIndependently() throws IOException {
+        assertEquals("a", singleFlight.execute("project-1", () -> singleFlight.execute("project-2", () -> "a")));
+        assertEquals(0L, singleFlight.getJoined());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.preffy.videoflow.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Limits, rejection policies and meters of the per-workload executors, on
+ * platform and virtual threads
+ */
+class ExecutorConfigTest {
+
+    private final ExecutorConfig executorConfig = new ExecutorConfig();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final MockEnvironment environment = new MockEnvironment();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<ExecutorService> executors = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executors.forEach(ExecutorService::shutdownNow);
+    }
+
+    @Test
+    void abortPolicyRejectsPastThreadsAndQueue() throws InterruptedException {
+        ExecutorService executor = uploadProcessing(false);
+
+        fill(executor);
+
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> { }));
+        assertEquals(1, rejected("upload-processing"));
+        assertEquals(1, meterRegistry.get("executor.active").tag("name", "upload-processing").gauge().value());
+        assertEquals(1, meterRegistry.get("executor.queued").tag("name", "upload-processing").gauge().value());
+    }
+
+    @Test
+    void abortPolicyOnVirtualThreadsKeepsTheSameLimits() throws InterruptedException {
+        ExecutorService executor = uploadProcessing(true);
+
+        fill(executor);
+
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> { }));
+        assertEquals(1, rejected("upload-processing"));
+        assertEquals(1, meterRegistry.get("executor.active").tag("name", "upload-processing").gauge().value());
+        assertEquals(1, meterRegistry.get("executor.queued").tag("name", "upload-processing").gauge().value());
+    }
+
+    @Test
+    void callerRunsPolicyRunsOverflowOnTheSubmittingThread() throws InterruptedException {
+        for (boolean virtualThreads : new boolean[] {false, true}) {
+            environment.setProperty("app.executors.script-analysis.threads", "1");
+            environment.setProperty("app.executors.script-analysis.queue-capacity", "1");
+            environment.setProperty("app.executors.virtual-threads", String.valueOf(virtualThreads));
+            SimpleMeterRegistry registry = new SimpleMeterRegistry();
+            ExecutorService executor = track(executorConfig.scriptAnalysisExecutor(environment, registry));
+            fill(executor);
+
+            AtomicReference<Thread> ranOn = new AtomicReference<>();
+            executor.execute(() -> ranOn.set(Thread.currentThread()));
+
+            assertEquals(Thread.currentThread(), ranOn.get());
+            assertEquals(1, registry.get("executor.rejected").tag("name", "script-analysis").counter().count());
+        }
+    }
+
+    @Test
+    void threadsAreNamedAfterTheWorkload() throws Exception {
+        ExecutorService executor = uploadProcessing(false);
+
+        String name = executor.submit(() -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS);
+
+        assertTrue(name.startsWith("upload-processing-"), name);
+    }
+
+    @Test
+    void unknownRejectionPolicyFailsAtStartup() {
+        environment.setProperty("app.executors.upload-processing.rejection-policy", "discard");
+
+        assertThrows(IllegalArgumentException.class,
+                () -> executorConfig.uploadProcessingExecutor(environment, meterRegistry));
+    }
+
+    private ExecutorService uploadProcessing(boolean virtualThreads) {
+        environment.setProperty("app.executors.upload-processing.threads", "1");
+        environment.setProperty("app.executors.upload-processing.queue-capacity", "1");
+        environment.setProperty("app.executors.upload-processing.virtual-threads", String.valueOf(virtualThreads));
+        return track(executorConfig.uploadProcessingExecutor(environment, meterRegistry));
+    }
+
+    /**
+     * Occupy the only thread and the only queue slot until the test ends
+     */
+    private void fill(ExecutorService executor) throws InterruptedException {
+        CountDownLatch running = new CountDownLatch(1);
+        executor.execute(() -> {
+            running.countDown();
+            await();
+        });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        executor.execute(this::await);
+    }
+
+    private void await() {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private ExecutorService track(ExecutorService executor) {
+        executors.add(executor);
+        return executor;
+    }
+
+    private double rejected(String name) {
+        return meterRegistry.get("executor.rejected").tag("name", name).counter().count();
+    }
+}
@@ -0,0 +1,103 @@
+package com.preffy.videoflow.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.preffy.videoflow.service.UploadAdmissionService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Which requests the upload admission filter counts, and how it keys anonymous clients
+ */
+class UploadAdmissionFilterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private UploadAdmissionFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        UploadAdmissionService admission = new UploadAdmissionService();
+        ReflectionTestUtils.setField(admission, "maxConcurrent", 10);
+        ReflectionTestUtils.setField(admission, "maxInflightBytes", 100L * 1024 * 1024);
+        ReflectionTestUtils.setField(admission, "maxConcurrentPerClient", 1);
+        ReflectionTestUtils.setField(admission, "unknownLengthBytes", 1024L);
+        ReflectionTestUtils.setField(admission, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.invokeMethod(admission, "registerMetrics");
+        filter = new UploadAdmissionFilter(admission, new ObjectMapper(), 5);
+    }
+
+    @Test
+    void forwardedForHeaderDoesNotChangeTheClient() throws Exception {
+        MockHttpServletRequest first = chunk("203.0.113.7", "198.51.100.1");
+        MockHttpServletRequest second = chunk("203.0.113.7", "198.51.100.2");
+        MockHttpServletResponse secondResponse = new MockHttpServletResponse();
+
+        filter.doFilter(first, new MockHttpServletResponse(),
+                (request, response) -> filter.doFilter(second, secondResponse, new MockFilterChain()));
+
+        assertEquals(429, secondResponse.getStatus());
+    }
+
+    @Test
+    void otherAddressesAreOtherClients() throws Exception {
+        MockHttpServletResponse secondResponse = new MockHttpServletResponse();
+
+        filter.doFilter(chunk("203.0.113.7", null), new MockHttpServletResponse(),
+                (request, response) -> filter.doFilter(chunk("203.0.113.8", null), secondResponse,
+                        new MockFilterChain()));
+
+        assertEquals(200, secondResponse.getStatus());
+    }
+
+    @Test
+    void completingAnUploadIsAdmittedWithoutBodyBytes() throws Exception {
+        MockHttpServletRequest complete = request("POST", "/api/videos/uploads/abc/complete");
+
+        filter.doFilter(complete, new MockHttpServletResponse(), assertAdmitted(0));
+
+        assertEquals(0, gauge("upload.admission.active"));
+    }
+
+    @Test
+    void otherRequestsAreNotCounted() throws Exception {
+        MockHttpServletRequest status = request("GET", "/api/videos/uploads/abc");
+
+        filter.doFilter(status, new MockHttpServletResponse(), (request, response) ->
+                assertEquals(0, gauge("upload.admission.active")));
+    }
+
+    private FilterChain assertAdmitted(long bytes) {
+        return (request, response) -> {
+            assertEquals(1, gauge("upload.admission.active"));
+            assertEquals(bytes, gauge("upload.admission.reserved.bytes"));
+        };
+    }
+
+    private double gauge(String name) {
+        return meterRegistry.get(name).gauge().value();
+    }
+
+    private static MockHttpServletRequest chunk(String remoteAddr, String forwardedFor) {
+        MockHttpServletRequest request = request("PUT", "/api/videos/uploads/abc");
+        request.setRemoteAddr(remoteAddr);
+        if (forwardedFor != null) {
+            request.addHeader("X-Forwarded-For", forwardedFor);
+        }
+        request.setContent(new byte[16]);
+        return request;
+    }
+
+    private static MockHttpServletRequest request(String method, String path) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        request.setServletPath(path);
+        request.setRemoteAddr("203.0.113.7");
+        return request;
+    }
+}
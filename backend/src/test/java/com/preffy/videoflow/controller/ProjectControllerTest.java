@@ -0,0 +1,112 @@
+package com.preffy.videoflow.controller;
+
+import com.preffy.videoflow.security.UserPrincipal;
+import com.preffy.videoflow.service.ProjectOperation;
+import com.preffy.videoflow.service.ProjectOperationService;
+import com.preffy.videoflow.service.ProjectService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMultipartHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Creating a project with a video answers 202 with an operation to poll,
+ * and polling it returns the operation's progress to its owner only
+ */
+class ProjectControllerTest {
+
+    private final ProjectOperationService projectOperationService = mock(ProjectOperationService.class);
+    private final UsernamePasswordAuthenticationToken authentication = authentication(1L);
+    private final ProjectOperation operation = new ProjectOperation("op-1", 1L, 7L, 1000, Duration.ofSeconds(3));
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        ProjectController controller = new ProjectController();
+        ReflectionTestUtils.setField(controller, "projectService", mock(ProjectService.class));
+        ReflectionTestUtils.setField(controller, "projectOperationService", projectOperationService);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @Test
+    void projectWithVideoIsAcceptedWithAnOperationToPoll() throws Exception {
+        when(projectOperationService.accept(any(), any(), eq(1L))).thenReturn(operation);
+
+        mockMvc.perform(upload(new byte[1000]))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string(HttpHeaders.LOCATION, "/api/projects/operations/op-1"))
+                .andExpect(jsonPath("$.operationId").value("op-1"))
+                .andExpect(jsonPath("$.projectId").value("7"))
+                .andExpect(jsonPath("$.stage").value("received"))
+                .andExpect(jsonPath("$.etaSeconds").value(3));
+    }
+
+    @Test
+    void saturatedUploadProcessingIs503WithRetryAfter() throws Exception {
+        when(projectOperationService.accept(any(), any(), eq(1L))).thenThrow(new RejectedExecutionException("full"));
+
+        mockMvc.perform(upload(new byte[1000]))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "30"));
+    }
+
+    @Test
+    void emptyVideoIsRejected() throws Exception {
+        mockMvc.perform(upload(new byte[0]))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void pollingReturnsTheOperationsProgress() throws Exception {
+        when(projectOperationService.getOperation("op-1", 1L)).thenReturn(Optional.of(operation));
+
+        mockMvc.perform(get("/api/projects/operations/op-1").principal(authentication))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-store"))
+                .andExpect(jsonPath("$.stage").value("received"))
+                .andExpect(jsonPath("$.percent").value(0));
+    }
+
+    @Test
+    void pollingAnotherUsersOperationIsNotFound() throws Exception {
+        when(projectOperationService.getOperation("op-1", 2L)).thenReturn(Optional.empty());
+
+        mockMvc.perform(get("/api/projects/operations/op-1").principal(authentication(2L)))
+                .andExpect(status().isNotFound());
+    }
+
+    private MockMultipartHttpServletRequestBuilder upload(byte[] video) {
+        MockMultipartHttpServletRequestBuilder request = multipart("/api/projects/with-video");
+        request.file(new MockMultipartFile("video", "talk.mp4", "video/mp4", video))
+                .param("title", "Pitch")
+                .param("description", "Practice run")
+                .principal(authentication);
+        return request;
+    }
+
+    private static UsernamePasswordAuthenticationToken authentication(Long userId) {
+        UserPrincipal principal = new UserPrincipal(userId, "user" + userId, "user" + userId + "@example.com",
+                "password", List.of());
+        return new UsernamePasswordAuthenticationToken(principal, null, List.of());
+    }
+}
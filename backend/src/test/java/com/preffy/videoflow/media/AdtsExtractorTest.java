@@ -0,0 +1,167 @@
+package com.preffy.videoflow.media;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AdtsExtractorTest {
+
+    private static final int SAMPLES = 40;
+    private static final int SAMPLES_PER_CHUNK = 10;
+
+    /**
+     * AAC LC, 44.1 kHz, stereo
+     */
+    private static final byte[] AAC_LC_CONFIG = {0x12, 0x10};
+
+    @Test
+    void writesFramesInSampleOrderWithAdtsHeaders() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AdtsExtractor.AdtsStream stream = AdtsExtractor.extract(
+                new BytesSource(audioMovie("mp4a", AAC_LC_CONFIG)), Channels.newChannel(out));
+
+        assertEquals(44100, stream.sampleRate());
+        assertEquals(2, stream.channels());
+        assertEquals(SAMPLES, stream.frames());
+        byte[] adts = out.toByteArray();
+        assertEquals((long) adts.length, stream.bytes());
+
+        int position = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            int frameLength = ((adts[position + 3] & 0x3) << 11) | ((adts[position + 4] & 0xFF) << 3)
+                    | ((adts[position + 5] & 0xFF) >> 5);
+            assertEquals(0xFF, adts[position] & 0xFF);
+            assertEquals(0xF1, adts[position + 1] & 0xFF);
+            // Profile LC (1), frequency index 4 (44.1 kHz), channel configuration 2
+            assertEquals((1 << 6) | (4 << 2), adts[position + 2] & 0xFF);
+            assertEquals(2 << 6, adts[position + 3] & 0xC0);
+            assertEquals(7 + sampleSize(i), frameLength);
+            assertArrayEquals(sample(i), Arrays.copyOfRange(adts, position + 7, position + frameLength));
+            position += frameLength;
+        }
+        assertEquals(adts.length, position);
+    }
+
+    @Test
+    void describesHeAacByItsCoreStream() throws Mp4FormatException {
+        // Object type 5 (SBR) at 24 kHz stereo, extension rate 48 kHz, core object type 2 (LC)
+        AdtsExtractor.AudioConfig config = AdtsExtractor.parseAudioSpecificConfig(new byte[]{0x2B, 0x11, (byte) 0x88});
+        assertEquals(new AdtsExtractor.AudioConfig(2, 6, 2), config);
+    }
+
+    @Test
+    void rejectsTracksAdtsCannotCarry() {
+        // Opus in MP4 has no esds
+        assertThrows(Mp4FormatException.class, () -> AdtsExtractor.extract(
+                new BytesSource(audioMovie("Opus", AAC_LC_CONFIG)), Channels.newChannel(new ByteArrayOutputStream())));
+        // Object type 42 (USAC) via the escape value
+        assertThrows(Mp4FormatException.class,
+                () -> AdtsExtractor.parseAudioSpecificConfig(new byte[]{(byte) 0xF9, 0x44, 0x40}));
+    }
+
+    /**
+     * Audio-only movie whose chunks are stored in reverse order, so file order
+     * and sample order differ
+     */
+    private static byte[] audioMovie(String codec, byte[] audioSpecificConfig) {
+        byte[] ftyp = box("ftyp", ascii("isom"), new byte[]{0, 0, 2, 0});
+        int chunks = SAMPLES / SAMPLES_PER_CHUNK;
+        long[] chunkOffsets = new long[chunks];
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        int mdatStart = ftyp.length + 8;
+        for (int chunk = chunks - 1; chunk >= 0; chunk--) {
+            chunkOffsets[chunk] = mdatStart + payload.size();
+            for (int i = chunk * SAMPLES_PER_CHUNK; i < (chunk + 1) * SAMPLES_PER_CHUNK; i++) {
+                payload.writeBytes(sample(i));
+            }
+        }
+
+        byte[] mvhd = box("mvhd", ByteBuffer.allocate(100).putInt(0).putInt(0).putInt(0).putInt(1000).putInt(1000).array());
+        byte[] tkhd = box("tkhd", ByteBuffer.allocate(84).putInt(0).putInt(0).putInt(0).putInt(1).array());
+        byte[] mdhd = box("mdhd", ByteBuffer.allocate(24).putInt(0).putInt(0).putInt(0).putInt(44100)
+                .putInt(SAMPLES * 1024).array());
+        byte[] hdlr = box("hdlr", ByteBuffer.allocate(25).putInt(0).putInt(0).put(ascii("soun")).array());
+
+        // SampleEntry + version 0 sound description, then esds with multi-byte descriptor sizes
+        byte[] soundDescription = ByteBuffer.allocate(28).putShort(6, (short) 1).putShort(16, (short) 2)
+                .putShort(18, (short) 16).putInt(24, 44100 << 16).array();
+        byte[] decoderSpecificInfo = concat(new byte[]{0x05, (byte) audioSpecificConfig.length}, audioSpecificConfig);
+        byte[] decoderConfig = concat(new byte[]{0x04, (byte) 0x80, (byte) 0x80, (byte) 0x80,
+                (byte) (13 + decoderSpecificInfo.length), 0x40, 0x15}, new byte[11], decoderSpecificInfo);
+        byte[] esDescriptor = concat(new byte[]{0x03, (byte) (3 + decoderConfig.length), 0, 1, 0}, decoderConfig);
+        byte[] sampleEntry = box(codec, soundDescription, box("esds", new byte[4], esDescriptor));
+
+        ByteBuffer stszBody = ByteBuffer.allocate(12 + SAMPLES * 4).putInt(0).putInt(0).putInt(SAMPLES);
+        for (int i = 0; i < SAMPLES; i++) {
+            stszBody.putInt(sampleSize(i));
+        }
+        ByteBuffer stcoBody = ByteBuffer.allocate(8 + chunks * 4).putInt(0).putInt(chunks);
+        for (long offset : chunkOffsets) {
+            stcoBody.putInt((int) offset);
+        }
+        byte[] stbl = box("stbl",
+                box("stsd", ByteBuffer.allocate(8).putInt(0).putInt(1).array(), sampleEntry),
+                box("stts", ByteBuffer.allocate(16).putInt(0).putInt(1).putInt(SAMPLES).putInt(1024).array()),
+                box("stsc", ByteBuffer.allocate(20).putInt(0).putInt(1).putInt(1).putInt(SAMPLES_PER_CHUNK).putInt(1).array()),
+                box("stsz", stszBody.array()),
+                box("stco", stcoBody.array()));
+        byte[] trak = box("trak", tkhd, box("mdia", mdhd, hdlr, box("minf", stbl)));
+        return concat(ftyp, box("mdat", payload.toByteArray()), box("moov", mvhd, trak));
+    }
+
+    private static int sampleSize(int index) {
+        return 200 + index * 7;
+    }
+
+    private static byte[] sample(int index) {
+        byte[] sample = new byte[sampleSize(index)];
+        Arrays.fill(sample, (byte) index);
+        return sample;
+    }
+
+    private static byte[] box(String type, byte[]... parts) {
+        byte[] body = concat(parts);
+        return ByteBuffer.allocate(8 + body.length).putInt(8 + body.length).put(ascii(type)).put(body).array();
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.writeBytes(part);
+        }
+        return out.toByteArray();
+    }
+
+    private static class BytesSource implements SeekableSource {
+
+        private final byte[] bytes;
+
+        BytesSource(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public long size() {
+            return bytes.length;
+        }
+
+        @Override
+        public ByteBuffer read(long position, int length) {
+            int available = (int) Math.max(0, Math.min(length, bytes.length - position));
+            return ByteBuffer.wrap(bytes, (int) position, available).slice();
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.preffy.videoflow.media;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FastStartRewriterTest {
+
+    private static final int CHUNK_SIZE = 1000;
+
+    @Test
+    void movesMoovToFrontAndPatchesChunkOffsets() throws IOException {
+        byte[] original = tailMoovFile(8, "stco");
+        Mp4Movie before = Mp4Parser.parse(new BytesSource(original));
+        assertTrue(FastStartRewriter.needsRewrite(before));
+
+        CapturingChannel out = new CapturingChannel(Integer.MAX_VALUE);
+        long written = FastStartRewriter.rewrite(new BytesSource(original), out);
+        byte[] rewritten = out.bytes.toByteArray();
+
+        assertEquals(original.length, written);
+        assertEquals(original.length, rewritten.length);
+        Mp4Movie after = Mp4Parser.parse(new BytesSource(rewritten));
+        assertTrue(after.isFastStart());
+        assertFalse(FastStartRewriter.needsRewrite(after));
+        assertEquals(before.getDuration(), after.getDuration());
+        assertEquals(before.getTracks().size(), after.getTracks().size());
+
+        // Every chunk offset still points at the same chunk payload
+        List<Long> originalOffsets = chunkOffsets(original);
+        List<Long> rewrittenOffsets = chunkOffsets(rewritten);
+        assertEquals(8, rewrittenOffsets.size());
+        for (int i = 0; i < originalOffsets.size(); i++) {
+            assertEquals(originalOffsets.get(i) + before.getMoovSize(), (long) rewrittenOffsets.get(i));
+            assertArrayEquals(slice(original, originalOffsets.get(i), CHUNK_SIZE),
+                    slice(rewritten, rewrittenOffsets.get(i), CHUNK_SIZE));
+        }
+    }
+
+    @Test
+    void patchesCo64Tables() throws IOException {
+        byte[] original = tailMoovFile(3, "co64");
+        CapturingChannel out = new CapturingChannel(Integer.MAX_VALUE);
+        FastStartRewriter.rewrite(new BytesSource(original), out);
+        byte[] rewritten = out.bytes.toByteArray();
+
+        List<Long> originalOffsets = chunkOffsets(original);
+        List<Long> rewrittenOffsets = chunkOffsets(rewritten);
+        for (int i = 0; i < originalOffsets.size(); i++) {
+            assertArrayEquals(slice(original, originalOffsets.get(i), CHUNK_SIZE),
+                    slice(rewritten, rewrittenOffsets.get(i), CHUNK_SIZE));
+        }
+    }
+
+    /**
+     * Chunks just below 4 GiB no longer fit in stco once moov moves in front of
+     * them; the table must be promoted to co64 and the shift grows to match
+     */
+    @Test
+    void promotesStcoToCo64WhenOffsetsOverflow() throws IOException {
+        long payloadSize = 0xFFFFFFFFL - 64;
+        long chunkOffset = 24 + payloadSize - 16;
+        byte[] ftyp = box("ftyp", "isom".getBytes(StandardCharsets.US_ASCII), new byte[]{0, 0, 2, 0});
+        byte[] mdatHeader = ByteBuffer.allocate(16).putInt(1).put(ascii("mdat")).putLong(16 + payloadSize).array();
+        byte[] moov = moov("stco", new long[]{chunkOffset});
+        VirtualSource source = new VirtualSource(concat(ftyp, mdatHeader), payloadSize, moov);
+
+        // Capture ftyp and the relocated moov, which grows by 4 bytes for the one promoted entry
+        long newMoovSize = moov.length + 4;
+        CapturingChannel out = new CapturingChannel(ftyp.length + (int) newMoovSize);
+        long written = FastStartRewriter.rewrite(source, out);
+
+        byte[] head = out.bytes.toByteArray();
+        Mp4Movie after = Mp4Parser.parse(new BytesSource(head));
+        assertEquals(newMoovSize, after.getMoovSize());
+        assertEquals(source.size() + 4, written);
+        assertEquals(List.of(chunkOffset + newMoovSize), chunkOffsets(head));
+        assertTrue(indexOf(head, "co64") > 0);
+        assertEquals(-1, indexOf(head, "stco"));
+    }
+
+    @Test
+    void rejectsFastStartInput() throws IOException {
+        byte[] original = tailMoovFile(2, "stco");
+        CapturingChannel out = new CapturingChannel(Integer.MAX_VALUE);
+        FastStartRewriter.rewrite(new BytesSource(original), out);
+        byte[] rewritten = out.bytes.toByteArray();
+
+        assertThrows(Mp4FormatException.class,
+                () -> FastStartRewriter.rewrite(new BytesSource(rewritten), new CapturingChannel(0)));
+    }
+
+    /**
+     * ftyp + mdat with numbered chunks + moov whose chunk offset table points at them
+     */
+    private static byte[] tailMoovFile(int chunks, String tableType) throws IOException {
+        byte[] ftyp = box("ftyp", "isom".getBytes(StandardCharsets.US_ASCII), new byte[]{0, 0, 2, 0});
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        long[] offsets = new long[chunks];
+        for (int i = 0; i < chunks; i++) {
+            offsets[i] = ftyp.length + 8 + (long) i * CHUNK_SIZE;
+            byte[] chunk = new byte[CHUNK_SIZE];
+            Arrays.fill(chunk, (byte) (i + 1));
+            payload.write(chunk);
+        }
+        return concat(ftyp, box("mdat", payload.toByteArray()), moov(tableType, offsets));
+    }
+
+    private static byte[] moov(String tableType, long[] offsets) {
+        ByteBuffer table = ByteBuffer.allocate(8 + offsets.length * ("co64".equals(tableType) ? 8 : 4));
+        table.putInt(0).putInt(offsets.length);
+        for (long offset : offsets) {
+            if ("co64".equals(tableType)) {
+                table.putLong(offset);
+            } else {
+                table.putInt((int) offset);
+            }
+        }
+
+        byte[] mvhd = box("mvhd", ByteBuffer.allocate(100).putInt(0).putInt(0).putInt(0).putInt(1000).putInt(5000).array());
+        byte[] hdlr = box("hdlr", ByteBuffer.allocate(25).putInt(0).putInt(0).put(ascii("vide")).array());
+        byte[] mdhd = box("mdhd", ByteBuffer.allocate(24).putInt(0).putInt(0).putInt(0).putInt(30).putInt(150).array());
+        byte[] stbl = box("stbl", box(tableType, table.array()));
+        byte[] trak = box("trak", box("mdia", mdhd, hdlr, box("minf", stbl)));
+        return box("moov", mvhd, trak, box("udta", new byte[12]));
+    }
+
+    /**
+     * Chunk offsets of the first track, read through the parser's box walker
+     */
+    private static List<Long> chunkOffsets(byte[] file) throws IOException {
+        Mp4Movie movie = Mp4Parser.parse(new BytesSource(file));
+        int bodyStart = (int) movie.getMoovOffset() + 8;
+        ByteBuffer moov = ByteBuffer.wrap(file, bodyStart, (int) movie.getMoovSize() - 8).slice();
+        List<Long> offsets = new ArrayList<>();
+        Mp4Parser.forEachChild(moov, (type, trak) -> {
+            if ("trak".equals(type)) {
+                Mp4Parser.forEachChild(trak, (t1, mdia) -> Mp4Parser.forEachChild(mdia, (t2, minf) -> {
+                    if ("minf".equals(t2)) {
+                        Mp4Parser.forEachChild(minf, (t3, stbl) -> Mp4Parser.forEachChild(stbl, (t4, table) -> {
+                            Mp4Parser.fullBoxVersion(table);
+                            int count = table.getInt();
+                            for (int i = 0; i < count; i++) {
+                                offsets.add("co64".equals(t4) ? table.getLong() : table.getInt() & 0xFFFFFFFFL);
+                            }
+                        }));
+                    }
+                }));
+            }
+        });
+        return offsets;
+    }
+
+    private static byte[] slice(byte[] bytes, long offset, int length) {
+        byte[] slice = new byte[length];
+        System.arraycopy(bytes, (int) offset, slice, 0, length);
+        return slice;
+    }
+
+    private static int indexOf(byte[] bytes, String fourcc) {
+        byte[] needle = ascii(fourcc);
+        outer:
+        for (int i = 0; i + needle.length <= bytes.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (bytes[i + j] != needle[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static byte[] box(String type, byte[]... parts) {
+        byte[] body = concat(parts);
+        return ByteBuffer.allocate(8 + body.length).putInt(8 + body.length).put(ascii(type)).put(body).array();
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.writeBytes(part);
+        }
+        return out.toByteArray();
+    }
+
+    private static class BytesSource implements SeekableSource {
+
+        private final byte[] bytes;
+
+        BytesSource(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public long size() {
+            return bytes.length;
+        }
+
+        @Override
+        public ByteBuffer read(long position, int length) {
+            int available = (int) Math.max(0, Math.min(length, bytes.length - position));
+            return ByteBuffer.wrap(bytes, (int) position, available).slice();
+        }
+    }
+
+    /**
+     * head + payloadSize zero bytes + tail, without allocating the payload
+     */
+    private static class VirtualSource implements SeekableSource {
+
+        private final byte[] head;
+        private final long payloadSize;
+        private final byte[] tail;
+
+        VirtualSource(byte[] head, long payloadSize, byte[] tail) {
+            this.head = head;
+            this.payloadSize = payloadSize;
+            this.tail = tail;
+        }
+
+        @Override
+        public long size() {
+            return head.length + payloadSize + tail.length;
+        }
+
+        @Override
+        public ByteBuffer read(long position, int length) {
+            int available = (int) Math.max(0, Math.min(length, size() - position));
+            ByteBuffer buffer = ByteBuffer.allocate(available);
+            long tailStart = head.length + payloadSize;
+            for (int i = 0; i < available; i++) {
+                long p = position + i;
+                buffer.put(p < head.length ? head[(int) p] : p >= tailStart ? tail[(int) (p - tailStart)] : 0);
+            }
+            return buffer.flip();
+        }
+
+        @Override
+        public void transferTo(long position, long length, WritableByteChannel target) throws IOException {
+            long end = position + length;
+            long tailStart = head.length + payloadSize;
+            if (position < head.length) {
+                int count = (int) (Math.min(end, head.length) - position);
+                target.write(ByteBuffer.wrap(head, (int) position, count));
+                position += count;
+            }
+            // The zero payload is skipped rather than materialized; it lies past the captured head
+            position = Math.max(position, Math.min(end, tailStart));
+            if (position < end) {
+                target.write(ByteBuffer.wrap(tail, (int) (position - tailStart), (int) (end - position)));
+            }
+        }
+    }
+
+    /**
+     * Keeps the first {@code limit} bytes written and counts the rest
+     */
+    private static class CapturingChannel implements WritableByteChannel {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final int limit;
+
+        CapturingChannel(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            int length = src.remaining();
+            int keep = Math.min(length, limit - bytes.size());
+            if (keep > 0) {
+                byte[] kept = new byte[keep];
+                src.get(kept);
+                bytes.writeBytes(kept);
+            }
+            src.position(src.limit());
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.preffy.videoflow.media;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HlsPackagerTest {
+
+    private static final int VIDEO_SAMPLES = 90;
+    private static final int VIDEO_PER_CHUNK = 10;
+    private static final int AUDIO_SAMPLES = 144;
+    private static final int AUDIO_PER_CHUNK = 16;
+
+    @Test
+    void segmentsAtKeyframesAndKeepsSampleData() throws IOException {
+        byte[] file = syntheticMovie();
+        Map<String, byte[]> objects = new LinkedHashMap<>();
+
+        int segments = HlsPackager.packageHls(new BytesSource(file), 1.0,
+                (name, content, contentType) -> objects.put(name, content));
+
+        assertEquals(3, segments);
+        assertEquals(List.of("init.mp4", "seg_00001.m4s", "seg_00002.m4s", "seg_00003.m4s", "index.m3u8"),
+                new ArrayList<>(objects.keySet()));
+
+        String playlist = new String(objects.get(HlsPackager.PLAYLIST), StandardCharsets.UTF_8);
+        assertTrue(playlist.contains("#EXT-X-MAP:URI=\"init.mp4\""), playlist);
+        assertTrue(playlist.contains("#EXT-X-TARGETDURATION:1\n"), playlist);
+        assertEquals(3, playlist.split("#EXTINF:1.000000,").length - 1, playlist);
+        assertTrue(playlist.endsWith("#EXT-X-ENDLIST\n"), playlist);
+
+        // The init segment describes both tracks and declares fragments
+        Mp4Movie init = Mp4Parser.parse(new BytesSource(objects.get(HlsPackager.INIT_SEGMENT)));
+        assertTrue(init.isFragmented());
+        assertEquals(2, init.getTracks().size());
+        assertEquals("avc1", init.getVideoTrack().orElseThrow().getCodec());
+
+        int[] videoStarts = {0, 30, 60};
+        int[] audioStarts = {0, 50, 100};
+        int[] audioEnds = {50, 100, AUDIO_SAMPLES};
+        for (int segment = 0; segment < 3; segment++) {
+            byte[] bytes = objects.get(String.format("seg_%05d.m4s", segment + 1));
+            List<Run> runs = runs(bytes);
+            assertEquals(2, runs.size());
+
+            Run video = runs.get(0);
+            assertEquals(1, video.trackId);
+            assertEquals(videoStarts[segment], video.baseDecodeTime);
+            assertEquals(30, video.sizes.size());
+            assertEquals(0x02000000, (int) video.flags.get(0));
+            assertEquals(0x01010000, (int) video.flags.get(1));
+            assertSamples(bytes, video, videoStarts[segment], true);
+
+            Run audio = runs.get(1);
+            assertEquals(2, audio.trackId);
+            assertEquals(audioStarts[segment] * 20L, audio.baseDecodeTime);
+            assertEquals(audioEnds[segment] - audioStarts[segment], audio.sizes.size());
+            assertSamples(bytes, audio, audioStarts[segment], false);
+        }
+    }
+
+    @Test
+    void segmentsOnlyStartAtSyncSamples() throws IOException {
+        byte[] file = syntheticMovie();
+        Mp4Movie movie = Mp4Parser.parse(new BytesSource(file));
+        Mp4SampleTable video = Mp4Parser.readSampleTables(new BytesSource(file), movie).get(0);
+
+        // Keyframes every second: a 1.5 s target has to wait for the next one
+        assertEquals(List.of(0, 60), Arrays.stream(HlsPackager.segmentBoundaries(video, 1.5)).boxed().toList());
+        assertEquals(List.of(0, 30, 60), Arrays.stream(HlsPackager.segmentBoundaries(video, 0.1)).boxed().toList());
+    }
+
+    @Test
+    void rejectsNonMp4Input() {
+        byte[] webm = {0x1A, 0x45, (byte) 0xDF, (byte) 0xA3, 0, 0, 0, 0, 0, 0, 0, 0};
+        assertThrows(Mp4FormatException.class,
+                () -> HlsPackager.packageHls(new BytesSource(webm), 6, (name, content, contentType) -> { }));
+    }
+
+    static void assertSamples(byte[] segment, Run run, int firstSample, boolean video) {
+        int position = run.dataOffset;
+        for (int i = 0; i < run.sizes.size(); i++) {
+            int size = run.sizes.get(i);
+            byte expected = sampleByte(firstSample + i, video);
+            assertEquals(sampleSize(firstSample + i, video), size);
+            assertEquals(expected, segment[position]);
+            assertEquals(expected, segment[position + size - 1]);
+            position += size;
+        }
+    }
+
+    record Run(int trackId, long baseDecodeTime, int dataOffset, List<Integer> sizes, List<Integer> flags) {
+    }
+
+    /**
+     * Decode the traf boxes of a media segment
+     */
+    static List<Run> runs(byte[] segment) throws IOException {
+        List<Run> runs = new ArrayList<>();
+        ByteBuffer file = ByteBuffer.wrap(segment);
+        Mp4Parser.forEachChild(file, (type, moof) -> {
+            if (!"moof".equals(type)) {
+                return;
+            }
+            Mp4Parser.forEachChild(moof, (moofType, traf) -> {
+                if (!"traf".equals(moofType)) {
+                    return;
+                }
+                int[] trackId = new int[1];
+                long[] baseDecodeTime = new long[1];
+                Mp4Parser.forEachChild(traf, (trafType, body) -> {
+                    switch (trafType) {
+                        case "tfhd" -> {
+                            Mp4Parser.fullBoxVersion(body);
+                            trackId[0] = body.getInt();
+                        }
+                        case "tfdt" -> {
+                            Mp4Parser.fullBoxVersion(body);
+                            baseDecodeTime[0] = body.getLong();
+                        }
+                        case "trun" -> {
+                            int flags = body.getInt() & 0xFFFFFF;
+                            int count = body.getInt();
+                            int dataOffset = body.getInt();
+                            List<Integer> sizes = new ArrayList<>();
+                            List<Integer> sampleFlags = new ArrayList<>();
+                            for (int i = 0; i < count; i++) {
+                                body.getInt();
+                                sizes.add(body.getInt());
+                                sampleFlags.add(body.getInt());
+                                if ((flags & 0x800) != 0) {
+                                    body.getInt();
+                                }
+                            }
+                            runs.add(new Run(trackId[0], baseDecodeTime[0], dataOffset, sizes, sampleFlags));
+                        }
+                        default -> {
+                        }
+                    }
+                });
+            });
+        });
+        return runs;
+    }
+
+    /**
+     * ftyp + mdat of interleaved chunks + moov. Video: 30 fps, 3 s, keyframe
+     * every 30 samples. Audio: 20 ms samples, 2.88 s.
+     */
+    static byte[] syntheticMovie() {
+        byte[] ftyp = box("ftyp", ascii("isom"), new byte[]{0, 0, 2, 0});
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        int mdatStart = ftyp.length + 8;
+        long[] videoChunks = new long[VIDEO_SAMPLES / VIDEO_PER_CHUNK];
+        long[] audioChunks = new long[AUDIO_SAMPLES / AUDIO_PER_CHUNK];
+        for (int chunk = 0; chunk < videoChunks.length; chunk++) {
+            videoChunks[chunk] = mdatStart + payload.size();
+            for (int i = chunk * VIDEO_PER_CHUNK; i < (chunk + 1) * VIDEO_PER_CHUNK; i++) {
+                payload.writeBytes(sample(i, true));
+            }
+            audioChunks[chunk] = mdatStart + payload.size();
+            for (int i = chunk * AUDIO_PER_CHUNK; i < (chunk + 1) * AUDIO_PER_CHUNK; i++) {
+                payload.writeBytes(sample(i, false));
+            }
+        }
+
+        int[] videoSizes = new int[VIDEO_SAMPLES];
+        for (int i = 0; i < VIDEO_SAMPLES; i++) {
+            videoSizes[i] = sampleSize(i, true);
+        }
+        int[] audioSizes = new int[AUDIO_SAMPLES];
+        for (int i = 0; i < AUDIO_SAMPLES; i++) {
+            audioSizes[i] = sampleSize(i, false);
+        }
+
+        byte[] mvhd = box("mvhd", ByteBuffer.allocate(100).putInt(0).putInt(0).putInt(0).putInt(1000).putInt(3000).array());
+        byte[] moov = box("moov", mvhd,
+                trak(1, "vide", "avc1", 30, videoSizes, VIDEO_PER_CHUNK, videoChunks, 1, new int[]{1, 31, 61}),
+                trak(2, "soun", "mp4a", 1000, audioSizes, AUDIO_PER_CHUNK, audioChunks, 20, null));
+        return concat(ftyp, box("mdat", payload.toByteArray()), moov);
+    }
+
+    private static byte[] trak(int trackId, String handler, String codec, int timescale, int[] sizes,
+                               int samplesPerChunk, long[] chunkOffsets, int sampleDuration, int[] syncSamples) {
+        byte[] tkhd = box("tkhd", ByteBuffer.allocate(84).putInt(0).putInt(0).putInt(0).putInt(trackId).array());
+        byte[] mdhd = box("mdhd", ByteBuffer.allocate(24).putInt(0).putInt(0).putInt(0).putInt(timescale)
+                .putInt(sizes.length * sampleDuration).array());
+        byte[] hdlr = box("hdlr", ByteBuffer.allocate(25).putInt(0).putInt(0).put(ascii(handler)).array());
+
+        byte[] stsd = box("stsd", ByteBuffer.allocate(8).putInt(0).putInt(1).array(), box(codec, new byte[78]));
+        byte[] stts = box("stts", ByteBuffer.allocate(16).putInt(0).putInt(1).putInt(sizes.length).putInt(sampleDuration).array());
+        byte[] stsc = box("stsc", ByteBuffer.allocate(20).putInt(0).putInt(1).putInt(1).putInt(samplesPerChunk).putInt(1).array());
+        ByteBuffer stszBody = ByteBuffer.allocate(12 + sizes.length * 4).putInt(0).putInt(0).putInt(sizes.length);
+        for (int size : sizes) {
+            stszBody.putInt(size);
+        }
+        ByteBuffer stcoBody = ByteBuffer.allocate(8 + chunkOffsets.length * 4).putInt(0).putInt(chunkOffsets.length);
+        for (long offset : chunkOffsets) {
+            stcoBody.putInt((int) offset);
+        }
+        byte[] stss = new byte[0];
+        if (syncSamples != null) {
+            ByteBuffer stssBody = ByteBuffer.allocate(8 + syncSamples.length * 4).putInt(0).putInt(syncSamples.length);
+            for (int sample : syncSamples) {
+                stssBody.putInt(sample);
+            }
+            stss = box("stss", stssBody.array());
+        }
+
+        byte[] stbl = box("stbl", stsd, stts, stss, stsc, box("stsz", stszBody.array()), box("stco", stcoBody.array()));
+        return box("trak", tkhd, box("mdia", mdhd, hdlr, box("minf", stbl)));
+    }
+
+    private static int sampleSize(int index, boolean video) {
+        return video ? 100 + index : 10 + index % 5;
+    }
+
+    private static byte sampleByte(int index, boolean video) {
+        return (byte) (video ? index & 0x7F : 0x80 | (index & 0x7F));
+    }
+
+    private static byte[] sample(int index, boolean video) {
+        byte[] sample = new byte[sampleSize(index, video)];
+        Arrays.fill(sample, sampleByte(index, video));
+        return sample;
+    }
+
+    private static byte[] box(String type, byte[]... parts) {
+        byte[] body = concat(parts);
+        return ByteBuffer.allocate(8 + body.length).putInt(8 + body.length).put(ascii(type)).put(body).array();
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.writeBytes(part);
+        }
+        return out.toByteArray();
+    }
+
+    static class BytesSource implements SeekableSource {
+
+        private final byte[] bytes;
+
+        BytesSource(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public long size() {
+            return bytes.length;
+        }
+
+        @Override
+        public ByteBuffer read(long position, int length) {
+            int available = (int) Math.max(0, Math.min(length, bytes.length - position));
+            return ByteBuffer.wrap(bytes, (int) position, available).slice();
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.preffy.videoflow.media;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Mp4ParserTest {
+
+    private static final long MIB = 1024 * 1024;
+
+    @Test
+    void extractsMovieAndTrackMetadata() throws IOException {
+        CountingSource source = new CountingSource(syntheticFile(MIB, false));
+
+        Mp4Movie movie = Mp4Parser.parse(source);
+
+        assertEquals(60.0, movie.getDurationSeconds(), 0.001);
+        assertFalse(movie.isFastStart());
+        assertEquals(2, movie.getTracks().size());
+
+        Mp4Track video = movie.getVideoTrack().orElseThrow();
+        assertEquals(1280, video.getWidth());
+        assertEquals(720, video.getHeight());
+        assertEquals("avc1", video.getCodec());
+        assertEquals(30.0, video.getSampleRate(), 0.001);
+
+        Mp4Track audio = movie.getAudioTrack().orElseThrow();
+        assertEquals("mp4a", audio.getCodec());
+        assertEquals(Math.round(source.size() * 8 / 60.0), movie.getBitrate());
+    }
+
+    @Test
+    void detectsFastStartLayout() throws IOException {
+        Mp4Movie movie = Mp4Parser.parse(new CountingSource(syntheticFile(MIB, true)));
+
+        assertTrue(movie.isFastStart());
+        assertEquals(60.0, movie.getDurationSeconds(), 0.001);
+    }
+
+    /**
+     * Parse cost must not grow with the payload: a 1 MiB and an 8 GiB file (64-bit
+     * mdat size) are parsed with the same number of reads and bytes read.
+     */
+    @Test
+    void parseCostIsIndependentOfFileSize() throws IOException {
+        CountingSource small = new CountingSource(syntheticFile(MIB, false));
+        CountingSource large = new CountingSource(syntheticFile(8192 * MIB, false));
+
+        Mp4Parser.parse(small);
+        Mp4Movie largeMovie = Mp4Parser.parse(large);
+
+        assertEquals(small.reads, large.reads);
+        assertEquals(small.bytesRead, large.bytesRead);
+        assertTrue(large.bytesRead < 4096, "read " + large.bytesRead + " bytes");
+        assertEquals(8192 * MIB, largeMovie.getMdatSize() - 16);
+    }
+
+    @Test
+    void rejectsNonMp4Input() {
+        byte[] webm = {0x1A, 0x45, (byte) 0xDF, (byte) 0xA3, 0, 0, 0, 0, 0, 0, 0, 0};
+        assertThrows(Mp4FormatException.class, () -> Mp4Parser.parse(new CountingSource(new SyntheticFile(webm, 0, new byte[0]))));
+    }
+
+    /**
+     * ftyp + mdat (payload never materialized) + moov, or moov before mdat
+     */
+    private static SyntheticFile syntheticFile(long payloadSize, boolean moovFirst) throws IOException {
+        byte[] ftyp = box("ftyp", concat("isom".getBytes(StandardCharsets.US_ASCII), new byte[]{0, 0, 2, 0},
+                "isomavc1".getBytes(StandardCharsets.US_ASCII)));
+        byte[] moov = box("moov", concat(
+                mvhd(1000, 60_000),
+                trak(1, "vide", "avc1", 1280, 720, 30_000, 60L * 30_000, 1800),
+                trak(2, "soun", "mp4a", 0, 0, 48_000, 60L * 48_000, 2813)));
+        // 64-bit size so payloads above 4 GiB are representable
+        ByteBuffer mdatHeader = ByteBuffer.allocate(16).putInt(1).put("mdat".getBytes(StandardCharsets.US_ASCII))
+                .putLong(16 + payloadSize);
+        byte[] header = mdatHeader.array();
+        return moovFirst
+                ? new SyntheticFile(concat(ftyp, moov, header), payloadSize, new byte[0])
+                : new SyntheticFile(concat(ftyp, header), payloadSize, moov);
+    }
+
+    private static byte[] mvhd(int timescale, int duration) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeInt(timescale);
+        out.writeInt(duration);
+        out.write(new byte[80]);
+        return box("mvhd", bytes.toByteArray());
+    }
+
+    private static byte[] trak(int trackId, String handler, String codec, int width, int height,
+                               int timescale, long duration, int sampleCount) throws IOException {
+        ByteArrayOutputStream tkhd = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(tkhd);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeInt(trackId);
+        out.writeInt(0);
+        out.writeInt((int) duration);
+        out.write(new byte[52]);
+        out.writeInt(width << 16);
+        out.writeInt(height << 16);
+
+        ByteArrayOutputStream mdhd = new ByteArrayOutputStream();
+        out = new DataOutputStream(mdhd);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeInt(timescale);
+        out.writeInt((int) duration);
+        out.writeInt(0);
+
+        ByteArrayOutputStream hdlr = new ByteArrayOutputStream();
+        out = new DataOutputStream(hdlr);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeBytes(handler);
+        out.write(new byte[13]);
+
+        ByteArrayOutputStream stsd = new ByteArrayOutputStream();
+        out = new DataOutputStream(stsd);
+        out.writeInt(0);
+        out.writeInt(1);
+        out.write(box(codec, new byte[78]));
+
+        ByteArrayOutputStream stsz = new ByteArrayOutputStream();
+        out = new DataOutputStream(stsz);
+        out.writeInt(0);
+        out.writeInt(1000);
+        out.writeInt(sampleCount);
+
+        byte[] stbl = box("stbl", concat(box("stsd", stsd.toByteArray()), box("stsz", stsz.toByteArray())));
+        byte[] mdia = box("mdia", concat(box("mdhd", mdhd.toByteArray()), box("hdlr", hdlr.toByteArray()),
+                box("minf", stbl)));
+        return box("trak", concat(box("tkhd", tkhd.toByteArray()), mdia));
+    }
+
+    private static byte[] box(String type, byte[] body) {
+        return ByteBuffer.allocate(8 + body.length).putInt(8 + body.length)
+                .put(type.getBytes(StandardCharsets.US_ASCII)).put(body).array();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.writeBytes(part);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * A file of head + payloadSize zero bytes + tail, without allocating the payload
+     */
+    private record SyntheticFile(byte[] head, long payloadSize, byte[] tail) {
+
+        long size() {
+            return head.length + payloadSize + tail.length;
+        }
+
+        byte byteAt(long position) {
+            if (position < head.length) {
+                return head[(int) position];
+            }
+            long tailStart = head.length + payloadSize;
+            return position >= tailStart ? tail[(int) (position - tailStart)] : 0;
+        }
+    }
+
+    private static class CountingSource implements SeekableSource {
+
+        private final SyntheticFile file;
+        private int reads;
+        private long bytesRead;
+
+        CountingSource(SyntheticFile file) {
+            this.file = file;
+        }
+
+        @Override
+        public long size() {
+            return file.size();
+        }
+
+        @Override
+        public ByteBuffer read(long position, int length) {
+            int available = (int) Math.min(length, file.size() - position);
+            ByteBuffer buffer = ByteBuffer.allocate(available);
+            for (int i = 0; i < available; i++) {
+                buffer.put(file.byteAt(position + i));
+            }
+            reads++;
+            bytesRead += available;
+            return buffer.flip();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.preffy.videoflow.media;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Mp4WindowsTest {
+
+    @Test
+    void plansKeyframeAlignedWindows() throws IOException {
+        byte[] file = HlsPackagerTest.syntheticMovie();
+
+        List<Mp4Windows.Window> windows = Mp4Windows.plan(new HlsPackagerTest.BytesSource(file), 4, 1.0);
+        assertEquals(List.of(
+                new Mp4Windows.Window(0, 30, 0.0, 1.0),
+                new Mp4Windows.Window(30, 60, 1.0, 2.0),
+                new Mp4Windows.Window(60, 90, 2.0, 3.0)), windows);
+
+        // Too short to split into windows of at least two seconds
+        assertEquals(1, Mp4Windows.plan(new HlsPackagerTest.BytesSource(file), 4, 2.0).size());
+    }
+
+    @Test
+    void writesWindowAsStandaloneFragmentedFile() throws IOException {
+        byte[] file = HlsPackagerTest.syntheticMovie();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long written = Mp4Windows.write(new HlsPackagerTest.BytesSource(file), 30, 60, 60,
+                Channels.newChannel(out));
+        byte[] window = out.toByteArray();
+        assertEquals((long) window.length, written);
+
+        Mp4Movie movie = Mp4Parser.parse(new HlsPackagerTest.BytesSource(window));
+        assertTrue(movie.isFragmented());
+        assertEquals(2, movie.getTracks().size());
+
+        // One fragment after the init segment: frames 30-59 and the audio decoded alongside them
+        byte[] fragment = Arrays.copyOfRange(window, (int) (movie.getMoovOffset() + movie.getMoovSize()), window.length);
+        List<HlsPackagerTest.Run> runs = HlsPackagerTest.runs(fragment);
+        assertEquals(2, runs.size());
+        assertEquals(30L, runs.get(0).baseDecodeTime());
+        assertEquals(30, runs.get(0).sizes().size());
+        HlsPackagerTest.assertSamples(fragment, runs.get(0), 30, true);
+        assertEquals(50 * 20L, runs.get(1).baseDecodeTime());
+        assertEquals(50, runs.get(1).sizes().size());
+        HlsPackagerTest.assertSamples(fragment, runs.get(1), 50, false);
+    }
+
+    @Test
+    void rejectsWindowsNotStartingAtKeyframes() {
+        byte[] file = HlsPackagerTest.syntheticMovie();
+        assertThrows(Mp4FormatException.class, () -> Mp4Windows.write(new HlsPackagerTest.BytesSource(file), 10, 60, 60,
+                Channels.newChannel(new ByteArrayOutputStream())));
+        assertThrows(Mp4FormatException.class, () -> Mp4Windows.write(new HlsPackagerTest.BytesSource(file), 0, 45, 60,
+                Channels.newChannel(new ByteArrayOutputStream())));
+    }
+}
@@ -0,0 +1,79 @@
+package com.preffy.videoflow.media;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SeekIndexTest {
+
+    @Test
+    void indexesSyncSamplesByPresentationTime() throws Mp4FormatException {
+        SeekIndex index = SeekIndex.build(table());
+
+        assertEquals(3, index.size());
+        assertEquals(1.0 / 30, index.getTimeSeconds(0), 1e-9);
+        assertEquals(31.0 / 30, index.getTimeSeconds(1), 1e-9);
+        assertEquals((long) 1000, index.getOffset(0));
+        assertEquals((long) 1000 + 30 * 100, index.getOffset(1));
+    }
+
+    @Test
+    void findsKeyframeAtOrBeforePosition() throws Mp4FormatException {
+        SeekIndex index = SeekIndex.build(table());
+
+        assertEquals(0, index.entryAtOrBefore(0));
+        assertEquals(0, index.entryAtOrBefore(1.0));
+        assertEquals(1, index.entryAtOrBefore(1.04));
+        assertEquals(1, index.entryAtOrBefore(2.0));
+        assertEquals(2, index.entryAtOrBefore(60));
+    }
+
+    @Test
+    void roundTripsThroughBinaryForm() throws Mp4FormatException {
+        SeekIndex index = SeekIndex.build(table());
+        byte[] bytes = index.toBytes();
+        assertEquals(16 + 3 * 16, bytes.length);
+
+        SeekIndex read = SeekIndex.fromBytes(bytes);
+        assertEquals(index.getTimescale(), read.getTimescale());
+        assertEquals(index.size(), read.size());
+        for (int i = 0; i < index.size(); i++) {
+            assertEquals(index.getTimeSeconds(i), read.getTimeSeconds(i), 0);
+            assertEquals(index.getOffset(i), read.getOffset(i));
+        }
+
+        assertThrows(Mp4FormatException.class, () -> SeekIndex.fromBytes(new byte[]{1, 2, 3}));
+        byte[] truncated = ByteBuffer.allocate(bytes.length - 8).put(bytes, 0, bytes.length - 8).array();
+        assertThrows(Mp4FormatException.class, () -> SeekIndex.fromBytes(truncated));
+    }
+
+    /**
+     * 90 frames at 30 fps, 100 bytes each from offset 1000, keyframes every 30
+     * frames, every frame presented one frame after it is decoded
+     */
+    private static Mp4SampleTable table() {
+        Mp4Track track = new Mp4Track();
+        track.setHandlerType(Mp4Track.HANDLER_VIDEO);
+        track.setTimescale(30);
+        int count = 90;
+        long[] offsets = new long[count];
+        int[] sizes = new int[count];
+        long[] decodeTimes = new long[count];
+        int[] durations = new int[count];
+        int[] compositionOffsets = new int[count];
+        boolean[] sync = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            offsets[i] = 1000 + i * 100L;
+            sizes[i] = 100;
+            decodeTimes[i] = i;
+            durations[i] = 1;
+            compositionOffsets[i] = 1;
+            sync[i] = i % 30 == 0;
+        }
+        return new Mp4SampleTable(track, ByteBuffer.allocate(0), offsets, sizes, decodeTimes, durations,
+                compositionOffsets, sync);
+    }
+}
@@ -0,0 +1,132 @@
+package com.preffy.videoflow.security;
+
+import com.preffy.videoflow.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.security.Principal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * STOMP authentication and authorization: CONNECT needs a valid bearer token
+ * and names the session after the user id, subscriptions are limited to the
+ * user's own queues, and clients cannot send
+ */
+class JwtChannelInterceptorTest {
+
+    private static final String SECRET = "a-test-secret-that-is-long-enough-for-hs512-signing-of-tokens-0123456789";
+
+    private final JwtTokenProvider tokenProvider = new JwtTokenProvider(SECRET, 60_000);
+    private final UserService userService = mock(UserService.class);
+    private final MessageChannel channel = mock(MessageChannel.class);
+    private final JwtChannelInterceptor interceptor = new JwtChannelInterceptor();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(interceptor, "tokenProvider", tokenProvider);
+        ReflectionTestUtils.setField(interceptor, "userService", userService);
+        when(userService.loadUserById(42L)).thenReturn(new UserPrincipal(42L, "alice", "alice@example.com",
+                "password", List.of(new SimpleGrantedAuthority("ROLE_USER"))));
+    }
+
+    @Test
+    void connectWithAValidTokenAuthenticatesTheSessionAsTheUserId() {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        accessor.addNativeHeader("Authorization", "Bearer " + token(42L));
+        accessor.setLeaveMutable(true);
+        Message<byte[]> connect = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+
+        Message<?> result = interceptor.preSend(connect, channel);
+
+        Principal user = StompHeaderAccessor.wrap(result).getUser();
+        assertEquals("42", user.getName());
+    }
+
+    @Test
+    void connectWithoutAValidTokenIsRefused() {
+        StompHeaderAccessor missing = StompHeaderAccessor.create(StompCommand.CONNECT);
+        assertThrows(BadCredentialsException.class, () -> interceptor.preSend(message(missing), channel));
+
+        StompHeaderAccessor forged = StompHeaderAccessor.create(StompCommand.CONNECT);
+        forged.addNativeHeader("Authorization", "Bearer "
+                + new JwtTokenProvider(SECRET.replace('a', 'b'), 60_000).generateToken(authentication(42L)));
+        assertThrows(BadCredentialsException.class, () -> interceptor.preSend(message(forged), channel));
+
+        StompHeaderAccessor notBearer = StompHeaderAccessor.create(StompCommand.CONNECT);
+        notBearer.addNativeHeader("Authorization", token(42L));
+        assertThrows(BadCredentialsException.class, () -> interceptor.preSend(message(notBearer), channel));
+    }
+
+    @Test
+    void authenticatedSessionMaySubscribeToItsUserQueues() {
+        Message<byte[]> subscribe = subscribe("/user/queue/projects", user("42"));
+
+        assertSame(subscribe, interceptor.preSend(subscribe, channel));
+    }
+
+    @Test
+    void subscriptionsOutsideTheUserQueuesAreDenied() {
+        for (String destination : new String[] {"/queue/projects", "/queue/projects-user42", "/topic/all",
+                "/user/42/queue/projects"}) {
+            Message<byte[]> subscribe = subscribe(destination, user("42"));
+            assertThrows(AccessDeniedException.class, () -> interceptor.preSend(subscribe, channel), destination);
+        }
+    }
+
+    @Test
+    void anonymousSessionMayNotSubscribe() {
+        Message<byte[]> subscribe = subscribe("/user/queue/projects", null);
+
+        assertThrows(AccessDeniedException.class, () -> interceptor.preSend(subscribe, channel));
+    }
+
+    @Test
+    void clientsCannotSend() {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SEND);
+        accessor.setDestination("/queue/projects-user43");
+        accessor.setUser(user("42"));
+
+        assertThrows(AccessDeniedException.class, () -> interceptor.preSend(message(accessor), channel));
+    }
+
+    private Message<byte[]> subscribe(String destination, Principal user) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+        accessor.setDestination(destination);
+        accessor.setSubscriptionId("sub-0");
+        accessor.setUser(user);
+        return message(accessor);
+    }
+
+    private static Message<byte[]> message(StompHeaderAccessor accessor) {
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private String token(Long userId) {
+        return tokenProvider.generateToken(authentication(userId));
+    }
+
+    private static UsernamePasswordAuthenticationToken authentication(Long userId) {
+        UserPrincipal principal = new UserPrincipal(userId, "alice", "alice@example.com", "password", List.of());
+        return new UsernamePasswordAuthenticationToken(principal, null, List.of());
+    }
+
+    private static Principal user(String name) {
+        return new UsernamePasswordAuthenticationToken(name, null, List.of());
+    }
+}
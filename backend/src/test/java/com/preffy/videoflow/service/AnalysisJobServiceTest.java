@@ -0,0 +1,207 @@
+package com.preffy.videoflow.service;
+
+import com.preffy.videoflow.entity.AnalysisJob;
+import com.preffy.videoflow.entity.AnalysisJob.JobStatus;
+import com.preffy.videoflow.repository.AnalysisJobRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Claims, leases, retries, dead-lettering and releases of the job queue
+ * against the H2 test database
+ */
+@DataJpaTest
+@Import({AnalysisJobService.class, AnalysisJobServiceTest.Metrics.class})
+@TestPropertySource(properties = {"app.jobs.max-attempts=2", "app.jobs.lease-seconds=60",
+        "app.jobs.backoff-base-seconds=10"})
+class AnalysisJobServiceTest {
+
+    @TestConfiguration
+    static class Metrics {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @Autowired
+    private AnalysisJobService analysisJobService;
+
+    @Autowired
+    private AnalysisJobRepository analysisJobRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Test
+    void claimLeasesDueJobsToThisInstance() {
+        AnalysisJob first = enqueue("1");
+        AnalysisJob second = enqueue("2");
+
+        List<AnalysisJob> claimed = analysisJobService.claim(1);
+
+        assertEquals(1, claimed.size());
+        AnalysisJob job = claimed.get(0);
+        assertEquals(first.getId(), job.getId());
+        assertEquals(JobStatus.RUNNING, job.getStatus());
+        assertEquals(1, job.getAttempts());
+        assertEquals(analysisJobService.getInstanceId(), job.getLeaseOwner());
+        assertTrue(job.getLeaseExpiresAt().isAfter(LocalDateTime.now().plusSeconds(50)));
+        assertEquals(List.of(second.getId()), ids(analysisJobService.claim(5)));
+        assertTrue(analysisJobService.claim(5).isEmpty());
+    }
+
+    @Test
+    void jobsWithTheSameKeyDoNotRunAtOnce() {
+        AnalysisJob running = enqueue("1", "project:1:video:1");
+        analysisJobService.claim(1);
+        assertEquals(running.getId(), enqueue("1", "project:1:video:1").getId());
+
+        AnalysisJob bodyLanguage = analysisJobService.enqueue(AnalysisJob.JobType.BODY_LANGUAGE, "1",
+                "/videos/a.mp4", "project:1:video:1");
+
+        assertTrue(analysisJobService.claim(5).isEmpty());
+        assertTrue(job(bodyLanguage).getRunAfter().isAfter(LocalDateTime.now()));
+    }
+
+    @Test
+    void failureIsRetriedAfterBackoff() {
+        AnalysisJob job = enqueue("1");
+        analysisJobService.claim(1);
+
+        assertEquals(Optional.of(JobStatus.PENDING), analysisJobService.fail(job.getId(), "IOException: reset"));
+
+        AnalysisJob failed = job(job);
+        assertEquals(1, failed.getAttempts());
+        assertNull(failed.getLeaseOwner());
+        assertEquals("IOException: reset", failed.getLastError());
+        assertTrue(failed.getRunAfter().isAfter(LocalDateTime.now().plusSeconds(4)));
+        assertTrue(analysisJobService.claim(5).isEmpty());
+
+        failed.setRunAfter(LocalDateTime.now().minusSeconds(1));
+        assertEquals(List.of(job.getId()), ids(analysisJobService.claim(5)));
+        assertEquals(2, job(job).getAttempts());
+    }
+
+    @Test
+    void failureOnTheLastAttemptIsDead() {
+        AnalysisJob job = enqueue("1");
+        analysisJobService.claim(1);
+        analysisJobService.fail(job.getId(), "first");
+        job(job).setRunAfter(LocalDateTime.now().minusSeconds(1));
+        analysisJobService.claim(1);
+
+        assertEquals(Optional.of(JobStatus.DEAD), analysisJobService.fail(job.getId(), "second"));
+        assertEquals(JobStatus.DEAD, job(job).getStatus());
+        assertTrue(analysisJobService.claim(5).isEmpty());
+    }
+
+    @Test
+    void expiredLeaseIsReclaimedAsAnAttempt() {
+        AnalysisJob job = enqueue("1");
+        analysisJobService.claim(1);
+        job(job).setLeaseExpiresAt(LocalDateTime.now().minusSeconds(1));
+
+        List<AnalysisJob> reclaimed = analysisJobService.claim(5);
+
+        assertEquals(List.of(job.getId()), ids(reclaimed));
+        assertEquals(JobStatus.RUNNING, reclaimed.get(0).getStatus());
+        assertEquals(2, reclaimed.get(0).getAttempts());
+    }
+
+    @Test
+    void expiredLeaseOnTheLastAttemptIsDead() {
+        AnalysisJob job = enqueue("1");
+        analysisJobService.claim(1);
+        job(job).setAttempts(2);
+        job(job).setLeaseExpiresAt(LocalDateTime.now().minusSeconds(1));
+
+        List<AnalysisJob> claimed = analysisJobService.claim(5);
+
+        assertEquals(JobStatus.DEAD, claimed.get(0).getStatus());
+    }
+
+    @Test
+    void releaseRequeuesWithoutCountingAnAttempt() {
+        AnalysisJob job = enqueue("1", "project:1:video:1");
+        analysisJobService.claim(1);
+
+        analysisJobService.release(List.of(job.getId()));
+
+        AnalysisJob released = job(job);
+        assertEquals(JobStatus.PENDING, released.getStatus());
+        assertEquals(0, released.getAttempts());
+        assertNull(released.getRunningKey());
+        assertEquals(List.of(job.getId()), ids(analysisJobService.claim(5)));
+    }
+
+    @Test
+    void lostLeaseFencesOutcomes() {
+        AnalysisJob job = enqueue("1");
+        analysisJobService.claim(1);
+        job(job).setLeaseOwner("other-instance");
+
+        assertFalse(analysisJobService.complete(job.getId()));
+        assertEquals(Optional.empty(), analysisJobService.fail(job.getId(), "late"));
+        analysisJobService.release(List.of(job.getId()));
+        assertEquals(JobStatus.RUNNING, job(job).getStatus());
+        assertEquals("other-instance", job(job).getLeaseOwner());
+    }
+
+    @Test
+    void heartbeatRenewsOwnLeasesOnly() {
+        AnalysisJob mine = enqueue("1");
+        AnalysisJob theirs = enqueue("2");
+        analysisJobService.claim(2);
+        job(theirs).setLeaseOwner("other-instance");
+        entityManager.flush();
+
+        assertEquals(1, analysisJobService.heartbeat(List.of(mine.getId(), theirs.getId())));
+    }
+
+    @Test
+    void completeClearsTheLease() {
+        AnalysisJob job = enqueue("1", "project:1:video:1");
+        analysisJobService.claim(1);
+
+        assertTrue(analysisJobService.complete(job.getId()));
+
+        AnalysisJob completed = job(job);
+        assertEquals(JobStatus.SUCCEEDED, completed.getStatus());
+        assertNull(completed.getLeaseOwner());
+        assertNull(completed.getRunningKey());
+    }
+
+    private AnalysisJob enqueue(String projectId) {
+        return enqueue(projectId, null);
+    }
+
+    private AnalysisJob enqueue(String projectId, String dedupeKey) {
+        return analysisJobService.enqueue(AnalysisJob.JobType.PROJECT_ANALYSIS, projectId, "1", dedupeKey);
+    }
+
+    private AnalysisJob job(AnalysisJob job) {
+        return analysisJobRepository.findById(job.getId()).orElseThrow();
+    }
+
+    private static List<Long> ids(List<AnalysisJob> jobs) {
+        return jobs.stream().map(AnalysisJob::getId).toList();
+    }
+}
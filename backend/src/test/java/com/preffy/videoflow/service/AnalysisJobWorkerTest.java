@@ -0,0 +1,85 @@
+package com.preffy.videoflow.service;
+
+import com.preffy.videoflow.entity.AnalysisJob;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Shutdown of the job worker: interrupted jobs go back to the queue without
+ * using up an attempt
+ */
+class AnalysisJobWorkerTest {
+
+    private final AnalysisJobService analysisJobService = mock(AnalysisJobService.class);
+    private final ProjectService projectService = mock(ProjectService.class);
+    private ExecutorService executor;
+    private AnalysisJobWorker worker;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(1);
+        worker = new AnalysisJobWorker();
+        ReflectionTestUtils.setField(worker, "enabled", true);
+        ReflectionTestUtils.setField(worker, "workerThreads", 1);
+        ReflectionTestUtils.setField(worker, "analysisJobService", analysisJobService);
+        ReflectionTestUtils.setField(worker, "projectService", projectService);
+        ReflectionTestUtils.setField(worker, "bodyLanguageAnalysisService", mock(BodyLanguageAnalysisService.class));
+        ReflectionTestUtils.setField(worker, "executor", executor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void stopReleasesInterruptedJobsInsteadOfFailingThem() throws Exception {
+        AnalysisJob job = new AnalysisJob(AnalysisJob.JobType.PROJECT_ANALYSIS, "1", "2", 5);
+        job.setId(7L);
+        when(analysisJobService.claim(1)).thenReturn(List.of(job));
+        CountDownLatch started = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            started.countDown();
+            try {
+                Thread.sleep(60_000);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException("Interrupted", e);
+            }
+            return null;
+        }).when(projectService).runAnalysisWorkflow(1L, 2L);
+
+        worker.poll();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        worker.stop();
+
+        verify(analysisJobService).release(List.of(7L));
+        verify(analysisJobService, never()).fail(anyLong(), anyString());
+        verify(analysisJobService, never()).complete(anyLong());
+    }
+
+    @Test
+    void stoppedWorkerClaimsNothing() throws Exception {
+        worker.stop();
+        worker.poll();
+
+        verify(analysisJobService, never()).claim(anyInt());
+    }
+}
@@ -0,0 +1,126 @@
+package com.preffy.videoflow.service;
+
+import com.preffy.videoflow.dto.ProjectProgressEvent;
+import com.preffy.videoflow.model.Project;
+import com.preffy.videoflow.repository.ProjectRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.user.SimpUser;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Progress events go to the project's owner on their user queue, only while
+ * the owner is connected, and never fail the caller
+ */
+class AnalysisProgressPublisherTest {
+
+    private final SimpMessagingTemplate messagingTemplate = mock(SimpMessagingTemplate.class);
+    private final SimpUserRegistry userRegistry = mock(SimpUserRegistry.class);
+    private final ProjectRepository projectRepository = mock(ProjectRepository.class);
+    private final AnalysisProgressPublisher publisher = new AnalysisProgressPublisher();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(publisher, "messagingTemplate", messagingTemplate);
+        ReflectionTestUtils.setField(publisher, "userRegistry", userRegistry);
+        ReflectionTestUtils.setField(publisher, "projectRepository", projectRepository);
+        when(projectRepository.findUserIdById(7L)).thenReturn(Optional.of(42L));
+    }
+
+    @Test
+    void stageEventGoesToTheProjectsOwner() {
+        connected("42");
+
+        publisher.stage(7L, "script_analysis", AnalysisProgressPublisher.FAILED);
+
+        ProjectProgressEvent event = sent("42");
+        assertEquals("7", event.getProjectId());
+        assertEquals("script_analysis", event.getStage());
+        assertEquals("failed", event.getStatus());
+        assertNull(event.getPercent());
+    }
+
+    @Test
+    void projectStatusIsPublishedByName() {
+        connected("42");
+
+        publisher.projectStatus(7L, Project.ProjectStatus.ANALYZED);
+
+        ProjectProgressEvent event = sent("42");
+        assertEquals("project", event.getStage());
+        assertEquals("ANALYZED", event.getStatus());
+    }
+
+    @Test
+    void uploadEventGoesToTheOperationsUserWithoutALookup() {
+        connected("5");
+        ProjectOperation operation = new ProjectOperation("op-1", 5L, 9L, 1000, Duration.ofSeconds(1));
+
+        publisher.upload(operation);
+
+        ProjectProgressEvent event = sent("5");
+        assertEquals("upload", event.getStage());
+        assertEquals("received", event.getStatus());
+        assertEquals(0, event.getPercent());
+        verify(projectRepository, never()).findUserIdById(anyLong());
+    }
+
+    @Test
+    void nothingIsLookedUpWhileNobodyIsConnected() {
+        when(userRegistry.getUserCount()).thenReturn(0);
+
+        publisher.stage(7L, "audio_extraction", AnalysisProgressPublisher.STARTED);
+
+        verify(projectRepository, never()).findUserIdById(anyLong());
+        verify(messagingTemplate, never()).convertAndSendToUser(anyString(), anyString(), any());
+    }
+
+    @Test
+    void eventsForAnOwnerWithoutASessionAreDropped() {
+        connected("99");
+
+        publisher.stage(7L, "audio_extraction", AnalysisProgressPublisher.STARTED);
+
+        verify(messagingTemplate, never()).convertAndSendToUser(anyString(), anyString(), any());
+    }
+
+    @Test
+    void sendFailuresDoNotReachTheCaller() {
+        connected("42");
+        doThrow(new MessagingException("channel closed"))
+                .when(messagingTemplate).convertAndSendToUser(eq("42"), anyString(), any());
+
+        publisher.stage(7L, "body_language_analysis", AnalysisProgressPublisher.COMPLETED);
+    }
+
+    private void connected(String userName) {
+        when(userRegistry.getUserCount()).thenReturn(1);
+        when(userRegistry.getUser(userName)).thenReturn(mock(SimpUser.class));
+    }
+
+    private ProjectProgressEvent sent(String userName) {
+        ArgumentCaptor<ProjectProgressEvent> event = ArgumentCaptor.forClass(ProjectProgressEvent.class);
+        verify(messagingTemplate).convertAndSendToUser(eq(userName), eq(AnalysisProgressPublisher.DESTINATION),
+                event.capture());
+        return event.getValue();
+    }
+}
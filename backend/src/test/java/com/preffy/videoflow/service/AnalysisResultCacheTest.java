@@ -0,0 +1,159 @@
+package com.preffy.videoflow.service;
+
+import com.preffy.videoflow.entity.AnalysisResultCacheEntry;
+import com.preffy.videoflow.entity.AnalysisResultCacheEntry.AnalysisType;
+import com.preffy.videoflow.repository.AnalysisResultCacheRepository;
+import com.preffy.videoflow.service.AnalysisResultCache.Key;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * Lookups, expiry and LRU eviction of the analysis result cache against the
+ * H2 test database
+ */
+@DataJpaTest
+@Import({AnalysisResultCache.class, AnalysisResultCacheTest.Metrics.class})
+@TestPropertySource(properties = {"app.analysis.cache.max-entries=2", "app.analysis.cache.ttl-hours=1"})
+class AnalysisResultCacheTest {
+
+    @TestConfiguration
+    static class Metrics {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @Autowired
+    private AnalysisResultCache analysisResultCache;
+
+    @Autowired
+    private AnalysisResultCacheRepository cacheRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        // The registry is shared by the cached test context; the cache looks its meters up on each use
+        meterRegistry.clear();
+    }
+
+    @Test
+    void cachedResultIsReturnedForTheSameKey() {
+        analysisResultCache.put(key("hash-a"), "{\"score\":1}");
+
+        assertEquals(Optional.of("{\"score\":1}"), analysisResultCache.get(key("hash-a")));
+        assertEquals(Optional.empty(), analysisResultCache.get(key("hash-b")));
+        assertEquals(1, requests("hit"));
+        assertEquals(1, requests("miss"));
+    }
+
+    @Test
+    void typeModelVersionAndParametersArePartOfTheKey() {
+        analysisResultCache.put(key("hash-a"), "result");
+
+        assertEquals(Optional.empty(), analysisResultCache.get(
+                new Key(AnalysisType.SCRIPT, "hash-a", "v1", Map.of())));
+        assertEquals(Optional.empty(), analysisResultCache.get(
+                new Key(AnalysisType.BODY_LANGUAGE, "hash-a", "v2", Map.of())));
+        assertEquals(Optional.empty(), analysisResultCache.get(
+                new Key(AnalysisType.BODY_LANGUAGE, "hash-a", "v1", Map.of("audience", "investors"))));
+    }
+
+    @Test
+    void parameterOrderDoesNotChangeTheKey() {
+        Map<String, String> ordered = new LinkedHashMap<>();
+        ordered.put("a", "1");
+        ordered.put("b", "2");
+        Map<String, String> reversed = new LinkedHashMap<>();
+        reversed.put("b", "2");
+        reversed.put("a", "1");
+
+        assertEquals(new Key(AnalysisType.SCRIPT, "h", "v1", ordered).digest(),
+                new Key(AnalysisType.SCRIPT, "h", "v1", reversed).digest());
+        assertNotEquals(new Key(AnalysisType.SCRIPT, "h", "v1", ordered).digest(),
+                new Key(AnalysisType.SCRIPT, "h", "v1", Map.of()).digest());
+    }
+
+    @Test
+    void putReplacesTheEarlierResult() {
+        analysisResultCache.put(key("hash-a"), "first");
+        analysisResultCache.put(key("hash-a"), "second");
+
+        assertEquals(Optional.of("second"), analysisResultCache.get(key("hash-a")));
+        assertEquals(1, cacheRepository.count());
+    }
+
+    @Test
+    void mediaWithoutAHashIsNeverCached() {
+        analysisResultCache.put(key(null), "result");
+
+        assertEquals(0, cacheRepository.count());
+        assertEquals(Optional.empty(), analysisResultCache.get(key(null)));
+    }
+
+    @Test
+    void expiredEntriesAreMissesAndEvicted() {
+        analysisResultCache.put(key("hash-a"), "result");
+        entry("hash-a").setExpiresAt(LocalDateTime.now().minusMinutes(1));
+        entityManager.flush();
+
+        assertEquals(Optional.empty(), analysisResultCache.get(key("hash-a")));
+        analysisResultCache.evict();
+        assertEquals(0, cacheRepository.count());
+    }
+
+    @Test
+    void leastRecentlyUsedEntriesAreDroppedOverTheMaximum() {
+        LocalDateTime now = LocalDateTime.now();
+        for (String hash : List.of("hash-a", "hash-b", "hash-c")) {
+            analysisResultCache.put(key(hash), "result");
+        }
+        entry("hash-a").setLastAccessedAt(now.minusMinutes(1));
+        entry("hash-b").setLastAccessedAt(now.minusMinutes(3));
+        entry("hash-c").setLastAccessedAt(now.minusMinutes(2));
+        entityManager.flush();
+
+        analysisResultCache.evict();
+        entityManager.clear();
+
+        assertEquals(2, cacheRepository.count());
+        assertEquals(Optional.empty(), cacheRepository.findByCacheKey(key("hash-b").digest()));
+        assertEquals(1, meterRegistry.get("analysis.cache.evictions").counter().count());
+    }
+
+    private static Key key(String mediaHash) {
+        return new Key(AnalysisType.BODY_LANGUAGE, mediaHash, "v1", Map.of());
+    }
+
+    private AnalysisResultCacheEntry entry(String mediaHash) {
+        return cacheRepository.findByCacheKey(key(mediaHash).digest()).orElseThrow();
+    }
+
+    private double requests(String result) {
+        return meterRegistry.get("analysis.cache.requests").tag("type", "BODY_LANGUAGE").tag("result", result)
+                .counter().count();
+    }
+}
@@ -0,0 +1,159 @@
+package com.preffy.videoflow.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.preffy.videoflow.client.AnalysisHttpClient;
+import com.preffy.videoflow.client.CircuitBreaker;
+import com.preffy.videoflow.client.Downstream;
+import com.preffy.videoflow.entity.BodyLanguageAnalysis;
+import com.preffy.videoflow.media.Mp4Windows;
+import com.preffy.videoflow.model.Video;
+import com.preffy.videoflow.repository.BodyLanguageAnalysisRepository;
+import com.preffy.videoflow.repository.VideoRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Windowed body language analysis: windows of a job never take more bulkhead
+ * slots than are free, and a failed window fails the job without starting the rest
+ */
+class BodyLanguageAnalysisServiceTest {
+
+    private static final String STORAGE_URL = "/api/videos/stream/a.mp4";
+    private static final String WINDOW_RESULT = "{\"totalBadPostures\":0,\"totalDurationSeconds\":1.0,\"detectedActions\":[]}";
+
+    private final List<CompletableFuture<HttpResponse<String>>> requests = new CopyOnWriteArrayList<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private BodyLanguageAnalysisRepository analysisRepository;
+    private Downstream downstream;
+    private BodyLanguageAnalysisService service;
+
+    @BeforeEach
+    void setUp() {
+        analysisRepository = mock(BodyLanguageAnalysisRepository.class);
+        when(analysisRepository.findByProjectId("1")).thenReturn(Optional.empty());
+
+        Video video = new Video();
+        video.setStorageUrl(STORAGE_URL);
+        video.setContentHash("abc");
+        VideoRepository videoRepository = mock(VideoRepository.class);
+        when(videoRepository.findFirstByStorageUrl(STORAGE_URL)).thenReturn(Optional.of(video));
+
+        List<Mp4Windows.Window> windows = List.of(new Mp4Windows.Window(0, 100, 0, 4),
+                new Mp4Windows.Window(100, 200, 4, 8), new Mp4Windows.Window(200, 300, 8, 12),
+                new Mp4Windows.Window(300, 400, 12, 16));
+        AnalysisWindowService analysisWindowService = mock(AnalysisWindowService.class);
+        when(analysisWindowService.plan(video)).thenReturn(Optional.of(windows));
+        when(analysisWindowService.windowUrl(any(), any())).thenReturn("https://videos.test/window");
+
+        AnalysisResultCache resultCache = mock(AnalysisResultCache.class);
+        when(resultCache.get(any())).thenReturn(Optional.empty());
+
+        AnalysisHttpClient analysisHttpClient = mock(AnalysisHttpClient.class);
+        when(analysisHttpClient.postJsonAsync(anyString(), any(), anyMap(), any(Duration.class))).thenAnswer(invocation -> {
+            CompletableFuture<HttpResponse<String>> request = new CompletableFuture<>();
+            requests.add(request);
+            return request;
+        });
+
+        downstream = new Downstream("body-language", new CircuitBreaker(new CircuitBreaker.Settings(10, 10, 50, 100,
+                Duration.ofMinutes(1), Duration.ofMinutes(1), 1)), 2);
+
+        service = new BodyLanguageAnalysisService();
+        ReflectionTestUtils.setField(service, "bodyLanguageApiBaseUrl", "https://analysis.test");
+        ReflectionTestUtils.setField(service, "storageBaseUrl", "https://videos.test");
+        ReflectionTestUtils.setField(service, "analysisRepository", analysisRepository);
+        ReflectionTestUtils.setField(service, "videoRepository", videoRepository);
+        ReflectionTestUtils.setField(service, "analysisWindowService", analysisWindowService);
+        ReflectionTestUtils.setField(service, "resultCache", resultCache);
+        ReflectionTestUtils.setField(service, "progressPublisher", mock(AnalysisProgressPublisher.class));
+        ReflectionTestUtils.setField(service, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(service, "requestTimeoutSeconds", 5L);
+        ReflectionTestUtils.setField(service, "modelVersion", "1");
+        ReflectionTestUtils.setField(service, "windowedAnalysisEnabled", true);
+        ReflectionTestUtils.setField(service, "analysisHttpClient", analysisHttpClient);
+        ReflectionTestUtils.setField(service, "bodyLanguageDownstream", downstream);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void windowsNeverTakeMoreThanTheFreeBulkheadSlots() throws Exception {
+        Future<?> analysis = executor.submit(() -> service.triggerAnalysis("1", STORAGE_URL));
+
+        awaitRequests(2);
+        assertEquals(2, downstream.getActiveCalls());
+
+        for (int i = 0; i < 4; i++) {
+            requests.get(i).complete(response(200));
+            assertTrue(downstream.getActiveCalls() <= 2);
+        }
+        analysis.get(5, TimeUnit.SECONDS);
+
+        assertEquals(4, requests.size());
+        assertEquals(0L, downstream.getRejectedFull());
+        assertEquals("completed", savedStatus());
+    }
+
+    @Test
+    void failedWindowFailsTheJobWithoutStartingTheRest() throws Exception {
+        Future<?> analysis = executor.submit(() -> service.triggerAnalysis("1", STORAGE_URL));
+
+        awaitRequests(2);
+        requests.get(0).complete(response(400));
+        analysis.get(5, TimeUnit.SECONDS);
+
+        // The sibling in flight is abandoned and no further windows are sent
+        requests.get(1).complete(response(200));
+        assertEquals(2, requests.size());
+        assertEquals("failed", savedStatus());
+    }
+
+    private void awaitRequests(int count) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (requests.size() < count && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertEquals(count, requests.size());
+    }
+
+    private String savedStatus() {
+        ArgumentCaptor<BodyLanguageAnalysis> saved = ArgumentCaptor.forClass(BodyLanguageAnalysis.class);
+        verify(analysisRepository).save(saved.capture());
+        return saved.getValue().getStatus();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static HttpResponse<String> response(int status) {
+        HttpResponse<String> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(status);
+        when(response.body()).thenReturn(WINDOW_RESULT);
+        return response;
+    }
+}
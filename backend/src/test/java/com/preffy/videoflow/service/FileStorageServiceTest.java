@@ -0,0 +1,168 @@
+package com.preffy.videoflow.service;
+
+import com.preffy.videoflow.entity.StoredBlob;
+import com.preffy.videoflow.model.Video;
+import com.preffy.videoflow.repository.StoredBlobRepository;
+import com.preffy.videoflow.repository.VideoRepository;
+import com.preffy.videoflow.storage.LocalObjectStore;
+import com.preffy.videoflow.storage.ObjectMetadata;
+import com.preffy.videoflow.storage.ObjectStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Content-addressed storage against the H2 test database and a local object
+ * store: identical uploads share one refcounted blob, the object goes with the
+ * last reference, and stream URLs resolve to the blob's key
+ */
+@DataJpaTest
+@Import({FileStorageService.class, StoredBlobService.class, VideoMetadataCache.class,
+        FileStorageServiceTest.Storage.class})
+// Blob references are taken in their own transactions, so run without a test transaction
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class FileStorageServiceTest {
+
+    @TestConfiguration
+    static class Storage {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        @Bean
+        ObjectStore objectStore() throws IOException {
+            return new LocalObjectStore(Files.createTempDirectory("preffy-objects"));
+        }
+    }
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private StoredBlobRepository storedBlobRepository;
+
+    @Autowired
+    private VideoRepository videoRepository;
+
+    @Autowired
+    private ObjectStore objectStore;
+
+    @Autowired
+    private VideoMetadataCache videoMetadataCache;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @MockBean
+    private SignedUrlService signedUrlService;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        videoRepository.deleteAll();
+        videoMetadataCache.evict("f3c1.mp4");
+        storedBlobRepository.deleteAll();
+        for (ObjectMetadata object : objectStore.list("")) {
+            objectStore.delete(object.getKey());
+        }
+    }
+
+    @Test
+    void identicalUploadsShareOneBlob() throws IOException {
+        StoredBlob first = fileStorageService.storeBlob(staged("same bytes"), "a.mp4", "video/mp4", "videos");
+        Path second = staged("same bytes");
+        StoredBlob shared = fileStorageService.storeBlob(second, "b.MP4", "video/mp4", "videos");
+
+        assertEquals(first.getContentHash(), shared.getContentHash());
+        assertEquals(first.getStorageKey(), shared.getStorageKey());
+        assertEquals("videos/" + first.getContentHash() + ".mp4", first.getStorageKey());
+        assertEquals(2, blob(first).getRefCount());
+        assertFalse(Files.exists(second));
+        assertEquals(1, objectStore.list("videos/").size());
+    }
+
+    @Test
+    void differentContentGetsItsOwnBlob() throws IOException {
+        StoredBlob first = fileStorageService.storeBlob(staged("first"), "a.mp4", "video/mp4", "videos");
+        StoredBlob second = fileStorageService.storeBlob(staged("second"), "a.mp4", "video/mp4", "videos");
+
+        assertNotEquals(first.getStorageKey(), second.getStorageKey());
+        assertEquals(2, objectStore.list("videos/").size());
+    }
+
+    @Test
+    void objectIsDeletedWithTheLastReference() throws IOException {
+        StoredBlob blob = fileStorageService.storeBlob(staged("shared"), "a.mp4", "video/mp4", "videos");
+        fileStorageService.storeBlob(staged("shared"), "b.mp4", "video/mp4", "videos");
+
+        fileStorageService.releaseBlob(blob.getContentHash());
+        assertEquals(1, blob(blob).getRefCount());
+        assertTrue(objectStore.head(blob.getStorageKey()).isPresent());
+
+        fileStorageService.releaseBlob(blob.getContentHash());
+        assertTrue(storedBlobRepository.findByContentHash(blob.getContentHash()).isEmpty());
+        assertTrue(objectStore.head(blob.getStorageKey()).isEmpty());
+    }
+
+    @Test
+    void streamUrlResolvesToTheVideosBlob() throws IOException {
+        StoredBlob blob = fileStorageService.storeBlob(staged("video"), "a.mp4", "video/mp4", "videos");
+        saveVideo("f3c1.mp4", blob);
+
+        assertEquals(blob.getStorageKey(), fileStorageService.resolveKey("/api/videos/stream/f3c1.mp4"));
+        double hits = cacheLookups("hit");
+        assertEquals(blob.getStorageKey(),
+                fileStorageService.resolveKey("http://localhost:8080/api/videos/stream/f3c1.mp4"));
+        assertEquals(hits + 1, cacheLookups("hit"));
+        assertEquals("videos/legacy.mp4", fileStorageService.resolveKey("/api/videos/stream/legacy.mp4"));
+    }
+
+    @Test
+    void deletingAStreamUrlReleasesOneReference() throws IOException {
+        StoredBlob blob = fileStorageService.storeBlob(staged("video"), "a.mp4", "video/mp4", "videos");
+        fileStorageService.storeBlob(staged("video"), "b.mp4", "video/mp4", "videos");
+        saveVideo("f3c1.mp4", blob);
+
+        assertTrue(fileStorageService.deleteFile("/api/videos/stream/f3c1.mp4"));
+
+        assertEquals(1, blob(blob).getRefCount());
+        assertTrue(objectStore.head(blob.getStorageKey()).isPresent());
+    }
+
+    private void saveVideo(String filename, StoredBlob blob) {
+        Video video = new Video("1", filename, "a.mp4", "video/mp4", blob.getSize(),
+                "/api/videos/stream/" + filename, 0, 0, 0);
+        video.setStorageKey(blob.getStorageKey());
+        videoRepository.save(video);
+    }
+
+    private double cacheLookups(String result) {
+        return meterRegistry.get("video.metadata.cache").tag("result", result).counter().count();
+    }
+
+    private StoredBlob blob(StoredBlob blob) {
+        return storedBlobRepository.findByContentHash(blob.getContentHash()).orElseThrow();
+    }
+
+    private static Path staged(String content) throws IOException {
+        return Files.writeString(Files.createTempFile("upload-", ".bin"), content);
+    }
+}
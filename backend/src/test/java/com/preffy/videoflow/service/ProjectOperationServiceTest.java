@@ -0,0 +1,169 @@
+package com.preffy.videoflow.service;
+
+import com.preffy.videoflow.dto.ProjectRequest;
+import com.preffy.videoflow.model.Project;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Accepting a project with a video as an operation and following it to done
+ * or failed, as clients polling the operation see it, and removing projects
+ * whose upload was lost with a stopped instance
+ */
+class ProjectOperationServiceTest {
+
+    @TempDir
+    Path stagingDir;
+
+    private final ProjectService projectService = mock(ProjectService.class);
+    private final FileStorageService fileStorageService = mock(FileStorageService.class);
+    private final AnalysisProgressPublisher progressPublisher = mock(AnalysisProgressPublisher.class);
+    private final CompletableFuture<Project> stored = new CompletableFuture<>();
+    private final MockMultipartFile videoFile = new MockMultipartFile("video", "talk.mp4", "video/mp4",
+            new byte[1000]);
+    private ProjectOperationService projectOperationService;
+    private Path staged;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        projectOperationService = new ProjectOperationService();
+        ReflectionTestUtils.setField(projectOperationService, "retentionMinutes", 30L);
+        ReflectionTestUtils.setField(projectOperationService, "staleUploadMinutes", 60L);
+        ReflectionTestUtils.setField(projectOperationService, "storeBytesPerSecond", 1000.0);
+        ReflectionTestUtils.setField(projectOperationService, "projectService", projectService);
+        ReflectionTestUtils.setField(projectOperationService, "fileStorageService", fileStorageService);
+        ReflectionTestUtils.setField(projectOperationService, "progressPublisher", progressPublisher);
+
+        staged = Files.createFile(stagingDir.resolve("staged.upload"));
+        when(fileStorageService.stage(videoFile)).thenReturn(staged);
+        Project project = new Project();
+        project.setId(7L);
+        when(projectService.createUploadingProject(any(), eq(1L))).thenReturn(project);
+        when(projectService.attachUploadedVideo(any(), eq(staged), eq("talk.mp4"), eq("video/mp4")))
+                .thenReturn(stored);
+    }
+
+    @Test
+    void acceptedOperationIsReceivedUntilStored() throws IOException {
+        ProjectOperation operation = projectOperationService.accept(new ProjectRequest(), videoFile, 1L);
+
+        assertEquals(ProjectOperation.Stage.RECEIVED, operation.getStage());
+        assertEquals(7L, operation.getProjectId());
+        assertEquals(0, operation.getPercent());
+        assertEquals(1, operation.getEta().toSeconds());
+        assertEquals(Optional.of(operation), projectOperationService.getOperation(operation.getId(), 1L));
+    }
+
+    @Test
+    void operationsAreOnlyVisibleToTheirOwner() throws IOException {
+        ProjectOperation operation = projectOperationService.accept(new ProjectRequest(), videoFile, 1L);
+
+        assertEquals(Optional.empty(), projectOperationService.getOperation(operation.getId(), 2L));
+        assertEquals(Optional.empty(), projectOperationService.getOperation("unknown", 1L));
+    }
+
+    @Test
+    void storedVideoCompletesTheOperation() throws IOException {
+        ProjectOperation operation = projectOperationService.accept(new ProjectRequest(), videoFile, 1L);
+
+        stored.complete(new Project());
+
+        assertEquals(ProjectOperation.Stage.DONE, operation.getStage());
+        assertEquals(100, operation.getPercent());
+        assertTrue(operation.isFinished());
+        verify(progressPublisher).upload(operation);
+        verify(progressPublisher).projectStatus(7L, Project.ProjectStatus.PROCESSING);
+        verify(projectService, never()).deleteFailedUpload(any());
+    }
+
+    @Test
+    void failedStoreFailsTheOperationAndRemovesTheProject() throws IOException {
+        ProjectOperation operation = projectOperationService.accept(new ProjectRequest(), videoFile, 1L);
+
+        stored.completeExceptionally(new RuntimeException("wrapped", new IOException("bucket unavailable")));
+
+        assertEquals(ProjectOperation.Stage.FAILED, operation.getStage());
+        assertEquals("bucket unavailable", operation.getError());
+        verify(progressPublisher).upload(operation);
+        verify(projectService).deleteFailedUpload(7L);
+    }
+
+    @Test
+    void saturatedExecutorKeepsNothing() throws IOException {
+        when(projectService.attachUploadedVideo(any(), eq(staged), any(), any()))
+                .thenThrow(new RejectedExecutionException("full"));
+
+        assertThrows(RejectedExecutionException.class,
+                () -> projectOperationService.accept(new ProjectRequest(), videoFile, 1L));
+
+        assertFalse(Files.exists(staged));
+        verify(projectService).deleteFailedUpload(7L);
+    }
+
+    @Test
+    void finishedOperationsExpireAfterTheRetention() throws IOException {
+        ProjectOperation running = projectOperationService.accept(new ProjectRequest(), videoFile, 1L);
+        stored.complete(new Project());
+        ReflectionTestUtils.setField(running, "finishedAt", LocalDateTime.now().minusMinutes(31));
+
+        projectOperationService.expireFinished();
+
+        assertEquals(Optional.empty(), projectOperationService.getOperation(running.getId(), 1L));
+    }
+
+    @Test
+    void staleUploadsWithoutAnOperationAreRemoved() {
+        when(projectService.findStaleUploads(any())).thenReturn(List.of(3L, 4L));
+
+        projectOperationService.failStaleUploads();
+
+        verify(projectService).deleteFailedUpload(3L);
+        verify(projectService).deleteFailedUpload(4L);
+    }
+
+    @Test
+    void uploadStillRunningHereIsKept() throws IOException {
+        projectOperationService.accept(new ProjectRequest(), videoFile, 1L);
+        when(projectService.findStaleUploads(any())).thenReturn(List.of(7L));
+
+        projectOperationService.failStaleUploads();
+
+        verify(projectService, never()).deleteFailedUpload(any());
+    }
+
+    @Test
+    void staleCutoffIsTheConfiguredAge() {
+        LocalDateTime before = LocalDateTime.now().minusMinutes(60);
+
+        projectOperationService.failStaleUploads();
+
+        ArgumentCaptor<LocalDateTime> cutoff = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(projectService).findStaleUploads(cutoff.capture());
+        assertFalse(cutoff.getValue().isBefore(before));
+        assertTrue(cutoff.getValue().isBefore(LocalDateTime.now().minusMinutes(59)));
+    }
+}
@@ -0,0 +1,208 @@
+package com.preffy.videoflow.service;
+
+import com.preffy.videoflow.entity.AnalysisJob;
+import com.preffy.videoflow.entity.ScriptAnalysis;
+import com.preffy.videoflow.model.Project;
+import com.preffy.videoflow.model.Video;
+import com.preffy.videoflow.repository.ProjectRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Storing the video of an accepted upload: the project update and analysis
+ * job follow the stored video, and a failure after storing discards it again.
+ * Running the analysis workflow: every stage that fails is published as
+ * failed before the job sees the error.
+ */
+class ProjectServiceTest {
+
+    @TempDir
+    Path stagingDir;
+
+    private final ProjectRepository projectRepository = mock(ProjectRepository.class);
+    private final VideoService videoService = mock(VideoService.class);
+    private final AnalysisJobService analysisJobService = mock(AnalysisJobService.class);
+    private final AnalysisProgressPublisher progressPublisher = mock(AnalysisProgressPublisher.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private final AudioExtractionService audioExtractionService = mock(AudioExtractionService.class);
+    private final ScriptAnalysisService scriptAnalysisService = mock(ScriptAnalysisService.class);
+    private final BodyLanguageAnalysisService bodyLanguageAnalysisService = mock(BodyLanguageAnalysisService.class);
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private ProjectService projectService;
+    private Project project;
+    private Video video;
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @BeforeEach
+    void setUp() {
+        projectService = new ProjectService();
+        ReflectionTestUtils.setField(projectService, "projectRepository", projectRepository);
+        ReflectionTestUtils.setField(projectService, "videoService", videoService);
+        ReflectionTestUtils.setField(projectService, "analysisJobService", analysisJobService);
+        ReflectionTestUtils.setField(projectService, "progressPublisher", progressPublisher);
+        ReflectionTestUtils.setField(projectService, "transactionTemplate", new TransactionTemplate(transactionManager));
+        ReflectionTestUtils.setField(projectService, "audioExtractionService", audioExtractionService);
+        ReflectionTestUtils.setField(projectService, "scriptAnalysisService", scriptAnalysisService);
+        ReflectionTestUtils.setField(projectService, "bodyLanguageAnalysisService", bodyLanguageAnalysisService);
+        ReflectionTestUtils.setField(projectService, "scriptAnalysisExecutor", executor);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+
+        project = new Project();
+        project.setId(7L);
+        project.setStatus(Project.ProjectStatus.UPLOADING);
+        video = new Video();
+        video.setId(11L);
+        video.setStorageUrl("/api/videos/stream/f3c1.mp4");
+        when(projectRepository.existsById(7L)).thenReturn(true);
+        when(projectRepository.save(any(Project.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    void storedVideoIsAttachedAndAnalysisQueuedInOneTransaction() throws IOException {
+        Path staged = staged();
+        when(videoService.uploadVideo(eq("7"), eq(staged), eq("talk.mp4"), eq("video/mp4"))).thenReturn(video);
+        when(projectRepository.findById(7L)).thenReturn(Optional.of(project));
+        ProjectOperation operation = operation();
+
+        Project attached = projectService.attachUploadedVideo(operation, staged, "talk.mp4", "video/mp4").join();
+
+        assertEquals(Project.ProjectStatus.PROCESSING, attached.getStatus());
+        assertEquals("/api/videos/stream/f3c1.mp4", attached.getVideoPath());
+        assertEquals(ProjectOperation.Stage.QUEUEING_ANALYSIS, operation.getStage());
+        verify(analysisJobService).enqueue(eq(AnalysisJob.JobType.PROJECT_ANALYSIS), eq("7"), eq("11"), anyString());
+        verify(transactionManager).commit(any());
+        verify(videoService, never()).deleteVideo(any());
+        assertFalse(Files.exists(staged));
+    }
+
+    @Test
+    void failureAfterStoringDiscardsTheVideo() throws IOException {
+        Path staged = staged();
+        when(videoService.uploadVideo(eq("7"), eq(staged), any(), any())).thenReturn(video);
+        when(projectRepository.findById(7L)).thenReturn(Optional.of(project));
+        when(analysisJobService.enqueue(any(), any(), any(), any())).thenThrow(new IllegalStateException("db down"));
+
+        assertThrows(RuntimeException.class,
+                () -> projectService.attachUploadedVideo(operation(), staged, "talk.mp4", "video/mp4"));
+
+        verify(transactionManager).rollback(any());
+        verify(videoService).deleteVideo(11L);
+        assertFalse(Files.exists(staged));
+    }
+
+    @Test
+    void failedStoreLeavesNothingToDiscard() throws IOException {
+        Path staged = staged();
+        when(videoService.uploadVideo(eq("7"), eq(staged), any(), any())).thenThrow(new IOException("bucket down"));
+
+        assertThrows(RuntimeException.class,
+                () -> projectService.attachUploadedVideo(operation(), staged, "talk.mp4", "video/mp4"));
+
+        verify(videoService, never()).deleteVideo(any());
+        verify(transactionManager, never()).getTransaction(any());
+        assertFalse(Files.exists(staged));
+    }
+
+    @Test
+    void completedWorkflowPublishesEveryStageAndAnalyzesTheProject() throws IOException {
+        workflowInputs();
+        when(audioExtractionService.extractAudio(video)).thenReturn("audio/abc.aac");
+        ScriptAnalysis analysis = new ScriptAnalysis();
+        when(scriptAnalysisService.analyzeScript(7L, "audio/abc.aac", "abc")).thenReturn(analysis);
+        when(scriptAnalysisService.isCompleted(analysis)).thenReturn(true);
+
+        projectService.runAnalysisWorkflow(7L, 11L);
+
+        verify(progressPublisher).stage(7L, "audio_extraction", AnalysisProgressPublisher.COMPLETED);
+        verify(progressPublisher).stage(7L, "script_analysis", AnalysisProgressPublisher.COMPLETED);
+        verify(progressPublisher).stage(7L, "body_language_analysis", AnalysisProgressPublisher.STARTED);
+        verify(bodyLanguageAnalysisService).runAnalysis("7", "/api/videos/stream/f3c1.mp4");
+        verify(progressPublisher).projectStatus(7L, Project.ProjectStatus.ANALYZED);
+        assertEquals(Project.ProjectStatus.ANALYZED, project.getStatus());
+    }
+
+    @Test
+    void failedAudioExtractionIsPublishedBeforeTheJobFails() {
+        workflowInputs();
+        when(audioExtractionService.extractAudio(video)).thenThrow(new IllegalStateException("no audio track"));
+
+        assertThrows(IllegalStateException.class, () -> projectService.runAnalysisWorkflow(7L, 11L));
+
+        verify(progressPublisher).stage(7L, "audio_extraction", AnalysisProgressPublisher.FAILED);
+        verify(progressPublisher, never()).stage(7L, "script_analysis", AnalysisProgressPublisher.STARTED);
+    }
+
+    @Test
+    void scriptAnalysisSavedAsAnErrorIsPublishedAsFailed() {
+        workflowInputs();
+        when(audioExtractionService.extractAudio(video)).thenReturn("audio/abc.aac");
+        ScriptAnalysis analysis = new ScriptAnalysis();
+        when(scriptAnalysisService.analyzeScript(any(), any(), any())).thenReturn(analysis);
+        when(scriptAnalysisService.isCompleted(analysis)).thenReturn(false);
+
+        projectService.runAnalysisWorkflow(7L, 11L);
+
+        verify(progressPublisher).stage(7L, "script_analysis", AnalysisProgressPublisher.FAILED);
+        verify(progressPublisher, never()).stage(7L, "script_analysis", AnalysisProgressPublisher.COMPLETED);
+    }
+
+    @Test
+    void failedBodyLanguageAnalysisIsPublishedBeforeTheJobFails() throws IOException {
+        workflowInputs();
+        when(scriptAnalysisService.getCompletedAnalysis(7L)).thenReturn(Optional.of(new ScriptAnalysis()));
+        doThrow(new IOException("service unavailable"))
+                .when(bodyLanguageAnalysisService).runAnalysis(any(), any());
+
+        assertThrows(UncheckedIOException.class, () -> projectService.runAnalysisWorkflow(7L, 11L));
+
+        verify(progressPublisher).stage(7L, "body_language_analysis", AnalysisProgressPublisher.FAILED);
+        verify(audioExtractionService, never()).extractAudio(any());
+        verify(progressPublisher, never()).projectStatus(7L, Project.ProjectStatus.ANALYZED);
+    }
+
+    private void workflowInputs() {
+        video.setContentHash("abc");
+        when(projectRepository.findById(7L)).thenReturn(Optional.of(project));
+        when(videoService.getVideoById(11L)).thenReturn(Optional.of(video));
+        when(scriptAnalysisService.getCompletedAnalysis(7L)).thenReturn(Optional.empty());
+    }
+
+    private ProjectOperation operation() {
+        return new ProjectOperation("op-1", 1L, 7L, 1000, Duration.ofSeconds(1));
+    }
+
+    private Path staged() throws IOException {
+        return Files.createFile(stagingDir.resolve("staged.upload"));
+    }
+}
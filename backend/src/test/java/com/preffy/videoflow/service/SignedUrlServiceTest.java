@@ -0,0 +1,104 @@
+package com.preffy.videoflow.service;
+
+import com.preffy.videoflow.storage.ObjectStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Caching of signed URLs: reused while more than half their lifetime is left,
+ * re-signed after that or once evicted
+ */
+class SignedUrlServiceTest {
+
+    private final ObjectStore objectStore = mock(ObjectStore.class);
+    private SignedUrlService signedUrlService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        signedUrlService = new SignedUrlService();
+        ReflectionTestUtils.setField(signedUrlService, "enabled", true);
+        ReflectionTestUtils.setField(signedUrlService, "ttlMinutes", 60L);
+        ReflectionTestUtils.setField(signedUrlService, "maxEntries", 10);
+        ReflectionTestUtils.setField(signedUrlService, "objectStore", objectStore);
+        when(objectStore.getSignedUrl(eq("videos/a.mp4"), any()))
+                .thenReturn(Optional.of("https://signed/1"))
+                .thenReturn(Optional.of("https://signed/2"));
+    }
+
+    @Test
+    void freshUrlIsReused() throws IOException {
+        assertEquals(Optional.of("https://signed/1"), signedUrlService.getSignedUrl("videos/a.mp4"));
+        assertEquals(Optional.of("https://signed/1"), signedUrlService.getSignedUrl("videos/a.mp4"));
+
+        verify(objectStore).getSignedUrl("videos/a.mp4", Duration.ofMinutes(60));
+    }
+
+    @Test
+    void urlPastHalfItsLifetimeIsResigned() throws IOException {
+        signedUrlService.getSignedUrl("videos/a.mp4");
+        age("videos/a.mp4", Duration.ofMinutes(31));
+
+        assertEquals(Optional.of("https://signed/2"), signedUrlService.getSignedUrl("videos/a.mp4"));
+        verify(objectStore, times(2)).getSignedUrl(eq("videos/a.mp4"), any());
+    }
+
+    @Test
+    void evictedUrlIsResigned() throws IOException {
+        signedUrlService.getSignedUrl("videos/a.mp4");
+        signedUrlService.evict("videos/a.mp4");
+
+        assertEquals(Optional.of("https://signed/2"), signedUrlService.getSignedUrl("videos/a.mp4"));
+    }
+
+    @Test
+    void signingFailureFallsBackToProxying() throws IOException {
+        when(objectStore.getSignedUrl(eq("videos/b.mp4"), any())).thenThrow(new IOException("denied"));
+
+        assertEquals(Optional.empty(), signedUrlService.getSignedUrl("videos/b.mp4"));
+    }
+
+    @Test
+    void disabledSigningReturnsNothing() throws IOException {
+        ReflectionTestUtils.setField(signedUrlService, "enabled", false);
+
+        assertEquals(Optional.empty(), signedUrlService.getSignedUrl("videos/a.mp4"));
+        verify(objectStore, times(0)).getSignedUrl(any(), any());
+    }
+
+    /**
+     * Move the cached URL's expiry closer, as if it was signed {@code age} ago
+     */
+    private void age(String key, Duration age) {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> cache = (Map<String, Object>) ReflectionTestUtils.getField(signedUrlService, "cache");
+        Object entry = cache.get(key);
+        String url = (String) ReflectionTestUtils.invokeMethod(entry, "url");
+        Instant expiresAt = (Instant) ReflectionTestUtils.invokeMethod(entry, "expiresAt");
+        cache.put(key, newEntry(entry.getClass(), url, expiresAt.minus(age)));
+    }
+
+    private static Object newEntry(Class<?> type, String url, Instant expiresAt) {
+        try {
+            var constructor = type.getDeclaredConstructor(String.class, Instant.class);
+            constructor.setAccessible(true);
+            return constructor.newInstance(url, expiresAt);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
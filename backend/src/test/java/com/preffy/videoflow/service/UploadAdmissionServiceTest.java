@@ -0,0 +1,112 @@
+package com.preffy.videoflow.service;
+
+import com.preffy.videoflow.service.UploadAdmissionService.Permit;
+import com.preffy.videoflow.service.UploadAdmissionService.UploadRejectedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Admission limits on uploads: per client, per instance and on declared bytes,
+ * with capacity returned when a permit is closed
+ */
+class UploadAdmissionServiceTest {
+
+    private static final long MIB = 1024 * 1024;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private UploadAdmissionService admission;
+
+    @BeforeEach
+    void setUp() {
+        admission = new UploadAdmissionService();
+        ReflectionTestUtils.setField(admission, "maxConcurrent", 3);
+        ReflectionTestUtils.setField(admission, "maxInflightBytes", 100 * MIB);
+        ReflectionTestUtils.setField(admission, "maxConcurrentPerClient", 2);
+        ReflectionTestUtils.setField(admission, "unknownLengthBytes", 40 * MIB);
+        ReflectionTestUtils.setField(admission, "meterRegistry", meterRegistry);
+        admission.registerMetrics();
+    }
+
+    @Test
+    void clientOverItsLimitIsTooManyRequests() {
+        admission.admit("alice", MIB);
+        admission.admit("alice", MIB);
+
+        UploadRejectedException e = assertThrows(UploadRejectedException.class, () -> admission.admit("alice", MIB));
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, e.getStatus());
+        assertEquals(1, rejected("client"));
+        admission.admit("bob", MIB);
+    }
+
+    @Test
+    void instanceOverItsConcurrencyIsUnavailable() {
+        admission.admit("alice", MIB);
+        admission.admit("bob", MIB);
+        admission.admit("carol", MIB);
+
+        UploadRejectedException e = assertThrows(UploadRejectedException.class, () -> admission.admit("dave", MIB));
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatus());
+        assertEquals(1, rejected("concurrency"));
+        assertEquals(3, gauge("upload.admission.active"));
+    }
+
+    @Test
+    void declaredBytesOverTheBudgetAreUnavailable() {
+        admission.admit("alice", 60 * MIB);
+
+        UploadRejectedException e = assertThrows(UploadRejectedException.class,
+                () -> admission.admit("bob", 60 * MIB));
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatus());
+        assertEquals(1, rejected("bytes"));
+        assertEquals(60 * MIB, gauge("upload.admission.reserved.bytes"));
+        assertEquals(1, gauge("upload.admission.active"));
+    }
+
+    @Test
+    void singleOversizedUploadIsAdmittedOnAnIdleInstance() {
+        Permit permit = admission.admit("alice", 500 * MIB);
+
+        assertEquals(100 * MIB, gauge("upload.admission.reserved.bytes"));
+        permit.close();
+        assertEquals(0, gauge("upload.admission.reserved.bytes"));
+    }
+
+    @Test
+    void unknownLengthReservesTheDefault() {
+        admission.admit("alice", -1);
+        admission.admit("bob", -1);
+
+        assertThrows(UploadRejectedException.class, () -> admission.admit("carol", -1));
+        assertEquals(80 * MIB, gauge("upload.admission.reserved.bytes"));
+    }
+
+    @Test
+    void closingAPermitReturnsItsCapacityOnce() {
+        Permit first = admission.admit("alice", 60 * MIB);
+        admission.admit("alice", MIB);
+
+        first.close();
+        first.close();
+
+        assertEquals(MIB, gauge("upload.admission.reserved.bytes"));
+        assertEquals(1, gauge("upload.admission.active"));
+        admission.admit("alice", 60 * MIB);
+    }
+
+    private double rejected(String reason) {
+        return meterRegistry.get("upload.admission.rejected").tag("reason", reason).counter().count();
+    }
+
+    private double gauge(String name) {
+        return meterRegistry.get(name).gauge().value();
+    }
+}
@@ -0,0 +1,158 @@
+package com.preffy.videoflow.service;
+
+import com.preffy.videoflow.model.Video;
+import com.preffy.videoflow.service.UploadSessionService.UploadSessionNotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Resumable upload sessions: committed offsets, conflicting requests, retrying
+ * a failed completion and aborting
+ */
+class UploadSessionServiceTest {
+
+    private static final byte[] CONTENT = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    @TempDir
+    Path stagingDir;
+
+    private VideoService videoService;
+    private UploadSessionService service;
+
+    @BeforeEach
+    void setUp() {
+        videoService = mock(VideoService.class);
+        service = new UploadSessionService();
+        ReflectionTestUtils.setField(service, "stagingPath", stagingDir.toString());
+        ReflectionTestUtils.setField(service, "chunkSize", 4L);
+        ReflectionTestUtils.setField(service, "maxChunkSize", 8L);
+        ReflectionTestUtils.setField(service, "maxFileSize", 1024L);
+        ReflectionTestUtils.setField(service, "sessionTtlMinutes", 60L);
+        ReflectionTestUtils.setField(service, "videoService", videoService);
+    }
+
+    @Test
+    void committedOffsetIsTheContiguousPrefix() throws IOException {
+        UploadSession session = service.createSession("1", "clip.mp4", "video/mp4", CONTENT.length);
+
+        write(session.getId(), 8, 11);
+        assertEquals(0, session.getCommittedOffset());
+        assertEquals(4, session.getReceivedBytes());
+
+        write(session.getId(), 0, 3);
+        assertEquals(4, session.getCommittedOffset());
+
+        write(session.getId(), 4, 7);
+        assertEquals(12, session.getCommittedOffset());
+        assertFalse(session.isComplete());
+    }
+
+    @Test
+    void invalidChunksAreRejected() throws IOException {
+        String uploadId = service.createSession("1", "clip.mp4", "video/mp4", CONTENT.length).getId();
+
+        assertThrows(IllegalArgumentException.class, () -> write(uploadId, 12, 16));
+        assertThrows(IllegalArgumentException.class, () -> write(uploadId, 0, 8));
+        assertThrows(IllegalArgumentException.class, () -> service.writeChunk(uploadId, 0, 3,
+                new ByteArrayInputStream(CONTENT, 0, 2)));
+        assertEquals(0, service.getSession(uploadId).orElseThrow().getReceivedBytes());
+    }
+
+    @Test
+    void completingAnIncompleteUploadConflicts() throws IOException {
+        String uploadId = service.createSession("1", "clip.mp4", "video/mp4", CONTENT.length).getId();
+        write(uploadId, 0, 7);
+
+        assertThrows(IllegalStateException.class, () -> service.completeSession(uploadId));
+        assertFalse(service.getSession(uploadId).orElseThrow().isCompleting());
+    }
+
+    @Test
+    void chunksAndSecondCompletionConflictWhileCompleting() throws IOException {
+        String uploadId = uploadAll();
+        Video video = new Video();
+        when(videoService.uploadVideo(eq("1"), any(), eq("clip.mp4"), eq("video/mp4"))).thenAnswer(invocation -> {
+            assertThrows(IllegalStateException.class, () -> write(uploadId, 0, 3));
+            assertThrows(IllegalStateException.class, () -> service.completeSession(uploadId));
+            return video;
+        });
+
+        assertSame(video, service.completeSession(uploadId));
+    }
+
+    @Test
+    void failedCompletionKeepsTheSessionForARetry() throws IOException {
+        String uploadId = uploadAll();
+        Path stagingFile = service.getSession(uploadId).orElseThrow().getStagingFile();
+        Video video = new Video();
+        when(videoService.uploadVideo(eq("1"), any(), eq("clip.mp4"), eq("video/mp4")))
+                .thenAnswer(invocation -> {
+                    // Storage moves or deletes the file it is given even when it fails
+                    Files.delete(invocation.getArgument(1, Path.class));
+                    throw new IOException("object store unavailable");
+                })
+                .thenAnswer(invocation -> {
+                    assertArrayEquals(CONTENT, Files.readAllBytes(invocation.getArgument(1, Path.class)));
+                    return video;
+                });
+
+        assertThrows(IOException.class, () -> service.completeSession(uploadId));
+
+        UploadSession session = service.getSession(uploadId).orElseThrow();
+        assertFalse(session.isCompleting());
+        assertEquals(CONTENT.length, session.getCommittedOffset());
+        assertArrayEquals(CONTENT, Files.readAllBytes(stagingFile));
+
+        assertSame(video, service.completeSession(uploadId));
+        assertTrue(service.getSession(uploadId).isEmpty());
+        assertFalse(Files.exists(stagingFile));
+        try (var files = Files.list(stagingDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void abortDiscardsTheSessionAndItsChunks() throws IOException {
+        String uploadId = service.createSession("1", "clip.mp4", "video/mp4", CONTENT.length).getId();
+        write(uploadId, 0, 3);
+        Path stagingFile = service.getSession(uploadId).orElseThrow().getStagingFile();
+
+        service.abortSession(uploadId);
+
+        assertTrue(service.getSession(uploadId).isEmpty());
+        assertFalse(Files.exists(stagingFile));
+        assertThrows(UploadSessionNotFoundException.class, () -> write(uploadId, 4, 7));
+        assertThrows(UploadSessionNotFoundException.class, () -> service.completeSession(uploadId));
+    }
+
+    private String uploadAll() throws IOException {
+        String uploadId = service.createSession("1", "clip.mp4", "video/mp4", CONTENT.length).getId();
+        write(uploadId, 8, 15);
+        write(uploadId, 0, 7);
+        return uploadId;
+    }
+
+    private void write(String uploadId, int start, int endInclusive) throws IOException {
+        int length = Math.max(0, Math.min(endInclusive, CONTENT.length - 1) - start + 1);
+        service.writeChunk(uploadId, start, endInclusive, new ByteArrayInputStream(CONTENT, start, length));
+    }
+}
@@ -0,0 +1,110 @@
+package com.preffy.videoflow.service;
+
+import com.preffy.videoflow.model.Video;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Loading, bounding and eviction of the filename to Video cache, including
+ * evictions that race with a load
+ */
+class VideoMetadataCacheTest {
+
+    private VideoMetadataCache cache;
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        cache = new VideoMetadataCache();
+        ReflectionTestUtils.setField(cache, "maxEntries", 2);
+        ReflectionTestUtils.setField(cache, "meterRegistry", new SimpleMeterRegistry());
+        cache.init();
+    }
+
+    @Test
+    void loadedVideoIsCached() {
+        Video video = video("a.mp4");
+
+        assertSame(video, cache.get("a.mp4", load(video)).orElseThrow());
+        assertSame(video, cache.get("a.mp4", load(video)).orElseThrow());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void missingVideoIsNotCached() {
+        cache.get("a.mp4", load(null));
+        cache.get("a.mp4", load(null));
+
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void leastRecentlyUsedIsDroppedPastTheBound() {
+        cache.get("a.mp4", load(video("a.mp4")));
+        cache.get("b.mp4", load(video("b.mp4")));
+        cache.get("a.mp4", load(null));
+        cache.get("c.mp4", load(video("c.mp4")));
+
+        assertEquals(2, cache.size());
+        cache.get("a.mp4", load(null));
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void evictionDuringALoadKeepsTheLoadedCopyOut() {
+        Video stale = video("a.mp4");
+
+        Optional<Video> loaded = cache.get("a.mp4", filename -> {
+            cache.evict(filename);
+            return Optional.of(stale);
+        });
+
+        assertSame(stale, loaded.orElseThrow());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void evictionInATransactionIsRepeatedAfterCompletion() {
+        cache.get("a.mp4", load(video("a.mp4")));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            cache.evict("a.mp4");
+            // A load that read the row before the transaction committed
+            cache.get("a.mp4", load(video("a.mp4")));
+            assertEquals(1, cache.size());
+
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals(0, cache.size());
+    }
+
+    private Function<String, Optional<Video>> load(Video video) {
+        return filename -> {
+            loads.incrementAndGet();
+            return Optional.ofNullable(video);
+        };
+    }
+
+    private static Video video(String filename) {
+        Video video = new Video();
+        video.setFilename(filename);
+        return video;
+    }
+}
@@ -0,0 +1,193 @@
+package com.preffy.videoflow.service;
+
+import com.preffy.videoflow.storage.LocalObjectStore;
+import com.preffy.videoflow.storage.ObjectStore;
+import com.preffy.videoflow.storage.ObjectStoreResource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Range requests against local and remote object stores: 200 for the whole
+ * object, 206 for single and multiple ranges, 416 for unsatisfiable ones, and
+ * the If-Range / conditional request rules
+ */
+class VideoStreamingServiceTest {
+
+    private static final String CONTENT = "0123456789abcdefghij";
+
+    @TempDir
+    Path root;
+
+    private final VideoStreamingService videoStreamingService = new VideoStreamingService();
+    private ObjectStore localStore;
+    private ObjectStore remoteStore;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        localStore = new LocalObjectStore(root);
+        // Same files, but without a local path, so reads go through getRange
+        remoteStore = new LocalObjectStore(root) {
+            @Override
+            public Optional<Path> localPath(String key) {
+                return Optional.empty();
+            }
+        };
+        localStore.put("videos/a.mp4", new ByteArrayInputStream(CONTENT.getBytes(StandardCharsets.US_ASCII)),
+                CONTENT.length(), "video/mp4");
+    }
+
+    @Test
+    void noRangeServesTheWholeObject() throws IOException {
+        MockHttpServletResponse response = stream(localStore, request());
+
+        assertEquals(200, response.getStatus());
+        assertEquals("bytes", response.getHeader(HttpHeaders.ACCEPT_RANGES));
+        assertEquals(CONTENT.length(), response.getContentLengthLong());
+        assertEquals(CONTENT, response.getContentAsString());
+    }
+
+    @Test
+    void singleRangeIsPartialContent() throws IOException {
+        for (ObjectStore store : new ObjectStore[] {localStore, remoteStore}) {
+            MockHttpServletRequest request = request();
+            request.addHeader(HttpHeaders.RANGE, "bytes=5-9");
+
+            MockHttpServletResponse response = stream(store, request);
+
+            assertEquals(206, response.getStatus());
+            assertEquals("bytes 5-9/20", response.getHeader(HttpHeaders.CONTENT_RANGE));
+            assertEquals(5, response.getContentLengthLong());
+            assertEquals("56789", response.getContentAsString());
+        }
+    }
+
+    @Test
+    void suffixAndOpenEndedRangesAreResolvedAgainstTheSize() throws IOException {
+        MockHttpServletRequest suffix = request();
+        suffix.addHeader(HttpHeaders.RANGE, "bytes=-3");
+        assertEquals("hij", stream(localStore, suffix).getContentAsString());
+
+        MockHttpServletRequest openEnded = request();
+        openEnded.addHeader(HttpHeaders.RANGE, "bytes=15-100");
+        MockHttpServletResponse response = stream(remoteStore, openEnded);
+        assertEquals("bytes 15-19/20", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals("fghij", response.getContentAsString());
+    }
+
+    @Test
+    void multipleRangesAreMergedIntoOneMultipartResponse() throws IOException {
+        MockHttpServletRequest request = request();
+        request.addHeader(HttpHeaders.RANGE, "bytes=12-13,0-1,1-3");
+
+        MockHttpServletResponse response = stream(localStore, request);
+
+        assertEquals(206, response.getStatus());
+        assertTrue(response.getContentType().startsWith("multipart/byteranges; boundary="));
+        String body = response.getContentAsString();
+        assertTrue(body.contains("Content-Range: bytes 0-3/20\r\n\r\n0123\r\n"), body);
+        assertTrue(body.contains("Content-Range: bytes 12-13/20\r\n\r\ncd\r\n"), body);
+        assertEquals(body.length(), response.getContentLengthLong());
+    }
+
+    @Test
+    void unsatisfiableRangeIs416() throws IOException {
+        MockHttpServletRequest request = request();
+        request.addHeader(HttpHeaders.RANGE, "bytes=40-50");
+
+        MockHttpServletResponse response = stream(localStore, request);
+
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */20", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals("", response.getContentAsString());
+    }
+
+    @Test
+    void staleIfRangeServesTheWholeObject() throws IOException {
+        MockHttpServletRequest request = request();
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-1");
+        request.addHeader(HttpHeaders.IF_RANGE, "\"outdated\"");
+
+        MockHttpServletResponse response = stream(localStore, request);
+
+        assertEquals(200, response.getStatus());
+        assertEquals(CONTENT, response.getContentAsString());
+    }
+
+    @Test
+    void matchingIfRangeServesTheRange() throws IOException {
+        MockHttpServletRequest request = request();
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-1");
+        request.addHeader(HttpHeaders.IF_RANGE, etag());
+
+        assertEquals(206, stream(localStore, request).getStatus());
+    }
+
+    @Test
+    void matchingIfNoneMatchIsNotModified() throws IOException {
+        MockHttpServletRequest request = request();
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, etag());
+
+        MockHttpServletResponse response = stream(localStore, request);
+
+        assertEquals(304, response.getStatus());
+        assertEquals("", response.getContentAsString());
+    }
+
+    @Test
+    void localRangeIsHandedToSendfileWhenSupported() throws IOException {
+        MockHttpServletRequest request = request();
+        request.addHeader(HttpHeaders.RANGE, "bytes=5-9");
+        request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+
+        MockHttpServletResponse response = stream(localStore, request);
+
+        assertEquals(206, response.getStatus());
+        assertEquals(localStore.localPath("videos/a.mp4").orElseThrow().toAbsolutePath().toString(),
+                request.getAttribute("org.apache.tomcat.sendfile.filename"));
+        assertEquals(5L, request.getAttribute("org.apache.tomcat.sendfile.start"));
+        assertEquals(10L, request.getAttribute("org.apache.tomcat.sendfile.end"));
+        assertEquals("", response.getContentAsString());
+    }
+
+    @Test
+    void headRequestSendsNoBody() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("HEAD", "/api/videos/stream/a.mp4");
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-4");
+
+        MockHttpServletResponse response = stream(localStore, request);
+
+        assertEquals(206, response.getStatus());
+        assertEquals(5, response.getContentLengthLong());
+        assertEquals("", response.getContentAsString());
+        assertNull(request.getAttribute("org.apache.tomcat.sendfile.filename"));
+    }
+
+    private MockHttpServletResponse stream(ObjectStore store, MockHttpServletRequest request) throws IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ObjectStoreResource resource = new ObjectStoreResource(store, store.head("videos/a.mp4").orElseThrow());
+        videoStreamingService.stream(resource, "video/mp4", "inline", request, response);
+        return response;
+    }
+
+    private String etag() throws IOException {
+        return "\"" + localStore.head("videos/a.mp4").orElseThrow().getEtag() + "\"";
+    }
+
+    private static MockHttpServletRequest request() {
+        return new MockHttpServletRequest("GET", "/api/videos/stream/a.mp4");
+    }
+}
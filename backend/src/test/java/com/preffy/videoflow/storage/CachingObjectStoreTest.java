@@ -0,0 +1,197 @@
+package com.preffy.videoflow.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Chunk cache in front of a remote store: LRU eviction under the byte budget,
+ * one fetch for concurrent misses, refetching after an ETag change and only
+ * clearing files the cache owns
+ */
+class CachingObjectStoreTest {
+
+    private static final int CHUNK_SIZE = 4;
+
+    @TempDir
+    Path root;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private CountingObjectStore delegate;
+
+    @BeforeEach
+    void setUp() {
+        delegate = new CountingObjectStore();
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedChunksOverTheBudget() throws IOException {
+        CachingObjectStore cache = cache(12, Duration.ofMinutes(1));
+        delegate.put("videos/a.mp4", stream("aaaabbbbccccdddd"), 16, "video/mp4");
+
+        assertEquals("aaaabbbbcccc", read(cache.getRange("videos/a.mp4", 0, 12)));
+        assertEquals(3, delegate.rangeReads.get());
+        assertEquals(12, cache.getCachedBytes());
+
+        // Touch the first chunk so the second is the least recently used
+        assertEquals("aaaa", read(cache.getRange("videos/a.mp4", 0, 4)));
+        assertEquals("dddd", read(cache.getRange("videos/a.mp4", 12, 4)));
+        assertEquals(12, cache.getCachedBytes());
+        assertEquals(1.0, meterRegistry.get("storage.cache.evictions").counter().count());
+        assertEquals(3, chunkFiles().size());
+
+        assertEquals("aaaa", read(cache.getRange("videos/a.mp4", 0, 4)));
+        assertEquals(4, delegate.rangeReads.get());
+        assertEquals("bbbb", read(cache.getRange("videos/a.mp4", 4, 4)));
+        assertEquals(5, delegate.rangeReads.get());
+    }
+
+    @Test
+    void concurrentMissesShareOneFetch() throws Exception {
+        CachingObjectStore cache = cache(1024, Duration.ofMinutes(1));
+        delegate.put("videos/a.mp4", stream("aaaabbbb"), 8, "video/mp4");
+        cache.head("videos/a.mp4");
+        delegate.gate = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = executor.submit(() -> read(cache.getRange("videos/a.mp4", 0, 4)));
+            Future<String> second = executor.submit(() -> read(cache.getRange("videos/a.mp4", 0, 4)));
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (requests("coalesced") < 1 && System.nanoTime() < deadline) {
+                Thread.onSpinWait();
+            }
+            delegate.gate.countDown();
+
+            assertEquals("aaaa", first.get(5, TimeUnit.SECONDS));
+            assertEquals("aaaa", second.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, delegate.rangeReads.get());
+        assertEquals(1.0, requests("miss"));
+        assertEquals(1.0, requests("coalesced"));
+    }
+
+    @Test
+    void replacedObjectIsRefetchedOnceItsMetadataExpires() throws IOException {
+        CachingObjectStore cache = cache(1024, Duration.ZERO);
+        delegate.put("videos/a.mp4", stream("old!"), 4, "video/mp4");
+        assertEquals("old!", read(cache.getRange("videos/a.mp4", 0, -1)));
+        assertEquals("old!", read(cache.getRange("videos/a.mp4", 0, -1)));
+        assertEquals(1, delegate.rangeReads.get());
+
+        // Replaced behind the cache's back, e.g. by another instance
+        delegate.put("videos/a.mp4", stream("new!"), 4, "video/mp4");
+
+        assertEquals("new!", read(cache.getRange("videos/a.mp4", 0, -1)));
+        assertEquals(2, delegate.rangeReads.get());
+    }
+
+    @Test
+    void putThroughTheCacheInvalidatesOldChunks() throws IOException {
+        CachingObjectStore cache = cache(1024, Duration.ofMinutes(1));
+        cache.put("videos/a.mp4", stream("old!"), 4, "video/mp4");
+        assertEquals("old!", read(cache.getRange("videos/a.mp4", 0, -1)));
+
+        cache.put("videos/a.mp4", stream("new!"), 4, "video/mp4");
+
+        assertEquals("new!", read(cache.getRange("videos/a.mp4", 0, -1)));
+        assertEquals(4, cache.getCachedBytes());
+        assertEquals(1, chunkFiles().size());
+    }
+
+    @Test
+    void startupOnlyRemovesFilesTheCacheOwns() throws IOException {
+        Path leftover = Files.writeString(root.resolve("0".repeat(64) + ".chunk"), "stale");
+        Path temp = Files.writeString(root.resolve(".fetch-123.tmp"), "partial");
+        Path unrelated = Files.writeString(root.resolve("notes.txt"), "keep me");
+        Path directory = Files.createDirectory(root.resolve("other"));
+
+        cache(1024, Duration.ofMinutes(1));
+
+        assertTrue(Files.notExists(leftover));
+        assertTrue(Files.notExists(temp));
+        assertTrue(Files.exists(unrelated));
+        assertTrue(Files.isDirectory(directory));
+    }
+
+    @Test
+    void metadataCacheIsBounded() throws IOException {
+        CachingObjectStore cache = cache(1024, Duration.ofMinutes(1));
+        for (int i = 0; i <= 10_000; i++) {
+            delegate.put("videos/" + i + ".mp4", stream("x"), 1, "video/mp4");
+            cache.head("videos/" + i + ".mp4");
+        }
+
+        assertTrue(cache.getCachedMetadataCount() <= 10_000);
+    }
+
+    private CachingObjectStore cache(long maxBytes, Duration metadataTtl) throws IOException {
+        return new CachingObjectStore(delegate, root, maxBytes, CHUNK_SIZE, metadataTtl, meterRegistry);
+    }
+
+    private double requests(String result) {
+        return meterRegistry.get("storage.cache.requests").tag("result", result).counter().count();
+    }
+
+    private List<Path> chunkFiles() throws IOException {
+        try (var files = Files.list(root)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".chunk")).toList();
+        }
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.US_ASCII);
+        }
+    }
+
+    /**
+     * In-memory delegate that counts range reads and can hold them until released
+     */
+    private static class CountingObjectStore extends InMemoryObjectStore {
+
+        private final AtomicInteger rangeReads = new AtomicInteger();
+        private volatile CountDownLatch gate;
+
+        @Override
+        public InputStream getRange(String key, long offset, long length) throws IOException {
+            rangeReads.incrementAndGet();
+            CountDownLatch current = gate;
+            if (current != null) {
+                try {
+                    current.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return super.getRange(key, offset, length);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.preffy.videoflow.storage;
+
+import com.google.cloud.ReadChannel;
+import com.google.cloud.WriteChannel;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * GCS object store against a mocked Storage client: uploads stream through the
+ * write channel in bounded writes, ranged reads count the bytes actually read,
+ * and every call is timed
+ */
+class GcsObjectStoreTest {
+
+    private static final int CHUNK_SIZE = 256 * 1024;
+    private static final int BUFFER_SIZE = 1024;
+
+    private final Storage storage = mock(Storage.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private GcsObjectStore store;
+
+    @BeforeEach
+    void setUp() {
+        GcsStorageMetrics metrics = new GcsStorageMetrics();
+        ReflectionTestUtils.setField(metrics, "meterRegistry", meterRegistry);
+        store = new GcsObjectStore(storage, "bucket", metrics, CHUNK_SIZE, BUFFER_SIZE);
+    }
+
+    @Test
+    void putStreamsThroughTheWriteChannelInBufferSizedWrites() throws IOException {
+        WriteChannel writer = mock(WriteChannel.class);
+        List<Integer> writes = new ArrayList<>();
+        when(writer.write(any())).thenAnswer(invocation -> {
+            ByteBuffer buffer = invocation.getArgument(0);
+            int length = buffer.remaining();
+            writes.add(length);
+            buffer.position(buffer.limit());
+            return length;
+        });
+        when(storage.writer(any(BlobInfo.class))).thenReturn(writer);
+        stubBlob("videos/a.mp4", 2500);
+
+        ObjectMetadata metadata = store.put("videos/a.mp4", new ByteArrayInputStream(new byte[2500]), 2500, "video/mp4");
+
+        verify(writer).setChunkSize(CHUNK_SIZE);
+        verify(writer).close();
+        assertEquals(List.of(1024, 1024, 452), writes);
+        assertEquals(2500, metadata.getSize());
+        assertEquals(2500, meterRegistry.get("storage.gcs.bytes").tag("operation", "upload").counter().count());
+    }
+
+    @Test
+    void putFailsWhenTheObjectIsMissingAfterUpload() throws IOException {
+        when(storage.writer(any(BlobInfo.class))).thenReturn(mock(WriteChannel.class));
+
+        InputStream empty = new ByteArrayInputStream(new byte[0]);
+        assertThrows(IOException.class, () -> store.put("videos/a.mp4", empty, 0, "video/mp4"));
+    }
+
+    @Test
+    void getRangeCountsTheBytesActuallyRead() throws IOException {
+        ReadChannel reader = readerOf(1000);
+        when(storage.reader(BlobId.of("bucket", "videos/a.mp4"))).thenReturn(reader);
+
+        try (InputStream in = store.getRange("videos/a.mp4", 100, 500)) {
+            assertEquals(200, in.readNBytes(200).length);
+        }
+
+        verify(reader).seek(100);
+        verify(reader).limit(600);
+        assertEquals(200, meterRegistry.get("storage.gcs.bytes").tag("operation", "read").counter().count());
+    }
+
+    @Test
+    void unboundedRangeIsCountedToo() throws IOException {
+        ReadChannel reader = readerOf(700);
+        when(storage.reader(BlobId.of("bucket", "videos/a.mp4"))).thenReturn(reader);
+
+        try (InputStream in = store.getRange("videos/a.mp4", 0, -1)) {
+            in.readAllBytes();
+        }
+
+        assertEquals(700, meterRegistry.get("storage.gcs.bytes").tag("operation", "read").counter().count());
+    }
+
+    @Test
+    void readIsTimedUntilTheStreamEnds() throws IOException {
+        ReadChannel reader = readerOf(700);
+        when(storage.reader(BlobId.of("bucket", "videos/a.mp4"))).thenReturn(reader);
+
+        InputStream in = store.getRange("videos/a.mp4", 0, -1);
+        assertTrue(meterRegistry.find("storage.gcs.requests").tag("operation", "read").timers().isEmpty());
+
+        in.readAllBytes();
+        assertEquals(1, readTimer("success").count());
+        in.close();
+        assertEquals(1, readTimer("success").count());
+        assertEquals(700, meterRegistry.get("storage.gcs.bytes").tag("operation", "read").counter().count());
+    }
+
+    @Test
+    void failedReadIsTimedAsAnError() throws IOException {
+        ReadChannel reader = mock(ReadChannel.class);
+        when(reader.isOpen()).thenReturn(true);
+        when(reader.read(any())).thenThrow(new IOException("connection reset"));
+        when(storage.reader(BlobId.of("bucket", "videos/a.mp4"))).thenReturn(reader);
+
+        try (InputStream in = store.getRange("videos/a.mp4", 0, -1)) {
+            assertThrows(IOException.class, in::read);
+        }
+
+        assertEquals(1, readTimer("error").count());
+        assertTrue(meterRegistry.find("storage.gcs.requests").tag("operation", "read").tag("outcome", "success")
+                .timers().isEmpty());
+    }
+
+    @Test
+    void headMapsTheBlobAndTimesTheCall() throws IOException {
+        OffsetDateTime updated = OffsetDateTime.of(2024, 5, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+        Blob blob = stubBlob("videos/a.mp4", 42);
+        when(blob.getUpdateTimeOffsetDateTime()).thenReturn(updated);
+
+        ObjectMetadata metadata = store.head("videos/a.mp4").orElseThrow();
+
+        assertEquals("videos/a.mp4", metadata.getKey());
+        assertEquals(42, metadata.getSize());
+        assertEquals(Instant.parse("2024-05-01T12:00:00Z"), metadata.getLastModified());
+        assertEquals("etag", metadata.getEtag());
+        assertEquals(1, meterRegistry.get("storage.gcs.requests").tag("operation", "head")
+                .tag("outcome", "success").timer().count());
+    }
+
+    @Test
+    void failedCallsAreTimedAsErrors() throws IOException {
+        when(storage.delete(BlobId.of("bucket", "videos/a.mp4"))).thenThrow(new IllegalStateException("unavailable"));
+
+        assertThrows(IllegalStateException.class, () -> store.delete("videos/a.mp4"));
+        assertEquals(1, meterRegistry.get("storage.gcs.requests").tag("operation", "delete")
+                .tag("outcome", "error").timer().count());
+        assertTrue(store.head("videos/b.mp4").isEmpty());
+    }
+
+    private Timer readTimer(String outcome) {
+        return meterRegistry.get("storage.gcs.requests").tag("operation", "read").tag("outcome", outcome).timer();
+    }
+
+    /**
+     * A read channel over {@code size} zero bytes
+     */
+    private static ReadChannel readerOf(int size) throws IOException {
+        ReadChannel reader = mock(ReadChannel.class);
+        int[] remaining = {size};
+        when(reader.isOpen()).thenReturn(true);
+        when(reader.read(any())).thenAnswer(invocation -> {
+            ByteBuffer buffer = invocation.getArgument(0);
+            if (remaining[0] == 0) {
+                return -1;
+            }
+            int length = Math.min(buffer.remaining(), remaining[0]);
+            buffer.position(buffer.position() + length);
+            remaining[0] -= length;
+            return length;
+        });
+        return reader;
+    }
+
+    private Blob stubBlob(String key, long size) {
+        Blob blob = mock(Blob.class);
+        when(blob.getName()).thenReturn(key);
+        when(blob.getSize()).thenReturn(size);
+        when(blob.getContentType()).thenReturn("video/mp4");
+        when(blob.getEtag()).thenReturn("etag");
+        when(storage.get(BlobId.of("bucket", key))).thenReturn(blob);
+        return blob;
+    }
+}
@@ -0,0 +1,112 @@
+package com.preffy.videoflow.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Writes, moves, ranged reads and listing of the filesystem object store
+ */
+class LocalObjectStoreTest {
+
+    @TempDir
+    Path root;
+
+    @TempDir
+    Path staging;
+
+    private LocalObjectStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        store = new LocalObjectStore(root);
+    }
+
+    @Test
+    void putWritesTheObjectWithoutLeavingTempFiles() throws IOException {
+        ObjectMetadata metadata = store.put("videos/a.mp4", stream("0123456789"), 10, "video/mp4");
+
+        assertEquals(10, metadata.getSize());
+        assertEquals("0123456789", read(store.getRange("videos/a.mp4", 0, -1)));
+        assertEquals(List.of("a.mp4"), fileNames(root.resolve("videos")));
+    }
+
+    @Test
+    void moveFromRenamesTheSourceIntoPlace() throws IOException {
+        store.put("videos/a.mp4", stream("old"), 3, "video/mp4");
+        Path source = Files.writeString(staging.resolve("upload.bin"), "new content");
+
+        ObjectMetadata metadata = store.moveFrom("videos/a.mp4", source, "video/mp4");
+
+        assertFalse(Files.exists(source));
+        assertEquals(11, metadata.getSize());
+        assertEquals("new content", read(store.getRange("videos/a.mp4", 0, -1)));
+        assertEquals(List.of("a.mp4"), fileNames(root.resolve("videos")));
+    }
+
+    @Test
+    void getRangeReadsOnlyTheRange() throws IOException {
+        store.put("videos/a.mp4", stream("0123456789"), 10, "video/mp4");
+
+        assertEquals("345", read(store.getRange("videos/a.mp4", 3, 3)));
+        assertEquals("789", read(store.getRange("videos/a.mp4", 7, 100)));
+        assertEquals("89", read(store.getRange("videos/a.mp4", 8, -1)));
+    }
+
+    @Test
+    void listMatchesThePrefixAndSkipsTempFiles() throws IOException {
+        store.put("videos/a.mp4", stream("a"), 1, "video/mp4");
+        store.put("videos/b.mp4", stream("b"), 1, "video/mp4");
+        store.put("audio/a.aac", stream("a"), 1, "audio/aac");
+        Files.writeString(root.resolve("videos/.upload-1.tmp"), "partial");
+
+        List<String> keys = store.list("videos/").stream().map(ObjectMetadata::getKey).sorted().toList();
+
+        assertEquals(List.of("videos/a.mp4", "videos/b.mp4"), keys);
+    }
+
+    @Test
+    void deleteAndHeadReflectTheObject() throws IOException {
+        store.put("videos/a.mp4", stream("a"), 1, "video/mp4");
+
+        assertTrue(store.head("videos/a.mp4").isPresent());
+        assertTrue(store.delete("videos/a.mp4"));
+        assertFalse(store.delete("videos/a.mp4"));
+        assertTrue(store.head("videos/a.mp4").isEmpty());
+    }
+
+    @Test
+    void keysCannotEscapeTheRoot() {
+        assertThrows(IllegalArgumentException.class, () -> store.resolve("../outside"));
+        assertThrows(IllegalArgumentException.class, () -> store.resolve("videos/../.."));
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static List<String> fileNames(Path directory) throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString()).sorted().toList();
+        }
+    }
+}
@@ -19,6 +19,17 @@ export interface Project {
   createdAt: string;
 }
 
+export interface ProjectOperation {
+  operationId: string;
+  projectId: string;
+  stage: 'received' | 'storing' | 'queueing_analysis' | 'done' | 'failed';
+  percent: number;
+  etaSeconds: number | null;
+  error: string | null;
+  createdAt: string;
+  finishedAt: string | null;
+}
+
 export interface Video {
   id: string;
   projectId: string;
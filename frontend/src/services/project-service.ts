@@ -1,5 +1,7 @@
 import { api } from '@/lib/api-client';
-import { Project, Video, BodyLanguageAnalysisResponse } from '@/lib/types';
+import { Project, ProjectOperation, Video, BodyLanguageAnalysisResponse } from '@/lib/types';
+
+const OPERATION_POLL_INTERVAL_MS = 1000;
 
 export const projectService = {
   /**
@@ -34,26 +36,44 @@ export const projectService = {
     if (projectData.formality) formData.append('formality', projectData.formality);
     formData.append('video', videoFile);
 
-    // Simulate upload progress
+    // Simulate upload progress; the first half of the bar is the transfer itself
+    let interval: ReturnType<typeof setInterval> | undefined;
     if (onProgress) {
       let lastProgress = 0;
-      const interval = setInterval(() => {
-        const progress = Math.random() * 10;
-        lastProgress = Math.min(progress + lastProgress, 90);
+      interval = setInterval(() => {
+        const progress = Math.random() * 5;
+        lastProgress = Math.min(progress + lastProgress, 50);
         onProgress(lastProgress);
-        if (lastProgress >= 90) {
+        if (lastProgress >= 50) {
           clearInterval(interval);
         }
       }, 200);
     }
 
-    const result = await api.postFormData('/projects/with-video', formData);
-    
+    // The server answers 202 once the upload is received and stores the video in the background
+    let operation: ProjectOperation;
+    try {
+      operation = await api.postFormData<ProjectOperation>('/projects/with-video', formData);
+    } finally {
+      clearInterval(interval);
+    }
+
+    while (operation.stage !== 'done') {
+      if (operation.stage === 'failed') {
+        throw new Error(operation.error ?? 'Failed to store the video');
+      }
+      if (onProgress) {
+        onProgress(50 + operation.percent / 2);
+      }
+      await new Promise((resolve) => setTimeout(resolve, OPERATION_POLL_INTERVAL_MS));
+      operation = await api.get<ProjectOperation>(`/projects/operations/${operation.operationId}`);
+    }
+
     if (onProgress) {
       onProgress(100);
     }
-    
-    return result;
+
+    return await projectService.getProjectById(operation.projectId);
   },
 
   /**